@@ -28,9 +28,12 @@ import com.lukeleber.scandroid.gui.fragments.LiveDatastream;
 import com.lukeleber.scandroid.gui.fragments.ResetDiagnosticInformation;
 import com.lukeleber.scandroid.gui.fragments.ServiceFragment;
 import com.lukeleber.scandroid.gui.fragments.UnsupportedService;
+import com.lukeleber.scandroid.interpreter.BoundedRequestScheduler;
+import com.lukeleber.scandroid.interpreter.CallbackExecutors;
 import com.lukeleber.scandroid.interpreter.FailureCode;
 import com.lukeleber.scandroid.interpreter.Handler;
 import com.lukeleber.scandroid.interpreter.Interpreter;
+import com.lukeleber.scandroid.interpreter.ResponseCache;
 import com.lukeleber.scandroid.interpreter.elm327.ELM327;
 import com.lukeleber.scandroid.interpreter.elm327.OpCode;
 import com.lukeleber.scandroid.interpreter.elm327.Protocol;
@@ -59,6 +62,9 @@ public class GenericScanner
     /// @internal tag for debug logging
     private final static String TAG = GenericScanner.class.getName();
 
+    /// The largest number of requests that may wait to be written to the interpreter
+    private final static int REQUEST_QUEUE_CAPACITY = 64;
+
     /// Each service exists in its own self contained UI fragment class
     @SuppressWarnings("unchecked")
     public final static Class<? extends ServiceFragment>[] services = new Class[]
@@ -95,8 +101,14 @@ public class GenericScanner
         try
         {
             /// By default, we use a bluetooth-enabled ELM327 using default settings
+            /// Its queue is bounded so that a slow bus cannot pile up stale polls without end
             final ELM327 interpreter
-                    = new ELM327(BluetoothInterface.getDefault(context));
+                    = new ELM327(BluetoothInterface.getDefault(context),
+                                 new BoundedRequestScheduler<String>(REQUEST_QUEUE_CAPACITY,
+                                         BoundedRequestScheduler.OverflowPolicy.REPLACE_SAME_PID),
+                                 CallbackExecutors.mainThread());
+            /// Screens that show the same slow-changing PIDs share one reply per freshness window
+            interpreter.setResponseCache(ResponseCache.withDefaults());
             /// Add a connection listener
             interpreter.addConnectionListener(new Interpreter.ConnectionListener()
             {
@@ -148,6 +160,34 @@ public class GenericScanner
                 }
             });
 
+            /// Add a link listener; the interpreter reconnects by itself, so just keep the user posted
+            interpreter.addLinkListener(new Interpreter.LinkListener()
+            {
+                @Override
+                public void onLinkLost()
+                {
+                    toast("Connection lost - reconnecting to the interpreter...");
+                }
+
+                @Override
+                public void onLinkRestored()
+                {
+                    toast("Connection restored.");
+                }
+
+                private void toast(final String text)
+                {
+                    context.handler.post(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            Toast.makeText(context, text, Toast.LENGTH_SHORT).show();
+                        }
+                    });
+                }
+            });
+
             {
                 /// Since we have to store shared non-parcelables in global scope...
                 /// run cleanup on an old one (if it exists)
@@ -219,8 +259,8 @@ public class GenericScanner
                 {
                     case ProtocolSearch.PROTOCOL_FOUND:
                         Profile.createProfile(interpreter,
-                                (Protocol)data.getSerializableExtra(ProtocolSearch.PROTOCOL_RESULT_KEY),
-                                new Handler<Profile>()
+                                (Protocol)data.getSerializableExtra(ProtocolSearch.PROTOCOL_RESULT_KEY))
+                               .handle(new Handler<Profile>()
                                 {
                                     /// Upon success, launch the scanner activity
                                     @Override
@@ -267,8 +307,7 @@ public class GenericScanner
                                     {
                                         /// Error creating profile
                                     }
-                                }
-                                             );
+                                });
                         break;
                     case ProtocolSearch.SEARCH_ABORTED:
                     case ProtocolSearch.FATAL_ERROR:
@@ -21,8 +21,13 @@ import com.lukeleber.scandroid.gui.InterpreterHost;
 import com.lukeleber.scandroid.interpreter.FailureCode;
 import com.lukeleber.scandroid.interpreter.Handler;
 import com.lukeleber.scandroid.interpreter.Interpreter;
+import com.lukeleber.scandroid.interpreter.Request;
 import com.lukeleber.scandroid.interpreter.elm327.ELM327;
 import com.lukeleber.scandroid.interpreter.elm327.OpCode;
+import com.lukeleber.scandroid.interpreter.metrics.InterpreterMetrics;
+import com.lukeleber.scandroid.interpreter.metrics.LatencyHistogram;
+
+import java.util.concurrent.TimeUnit;
 
 import butterknife.ButterKnife;
 import butterknife.InjectView;
@@ -33,8 +38,9 @@ import butterknife.OnClick;
  * An informative dialog that can be shown by any {@link android.app.Activity} that implements
  * the {@link com.lukeleber.scandroid.gui.InterpreterHost} interface.  Various information about
  * the interpreter bridge is displayed to the user including hardware types and versions,
- * link status, average latency, and system voltage.  Specialized versions of this class can
- * be derived for use with implementation specific types of hardware.
+ * link status, latency percentiles, throughput, error rates, queue depth, and system voltage.
+ * Specialized versions of this class can be derived for use with implementation specific types of
+ * hardware.
  *
  * <p>For example, an ELM327 equipped with a bluetooth interface might present the device name,
  * UUID, and signal strength in addition to the information provided by this base class.</p>
@@ -64,6 +70,30 @@ public class BridgeStatus
     @InjectView(R.id.dialog_bridge_status_average_latency)
     TextView averageLatency;
 
+    /// Text field for displaying the 50th, 95th and 99th percentile and maximum latencies
+    @InjectView(R.id.dialog_bridge_status_latency_percentiles)
+    TextView latencyPercentiles;
+
+    /// Text field for displaying the number of requests completed per second
+    @InjectView(R.id.dialog_bridge_status_request_rate)
+    TextView requestRate;
+
+    /// Text field for displaying the number of bytes read from and written to the hardware
+    @InjectView(R.id.dialog_bridge_status_traffic)
+    TextView traffic;
+
+    /// Text field for displaying the fraction of requests that were answered with "NO DATA"
+    @InjectView(R.id.dialog_bridge_status_no_data_rate)
+    TextView noDataRate;
+
+    /// Text field for displaying the fraction of requests that failed
+    @InjectView(R.id.dialog_bridge_status_error_rate)
+    TextView errorRate;
+
+    /// Text field for displaying the number of requests waiting to be written
+    @InjectView(R.id.dialog_bridge_status_queue_depth)
+    TextView queueDepth;
+
     /// @internal debugging tag
     private final static String TAG = BridgeStatus.class.getName();
 
@@ -93,7 +123,9 @@ public class BridgeStatus
     {
         Interpreter interpreter = host.getInterpreter();
         hardware.setText(interpreter.getName());
-        averageLatency.setText(String.valueOf(interpreter.getAverageLatency()) + " ms");
+        averageLatency.setText(getString(R.string.dialog_bridge_status_average_latency_format,
+                                         interpreter.getAverageLatency()));
+        updateMetrics(interpreter.getMetrics());
         linkStatus.setText(interpreter.getLinkStatus()
                                       .toI18NString(super.getActivity()));
         systemVoltage.setText(getString(R.string.waiting_for_response));
@@ -112,7 +144,34 @@ public class BridgeStatus
                 systemVoltage.setText(BridgeStatus.this.getString(R.string.not_available));
             }
         }, OpCode.ELM327_VOLTAGE_READING_READ_INPUT_VOLTAGE
-                ));
+                ).setPriority(Request.Priority.INTERACTIVE));
+    }
+
+    /**
+     * Displays the performance counters of the interpreter
+     *
+     * @param metrics
+     *         the {@link com.lukeleber.scandroid.interpreter.metrics.InterpreterMetrics} of the
+     *         interpreter
+     */
+    private void updateMetrics(InterpreterMetrics metrics)
+    {
+        LatencyHistogram latency = metrics.getLatency();
+        TimeUnit ms = TimeUnit.MILLISECONDS;
+        latencyPercentiles.setText(
+                getString(R.string.dialog_bridge_status_latency_percentiles_format,
+                          latency.getPercentile(50, ms), latency.getPercentile(95, ms),
+                          latency.getPercentile(99, ms), latency.getMax(ms)));
+        requestRate.setText(getString(R.string.dialog_bridge_status_request_rate_format,
+                                      metrics.getRequestRate()));
+        traffic.setText(getString(R.string.dialog_bridge_status_traffic_format,
+                                  metrics.getBytesIn(), metrics.getBytesOut()));
+        noDataRate.setText(getString(R.string.dialog_bridge_status_percentage_format,
+                                     metrics.getNoDataRate() * 100, metrics.getNoDataCount()));
+        errorRate.setText(getString(R.string.dialog_bridge_status_percentage_format,
+                                    metrics.getErrorRate() * 100, metrics.getErrorCount()));
+        queueDepth.setText(getString(R.string.dialog_bridge_status_queue_depth_format,
+                                     metrics.getQueueDepth(), metrics.getMaxQueueDepth()));
     }
 
     /**
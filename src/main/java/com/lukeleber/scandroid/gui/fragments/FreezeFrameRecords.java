@@ -20,7 +20,8 @@ import com.lukeleber.scandroid.gui.fragments.util.ParameterModel;
 import com.lukeleber.scandroid.interpreter.FailureCode;
 import com.lukeleber.scandroid.interpreter.Handler;
 import com.lukeleber.scandroid.interpreter.Interpreter;
-import com.lukeleber.scandroid.interpreter.ServiceRequest;
+import com.lukeleber.scandroid.interpreter.RequestFuture;
+import com.lukeleber.scandroid.interpreter.RequestFuture.Transform;
 import com.lukeleber.scandroid.sae.j1979.PID;
 import com.lukeleber.scandroid.sae.j1979.Profile;
 import com.lukeleber.scandroid.sae.j1979.Service;
@@ -31,6 +32,7 @@ import com.lukeleber.scandroid.util.Unit;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import butterknife.ButterKnife;
 import butterknife.InjectView;
@@ -49,6 +51,12 @@ public class FreezeFrameRecords
         extends ServiceFragment
 {
 
+    /// The longest (in seconds) that a refresh may take
+    private final static long REFRESH_TIMEOUT = 10;
+
+    /// The refresh that is in progress (if any)
+    private RequestFuture<Boolean> pending;
+
     /// The list of PIDs that service $02 supports
     private List<ParameterModel> viewedParameters = new ArrayList<>();
 
@@ -131,103 +139,117 @@ public class FreezeFrameRecords
     public void onDestroy()
     {
         super.onDestroy();
+        if (pending != null)
+        {
+            pending.cancel(false);
+        }
         this.viewedParameters = null;
         this.listView = null;
     }
 
     /**
-     * Queries the vehicle for updated freeze-frame data.
+     * Queries the vehicle for updated freeze-frame data.  The record is first checked for, then
+     * every viewed parameter of it is requested at once; the list view is invalidated once, when
+     * the whole frame is in.
      */
+    @SuppressWarnings("unchecked")
     private void refresh()
     {
-        /// Wrapped in an anonymous object to maintain state variable "remaining"
-        /// Basically just an optimization to wait until all responses get here
-        /// before invalidating the list view.
-        new Runnable()
+        if (pending != null)
         {
-            final View view = getView();
-
-            /// The number of responses that are still on their way
-            int remaining = viewedParameters.size();
-
-            @SuppressWarnings("unchecked")
-            @Override
-            public void run()
-            {
-                final Interpreter interpreter = host.getInterpreter();
-                interpreter.sendRequest(new ServiceRequest(Service.FREEZE_FRAME_DATA,
-                        AppendixB.FREEZE_FRAME_DTC, new Handler<DiagnosticTroubleCode>()
-                {
-
-                    @Override
-                    public void onResponse(DiagnosticTroubleCode value)
-                    {
-                        if(value.getBits() == 0)
-                        {
-                            caption.setText(getString(R.string.fragment_freeze_frame_records_no_records));
-                            refreshButton.setVisibility(View.INVISIBLE);
-                            listView.setVisibility(View.INVISIBLE);
-                        }
-                        else
-                        {
-                            caption.setText(getString(R.string.fragment_freeze_frame_records_frame_0_caption));
-                            refreshButton.setVisibility(View.VISIBLE);
-                            listView.setVisibility(View.VISIBLE);
-                            for(final ParameterModel model : viewedParameters)
-                            {
-                                final Unit unit = model.getPID()
-                                                       .getDisplayUnit();
-                                host.getInterpreter()
-                                    .sendRequest(
-                                            new ServiceRequest(Service.FREEZE_FRAME_DATA,
-                                                    model.getPID()
-                                                         .unwrap(),
-                                                    new Handler<Serializable>()
-                                                    {
-
-                                                        @Override
-                                                        public void onResponse(Serializable value)
-                                                        {
-                                                            model.update(value, unit);
-                                                            if(--remaining == 0)
-                                                            {
-                                                                listView.invalidateViews();
-                                                            }
-                                                        }
-
-                                                        @Override
-                                                        public void onFailure(FailureCode code)
-                                                        {
-                                                            if(--remaining == 0)
-                                                            {
-                                                                listView.invalidateViews();
-                                                            }
-                                                        }
-                                                    },
-                                                    unit
-                                            )
-                                    );
-                            }
-                        }
-                        if(view != null)
-                        {
-                            view.invalidate();
-                        }
-                    }
-
-                    @Override
-                    public void onFailure(FailureCode code)
-                    {
-                        caption.setText(getString(R.string.fragment_freeze_frame_records_error));
-                        refreshButton.setVisibility(View.INVISIBLE);
-                        listView.setVisibility(View.INVISIBLE);
-                        if(view != null)
-                        {
-                            view.invalidate();
-                        }
-                    }
-                }));
-            }
-        }.run();
+            pending.cancel(false);
+        }
+        final View view = getView();
+        final Interpreter interpreter = host.getInterpreter();
+        final List<ParameterModel> parameters = viewedParameters;
+        pending = interpreter.submit(Service.FREEZE_FRAME_DATA, AppendixB.FREEZE_FRAME_DTC)
+                             .then(new Transform<DiagnosticTroubleCode, RequestFuture<Boolean>>()
+                             {
+                                 @Override
+                                 public RequestFuture<Boolean> apply(DiagnosticTroubleCode value)
+                                 {
+                                     if (value.getBits() == 0)
+                                     {
+                                         return RequestFuture.completed(false);
+                                     }
+                                     List<RequestFuture<Serializable>> frame = new ArrayList<>();
+                                     for (final ParameterModel model : parameters)
+                                     {
+                                         final Unit unit = model.getPID()
+                                                                .getDisplayUnit();
+                                         RequestFuture<Serializable> parameter =
+                                                 interpreter.submit(Service.FREEZE_FRAME_DATA,
+                                                                    (PID) model.getPID()
+                                                                               .unwrap(),
+                                                                    unit);
+                                         frame.add(parameter.map(
+                                                 new Transform<Serializable, Serializable>()
+                                                 {
+                                                     @Override
+                                                     public Serializable apply(Serializable value)
+                                                     {
+                                                         model.update(value, unit);
+                                                         return value;
+                                                     }
+                                                 })
+                                                            /// A missing parameter does not spoil the frame
+                                                            .orElse(null));
+                                     }
+                                     return RequestFuture.all(frame)
+                                                         .map(new Transform<List<Serializable>, Boolean>()
+                                                         {
+                                                             @Override
+                                                             public Boolean apply(List<Serializable> value)
+                                                             {
+                                                                 return true;
+                                                             }
+                                                         });
+                                 }
+                             })
+                             .withTimeout(REFRESH_TIMEOUT, TimeUnit.SECONDS)
+                             .handle(new Handler<Boolean>()
+                             {
+                                 @Override
+                                 public void onResponse(Boolean stored)
+                                 {
+                                     if (listView == null)
+                                     {
+                                         return; /// Destroyed while the outcome was on its way
+                                     }
+                                     if (stored)
+                                     {
+                                         caption.setText(getString(R.string.fragment_freeze_frame_records_frame_0_caption));
+                                         refreshButton.setVisibility(View.VISIBLE);
+                                         listView.setVisibility(View.VISIBLE);
+                                         listView.invalidateViews();
+                                     }
+                                     else
+                                     {
+                                         caption.setText(getString(R.string.fragment_freeze_frame_records_no_records));
+                                         refreshButton.setVisibility(View.INVISIBLE);
+                                         listView.setVisibility(View.INVISIBLE);
+                                     }
+                                     if (view != null)
+                                     {
+                                         view.invalidate();
+                                     }
+                                 }
+
+                                 @Override
+                                 public void onFailure(FailureCode code)
+                                 {
+                                     if (listView == null)
+                                     {
+                                         return; /// Destroyed while the outcome was on its way
+                                     }
+                                     caption.setText(getString(R.string.fragment_freeze_frame_records_error));
+                                     refreshButton.setVisibility(View.INVISIBLE);
+                                     listView.setVisibility(View.INVISIBLE);
+                                     if (view != null)
+                                     {
+                                         view.invalidate();
+                                     }
+                                 }
+                             });
     }
 }
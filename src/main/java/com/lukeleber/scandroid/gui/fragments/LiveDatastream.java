@@ -21,8 +21,13 @@ import com.lukeleber.scandroid.gui.dialogs.ParameterSelector;
 import com.lukeleber.scandroid.gui.fragments.detail.SAEJ1979AppendixWrapper;
 import com.lukeleber.scandroid.gui.fragments.util.AbstractParameterAdapter;
 import com.lukeleber.scandroid.gui.fragments.util.ParameterModel;
+import com.lukeleber.scandroid.interpreter.CallbackExecutors;
 import com.lukeleber.scandroid.interpreter.FailureCode;
+import com.lukeleber.scandroid.interpreter.FrameDispatcher;
 import com.lukeleber.scandroid.interpreter.Handler;
+import com.lukeleber.scandroid.interpreter.Interpreter;
+import com.lukeleber.scandroid.interpreter.PollingCycle;
+import com.lukeleber.scandroid.interpreter.Request;
 import com.lukeleber.scandroid.interpreter.ServiceRequest;
 import com.lukeleber.scandroid.sae.j1979.PID;
 import com.lukeleber.scandroid.sae.j1979.Profile;
@@ -85,6 +90,18 @@ public class LiveDatastream
         /// The default refresh rate
         public final static long DEFAULT_REFRESH_RATE = 1;
 
+        /// The longest that a single poll may wait for its reply before it is abandoned
+        private final static long POLL_TIMEOUT = 2000;
+
+        /// The queue pressure above which the refresh interval is stretched
+        private final static double HIGH_PRESSURE = 0.75;
+
+        /// The queue pressure below which a stretched refresh interval is relaxed again
+        private final static double LOW_PRESSURE = 0.25;
+
+        /// The most that the refresh interval is ever stretched by
+        private final static int MAX_BACKOFF = 8;
+
         /// The executor service to schedule updates on
         private ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
 
@@ -100,6 +117,81 @@ public class LiveDatastream
         /// The number of requests that have yet to be responded to
         private int remaining;
 
+        /// The factor that the refresh interval is currently stretched by
+        private int backoff = 1;
+
+        /// The unix timestamp at which the current cycle was sent
+        private volatile long cycleStart;
+
+        /// Has any model been updated since the views were last invalidated?
+        private boolean dirty;
+
+        /// Invalidates the views once per display frame, after that frame's replies have landed
+        private final FrameDispatcher.FrameListener invalidator =
+                new FrameDispatcher.FrameListener()
+                {
+                    @Override
+                    public void onFrameDelivered()
+                    {
+                        if(dirty && datastreamView != null)
+                        {
+                            dirty = false;
+                            datastreamView.invalidateViews();
+                        }
+                    }
+                };
+
+        /// The requests (and batches) that are sent every cycle; built once by {@link #start()}
+        private PollingCycle cycle;
+
+        /// Is the link down? Every poll would fail at once, so no cycle is sent until it is back
+        /// (only touched on the GUI thread)
+        private boolean paused;
+
+        /// Was a cycle held back while the link was down? (only touched on the GUI thread)
+        private boolean halted;
+
+        /// Pauses polling on the GUI thread (in order with {@link #resume})
+        private final Runnable pause = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                paused = true;
+            }
+        };
+
+        /// Resumes polling on the GUI thread, once the configuration has been replayed
+        private final Runnable resume = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                paused = false;
+                if(halted)
+                {
+                    halted = false;
+                    scheduleRefresh();
+                }
+            }
+        };
+
+        /// Pauses polling for as long as the interpreter is reconnecting
+        private final Interpreter.LinkListener linkWatcher = new Interpreter.LinkListener()
+        {
+            @Override
+            public void onLinkLost()
+            {
+                CallbackExecutors.mainThread().execute(pause);
+            }
+
+            @Override
+            public void onLinkRestored()
+            {
+                CallbackExecutors.mainThread().execute(resume);
+            }
+        };
+
         /**
          * Constructs a Refresher with the provided target refresh rate
          *
@@ -146,16 +238,24 @@ public class LiveDatastream
         /**
          * Invoked on the GUI thread when all expected responses have been received, this method
          * calculates the time required to meet the next scheduled update and re-submits this
-         * object to its executor service.
+         * object to its executor service.  The views are invalidated separately, once per
+         * display frame (see {@link #invalidator}).
          *
          */
         void scheduleRefresh()
         {
+            if(paused)
+            {
+                halted = true; /// Picked up again by 'resume'
+                return;
+            }
             if(!stopped && datastreamView != null)
             {
-                datastreamView.invalidateViews();
                 remaining = viewedParameters.size();
-                long nextRefresh = refreshRate - (System.currentTimeMillis() - lastRefresh);
+                long now = System.currentTimeMillis();
+                long nextRefresh = refreshRate - (now - lastRefresh);
+                /// Under pressure, each cycle is followed by as many cycles' worth of idling
+                nextRefresh += (now - cycleStart) * (adjustBackoff() - 1);
                 if(nextRefresh < 0)
                 {
                     nextRefresh = 0;
@@ -166,37 +266,56 @@ public class LiveDatastream
         }
 
         /**
-         * Starts this Refresher
+         * Stretches the refresh interval while the request queue of the interpreter is under
+         * pressure from other requests (doubling it every cycle, up to {@link #MAX_BACKOFF}), and
+         * relaxes it again once the pressure has eased.  Every poll of the last cycle has been
+         * answered by now, so the pressure is not of this Refresher's own making.
          *
+         * @return the factor to stretch the next refresh interval by
          */
-        public void start()
+        private int adjustBackoff()
         {
-            remaining = viewedParameters.size();
-            executor.submit(this);
+            double pressure = host.getInterpreter().getQueuePressure();
+            if(pressure >= HIGH_PRESSURE && backoff < MAX_BACKOFF)
+            {
+                backoff <<= 1;
+            }
+            else if(pressure <= LOW_PRESSURE && backoff > 1)
+            {
+                backoff >>= 1;
+            }
+            return backoff;
         }
 
         /**
-         * Stops this Refresher
+         * Starts this Refresher
          *
          */
-        public void stop()
+        public void start()
         {
-            executor.shutdownNow();
-            stopped = true;
+            remaining = viewedParameters.size();
+            cycle = compile();
+            CallbackExecutors.frameAligned().addFrameListener(invalidator);
+            host.getInterpreter().addLinkListener(linkWatcher);
+            executor.submit(this);
         }
 
         /**
-         * {@inheritDoc}
+         * Builds the requests for the viewed parameters, each with its handler bound once for the
+         * life of this Refresher.  Every cycle sends the very same requests again, so polling
+         * creates no garbage.
          *
+         * @return the cycle of requests to send
          */
         @SuppressWarnings("unchecked")
-        @Override
-        public void run()
+        private PollingCycle compile()
         {
+            /// Each member of a batch is still answered exactly once, so 'remaining' holds
+            PollingCycle rv = new PollingCycle(host.getProfile().getProtocol());
             for(final ParameterModel model : viewedParameters)
             {
                 final Unit unit = model.getPID().getDisplayUnit();
-                host.getInterpreter().sendRequest(
+                ServiceRequest<?> request =
                         new ServiceRequest(Service.LIVE_DATASTREAM, model.getPID().unwrap(),
                                 new Handler<Serializable>()
                                 {
@@ -204,6 +323,7 @@ public class LiveDatastream
                                     public void onResponse(Serializable value)
                                     {
                                         model.update(value, unit);
+                                        dirty = true;
                                         if(--remaining == 0)
                                         {
                                             scheduleRefresh();
@@ -220,9 +340,38 @@ public class LiveDatastream
                                     }
                                 },
                                 unit
-                        )
-                );
+                        );
+                /// Polling must never hold up what the user is waiting on, nor wait on every ECU
+                request.setPriority(Request.Priority.BACKGROUND)
+                       .setTimeout(POLL_TIMEOUT)
+                       .setTarget(host.getProfile().getRespondingModule());
+                rv.add(request);
             }
+            return rv;
+        }
+
+        /**
+         * Stops this Refresher
+         *
+         */
+        public void stop()
+        {
+            executor.shutdownNow();
+            stopped = true;
+            CallbackExecutors.frameAligned().removeFrameListener(invalidator);
+            host.getInterpreter().removeLinkListener(linkWatcher);
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         */
+        @Override
+        public void run()
+        {
+            cycleStart = System.currentTimeMillis();
+            /// Replies are handed to the UI thread in one batch per display frame
+            cycle.send(host.getInterpreter(), CallbackExecutors.frameAligned());
         }
     }
 
@@ -16,6 +16,7 @@ import android.widget.Toast;
 import com.lukeleber.scandroid.R;
 import com.lukeleber.scandroid.interpreter.FailureCode;
 import com.lukeleber.scandroid.interpreter.Handler;
+import com.lukeleber.scandroid.interpreter.Request;
 import com.lukeleber.scandroid.interpreter.ServiceRequest;
 import com.lukeleber.scandroid.sae.j1979.Service;
 
@@ -56,7 +57,7 @@ public class ResetDiagnosticInformation
                                 code.toString()), Toast.LENGTH_SHORT).show();
                         }
                     }
-                )
+                ).setPriority(Request.Priority.INTERACTIVE)
             );
         }
     };
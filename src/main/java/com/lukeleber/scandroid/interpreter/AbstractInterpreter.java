@@ -5,32 +5,58 @@
 
 package com.lukeleber.scandroid.interpreter;
 
-import android.os.AsyncTask;
 import android.util.Log;
-import android.util.Pair;
 
 import com.lukeleber.scandroid.BuildConfig;
+import com.lukeleber.scandroid.interpreter.metrics.InterpreterMetrics;
+import com.lukeleber.scandroid.interpreter.metrics.RequestTrace;
 import com.lukeleber.scandroid.io.CommunicationInterface;
+import com.lukeleber.scandroid.io.ReadTimeoutException;
+import com.lukeleber.scandroid.sae.j1979.PID;
+import com.lukeleber.scandroid.sae.j1979.PIDSupport;
+import com.lukeleber.scandroid.sae.j1979.Service;
+import com.lukeleber.scandroid.sae.j1979.detail.AppendixA;
+import com.lukeleber.scandroid.util.Unit;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * A reasonable skeletal implementation of much of the {@link Interpreter}
- * interface.
+ * <p>A reasonable skeletal implementation of much of the {@link Interpreter}
+ * interface.</p>
+ * <p/>
+ * <p>Each interpreter is a pipeline of stages, each on its own thread(s), that are created by
+ * {@link #start()}:</p>
+ * <ol>
+ *     <li>the I/O thread writes each request and reads (frames) its raw reply, which is all that
+ *     has to wait on the remote hardware (remote hardware that tags its replies may have several
+ *     requests in flight at once; see {@link #getMaxInFlight()})</li>
+ *     <li>the decode thread turns each raw reply into what its listeners asked for (see {@link
+ *     #decodeReply(Object, Object, ResponseListener)}), while the I/O thread is already waiting on
+ *     the next reply</li>
+ *     <li>the outcome is handed to each {@link ResponseListener} through the {@link
+ *     java.util.concurrent.Executor} that it was sent with (see {@link CallbackExecutors}), which
+ *     is the Android main thread unless stated otherwise</li>
+ * </ol>
+ * <p>The first two stages are joined by preallocated {@link RingBuffer RingBuffers} (a full one
+ * of raw replies and an empty one of frames to reuse), so a reply costs no allocation on its way
+ * through.  Nothing here depends on the Android framework beyond the default executor, so an
+ * interpreter that is constructed with another executor runs on a plain JVM.</p>
  *
  * @param <U>
  *         the type of data that is to be received over this Interpreter
  *
  * @see Interpreter
- * @see android.os.AsyncTask
  */
 public abstract class AbstractInterpreter<U>
-        extends
-        AsyncTask<Void, Pair<U, ResponseListener<U>>, Void>
         implements
         Interpreter
 {
@@ -38,22 +64,156 @@ public abstract class AbstractInterpreter<U>
     /// @internal tag for debug logging
     private final static String TAG = AbstractInterpreter.class.getName();
 
+    /**
+     * The outcome of a request, carried from the I/O thread to the {@link
+     * java.util.concurrent.Executor} of its listener
+     */
+    private final class Delivery
+            implements Runnable
+    {
+        /// The request that the outcome belongs to
+        private final PendingRequest<U> request;
+
+        /// The reply (if the request succeeded)
+        private final U reply;
+
+        /// The reason that the request failed, or null if it succeeded
+        private final FailureCode failure;
+
+        Delivery(PendingRequest<U> request, U reply, FailureCode failure)
+        {
+            this.request = request;
+            this.reply = reply;
+            this.failure = failure;
+        }
+
+        /**
+         * Invokes the listener of the request (unless it was cancelled in the meantime)
+         */
+        @Override
+        public void run()
+        {
+            ResponseListener<U> listener = request.getListener();
+            if (!request.complete())
+            {
+                release(request); /// Cancelled while the reply was on its way
+                return;
+            }
+            if (listener == null)
+            {
+                return;
+            }
+            if (failure != null)
+            {
+                listener.onFailure(failure);
+            }
+            else if (reply != null)
+            {
+                listener.onSuccess(reply);
+            }
+            else
+            {
+                listener.onFailure(FailureCode.IO_LINK_ERROR);
+            }
+            RequestTrace trace = request.getTrace();
+            trace.mark(RequestTrace.Stage.HANDLED);
+            metrics.getTraceRecorder()
+                   .record(trace);
+        }
+    }
+
+    /**
+     * A raw reply (or failure) on its way from the I/O thread to the decode thread.  Frames are
+     * allocated once and passed back and forth between the two.
+     */
+    private final static class Frame<U>
+    {
+        /// The request that the reply belongs to
+        private PendingRequest<U> request;
+
+        /// The raw reply (if the request did not fail)
+        private U reply;
+
+        /// The reason that the request failed, or null if its reply was read
+        private FailureCode failure;
+
+        /// What the implementation holds the raw reply in (see {@link #captureReply(Object)})
+        private Object context;
+    }
+
+    /// The number of raw replies that may be waiting to be decoded
+    private final static int PIPELINE_DEPTH = 4;
+
+    /// The number of milliseconds to wait before the first attempt to reconnect
+    private final static long INITIAL_RECONNECT_DELAY = 250;
+
+    /// The most milliseconds to wait between attempts to reconnect
+    private final static long MAX_RECONNECT_DELAY = 8000;
+
+    /// The number of attempts to reconnect before giving up on the link
+    private final static int MAX_RECONNECT_ATTEMPTS = 8;
+
     private final CommunicationInterface com;
 
-    /// The queue that internally synchronizes the use of this class with a UI thread
-    private final transient BlockingQueue<Pair<Request<?>, ResponseListener<U>>> pendingWrites;
+    /// The scheduler that internally synchronizes the use of this class with a UI thread
+    private final transient RequestScheduler<U> scheduler;
+
+    /// The executor that listeners are invoked on unless another is provided
+    private final Executor callbackExecutor;
+
+    /// The I/O thread, or null if this interpreter has not been started
+    private Thread thread;
+
+    /// The decode thread, or null if this interpreter has not been started
+    private Thread decoder;
+
+    /// The raw replies that are waiting to be decoded (I/O thread to decode thread)
+    private final RingBuffer<Frame<U>> undecoded = new RingBuffer<>(PIPELINE_DEPTH);
+
+    /// The frames that are free to be filled again (decode thread to I/O thread)
+    private final RingBuffer<Frame<U>> free = new RingBuffer<>(PIPELINE_DEPTH);
+
+    /// Has this interpreter been asked to stop?
+    private volatile boolean stopped;
+
+    /// The source of {@link PendingRequest#getSequence() sequence numbers}
+    private final AtomicLong sequence = new AtomicLong();
+
+    /// The waiting requests that later duplicates may still be coalesced into
+    private final List<PendingRequest<U>> coalescable = new ArrayList<>();
 
     private final List<ErrorListener> errorListeners = new ArrayList<>();
 
     private final List<ConnectionListener> connectionListeners = new ArrayList<>();
 
-    private final List<ShutdownListener> shutdownListeners = new ArrayList<>();
+    /// Added to from any thread, including the I/O thread itself (an ELM327 adds one when it
+    /// starts its idle timer), so it is safe to add one while the listeners are being invoked
+    private final List<ShutdownListener> shutdownListeners = new CopyOnWriteArrayList<>();
+
+    /// Added to and removed from the main thread (a live datastream watches the link for as long
+    /// as it polls) while the I/O thread may be telling them
+    private final List<LinkListener> linkListeners = new CopyOnWriteArrayList<>();
+
+    /// Is the link down (so that requests fail straight away instead of being queued)?
+    private volatile boolean linkLost;
+
+    /// The configuration that is replayed after reconnecting (only touched on the I/O thread)
+    private final List<ConfigurationRequest<?, ?>> configuration = new ArrayList<>();
+
+    /// The performance counters of this interpreter
+    private final InterpreterMetrics metrics = new InterpreterMetrics();
+
+    /// The cache that service requests may be answered from, or null
+    private volatile ResponseCache cache;
 
-    private long requestAccumulator;
+    /// The request that the I/O thread is currently servicing (only touched on the I/O thread)
+    private PendingRequest<U> current;
 
-    private long latencyAccumulator;
+    /// The requests that were written but whose replies are yet to be read, oldest first (only
+    /// touched on the I/O thread)
+    private final ArrayDeque<PendingRequest<U>> inFlight = new ArrayDeque<>();
 
-    private Interpreter.LinkStatus linkStatus = LinkStatus.DISCONNECTED;
+    private volatile Interpreter.LinkStatus linkStatus = LinkStatus.DISCONNECTED;
 
     @Override
     public Interpreter.LinkStatus getLinkStatus()
@@ -79,27 +239,78 @@ public abstract class AbstractInterpreter<U>
         shutdownListeners.add(listener);
     }
 
+    @Override
+    public final void addLinkListener(LinkListener listener)
+    {
+        linkListeners.add(listener);
+    }
+
+    @Override
+    public final void removeLinkListener(LinkListener listener)
+    {
+        linkListeners.remove(listener);
+    }
+
     /**
-     * Constructs an {@link AbstractInterpreter}
+     * Constructs an {@link AbstractInterpreter} that schedules its requests with a {@link
+     * DeadlineRequestScheduler} and invokes listeners on the Android main thread
      */
     protected AbstractInterpreter(CommunicationInterface com)
     {
-        this.pendingWrites = new LinkedBlockingQueue<>();
+        this(com, new DeadlineRequestScheduler<U>());
+    }
+
+    /**
+     * Constructs an {@link AbstractInterpreter} that schedules its requests with the provided
+     * {@link RequestScheduler} and invokes listeners on the Android main thread
+     *
+     * @param com
+     *         the {@link com.lukeleber.scandroid.io.CommunicationInterface} to communicate through
+     * @param scheduler
+     *         the {@link RequestScheduler} that decides the order in which requests are written
+     */
+    protected AbstractInterpreter(CommunicationInterface com, RequestScheduler<U> scheduler)
+    {
+        this(com, scheduler, CallbackExecutors.mainThread());
+    }
+
+    /**
+     * Constructs an {@link AbstractInterpreter} that schedules its requests with the provided
+     * {@link RequestScheduler} and invokes listeners on the provided {@link
+     * java.util.concurrent.Executor} unless they are sent with another
+     *
+     * @param com
+     *         the {@link com.lukeleber.scandroid.io.CommunicationInterface} to communicate through
+     * @param scheduler
+     *         the {@link RequestScheduler} that decides the order in which requests are written
+     * @param callbackExecutor
+     *         the default {@link java.util.concurrent.Executor} for listeners (see {@link
+     *         CallbackExecutors})
+     */
+    protected AbstractInterpreter(CommunicationInterface com, RequestScheduler<U> scheduler,
+                                  Executor callbackExecutor)
+    {
+        this.scheduler = scheduler;
         this.com = com;
+        this.callbackExecutor = callbackExecutor;
+        for (int i = 0; i < PIPELINE_DEPTH; ++i)
+        {
+            free.offer(new Frame<U>());
+        }
     }
 
     /**
-     * {@inheritDoc}
+     * The body of the I/O thread: connects, then writes requests and reads their replies until
+     * this interpreter is stopped
      */
-    @Override
-    @SuppressWarnings("unchecked")
-    protected final Void doInBackground(Void... params)
+    private void loop()
     {
 
         CommunicationInterface com = getCommunicationInterface();
         try
         {
             com.connect();
+            init();
             linkStatus = LinkStatus.CONNECTED;
             for(ConnectionListener listener : connectionListeners)
             {
@@ -134,33 +345,31 @@ public abstract class AbstractInterpreter<U>
                 }
             }
             cleanup();
-            return null;
+            return;
         }
         boolean interrupted = false;
         do
         {
-            if (super.isCancelled())
+            if (stopped)
             {
                 break;
             }
-            Pair<Request<?>, ResponseListener<U>> request;
             try
             {
-                request = pendingWrites.take();
+                PendingRequest<U> request = scheduler.take();
+                dequeued(request);
                 try
                 {
-                    writeRequest(request.first);
-                    publishProgress(new Pair<>(readReply(), request.second));
+                    service(request);
                 }
                 catch (IOException ioe)
                 {
-                    publishProgress(new Pair<>((U) null, request.second));
-                    for(ErrorListener listener : errorListeners)
+                    if (!reconnect(ioe))
                     {
-                        listener.onError(ioe);
+                        cleanup();
+                        return;
                     }
                 }
-                latencyAccumulator += (System.currentTimeMillis() - request.first.getTimestamp());
             }
             catch (InterruptedException ie)
             {
@@ -177,138 +386,1119 @@ public abstract class AbstractInterpreter<U>
                   .interrupt();
         }
         linkStatus = LinkStatus.DISCONNECTED;
-        return null;
     }
 
     /**
-     * {@inheritDoc}
+     * Hands the provided outcome to the {@link java.util.concurrent.Executor} of its listener
+     *
+     * @param delivery
+     *         the outcome to deliver
      */
-    @Override
-    @SafeVarargs
-    protected final void onProgressUpdate(Pair<U, ResponseListener<U>>... values)
+    private void deliver(Delivery delivery)
     {
-        for (Pair<U, ResponseListener<U>> p : values)
+        try
+        {
+            delivery.request.getExecutor()
+                            .execute(delivery);
+        }
+        catch (RejectedExecutionException ree)
+        {
+            if (BuildConfig.DEBUG)
+            {
+                Log.w(TAG, "Listener executor rejected a reply", ree);
+            }
+        }
+        catch (RuntimeException e)
         {
+            /// A listener run by the direct executor threw; keep the I/O thread alive
+            if (BuildConfig.DEBUG)
+            {
+                Log.e(TAG, "Listener threw an exception", e);
+            }
+        }
+    }
 
-            if (p.first != null && p.second != null)
+    /**
+     * Writes the provided request, reads its raw reply and passes it on to the decode thread.
+     * If {@link #getMaxInFlight()} allows, the requests that are waiting behind it are written
+     * before its reply has been read, and their replies are read (in the order that they were
+     * written) before the next request is taken.  Invoked on the I/O thread.
+     *
+     * @param request
+     *         the request to service
+     *
+     * @throws InterruptedException
+     *         if the I/O thread is interrupted while waiting for the decode thread to catch up
+     * @throws java.io.IOException
+     *         if the link was lost (every request in flight has already been failed)
+     */
+    private void service(PendingRequest<U> request)
+            throws
+            InterruptedException,
+            IOException
+    {
+        IOException lost = write(request);
+        int window = Math.max(1, getMaxInFlight());
+        while (!inFlight.isEmpty())
+        {
+            PendingRequest<U> next;
+            while (lost == null && inFlight.size() < window && (next = scheduler.poll()) != null)
             {
-                p.second.onSuccess(p.first);
+                dequeued(next);
+                lost = write(next);
             }
-            else if (p.second != null)
+            PendingRequest<U> oldest = inFlight.poll();
+            if (lost == null)
             {
-                p.second.onFailure(FailureCode.IO_LINK_ERROR);
+                lost = read(oldest);
             }
+            else
+            {
+                /// Failures take the same path as replies, so that every outcome arrives in order
+                metrics.recordError();
+                Frame<U> frame = free.take();
+                frame.request = oldest;
+                frame.failure = FailureCode.LINK_LOST;
+                undecoded.offer(frame);
+                recordLatency(oldest.getRequest(), System.nanoTime() - oldest.getEnqueueTime());
+            }
+        }
+        if (lost != null)
+        {
+            throw lost;
         }
     }
 
     /**
-     * {@inheritDoc}
+     * Records that the provided request has been taken from the scheduler.  Invoked on the I/O
+     * thread.
+     *
+     * @param request
+     *         the request that was taken
      */
-    @Override
-    public final CommunicationInterface getCommunicationInterface()
+    private void dequeued(PendingRequest<U> request)
     {
-        return com;
+        request.getTrace()
+               .mark(RequestTrace.Stage.DEQUEUED);
+        metrics.recordQueueDepth(scheduler.size());
+        synchronized (coalescable)
+        {
+            /// No more followers may join once the request is on its way out
+            coalescable.remove(request);
+        }
     }
 
     /**
-     * {@inheritDoc}
+     * Writes the provided request (unless everybody lost interest in it) and puts it in flight.
+     * Invoked on the I/O thread.
+     *
+     * @param request
+     *         the request to write
+     *
+     * @return the error that cost the link, or null if the request was written (or skipped)
      */
-    @SuppressWarnings("unchecked")
-    @Override
-    public final <V> void sendRequest(Request<V> request, ResponseListener<?> listener)
+    private IOException write(PendingRequest<U> request)
     {
-        if (!pendingWrites.offer(new Pair(request, listener)))
+        List<PendingRequest<U>> followers = request.getFollowers();
+        boolean wanted = request.beginWrite();
+        for (int i = 0; i < followers.size(); ++i)
         {
-            if (BuildConfig.DEBUG)
+            wanted |= followers.get(i)
+                               .beginWrite();
+        }
+        if (!wanted)
+        {
+            /// Everybody lost interest before it was written
+            release(request);
+            for (int i = 0; i < followers.size(); ++i)
             {
-                Log.e(TAG, "Offer declined (something very bad has happened...)");
+                release(followers.get(i));
             }
+            return null;
+        }
+        inFlight.offer(request);
+        RequestTrace trace = request.getTrace();
+        current = request;
+        try
+        {
+            trace.mark(RequestTrace.Stage.WRITE_STARTED);
+            writeRequest(request.getRequest());
+            trace.mark(RequestTrace.Stage.WRITE_FINISHED);
+            return null;
+        }
+        catch (IOException ioe)
+        {
+            return ioe;
+        }
+        finally
+        {
+            current = null;
         }
-        ++requestAccumulator;
     }
 
     /**
-     * {@inheritDoc}
+     * Reads the raw reply to the provided request (the oldest one in flight) and passes it on to
+     * the decode thread.  Invoked on the I/O thread.
+     *
+     * @param request
+     *         the request whose reply is read
+     *
+     * @return the error that cost the link, or null if the reply was read (or timed out)
+     *
+     * @throws InterruptedException
+     *         if the I/O thread is interrupted while waiting for the decode thread to catch up
      */
-    @Override
-    public final void start()
+    private IOException read(PendingRequest<U> request)
+            throws
+            InterruptedException
     {
-        execute();
+        Frame<U> frame = free.take();
+        frame.request = request;
+        RequestTrace trace = request.getTrace();
+        IOException lost = null;
+        current = request;
+        try
+        {
+            frame.reply = readReply(request.getListener(), request.getRequest()
+                                                                   .getTimeout());
+            if (!trace.hasReached(RequestTrace.Stage.REPLY_RECEIVED))
+            {
+                trace.mark(RequestTrace.Stage.REPLY_RECEIVED);
+            }
+            frame.context = captureReply(frame.context);
+        }
+        catch (ReadTimeoutException rte)
+        {
+            metrics.recordError();
+            frame.failure = FailureCode.REQUEST_TIMED_OUT;
+            try
+            {
+                resynchronize();
+            }
+            catch (IOException ioe)
+            {
+                lost = ioe;
+            }
+        }
+        catch (IOException ioe)
+        {
+            metrics.recordError();
+            frame.failure = FailureCode.LINK_LOST;
+            lost = ioe;
+        }
+        finally
+        {
+            current = null;
+        }
+        boolean failed = frame.failure != null;
+        /// Failures take the same path as replies, so that every outcome arrives in order
+        undecoded.offer(frame);
+        recordLatency(request.getRequest(), System.nanoTime() - request.getEnqueueTime());
+        if (!failed && request.getRequest() instanceof ConfigurationRequest)
+        {
+            rememberConfiguration((ConfigurationRequest<?, ?>) request.getRequest());
+        }
+        return lost;
     }
 
     /**
-     * {@inheritDoc}
+     * Remembers a configuration request that the remote hardware accepted, so that it can be
+     * replayed after reconnecting.  A reset forgets everything that came before it, and a later
+     * request for the same {@link Option} takes the place of an earlier one.  Invoked on the I/O
+     * thread.
+     *
+     * @param request
+     *         the configuration request that was written
      */
-    @Override
-    public final boolean stop()
+    private void rememberConfiguration(ConfigurationRequest<?, ?> request)
     {
-        return super.cancel(true);
+        if (isReset(request))
+        {
+            configuration.clear();
+            return;
+        }
+        if (!isReplayable(request))
+        {
+            return;
+        }
+        for (int i = configuration.size() - 1; i >= 0; --i)
+        {
+            if (configuration.get(i)
+                             .getOption() == request.getOption())
+            {
+                configuration.remove(i);
+            }
+        }
+        configuration.add(request);
     }
 
     /**
-     * Performs any initialization before entering the I/O loop.  This is an ideal spot to pass any
-     * configurable options to the interpreter hardware.
+     * Writes the remembered configuration to the remote hardware again, in the order that it was
+     * first written.  Replies are read and discarded; nobody is told.  Invoked on the I/O thread.
      *
      * @throws java.io.IOException
-     *         if any I/O error occurs during initialization
+     *         if any I/O error occurs
      */
-    protected abstract void init()
+    private void replayConfiguration()
             throws
-            IOException;
+            IOException
+    {
+        for (int i = 0; i < configuration.size(); ++i)
+        {
+            ConfigurationRequest<?, ?> request = configuration.get(i);
+            writeRequest(request);
+            readReply(null, request.getTimeout());
+        }
+    }
 
     /**
-     * Performs a best-attempt cleanup.  Closes the {@link com.lukeleber.scandroid.io.CommunicationInterface}
-     * associated with this {@link Interpreter} and invokes the
-     * virtual {@link java.io.Closeable#close()} method on itself.
+     * Handles the loss of the link: fails every waiting request with {@link
+     * FailureCode#LINK_LOST} at once (and every request sent until the link is back), then tries
+     * to reconnect with exponential backoff and, once connected, brings the remote hardware back
+     * to the configuration that it had.  What has been learned about the vehicle is kept, so
+     * nothing has to be discovered again.  Invoked on the I/O thread.
+     *
+     * @param cause
+     *         the error that cost the link
+     *
+     * @return true if the link was re-established, or false if this interpreter gave up (in which
+     * case the {@link ErrorListener ErrorListeners} have been told)
+     *
+     * @throws InterruptedException
+     *         if this interpreter is stopped while waiting to reconnect
      */
-    private void cleanup()
+    private boolean reconnect(IOException cause)
+            throws
+            InterruptedException
     {
-        try
+        linkLost = true;
+        linkStatus = LinkStatus.RECONNECTING;
+        metrics.recordLinkLost();
+        if (BuildConfig.DEBUG)
         {
-            getCommunicationInterface().close();
+            Log.w(TAG, "Link lost; reconnecting", cause);
         }
-        catch (Exception e)
+        turnAwayWaiting();
+        for (LinkListener listener : linkListeners)
         {
-            if (BuildConfig.DEBUG)
+            try
             {
-                Log.e(TAG, "Error closing communication interface", e);
+                listener.onLinkLost();
+            }
+            catch (Exception e)
+            {
+                if (BuildConfig.DEBUG)
+                {
+                    Log.w(TAG, e);
+                }
             }
         }
-        try
+        long delay = INITIAL_RECONNECT_DELAY;
+        for (int attempt = 0; attempt < MAX_RECONNECT_ATTEMPTS && !stopped; ++attempt)
         {
-            close();
+            try
+            {
+                com.close();
+            }
+            catch (Exception e)
+            {
+                if (BuildConfig.DEBUG)
+                {
+                    Log.w(TAG, "Error closing communication interface", e);
+                }
+            }
+            Thread.sleep(delay);
+            try
+            {
+                com.connect();
+                init();
+                replayConfiguration();
+                linkLost = false;
+                linkStatus = LinkStatus.CONNECTED;
+                for (LinkListener listener : linkListeners)
+                {
+                    try
+                    {
+                        listener.onLinkRestored();
+                    }
+                    catch (Exception e)
+                    {
+                        if (BuildConfig.DEBUG)
+                        {
+                            Log.w(TAG, e);
+                        }
+                    }
+                }
+                return true;
+            }
+            catch (IOException ioe)
+            {
+                cause = ioe;
+                if (BuildConfig.DEBUG)
+                {
+                    Log.w(TAG, "Reconnect attempt " + (attempt + 1) + " failed", ioe);
+                }
+            }
+            delay = Math.min(delay * 2, MAX_RECONNECT_DELAY);
         }
-        catch (Exception e)
+        linkStatus = LinkStatus.ERROR;
+        turnAwayWaiting();
+        for (ErrorListener listener : errorListeners)
         {
-            if (BuildConfig.DEBUG)
+            try
             {
-                Log.e(TAG, "Error closing interpreter", e);
+                listener.onError(cause);
+            }
+            catch (Exception e)
+            {
+                if (BuildConfig.DEBUG)
+                {
+                    Log.w(TAG, e);
+                }
             }
         }
-        for(ShutdownListener listener : shutdownListeners)
+        return false;
+    }
+
+    /**
+     * Fails every request that is waiting in the scheduler with {@link FailureCode#LINK_LOST}
+     */
+    private void turnAwayWaiting()
+    {
+        PendingRequest<U> request;
+        while ((request = scheduler.poll()) != null)
         {
-            listener.onShutdown();
+            turnAway(request, FailureCode.LINK_LOST);
         }
+        metrics.recordQueueDepth(scheduler.size());
     }
 
-    @Override
-    public final long getAverageLatency()
+    /**
+     * The body of the decode thread: decodes raw replies in the order that they were read until
+     * it is interrupted, then finishes those that are left
+     */
+    private void decodeLoop()
     {
-        return latencyAccumulator / requestAccumulator;
+        try
+        {
+            while (true)
+            {
+                decode(undecoded.take());
+                /// Work through whatever else piled up before waiting again
+                Frame<U> frame;
+                while ((frame = undecoded.poll()) != null)
+                {
+                    decode(frame);
+                }
+            }
+        }
+        catch (InterruptedException ie)
+        {
+            Frame<U> frame;
+            while ((frame = undecoded.poll()) != null)
+            {
+                decode(frame);
+            }
+        }
     }
 
     /**
-     * Performs the actual writing operation to the remote hardware.  The implementation details of
-     * this method will be dependent on the type of remote system being interacted with.
-     *
-     * @param request
-     *         the {@link Request} to write
+     * Decodes a raw reply for the request that it belongs to and each of its followers, and
+     * delivers the outcomes.  Invoked on the decode thread.
      *
-     * @throws java.io.IOException
-     *         if any I/O error occurs during the write
+     * @param frame
+     *         the frame that holds the raw reply
      */
-    protected abstract void writeRequest(Request<?> request)
-            throws
+    private void decode(Frame<U> frame)
+    {
+        PendingRequest<U> request = frame.request;
+        try
+        {
+            if (frame.failure != null)
+            {
+                fail(request, frame.failure);
+                return;
+            }
+            RequestTrace trace = request.getTrace();
+            U reply = decodeReply(frame.reply, frame.context, request.getListener());
+            trace.mark(RequestTrace.Stage.UNMARSHALLED);
+            deliver(new Delivery(request, reply, null));
+            List<PendingRequest<U>> followers = request.getFollowers();
+            for (int i = 0; i < followers.size(); ++i)
+            {
+                PendingRequest<U> follower = followers.get(i);
+                follower.getTrace()
+                        .copyBusStages(trace);
+                U shared = decodeReply(frame.reply, frame.context, follower.getListener());
+                follower.getTrace()
+                        .mark(RequestTrace.Stage.UNMARSHALLED);
+                deliver(new Delivery(follower, shared, null));
+            }
+        }
+        catch (RuntimeException e)
+        {
+            /// Keep the decode thread alive; whoever was not yet answered is told
+            if (BuildConfig.DEBUG)
+            {
+                Log.e(TAG, "Unable to decode reply", e);
+            }
+            fail(request, FailureCode.UNRECOGNIZED_RESPONSE);
+        }
+        finally
+        {
+            frame.request = null;
+            frame.reply = null;
+            frame.failure = null;
+            free.offer(frame);
+        }
+    }
+
+    /**
+     * Records that the request currently being serviced has reached the provided stage.  This is
+     * intended to be called by implementations from within {@link #writeRequest(Request)} and
+     * {@link #readReply(ResponseListener, long)} for the stages that only they can see (such as
+     * {@link com.lukeleber.scandroid.interpreter.metrics.RequestTrace.Stage#FIRST_BYTE}); stages
+     * that they do not record are filled in as soon as the call returns, and {@link
+     * com.lukeleber.scandroid.interpreter.metrics.RequestTrace.Stage#UNMARSHALLED} is recorded
+     * by the decode thread.  Must be called on the I/O thread.
+     *
+     * @param stage
+     *         the stage that has been reached
+     * @param nanoTime
+     *         the {@link System#nanoTime() nano-time} at which it was reached
+     */
+    protected final void trace(RequestTrace.Stage stage, long nanoTime)
+    {
+        if (current != null)
+        {
+            current.getTrace()
+                   .mark(stage, nanoTime);
+        }
+    }
+
+    /**
+     * Records the latency of a completed bus transaction under the service and PID(s) of the
+     * provided request
+     *
+     * @param request
+     *         the request that was written
+     * @param nanos
+     *         the time (in nanoseconds) between sending the request and the end of its reply
+     */
+    private void recordLatency(Request<?> request, long nanos)
+    {
+        if (request instanceof ServiceRequest)
+        {
+            ServiceRequest<?> sr = (ServiceRequest<?>) request;
+            metrics.recordLatency(sr.getService(), sr.getPID() == null ? -1 : sr.getPID()
+                                                                               .getID(), nanos);
+        }
+        else if (request instanceof BatchServiceRequest)
+        {
+            BatchServiceRequest br = (BatchServiceRequest) request;
+            metrics.recordLatency(br.getService(), -1, nanos);
+            for (ServiceRequest<?> member : br.getMembers())
+            {
+                metrics.recordPidLatency(br.getService(), member.getPID()
+                                                                .getID(), nanos);
+            }
+        }
+        else
+        {
+            metrics.recordLatency(nanos);
+        }
+    }
+
+    /**
+     * Delivers the provided failure to the provided request and each of its followers
+     *
+     * @param request
+     *         the request that failed
+     * @param code
+     *         the reason for the failure
+     */
+    private void fail(PendingRequest<U> request, FailureCode code)
+    {
+        deliver(new Delivery(request, null, code));
+        List<PendingRequest<U>> followers = request.getFollowers();
+        for (int i = 0; i < followers.size(); ++i)
+        {
+            PendingRequest<U> follower = followers.get(i);
+            follower.getTrace()
+                    .copyBusStages(request.getTrace());
+            deliver(new Delivery(follower, null, code));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final CommunicationInterface getCommunicationInterface()
+    {
+        return com;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final <V> RequestHandle sendRequest(Request<V> request, ResponseListener<?> listener)
+    {
+        return sendRequest(request, listener, callbackExecutor);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public final <V> RequestHandle sendRequest(Request<V> request, ResponseListener<?> listener,
+                                               Executor executor)
+    {
+        PendingRequest<U> pending = new PendingRequest<>(this, request,
+                                                         (ResponseListener<U>) listener,
+                                                         executor, sequence.getAndIncrement());
+        metrics.recordRequest();
+        if (linkLost)
+        {
+            /// Fail fast rather than queue behind a link that is not there
+            turnAway(pending, FailureCode.LINK_LOST);
+            return pending;
+        }
+        if (request instanceof ServiceRequest)
+        {
+            synchronized (coalescable)
+            {
+                PendingRequest<U> leader = findLeader((ServiceRequest<?>) request);
+                if (leader != null)
+                {
+                    leader.addFollower(pending);
+                    return pending;
+                }
+                coalescable.add(pending);
+            }
+        }
+        PendingRequest<U> dropped = scheduler.offer(pending);
+        metrics.recordQueueDepth(scheduler.size());
+        if (dropped != null)
+        {
+            drop(dropped);
+        }
+        return pending;
+    }
+
+    /**
+     * Fails a request that the scheduler turned away (along with its followers) with {@link
+     * FailureCode#REQUEST_DROPPED}.  Invoked on the thread that sent the request that overflowed
+     * the scheduler.
+     *
+     * @param request
+     *         the request that was turned away
+     */
+    private void drop(PendingRequest<U> request)
+    {
+        metrics.recordDropped();
+        turnAway(request, FailureCode.REQUEST_DROPPED);
+    }
+
+    /**
+     * Fails a request that will never be written (along with its followers) with the provided
+     * code
+     *
+     * @param request
+     *         the request that is turned away
+     * @param code
+     *         the reason that the request is turned away
+     */
+    private void turnAway(PendingRequest<U> request, FailureCode code)
+    {
+        synchronized (coalescable)
+        {
+            /// No more followers may join once the request is turned away
+            coalescable.remove(request);
+        }
+        request.beginWrite();
+        List<PendingRequest<U>> followers = request.getFollowers();
+        for (int i = 0; i < followers.size(); ++i)
+        {
+            followers.get(i)
+                     .beginWrite();
+        }
+        fail(request, code);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final <V> RequestHandle sendRequest(Request<V> request)
+    {
+        return sendRequest(request, callbackExecutor);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final <T> RequestFuture<T> submit(Service service, PID<T> pid)
+    {
+        return submit(service, pid, pid.getDefaultUnit());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final <T> RequestFuture<T> submit(Service service, PID<T> pid, Unit unit)
+    {
+        RequestFuture<T> future = new RequestFuture<>(callbackExecutor);
+        /// The future hands its outcome on to its own executor, so complete it where it is decoded
+        future.bind(sendRequest(new ServiceRequest<>(service, pid, future, unit),
+                                CallbackExecutors.direct()));
+        return future;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Unless {@link #supportsMultiEcuRequests()} says otherwise, the future fails with {@link
+     * FailureCode#REQUEST_NOT_SUPPORTED} without anything being sent.
+     */
+    @Override
+    public final <T> RequestFuture<Map<EcuAddress, T>> submitToAll(Service service, PID<T> pid)
+    {
+        if (!supportsMultiEcuRequests())
+        {
+            return RequestFuture.failed(FailureCode.REQUEST_NOT_SUPPORTED);
+        }
+        RequestFuture<Map<EcuAddress, T>> future = new RequestFuture<>(callbackExecutor);
+        future.bind(sendRequest(new MultiEcuServiceRequest<>(service, pid, future),
+                                CallbackExecutors.direct()));
+        return future;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The PIDs supported by service $01 are requested from every ECU through {@link
+     * #submitToAll(Service, PID)}, and the ECUs that can be addressed are picked out of the
+     * answers.
+     */
+    @Override
+    public final RequestFuture<List<EcuAddress>> findResponders()
+    {
+        return submitToAll(Service.LIVE_DATASTREAM, AppendixA.J1979_CHECK_PID_SUPPORT_1_TO_20)
+                .map(new RequestFuture.Transform<Map<EcuAddress, PIDSupport>, List<EcuAddress>>()
+                {
+                    @Override
+                    public List<EcuAddress> apply(Map<EcuAddress, PIDSupport> value)
+                    {
+                        List<EcuAddress> rv = new ArrayList<>();
+                        for (EcuAddress ecu : value.keySet())
+                        {
+                            if (ecu.isAddressable())
+                            {
+                                rv.add(ecu);
+                            }
+                        }
+                        return rv;
+                    }
+                });
+    }
+
+    /**
+     * Retrieves the {@link java.util.concurrent.Executor} that listeners are invoked on unless they
+     * are sent with another
+     *
+     * @return the default {@link java.util.concurrent.Executor} for listeners
+     */
+    protected final Executor getCallbackExecutor()
+    {
+        return callbackExecutor;
+    }
+
+    /**
+     * Sets the {@link ResponseCache} that service requests may be answered from instead of the
+     * remote hardware
+     *
+     * @param cache
+     *         the cache to use, or null to send every request to the remote hardware
+     */
+    public final void setResponseCache(ResponseCache cache)
+    {
+        this.cache = cache;
+    }
+
+    /**
+     * Retrieves the {@link ResponseCache} that service requests may be answered from
+     *
+     * @return the cache in use, or null if every request is sent to the remote hardware
+     */
+    public final ResponseCache getResponseCache()
+    {
+        return cache;
+    }
+
+    /**
+     * Answers the provided request from the {@link ResponseCache} if it holds a fresh enough value,
+     * handing the value to the handler of the request on the provided {@link
+     * java.util.concurrent.Executor}.  Implementations call this before sending a request whose
+     * handler receives decoded values.
+     *
+     * @param request
+     *         the request to answer
+     * @param executor
+     *         the {@link java.util.concurrent.Executor} to invoke the handler on
+     *
+     * @return the (already completed) handle of the request, or null if it must be sent
+     */
+    @SuppressWarnings("unchecked")
+    protected final <V> RequestHandle answerFromCache(Request<V> request, Executor executor)
+    {
+        ResponseCache current = cache;
+        final Handler<V> handler = request.getHandler();
+        if (current == null || handler == null || !(request instanceof ServiceRequest))
+        {
+            return null;
+        }
+        final Object value = current.lookup((ServiceRequest<?>) request);
+        if (value == null)
+        {
+            return null;
+        }
+        PendingRequest<U> answered = new PendingRequest<>(this, request, null, executor,
+                                                          sequence.getAndIncrement());
+        answered.beginWrite();
+        answered.complete();
+        metrics.recordCacheHit();
+        executor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                handler.onResponse((V) value);
+            }
+        });
+        return answered;
+    }
+
+    /**
+     * Remembers a value that was decoded from the reply to the provided request in the {@link
+     * ResponseCache}, if there is one.  Invoked on the decode thread.
+     *
+     * @param request
+     *         the request that was answered
+     * @param value
+     *         the decoded value
+     */
+    protected final void rememberResponse(ServiceRequest<?> request, Object value)
+    {
+        ResponseCache current = cache;
+        if (current != null)
+        {
+            current.store(request, value);
+        }
+    }
+
+    /**
+     * Finds a waiting request that the provided request can be coalesced into.  A request is only
+     * coalesced into one that is equivalent (see {@link ServiceRequest#isEquivalentTo(ServiceRequest)})
+     * and at least as urgent, so that coalescing never delays it.  The caller must hold the lock
+     * on {@link #coalescable}.
+     *
+     * @param request
+     *         the request to coalesce
+     *
+     * @return the request to coalesce into, or null if there is none
+     */
+    private PendingRequest<U> findLeader(ServiceRequest<?> request)
+    {
+        for (int i = 0; i < coalescable.size(); ++i)
+        {
+            PendingRequest<U> candidate = coalescable.get(i);
+            Request<?> other = candidate.getRequest();
+            if (!candidate.isCancelled() &&
+                    ((ServiceRequest<?>) other).isEquivalentTo(request) &&
+                    other.getPriority()
+                         .compareTo(request.getPriority()) <= 0)
+            {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Invoked when a request that has not yet been taken by the I/O thread is cancelled.  Drops
+     * the request, and any request that was kept only for followers that are now all cancelled,
+     * from the scheduler.
+     *
+     * @param request
+     *         the request that was cancelled
+     */
+    final void onCancelled(PendingRequest<U> request)
+    {
+        synchronized (coalescable)
+        {
+            for (int i = coalescable.size() - 1; i >= 0; --i)
+            {
+                PendingRequest<U> leader = coalescable.get(i);
+                if (!leader.isWanted())
+                {
+                    coalescable.remove(i);
+                    if (scheduler.remove(leader))
+                    {
+                        releaseAll(leader);
+                    }
+                }
+            }
+            if (!request.isWanted() && scheduler.remove(request))
+            {
+                releaseAll(request);
+            }
+        }
+    }
+
+    /**
+     * Lets go of the listener of the provided request and those of its followers, none of which
+     * will ever be invoked since the request was removed from the scheduler
+     *
+     * @param request
+     *         the request that was removed
+     */
+    private void releaseAll(PendingRequest<U> request)
+    {
+        release(request);
+        List<PendingRequest<U>> followers = request.getFollowers();
+        for (int i = 0; i < followers.size(); ++i)
+        {
+            release(followers.get(i));
+        }
+    }
+
+    /**
+     * Lets go of the listener of the provided cancelled request, which will never be invoked
+     *
+     * @param request
+     *         the request that was cancelled
+     */
+    private void release(PendingRequest<U> request)
+    {
+        ResponseListener<U> listener = request.getListener();
+        if (listener != null)
+        {
+            releaseListener(listener);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final synchronized void start()
+    {
+        if (thread != null)
+        {
+            throw new IllegalStateException(getName() + " has already been started");
+        }
+        decoder = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                decodeLoop();
+            }
+        }, getName() + "-Decode");
+        decoder.start();
+        thread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                loop();
+            }
+        }, getName() + "-IO");
+        thread.start();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final synchronized boolean stop()
+    {
+        if (thread == null || stopped)
+        {
+            return false;
+        }
+        stopped = true;
+        thread.interrupt();
+        return true;
+    }
+
+    /**
+     * Performs any initialization before entering the I/O loop.  This is an ideal spot to pass any
+     * configurable options to the interpreter hardware.  It is invoked on the I/O thread once the
+     * connection has been made, before any {@link ConnectionListener} is notified; an exception
+     * is reported to the {@link ErrorListener ErrorListeners} like a failure to connect.
+     *
+     * @throws java.io.IOException
+     *         if any I/O error occurs during initialization
+     */
+    protected abstract void init()
+            throws
+            IOException;
+
+    /**
+     * Decides whether this interpreter can tell the answers of several ECUs to a single request
+     * apart, and so whether it can service a {@link MultiEcuServiceRequest}.  The default
+     * implementation returns false.
+     *
+     * @return true if {@link MultiEcuServiceRequest MultiEcuServiceRequests} are supported
+     */
+    protected boolean supportsMultiEcuRequests()
+    {
+        return false;
+    }
+
+    /**
+     * Decides how many requests may be written before the reply to the first of them has been
+     * read.  Remote hardware that tags its replies (so that they can be matched to their requests
+     * and late ones told apart) may keep the bus busy with several requests at once, instead of
+     * idling for a round trip of the host link after each reply; {@link
+     * #readReply(ResponseListener, long)} is still called for the requests in the order that they
+     * were written.  This is read by the I/O thread each time it takes a request.  The default
+     * implementation returns 1 (a request is only written once the previous reply was read).
+     *
+     * @return the number of requests that may be in flight at once
+     */
+    protected int getMaxInFlight()
+    {
+        return 1;
+    }
+
+    /**
+     * Decides whether the provided configuration request resets the remote hardware to its
+     * defaults, in which case the configuration that was written before it need not be replayed
+     * after reconnecting.  The default implementation returns false.
+     *
+     * @param request
+     *         the configuration request that was written
+     *
+     * @return true if the request resets the remote hardware
+     */
+    protected boolean isReset(ConfigurationRequest<?, ?> request)
+    {
+        return false;
+    }
+
+    /**
+     * Decides whether the provided configuration request changes a setting of the remote
+     * hardware, and should therefore be replayed after reconnecting.  Queries and one-shot
+     * commands should not be.  The default implementation returns true.
+     *
+     * @param request
+     *         the configuration request that was written
+     *
+     * @return true if the request should be replayed after reconnecting
+     */
+    protected boolean isReplayable(ConfigurationRequest<?, ?> request)
+    {
+        return true;
+    }
+
+    /**
+     * Invoked exactly once for the listener of each cancelled request, once it is certain that
+     * the listener will never be invoked (nor handed to {@link #decodeReply(Object, Object,
+     * ResponseListener)}), so that an implementation that reuses its listeners may take it back.
+     * This may be invoked on any thread.  The default implementation does nothing.
+     *
+     * @param listener
+     *         the listener of the cancelled request
+     */
+    protected void releaseListener(ResponseListener<U> listener)
+    {
+        /// no-op
+    }
+
+    /**
+     * Performs a best-attempt cleanup.  Closes the {@link com.lukeleber.scandroid.io.CommunicationInterface}
+     * associated with this {@link Interpreter} and invokes the
+     * virtual {@link java.io.Closeable#close()} method on itself.
+     */
+    private void cleanup()
+    {
+        /// The decode thread finishes whatever was read before it exits
+        decoder.interrupt();
+        try
+        {
+            getCommunicationInterface().close();
+        }
+        catch (Exception e)
+        {
+            if (BuildConfig.DEBUG)
+            {
+                Log.e(TAG, "Error closing communication interface", e);
+            }
+        }
+        try
+        {
+            close();
+        }
+        catch (Exception e)
+        {
+            if (BuildConfig.DEBUG)
+            {
+                Log.e(TAG, "Error closing interpreter", e);
+            }
+        }
+        for(ShutdownListener listener : shutdownListeners)
+        {
+            listener.onShutdown();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final long getAverageLatency()
+    {
+        return metrics.getLatency()
+                      .getMean(TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final InterpreterMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final double getQueuePressure()
+    {
+        return Math.min(1, scheduler.size() / (double) scheduler.capacity());
+    }
+
+    /**
+     * Performs the actual writing operation to the remote hardware.  The implementation details of
+     * this method will be dependent on the type of remote system being interacted with.
+     *
+     * @param request
+     *         the {@link Request} to write
+     *
+     * @throws java.io.IOException
+     *         if any I/O error occurs during the write
+     */
+    protected abstract void writeRequest(Request<?> request)
+            throws
             IOException;
 
     /**
@@ -324,4 +1514,86 @@ public abstract class AbstractInterpreter<U>
             throws
             IOException;
 
+    /**
+     * Performs the actual reading operation from the remote hardware on behalf of the provided
+     * {@link ResponseListener}.  This is invoked on the I/O thread and should do no more than
+     * frame the raw reply; the work of making sense of it belongs in {@link #decodeReply(Object,
+     * Object, ResponseListener)}, which overlaps with the next read.  The default implementation
+     * simply delegates to {@link #readReply()} and ignores the timeout.
+     *
+     * @param listener
+     *         the {@link ResponseListener} that the reply is destined for (may be null)
+     * @param timeout
+     *         the number of milliseconds to wait for the reply, or {@link Request#NO_TIMEOUT}
+     *
+     * @return an object that was read
+     *
+     * @throws com.lukeleber.scandroid.io.ReadTimeoutException
+     *         if the reply does not arrive in time
+     * @throws java.io.IOException
+     *         if any other I/O error occurs during the read
+     */
+    protected U readReply(ResponseListener<U> listener, long timeout)
+            throws
+            IOException
+    {
+        return readReply();
+    }
+
+    /**
+     * Brings the link back into a known state after a reply failed to arrive in time, so that the
+     * late reply (or a partial one) is not mistaken for the reply to the next request.  Invoked
+     * on the I/O thread.  The default implementation does nothing.
+     *
+     * @throws java.io.IOException
+     *         if any I/O error occurs
+     */
+    protected void resynchronize()
+            throws
+            IOException
+    {
+        /// no-op
+    }
+
+    /**
+     * Hands over whatever the reply that was just read is held in (such as a parser and its
+     * buffers), so that the next read does not overwrite it while the decode thread is still
+     * working on it.  This is invoked on the I/O thread after each successful {@link
+     * #readReply(ResponseListener, long)}; the object that is returned is later passed to {@link
+     * #decodeReply(Object, Object, ResponseListener)}, and then back to this method in place of a
+     * fresh one once the decode thread is done with it.  The default implementation holds
+     * nothing and returns null.
+     *
+     * @param spare
+     *         an object that an earlier call returned and that is free to be read into again, or
+     *         null if there is none yet
+     *
+     * @return the object that holds the reply that was just read
+     */
+    protected Object captureReply(Object spare)
+    {
+        return null;
+    }
+
+    /**
+     * Decodes the raw reply that was read by {@link #readReply(ResponseListener, long)} into what
+     * the provided {@link ResponseListener} asked for.  This is invoked on the decode thread, once
+     * for the request that was written and once for each request that was coalesced into it, so
+     * it must not touch anything that the I/O thread uses.  The default implementation returns
+     * the reply as-is.
+     *
+     * @param reply
+     *         the reply that was returned by {@link #readReply(ResponseListener, long)}
+     * @param context
+     *         the object that {@link #captureReply(Object)} returned for the reply
+     * @param listener
+     *         the {@link ResponseListener} that the reply is destined for (may be null)
+     *
+     * @return the reply that the listener should receive
+     */
+    protected U decodeReply(U reply, Object context, ResponseListener<U> listener)
+    {
+        return reply;
+    }
+
 }
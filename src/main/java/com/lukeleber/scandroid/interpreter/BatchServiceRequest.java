@@ -0,0 +1,572 @@
+// This file is protected under the KILLGPL.
+// For more information, visit http://www.lukeleber.github.io/KILLGPL.html
+//
+// Copyright (c) Luke Leber <LukeLeber@gmail.com>
+
+package com.lukeleber.scandroid.interpreter;
+
+import android.util.Log;
+
+import com.lukeleber.scandroid.BuildConfig;
+import com.lukeleber.scandroid.interpreter.elm327.Protocol;
+import com.lukeleber.scandroid.sae.j1979.PID;
+import com.lukeleber.scandroid.sae.j1979.SAE_J1979;
+import com.lukeleber.scandroid.sae.j1979.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>A type of {@link Request} that carries several {@link ServiceRequest ServiceRequests} of the
+ * same {@link com.lukeleber.scandroid.sae.j1979.Service} in a single message.  ISO 15765-4 permits
+ * a service $01 request to carry up to six PIDs and a service $02 request to carry up to three
+ * PID / frame number pairs, so that a whole group of parameters costs a single bus round trip
+ * rather than one round trip per PID.</p>
+ *
+ * <p>The vehicle answers a batched request with the data of each supported PID in turn.  The data
+ * bytes of each PID are routed to the {@link Handler} of the corresponding member request, and
+ * members whose PID is absent from the response fail with
+ * {@link FailureCode#REQUEST_NOT_SUPPORTED}.  A <code>BatchServiceRequest</code> has no handler of
+ * its own; it takes the highest {@link Request.Priority}, the earliest deadline and the longest
+ * timeout of its members.</p>
+ * <p/>
+ * <p>However an interpreter receives the reply, it splits it up with {@link Answers}.</p>
+ *
+ * @see #batch(com.lukeleber.scandroid.interpreter.elm327.Protocol, java.util.List)
+ */
+public class BatchServiceRequest
+        extends Request<Void>
+{
+    /// @internal tag for debug logging
+    private final static String TAG = BatchServiceRequest.class.getName();
+
+    /**
+     * The answers to a {@link BatchServiceRequest}, split up by member.  An interpreter hands
+     * each positive response message of the reply to {@link #add(byte[], int, int, byte[][])}
+     * on its decode thread, then {@link #finish(boolean)}es, and finally hands the outcome of
+     * every member to its {@link Handler} with {@link #deliver()} on the executor that the batch
+     * was sent with.
+     */
+    public final static class Answers
+    {
+        /// The batch that was sent
+        private final BatchServiceRequest batch;
+
+        /// The decoded value of each member (if its failure is null)
+        private final Object[] values;
+
+        /// The reason that decoding failed for each member, or null if it succeeded
+        private final FailureCode[] failures;
+
+        /// Did any message answer the service of the batch?
+        private boolean recognized;
+
+        /**
+         * Constructs the (as yet empty) answers to the provided batch
+         *
+         * @param batch
+         *         the batch that is being sent
+         */
+        public Answers(BatchServiceRequest batch)
+        {
+            this.batch = batch;
+            this.values = new Object[batch.members.size()];
+            this.failures = new FailureCode[batch.members.size()];
+        }
+
+        /**
+         * Creates a set of exactly sized arrays that {@link #add(byte[], int, int, byte[][])}
+         * can hand the data of each PID to the unmarshaller in, rather than allocate them
+         *
+         * @param maxLength
+         *         the longest data that is to be served from the set
+         *
+         * @return the arrays; the one at index n is n bytes long
+         */
+        public static byte[][] newScratch(int maxLength)
+        {
+            byte[][] rv = new byte[maxLength + 1][];
+            for (int i = 0; i < rv.length; ++i)
+            {
+                rv[i] = new byte[i];
+            }
+            return rv;
+        }
+
+        /**
+         * Splits a message of the reply up by PID and unmarshals the data of each PID for the
+         * member that requested it.  A message that does not answer the service of the batch is
+         * ignored, and a member that was already answered by an earlier message keeps that
+         * answer.
+         *
+         * @param bytes
+         *         the array that holds the message
+         * @param offset
+         *         the offset of the message (its first byte is $40 plus the service ID)
+         * @param length
+         *         the length of the message
+         * @param scratch
+         *         the arrays that the data is handed to the unmarshallers in (see {@link
+         *         #newScratch(int)}), or null to allocate them; they are overwritten by the next
+         *         call
+         *
+         * @return true if the message answers the service of the batch, otherwise false
+         */
+        public boolean add(byte[] bytes, int offset, int length, byte[][] scratch)
+        {
+            int header = 0x40 + batch.service.getID();
+            if (length < 1 || (bytes[offset] & 0xFF) != header)
+            {
+                return false;
+            }
+            recognized = true;
+            boolean freezeFrame = batch.service == Service.FREEZE_FRAME_DATA;
+            int end = offset + length;
+            int i = offset + 1;
+            while (i < end)
+            {
+                int pid = bytes[i++] & 0xFF;
+                if (freezeFrame)
+                {
+                    ++i; /// Skip the frame number
+                }
+                int dataLength = SAE_J1979.getDataLength(pid);
+                if (dataLength == 0 || i + dataLength > end)
+                {
+                    break; /// Can't make sense of the remainder; bail out
+                }
+                int index = batch.indexOf(pid);
+                if (index != -1 && values[index] == null && failures[index] == null)
+                {
+                    byte[] data = scratch != null && dataLength < scratch.length ?
+                            scratch[dataLength] : new byte[dataLength];
+                    System.arraycopy(bytes, i, data, 0, dataLength);
+                    try
+                    {
+                        values[index] = batch.members.get(index)
+                                                     .getUnmarshaller()
+                                                     .invoke(data);
+                    }
+                    catch (RuntimeException e)
+                    {
+                        if (BuildConfig.DEBUG)
+                        {
+                            Log.w(TAG, "Unable to unmarshal response", e);
+                        }
+                        failures[index] = FailureCode.UNRECOGNIZED_RESPONSE;
+                    }
+                }
+                i += dataLength;
+            }
+            return true;
+        }
+
+        /**
+         * Fails every member whose PID was not present in any message: with {@link
+         * FailureCode#REQUEST_NOT_SUPPORTED} if the reply answered the service of the batch (or
+         * plainly said that no ECU had data), otherwise with {@link
+         * FailureCode#UNRECOGNIZED_RESPONSE}
+         *
+         * @param noData
+         *         did the reply say that no ECU had data?
+         */
+        public void finish(boolean noData)
+        {
+            for (int i = 0; i < values.length; ++i)
+            {
+                if (values[i] == null && failures[i] == null)
+                {
+                    failures[i] = recognized || noData ? FailureCode.REQUEST_NOT_SUPPORTED :
+                            FailureCode.UNRECOGNIZED_RESPONSE;
+                }
+            }
+        }
+
+        /**
+         * Fails every member for the same reason
+         *
+         * @param code
+         *         the reason that the whole batch failed
+         */
+        public void fail(FailureCode code)
+        {
+            Arrays.fill(values, null);
+            Arrays.fill(failures, code);
+        }
+
+        /**
+         * Forgets every answer, so that these answers can be reused for the next send of the
+         * batch
+         */
+        public void clear()
+        {
+            Arrays.fill(values, null);
+            Arrays.fill(failures, null);
+            recognized = false;
+        }
+
+        /**
+         * Retrieves the decoded value of a member
+         *
+         * @param index
+         *         the index of the member (see {@link #getMembers()})
+         *
+         * @return the decoded value, or null if the member failed (or is not yet answered)
+         */
+        public Object getValue(int index)
+        {
+            return values[index];
+        }
+
+        /**
+         * Retrieves the reason that a member failed
+         *
+         * @param index
+         *         the index of the member (see {@link #getMembers()})
+         *
+         * @return the reason that the member failed, or null if it did not
+         */
+        public FailureCode getFailure(int index)
+        {
+            return failures[index];
+        }
+
+        /**
+         * Did any member fail with {@link FailureCode#UNRECOGNIZED_RESPONSE}?
+         *
+         * @return true if part of the reply could not be understood, otherwise false
+         */
+        public boolean isUnrecognized()
+        {
+            for (FailureCode code : failures)
+            {
+                if (code == FailureCode.UNRECOGNIZED_RESPONSE)
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Hands the outcome of each member to its {@link Handler}
+         */
+        public void deliver()
+        {
+            for (int i = 0; i < values.length; ++i)
+            {
+                Handler<?> handler = batch.members.get(i)
+                                                  .getHandler();
+                if (handler == null)
+                {
+                    continue;
+                }
+                if (failures[i] != null)
+                {
+                    handler.onFailure(failures[i]);
+                }
+                else
+                {
+                    respond(handler, values[i]);
+                }
+            }
+        }
+
+        /**
+         * Hands the same failure to the {@link Handler} of each member, whatever was decoded
+         *
+         * @param code
+         *         the reason that the whole batch failed
+         */
+        public void deliverFailure(FailureCode code)
+        {
+            for (ServiceRequest<?> member : batch.members)
+            {
+                if (member.getHandler() != null)
+                {
+                    member.getHandler()
+                          .onFailure(code);
+                }
+            }
+        }
+
+        /// Hands an unmarshalled value to a handler whose type was lost in a batch
+        @SuppressWarnings("unchecked")
+        private static <V> void respond(Handler<V> handler, Object value)
+        {
+            handler.onResponse((V) value);
+        }
+    }
+
+    /// The maximum number of PIDs that a single service $01 request may carry
+    public final static int MAX_LIVE_DATASTREAM_PIDS = 6;
+
+    /// The maximum number of PID / frame pairs that a single service $02 request may carry
+    public final static int MAX_FREEZE_FRAME_PIDS = 3;
+
+    /// The {@link com.lukeleber.scandroid.sae.j1979.Service} that all members are sent for
+    private final Service service;
+
+    /// The member requests, in the order that their PIDs are written to the bus
+    private final List<ServiceRequest<?>> members;
+
+    /**
+     * Constructs a <code>BatchServiceRequest</code> from the provided member requests
+     *
+     * @param service
+     *         the {@link com.lukeleber.scandroid.sae.j1979.Service} that all members are sent for
+     * @param members
+     *         the {@link ServiceRequest ServiceRequests} to combine
+     *
+     * @throws IllegalArgumentException
+     *         if the service does not support multiple PIDs per request, if there are too many
+     *         members, or if any member does not belong to the provided service, lacks a PID,
+     *         repeats the PID of another member or is addressed to another ECU
+     */
+    public BatchServiceRequest(Service service, List<? extends ServiceRequest<?>> members)
+    {
+        super(null);
+        int capacity = getCapacity(service);
+        if (members.isEmpty() || members.size() > capacity)
+        {
+            throw new IllegalArgumentException("A batch for service " + service + " must carry" +
+                    " between 1 and " + capacity + " PIDs, not " + members.size());
+        }
+        boolean[] seen = new boolean[0x100];
+        EcuAddress target = members.get(0)
+                                   .getTarget();
+        for (ServiceRequest<?> member : members)
+        {
+            if (!sameTarget(member, target))
+            {
+                throw new IllegalArgumentException("All members of a batch must be addressed to" +
+                        " the same ECU");
+            }
+            if (member.getService() != service || member.getPID() == null)
+            {
+                throw new IllegalArgumentException("Only PID requests for service " + service +
+                        " may be batched");
+            }
+            int id = member.getPID().getID();
+            if (seen[id])
+            {
+                throw new IllegalArgumentException("PID " + id + " is requested twice");
+            }
+            seen[id] = true;
+        }
+        this.service = service;
+        this.members = Collections.unmodifiableList(new ArrayList<ServiceRequest<?>>(members));
+
+        /// A batch is as urgent as its most urgent member, and as patient as its most patient one
+        Priority priority = Priority.BACKGROUND;
+        long deadline = Long.MAX_VALUE;
+        long timeout = 1;
+        for (ServiceRequest<?> member : members)
+        {
+            if (timeout != NO_TIMEOUT)
+            {
+                timeout = member.getTimeout() == NO_TIMEOUT ? NO_TIMEOUT :
+                        Math.max(timeout, member.getTimeout());
+            }
+            if (member.getPriority()
+                      .compareTo(priority) < 0)
+            {
+                priority = member.getPriority();
+            }
+            deadline = Math.min(deadline, member.getDeadline());
+        }
+        setPriority(priority);
+        setDeadline(deadline);
+        setTimeout(timeout);
+        setTarget(target);
+    }
+
+    /**
+     * Retrieves the {@link com.lukeleber.scandroid.sae.j1979.Service} that all members of this
+     * batch are sent for
+     *
+     * @return the {@link com.lukeleber.scandroid.sae.j1979.Service} that all members of this batch
+     * are sent for
+     */
+    public final Service getService()
+    {
+        return service;
+    }
+
+    /**
+     * Retrieves an unmodifiable view of the member requests of this batch in the order that their
+     * PIDs are written to the bus
+     *
+     * @return an unmodifiable view of the member requests of this batch
+     */
+    public final List<ServiceRequest<?>> getMembers()
+    {
+        return members;
+    }
+
+    /**
+     * Retrieves the member request for the provided PID
+     *
+     * @param pid
+     *         the ID of the PID to look up
+     *
+     * @return the member request for the provided PID, or null if no member requests it
+     */
+    public final ServiceRequest<?> getMember(int pid)
+    {
+        int index = indexOf(pid);
+        return index == -1 ? null : members.get(index);
+    }
+
+    /**
+     * Finds the index of the member request for the provided PID
+     *
+     * @param pid
+     *         the ID of the PID to look up
+     *
+     * @return the index of the member request for the provided PID (see {@link #getMembers()}),
+     * or -1 if no member requests it
+     */
+    public final int indexOf(int pid)
+    {
+        for (int i = 0; i < members.size(); ++i)
+        {
+            if (members.get(i).getPID().getID() == pid)
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Batches are never unmarshalled as a whole, so this method always returns null.  Use the
+     * unmarshaller of each member instead.
+     */
+    @Override
+    public final PID.Unmarshaller<Void> getUnmarshaller()
+    {
+        return null;
+    }
+
+    /**
+     * Retrieves the maximum number of PIDs that a single request for the provided service may
+     * carry
+     *
+     * @param service
+     *         the {@link com.lukeleber.scandroid.sae.j1979.Service} in question
+     *
+     * @return the maximum number of PIDs that a single request for the provided service may carry,
+     * or zero if the service does not accept more than one PID per request
+     */
+    public static int getCapacity(Service service)
+    {
+        switch (service)
+        {
+            case LIVE_DATASTREAM:
+                return MAX_LIVE_DATASTREAM_PIDS;
+            case FREEZE_FRAME_DATA:
+                return MAX_FREEZE_FRAME_PIDS;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * <p>Groups the provided requests into as few protocol-legal requests as possible.  Requests
+     * are combined only when the vehicle communicates over ISO 15765-4, when they share a service
+     * that accepts several PIDs (and a {@link Request#getTarget() target}), and when the data
+     * length of their PID is known (without it the response could not be split back up).  Every
+     * other request is passed through as-is.</p>
+     *
+     * <p>Each group respects the single-frame request limit of its service, so a batch of
+     * service $01 PIDs never carries more than {@link #MAX_LIVE_DATASTREAM_PIDS} PIDs.  The
+     * relative order of the provided requests is preserved within each group.</p>
+     *
+     * @param protocol
+     *         the {@link com.lukeleber.scandroid.interpreter.elm327.Protocol} that the vehicle
+     *         communicates over (may be null if unknown)
+     * @param requests
+     *         the requests to group
+     *
+     * @return the requests that should be sent in place of the provided requests
+     */
+    public static List<Request<?>> batch(Protocol protocol,
+                                         List<? extends ServiceRequest<?>> requests)
+    {
+        List<Request<?>> rv = new ArrayList<>();
+        if (protocol == null || !protocol.isISO15765())
+        {
+            rv.addAll(requests);
+            return rv;
+        }
+        Map<Service, List<ServiceRequest<?>>> groups = new LinkedHashMap<>();
+        for (ServiceRequest<?> request : requests)
+        {
+            Service service = request.getService();
+            int capacity = getCapacity(service);
+            if (capacity == 0 || request.getPID() == null ||
+                    SAE_J1979.getDataLength(request.getPID().getID()) == 0)
+            {
+                rv.add(request);
+                continue;
+            }
+            List<ServiceRequest<?>> group = groups.get(service);
+            if (group == null)
+            {
+                group = new ArrayList<>(capacity);
+                groups.put(service, group);
+            }
+            else if (group.size() == capacity || contains(group, request.getPID().getID()) ||
+                    !sameTarget(request, group.get(0).getTarget()))
+            {
+                flush(service, group, rv);
+                group.clear();
+            }
+            group.add(request);
+        }
+        for (Map.Entry<Service, List<ServiceRequest<?>>> group : groups.entrySet())
+        {
+            flush(group.getKey(), group.getValue(), rv);
+        }
+        return rv;
+    }
+
+    /// Does the provided group already contain a request for the provided PID?
+    private static boolean contains(List<ServiceRequest<?>> group, int pid)
+    {
+        for (ServiceRequest<?> member : group)
+        {
+            if (member.getPID().getID() == pid)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /// Is the provided request addressed to the provided ECU (or both broadcast)?
+    private static boolean sameTarget(Request<?> request, EcuAddress target)
+    {
+        return target == null ? request.getTarget() == null : target.equals(request.getTarget());
+    }
+
+    /// Appends the provided group to the provided output list (lone requests are not wrapped)
+    private static void flush(Service service, List<ServiceRequest<?>> group, List<Request<?>> out)
+    {
+        if (group.size() == 1)
+        {
+            out.add(group.get(0));
+        }
+        else if (!group.isEmpty())
+        {
+            out.add(new BatchServiceRequest(service, group));
+        }
+    }
+}
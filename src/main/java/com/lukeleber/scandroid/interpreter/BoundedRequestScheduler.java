@@ -0,0 +1,353 @@
+// This file is protected under the KILLGPL.
+// For more information, visit http://www.lukeleber.github.io/KILLGPL.html
+//
+// Copyright (c) Luke Leber <LukeLeber@gmail.com>
+
+package com.lukeleber.scandroid.interpreter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>A {@link RequestScheduler} that holds at most a fixed number of requests, leaving the order
+ * in which they are written to another (unbounded) scheduler.  What happens to a request that is
+ * offered while the scheduler is full is decided by its {@link OverflowPolicy}; a request that is
+ * turned away is failed with {@link FailureCode#REQUEST_DROPPED} by the interpreter.</p>
+ * <p/>
+ * <p>Producers that send periodically should watch {@link Interpreter#getQueuePressure()} and
+ * slow themselves down well before the scheduler overflows.</p>
+ *
+ * @param <U>
+ *         the type of data that is received over the interpreter
+ */
+public class BoundedRequestScheduler<U>
+        implements RequestScheduler<U>
+{
+    /**
+     * What to do with a request that is offered while the scheduler is full
+     */
+    public enum OverflowPolicy
+    {
+        /**
+         * The sender waits until there is room.  The I/O thread itself (a request sent from a
+         * listener that runs on it) is never made to wait, as it would be waiting on itself; its
+         * requests are let in over the bound.
+         */
+        BLOCK,
+
+        /**
+         * The oldest of the least urgent requests is dropped; that is the offered request itself
+         * if it is less urgent than everything that is waiting
+         */
+        DROP_OLDEST,
+
+        /**
+         * The offered request is dropped
+         */
+        DROP_NEWEST,
+
+        /**
+         * A waiting request for the same Service/PID and ECU (and no more urgent) is dropped in
+         * favour of the offered one, which carries a fresher deadline.  Failing that, the policy
+         * falls back to {@link #DROP_OLDEST}.
+         */
+        REPLACE_SAME_PID
+    }
+
+    /// The scheduler that decides the order in which requests are written
+    private final RequestScheduler<U> delegate;
+
+    /// The largest number of requests that may wait
+    private final int capacity;
+
+    /// What to do with a request that is offered while full
+    private final OverflowPolicy policy;
+
+    /// The requests that are waiting in the delegate, in the order that they were offered
+    private final List<PendingRequest<U>> waiting;
+
+    /// The thread that takes requests (the I/O thread of the interpreter)
+    private volatile Thread taker;
+
+    /**
+     * Constructs a BoundedRequestScheduler that orders its requests with a {@link
+     * DeadlineRequestScheduler}
+     *
+     * @param capacity
+     *         the largest number of requests that may wait
+     * @param policy
+     *         what to do with a request that is offered while full
+     */
+    public BoundedRequestScheduler(int capacity, OverflowPolicy policy)
+    {
+        this(new DeadlineRequestScheduler<U>(), capacity, policy);
+    }
+
+    /**
+     * Constructs a BoundedRequestScheduler that orders its requests with the provided scheduler
+     *
+     * @param delegate
+     *         the (unbounded) scheduler that decides the order in which requests are written
+     * @param capacity
+     *         the largest number of requests that may wait
+     * @param policy
+     *         what to do with a request that is offered while full
+     *
+     * @throws java.lang.IllegalArgumentException
+     *         if the capacity is not positive
+     */
+    public BoundedRequestScheduler(RequestScheduler<U> delegate, int capacity,
+                                   OverflowPolicy policy)
+    {
+        if (capacity <= 0)
+        {
+            throw new IllegalArgumentException("capacity <= 0");
+        }
+        this.delegate = delegate;
+        this.capacity = capacity;
+        this.policy = policy;
+        this.waiting = new ArrayList<>(capacity + 1);
+    }
+
+    /**
+     * Retrieves what is done with a request that is offered while this scheduler is full
+     *
+     * @return the {@link OverflowPolicy} of this scheduler
+     */
+    public OverflowPolicy getPolicy()
+    {
+        return policy;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Under {@link OverflowPolicy#BLOCK}, a sender that is interrupted while waiting for room has
+     * its request turned away (and its interrupt status restored).
+     */
+    @Override
+    public synchronized PendingRequest<U> offer(PendingRequest<U> request)
+    {
+        PendingRequest<U> victim = null;
+        if (waiting.size() >= capacity)
+        {
+            switch (policy)
+            {
+                case BLOCK:
+                    if (!awaitRoom())
+                    {
+                        return request;
+                    }
+                    break;
+                case DROP_NEWEST:
+                    return request;
+                case REPLACE_SAME_PID:
+                    victim = findSamePID(request);
+                    if (victim == null)
+                    {
+                        victim = findLeastUrgent(request);
+                    }
+                    if (victim == request)
+                    {
+                        return request;
+                    }
+                    break;
+                case DROP_OLDEST:
+                    victim = findLeastUrgent(request);
+                    if (victim == request)
+                    {
+                        return request;
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown overflow policy: " + policy);
+            }
+        }
+        if (victim != null)
+        {
+            waiting.remove(victim);
+            if (!delegate.remove(victim))
+            {
+                victim = null; /// Taken in the meantime, which made room all the same
+            }
+        }
+        waiting.add(request);
+        delegate.offer(request);
+        return victim;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PendingRequest<U> take()
+            throws
+            InterruptedException
+    {
+        taker = Thread.currentThread();
+        PendingRequest<U> request = delegate.take();
+        synchronized (this)
+        {
+            waiting.remove(request);
+            notifyAll();
+        }
+        return request;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized PendingRequest<U> poll()
+    {
+        PendingRequest<U> request = delegate.poll();
+        if (request != null)
+        {
+            waiting.remove(request);
+            notifyAll();
+        }
+        return request;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean remove(PendingRequest<U> request)
+    {
+        waiting.remove(request);
+        notifyAll();
+        return delegate.remove(request);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size()
+    {
+        return delegate.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int capacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * Waits until there is room for another request.  The caller must hold the lock on this.
+     *
+     * @return true if there is room (or the caller is the I/O thread), or false if the caller was
+     * interrupted
+     */
+    private boolean awaitRoom()
+    {
+        while (waiting.size() >= capacity)
+        {
+            if (Thread.currentThread() == taker)
+            {
+                return true;
+            }
+            try
+            {
+                wait();
+            }
+            catch (InterruptedException ie)
+            {
+                Thread.currentThread()
+                      .interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the oldest of the least urgent waiting requests, unless the provided request is less
+     * urgent still.  The caller must hold the lock on this.
+     *
+     * @param request
+     *         the request that is being offered
+     *
+     * @return the request to drop (which may be the provided request)
+     */
+    private PendingRequest<U> findLeastUrgent(PendingRequest<U> request)
+    {
+        PendingRequest<U> victim = null;
+        int worst = -1;
+        for (int i = 0; i < waiting.size(); ++i)
+        {
+            PendingRequest<U> candidate = waiting.get(i);
+            int rank = candidate.getRequest()
+                                .getPriority()
+                                .ordinal();
+            if (rank > worst)
+            {
+                victim = candidate;
+                worst = rank;
+            }
+        }
+        return victim == null || request.getRequest()
+                                        .getPriority()
+                                        .ordinal() > worst ? request : victim;
+    }
+
+    /**
+     * Finds a waiting request for the same Service/PID (and the same ECU) as the provided request
+     * that is no more urgent than it.  The caller must hold the lock on this.
+     *
+     * @param request
+     *         the request that is being offered
+     *
+     * @return the request to replace, or null if there is none
+     */
+    private PendingRequest<U> findSamePID(PendingRequest<U> request)
+    {
+        if (!(request.getRequest() instanceof ServiceRequest))
+        {
+            return null;
+        }
+        ServiceRequest<?> offered = (ServiceRequest<?>) request.getRequest();
+        if (offered.getPID() == null)
+        {
+            return null;
+        }
+        for (int i = 0; i < waiting.size(); ++i)
+        {
+            PendingRequest<U> candidate = waiting.get(i);
+            Request<?> other = candidate.getRequest();
+            if (other instanceof ServiceRequest &&
+                    ((ServiceRequest<?>) other).getService() == offered.getService() &&
+                    ((ServiceRequest<?>) other).getPID() != null &&
+                    ((ServiceRequest<?>) other).getPID()
+                                               .getID() == offered.getPID()
+                                                                  .getID() &&
+                    sameTarget(other, offered.getTarget()) &&
+                    other.getPriority()
+                         .compareTo(offered.getPriority()) >= 0)
+            {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether or not the provided request is addressed to the provided ECU
+     *
+     * @param request
+     *         the request to check
+     * @param target
+     *         the ECU to compare against (may be null)
+     *
+     * @return true if the request is addressed to the provided ECU, otherwise false
+     */
+    private static boolean sameTarget(Request<?> request, EcuAddress target)
+    {
+        return target == null ? request.getTarget() == null : target.equals(request.getTarget());
+    }
+}
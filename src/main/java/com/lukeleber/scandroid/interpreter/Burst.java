@@ -0,0 +1,262 @@
+// This file is protected under the KILLGPL.
+// For more information, visit http://www.lukeleber.github.io/KILLGPL.html
+//
+// Copyright (c) Luke Leber <LukeLeber@gmail.com>
+
+package com.lukeleber.scandroid.interpreter;
+
+import com.lukeleber.scandroid.sae.j1979.PID;
+import com.lukeleber.scandroid.sae.j1979.Service;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Polls a single PID back-to-back for as long (or as many samples) as asked, for high-rate
+ * captures such as the engine speed during a throttle snap.  The next request is sent from the
+ * decode thread the moment that a reply is decoded, so no time is lost to the UI thread or to
+ * scheduling, and the same request is sent every time, which lets interpreters take shortcuts (the
+ * {@link com.lukeleber.scandroid.interpreter.elm327.ELM327} sends each one as a bare carriage
+ * return).</p>
+ * <p/>
+ * <p>Samples are sent as {@link Request.Priority#INTERACTIVE} requests, so a burst takes the bus
+ * over from periodic polling; only requests that are about to miss their deadline get in
+ * between.</p>
+ *
+ * @param <T>
+ *         the type of data that is sampled
+ */
+public final class Burst<T>
+{
+    /**
+     * Receives the samples of a {@link Burst}
+     *
+     * @param <T>
+     *         the type of data that is sampled
+     */
+    public interface Listener<T>
+    {
+        /**
+         * Invoked for every sample
+         *
+         * @param value
+         *         the value of the sample
+         * @param nanoTime
+         *         the {@link System#nanoTime() nano-time} at which the reply arrived
+         */
+        void onSample(T value, long nanoTime);
+
+        /**
+         * Invoked once, after the last sample
+         *
+         * @param samples
+         *         the number of samples that were taken
+         * @param failure
+         *         the reason that the burst ended early, or null if it ran its course or was
+         *         stopped
+         */
+        void onFinished(int samples, FailureCode failure);
+    }
+
+    /// The longest that a single sample may wait for its reply
+    private final static long SAMPLE_TIMEOUT = 2000;
+
+    /// The interpreter to poll through
+    private final Interpreter interpreter;
+
+    /// The request that is sent for every sample
+    private final Request<T> request;
+
+    /// The listener that receives the samples
+    private final Listener<T> listener;
+
+    /// The executor that the listener is invoked on
+    private final Executor executor;
+
+    /// The largest number of samples to take
+    private int maxSamples;
+
+    /// The nano-time after which no more samples are taken
+    private long endTime;
+
+    /// The number of samples taken so far
+    private int samples;
+
+    /// Is a burst in progress?
+    private volatile boolean running;
+
+    /// Has the burst been asked to stop?
+    private volatile boolean stopped;
+
+    /// The handle of the sample that is in flight
+    private volatile RequestHandle inFlight;
+
+    /// Receives each sample on the decode thread and immediately asks for the next one
+    private final Handler<T> sampler = new Handler<T>()
+    {
+        @Override
+        public void onResponse(final T value)
+        {
+            final long now = System.nanoTime();
+            ++samples;
+            executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    listener.onSample(value, now);
+                }
+            });
+            if (stopped || samples >= maxSamples || now - endTime >= 0)
+            {
+                finish(null);
+            }
+            else
+            {
+                next();
+            }
+        }
+
+        @Override
+        public void onFailure(FailureCode code)
+        {
+            finish(code);
+        }
+    };
+
+    /**
+     * Constructs a Burst that invokes its listener on the UI thread, batched once per display
+     * frame (see {@link CallbackExecutors#frameAligned()})
+     *
+     * @param interpreter
+     *         the interpreter to poll through
+     * @param service
+     *         the service to poll under
+     * @param pid
+     *         the PID to poll
+     * @param listener
+     *         the listener that receives the samples
+     */
+    public Burst(Interpreter interpreter, Service service, PID<T> pid, Listener<T> listener)
+    {
+        this(interpreter, service, pid, listener, CallbackExecutors.frameAligned());
+    }
+
+    /**
+     * Constructs a Burst that invokes its listener on the provided {@link
+     * java.util.concurrent.Executor}
+     *
+     * @param interpreter
+     *         the interpreter to poll through
+     * @param service
+     *         the service to poll under
+     * @param pid
+     *         the PID to poll
+     * @param listener
+     *         the listener that receives the samples
+     * @param executor
+     *         the executor that the listener is invoked on (see {@link CallbackExecutors})
+     */
+    public Burst(Interpreter interpreter, Service service, PID<T> pid, Listener<T> listener,
+                 Executor executor)
+    {
+        this.interpreter = interpreter;
+        this.listener = listener;
+        this.executor = executor;
+        this.request = new ServiceRequest<>(service, pid, sampler);
+        request.setPriority(Request.Priority.INTERACTIVE)
+               .setTimeout(SAMPLE_TIMEOUT);
+    }
+
+    /**
+     * Starts a burst that ends after the provided number of samples.  This is equivalent to
+     * <code>start(samples, Long.MAX_VALUE, TimeUnit.NANOSECONDS);</code>
+     *
+     * @param samples
+     *         the number of samples to take
+     */
+    public void start(int samples)
+    {
+        start(samples, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Starts a burst that ends after the provided number of samples or the provided duration,
+     * whichever comes first (or when it is {@link #stop() stopped})
+     *
+     * @param samples
+     *         the largest number of samples to take
+     * @param duration
+     *         the longest that the burst may last
+     * @param unit
+     *         the unit of the duration
+     *
+     * @throws java.lang.IllegalStateException
+     *         if a burst is already in progress
+     */
+    public synchronized void start(int samples, long duration, TimeUnit unit)
+    {
+        if (samples <= 0)
+        {
+            throw new IllegalArgumentException("samples <= 0");
+        }
+        if (running)
+        {
+            throw new IllegalStateException("A burst is already in progress");
+        }
+        long now = System.nanoTime();
+        long nanos = unit.toNanos(duration);
+        this.maxSamples = samples;
+        this.endTime = now + nanos < now ? Long.MAX_VALUE : now + nanos;
+        this.samples = 0;
+        this.stopped = false;
+        this.running = true;
+        next();
+    }
+
+    /**
+     * Stops the burst in progress (if any).  The sample in flight is abandoned and the listener
+     * is told that the burst has finished.
+     */
+    public void stop()
+    {
+        stopped = true;
+        RequestHandle handle = inFlight;
+        if (handle != null && handle.cancel())
+        {
+            finish(null);
+        }
+    }
+
+    /**
+     * Is a burst in progress?
+     *
+     * @return true if a burst is in progress, otherwise false
+     */
+    public boolean isRunning()
+    {
+        return running;
+    }
+
+    /// Sends the request for the next sample
+    private void next()
+    {
+        inFlight = interpreter.sendRequest(request, CallbackExecutors.direct());
+    }
+
+    /// Ends the burst and tells the listener
+    private void finish(final FailureCode failure)
+    {
+        final int taken = samples;
+        inFlight = null;
+        running = false;
+        executor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                listener.onFinished(taken, failure);
+            }
+        });
+    }
+}
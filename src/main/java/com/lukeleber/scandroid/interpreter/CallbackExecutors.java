@@ -0,0 +1,140 @@
+// This file is protected under the KILLGPL.
+// For more information, visit http://www.lukeleber.github.io/KILLGPL.html
+//
+// Copyright (c) Luke Leber <LukeLeber@gmail.com>
+
+package com.lukeleber.scandroid.interpreter;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>The {@link java.util.concurrent.Executor Executors} that an {@link Interpreter} may invoke
+ * its {@link ResponseListener ResponseListeners} on:</p>
+ * <ul>
+ *     <li>{@link #mainThread()} - the Android main (UI) thread; required by listeners that touch
+ *     views, and the default</li>
+ *     <li>{@link #frameAligned()} - also the main thread, but batched once per display frame; for
+ *     listeners that update views at a high rate (such as live data)</li>
+ *     <li>{@link #pool()} - a shared pool of background threads; for listeners that do real work
+ *     (such as writing a log) without touching views</li>
+ *     <li>{@link #direct()} - the decode thread of the interpreter itself; for listeners that only
+ *     hand the reply off somewhere else, since the next reply is not decoded until they
+ *     return</li>
+ * </ul>
+ * <p/>
+ * <p>Each executor is created the first time that it is asked for, so the Android specific one
+ * is never loaded by programs (such as tests or desktop tools) that run on a plain JVM.</p>
+ */
+public final class CallbackExecutors
+{
+    /// Runs each task on the calling thread
+    private final static Executor DIRECT = new Executor()
+    {
+        @Override
+        public void execute(Runnable command)
+        {
+            command.run();
+        }
+    };
+
+    /// Lazily holds the main thread executor
+    private final static class MainThreadHolder
+    {
+        /// Posts each task to the main looper
+        private final static Executor INSTANCE = new Executor()
+        {
+            /// The handler of the main looper
+            private final Handler handler = new Handler(Looper.getMainLooper());
+
+            @Override
+            public void execute(Runnable command)
+            {
+                handler.post(command);
+            }
+        };
+    }
+
+    /// Lazily holds the frame aligned executor
+    private final static class FrameHolder
+    {
+        /// Runs the callbacks of each display frame together
+        private final static FrameDispatcher INSTANCE = new FrameDispatcher();
+    }
+
+    /// Lazily holds the background pool
+    private final static class PoolHolder
+    {
+        /// The background pool; its threads are daemons so that they never keep a JVM alive
+        private final static ExecutorService INSTANCE = Executors.newCachedThreadPool(
+                new ThreadFactory()
+                {
+                    /// The number of threads created so far
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r)
+                    {
+                        Thread t = new Thread(r, "Interpreter-Callback-" + count.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+    }
+
+    /// Uninstantiable
+    private CallbackExecutors()
+    {
+
+    }
+
+    /**
+     * Retrieves an {@link java.util.concurrent.Executor} that runs each callback immediately on
+     * the decode thread of the interpreter (see {@link AbstractInterpreter})
+     *
+     * @return an {@link java.util.concurrent.Executor} that runs each callback on the calling thread
+     */
+    public static Executor direct()
+    {
+        return DIRECT;
+    }
+
+    /**
+     * Retrieves an {@link java.util.concurrent.Executor} that runs each callback on the Android main
+     * (UI) thread, in the order that they were submitted
+     *
+     * @return an {@link java.util.concurrent.Executor} that runs each callback on the main thread
+     */
+    public static Executor mainThread()
+    {
+        return MainThreadHolder.INSTANCE;
+    }
+
+    /**
+     * Retrieves an {@link java.util.concurrent.Executor} that runs callbacks on the Android main
+     * (UI) thread in batches, once per display frame, in the order that they were submitted
+     *
+     * @return the shared {@link FrameDispatcher}
+     */
+    public static FrameDispatcher frameAligned()
+    {
+        return FrameHolder.INSTANCE;
+    }
+
+    /**
+     * Retrieves an {@link java.util.concurrent.Executor} that runs each callback on a shared pool of
+     * background threads.  Callbacks may run concurrently and in any order.
+     *
+     * @return an {@link java.util.concurrent.Executor} that runs each callback on a background thread
+     */
+    public static Executor pool()
+    {
+        return PoolHolder.INSTANCE;
+    }
+}
@@ -0,0 +1,264 @@
+// This file is protected under the KILLGPL.
+// For more information, visit http://www.lukeleber.github.io/KILLGPL.html
+//
+// Copyright (c) Luke Leber <LukeLeber@gmail.com>
+
+package com.lukeleber.scandroid.interpreter;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>A {@link RequestScheduler} that orders requests first by {@link Request.Priority} and then,
+ * within each priority, earliest-deadline-first using {@link PendingRequest#getAbsoluteDeadline()}.
+ * Requests with equal deadlines are written in the order that they were sent.</p>
+ * <p/>
+ * <p>Strict priorities would let a steady stream of high priority work starve everything below
+ * it, so any request that has been waiting for longer than the starvation threshold is written
+ * next regardless of its priority.  This keeps background polling moving while still letting an
+ * interactive request through on the very next bus round trip.</p>
+ * <p/>
+ * <p>Addressing another ECU (see {@link Request#getTarget()}) costs the remote hardware extra
+ * commands, so among the requests of a priority those to the ECU that was addressed last are
+ * written first, as long as the request that would otherwise be next is neither starving nor
+ * within {@link #SWITCH_SLACK} milliseconds of its deadline.  Requests to one ECU are thereby
+ * written back to back rather than interleaved with those to another.</p>
+ *
+ * @param <U>
+ *         the type of data that is received over the interpreter
+ */
+public class DeadlineRequestScheduler<U>
+        implements RequestScheduler<U>
+{
+    /// The default starvation threshold (in milliseconds)
+    public final static long DEFAULT_STARVATION_THRESHOLD = 500;
+
+    /// The time (in milliseconds) that a request must have left before its deadline for a request
+    /// to the ECU that was addressed last to be written ahead of it
+    public final static long SWITCH_SLACK = 250;
+
+    /// Orders requests by absolute deadline, then by the order that they were sent
+    private final static Comparator<PendingRequest<?>> EARLIEST_DEADLINE_FIRST
+            = new Comparator<PendingRequest<?>>()
+    {
+        @Override
+        public int compare(PendingRequest<?> lhs, PendingRequest<?> rhs)
+        {
+            long l = lhs.getAbsoluteDeadline();
+            long r = rhs.getAbsoluteDeadline();
+            if (l != r)
+            {
+                return l < r ? -1 : 1;
+            }
+            return lhs.getSequence() < rhs.getSequence() ? -1 :
+                    (lhs.getSequence() == rhs.getSequence() ? 0 : 1);
+        }
+    };
+
+    /// One queue per {@link Request.Priority}, indexed by ordinal (highest priority first)
+    private final PriorityQueue<PendingRequest<U>>[] queues;
+
+    /// The starvation threshold (in nanoseconds)
+    private final long starvationThreshold;
+
+    /// The total number of waiting requests
+    private int size;
+
+    /// The ECU that the last request to the vehicle was addressed to (null if it was broadcast)
+    private EcuAddress lastTarget;
+
+    /**
+     * Constructs a DeadlineRequestScheduler with the {@link #DEFAULT_STARVATION_THRESHOLD}
+     */
+    public DeadlineRequestScheduler()
+    {
+        this(DEFAULT_STARVATION_THRESHOLD);
+    }
+
+    /**
+     * Constructs a DeadlineRequestScheduler with the provided starvation threshold
+     *
+     * @param starvationThreshold
+     *         the number of milliseconds that a request may wait before it is written regardless
+     *         of its priority
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public DeadlineRequestScheduler(long starvationThreshold)
+    {
+        this.starvationThreshold = TimeUnit.MILLISECONDS.toNanos(starvationThreshold);
+        this.queues = new PriorityQueue[Request.Priority.values().length];
+        for (int i = 0; i < queues.length; ++i)
+        {
+            queues[i] = new PriorityQueue<>(16, EARLIEST_DEADLINE_FIRST);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized PendingRequest<U> offer(PendingRequest<U> request)
+    {
+        queues[request.getRequest()
+                      .getPriority()
+                      .ordinal()].add(request);
+        ++size;
+        notifyAll();
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized PendingRequest<U> take()
+            throws
+            InterruptedException
+    {
+        while (size == 0)
+        {
+            wait();
+        }
+        --size;
+        return next(select(System.nanoTime()));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized PendingRequest<U> poll()
+    {
+        if (size == 0)
+        {
+            return null;
+        }
+        --size;
+        return next(select(System.nanoTime()));
+    }
+
+    /**
+     * Selects the queue whose head should be written next
+     *
+     * @param now
+     *         the current nano-time
+     *
+     * @return the index of the selected queue
+     */
+    private int select(long now)
+    {
+        int top = -1;
+        int starved = -1;
+        long oldest = Long.MAX_VALUE;
+        for (int i = 0; i < queues.length; ++i)
+        {
+            PendingRequest<U> head = queues[i].peek();
+            if (head == null)
+            {
+                continue;
+            }
+            if (top == -1)
+            {
+                top = i;
+            }
+            else if (now - head.getEnqueueTime() >= starvationThreshold &&
+                    head.getEnqueueTime() < oldest)
+            {
+                starved = i;
+                oldest = head.getEnqueueTime();
+            }
+        }
+        return starved != -1 ? starved : top;
+    }
+
+    /**
+     * Removes the request that should be written next from the provided queue, preferring a
+     * request to the ECU that was addressed last over the head of the queue while the head can
+     * afford to wait
+     *
+     * @param index
+     *         the index of the queue to take from
+     *
+     * @return the request that should be written next
+     */
+    private PendingRequest<U> next(int index)
+    {
+        PriorityQueue<PendingRequest<U>> queue = queues[index];
+        PendingRequest<U> rv = queue.peek();
+        if (isAddressed(rv) && !isAddressedTo(rv, lastTarget) &&
+                System.nanoTime() - rv.getEnqueueTime() < starvationThreshold &&
+                rv.getAbsoluteDeadline() - System.currentTimeMillis() > SWITCH_SLACK)
+        {
+            PendingRequest<U> affine = null;
+            for (PendingRequest<U> candidate : queue)
+            {
+                if (isAddressed(candidate) && isAddressedTo(candidate, lastTarget) &&
+                        (affine == null || EARLIEST_DEADLINE_FIRST.compare(candidate, affine) < 0))
+                {
+                    affine = candidate;
+                }
+            }
+            if (affine != null)
+            {
+                queue.remove(affine);
+                return affine;
+            }
+        }
+        queue.poll();
+        if (isAddressed(rv))
+        {
+            lastTarget = rv.getRequest()
+                           .getTarget();
+        }
+        return rv;
+    }
+
+    /// Is the provided request sent to the vehicle (rather than to the remote hardware itself)?
+    private static boolean isAddressed(PendingRequest<?> request)
+    {
+        return !(request.getRequest() instanceof ConfigurationRequest);
+    }
+
+    /// Is the provided request addressed to the provided ECU (or are both broadcast)?
+    private static boolean isAddressedTo(PendingRequest<?> request, EcuAddress target)
+    {
+        EcuAddress actual = request.getRequest()
+                                   .getTarget();
+        return target == null ? actual == null : target.equals(actual);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean remove(PendingRequest<U> request)
+    {
+        if (queues[request.getRequest()
+                          .getPriority()
+                          .ordinal()].remove(request))
+        {
+            --size;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized int size()
+    {
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int capacity()
+    {
+        return Integer.MAX_VALUE;
+    }
+}
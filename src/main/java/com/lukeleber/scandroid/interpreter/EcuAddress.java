@@ -0,0 +1,242 @@
+// This file is protected under the KILLGPL.
+// For more information, visit http://www.lukeleber.github.io/KILLGPL.html
+//
+// Copyright (c) Luke Leber <LukeLeber@gmail.com>
+
+package com.lukeleber.scandroid.interpreter;
+
+import java.io.Serializable;
+
+/**
+ * <p>The address of a single ECU.  On ISO 15765-4 these are the physical CAN identifiers that it
+ * assigns: the identifier that requests to the ECU are sent with, and the identifier that it
+ * answers with.  With 11-bit identifiers ECU #n is asked on $7E0 + n and answers on $7E8 + n; with
+ * 29-bit identifiers an ECU with the address $tt is asked on $18DAttF1 and answers on $18DAF1tt.
+ * On the other protocols an ECU is only known by the source address in the header of its answers
+ * (the third header byte), which tells the answers of several ECUs apart but can't be used to
+ * address requests.</p>
+ * <p/>
+ * <p>A request that carries an {@link #isAddressable() addressable} EcuAddress (see {@link
+ * Request#setTarget(EcuAddress)}) is sent to that ECU alone rather than broadcast to all of them,
+ * so the remote hardware need not wait for every other ECU on the bus to answer or time out.</p>
+ * <p/>
+ * <p>Instances of this class are immutable, and the factory methods hand out shared instances so
+ * that telling answers apart creates no garbage.</p>
+ */
+public final class EcuAddress
+        implements
+        Serializable,
+        Comparable<EcuAddress>
+{
+    /// The lowest 11-bit identifier that an ECU answers with
+    private final static int FIRST_RESPONSE_ID = 0x7E8;
+
+    /// The highest 11-bit identifier that an ECU answers with
+    private final static int LAST_RESPONSE_ID = 0x7EF;
+
+    /// The distance between the 11-bit request and response identifiers of an ECU
+    private final static int RESPONSE_OFFSET = 8;
+
+    /// The 29-bit response identifier with the address of the ECU masked off
+    private final static int EXTENDED_RESPONSE_BASE = 0x18DAF100;
+
+    /// The 29-bit request identifier with the address of the ECU masked off
+    private final static int EXTENDED_REQUEST_BASE = 0x18DA00F1;
+
+    /// The shared addresses of the ECUs on an 11-bit bus, by response identifier - $7E8
+    private final static EcuAddress[] STANDARD = new EcuAddress[8];
+
+    /// The shared addresses of the ECUs on a 29-bit bus, by address
+    private final static EcuAddress[] EXTENDED = new EcuAddress[0x100];
+
+    /// The shared source addresses of the ECUs on the other protocols
+    private final static EcuAddress[] SOURCE = new EcuAddress[0x100];
+
+    static
+    {
+        for (int i = 0; i < STANDARD.length; ++i)
+        {
+            STANDARD[i] = new EcuAddress(FIRST_RESPONSE_ID - RESPONSE_OFFSET + i,
+                                         FIRST_RESPONSE_ID + i, false, true);
+        }
+        for (int i = 0; i < EXTENDED.length; ++i)
+        {
+            EXTENDED[i] = new EcuAddress(EXTENDED_REQUEST_BASE | i << 8,
+                                         EXTENDED_RESPONSE_BASE | i, true, true);
+            SOURCE[i] = new EcuAddress(-1, i, false, false);
+        }
+    }
+
+    /// The identifier that requests to the ECU are sent with, or -1 if it can't be addressed
+    private final int requestId;
+
+    /// The identifier (or source address) that the ECU answers with
+    private final int responseId;
+
+    /// Are the identifiers 29 bits wide (rather than 11)?
+    private final boolean extended;
+
+    /// Are these CAN identifiers (rather than a source address)?
+    private final boolean addressable;
+
+    /**
+     * Constructs an EcuAddress
+     *
+     * @param requestId
+     *         the identifier that requests to the ECU are sent with
+     * @param responseId
+     *         the identifier that the ECU answers with
+     * @param extended
+     *         are the identifiers 29 bits wide (rather than 11)?
+     * @param addressable
+     *         are these CAN identifiers (rather than a source address)?
+     */
+    private EcuAddress(int requestId, int responseId, boolean extended, boolean addressable)
+    {
+        this.requestId = requestId;
+        this.responseId = responseId;
+        this.extended = extended;
+        this.addressable = addressable;
+    }
+
+    /**
+     * Finds the addresses of the ECU that answered with the provided identifier
+     *
+     * @param responseId
+     *         the identifier that the ECU answered with
+     * @param extended
+     *         is the identifier 29 bits wide (rather than 11)?
+     *
+     * @return the addresses of the ECU, or null if the identifier is not one that ISO 15765-4
+     * assigns to an ECU
+     */
+    public static EcuAddress fromResponseId(int responseId, boolean extended)
+    {
+        if (extended)
+        {
+            if ((responseId & 0xFFFFFF00) != EXTENDED_RESPONSE_BASE)
+            {
+                return null;
+            }
+            return EXTENDED[responseId & 0xFF];
+        }
+        if (responseId < FIRST_RESPONSE_ID || responseId > LAST_RESPONSE_ID)
+        {
+            return null;
+        }
+        return STANDARD[responseId - FIRST_RESPONSE_ID];
+    }
+
+    /**
+     * Finds the address of the ECU that answered with the provided source address in its header
+     * (on protocols other than ISO 15765-4)
+     *
+     * @param sourceAddress
+     *         the source address (the third header byte)
+     *
+     * @return the address of the ECU (which can't be used to address requests)
+     */
+    public static EcuAddress fromSourceAddress(int sourceAddress)
+    {
+        return SOURCE[sourceAddress & 0xFF];
+    }
+
+    /**
+     * May requests be addressed to this ECU alone?  Only ISO 15765-4 ECUs can be.
+     *
+     * @return true if this address holds CAN identifiers, false if it is a source address
+     */
+    public boolean isAddressable()
+    {
+        return addressable;
+    }
+
+    /**
+     * Retrieves the identifier that requests to the ECU are sent with
+     *
+     * @return the request identifier (as in $7E0), or -1 if the ECU can't be addressed
+     */
+    public int getRequestId()
+    {
+        return requestId;
+    }
+
+    /**
+     * Retrieves the identifier that the ECU answers with
+     *
+     * @return the response identifier (as in $7E8), or the source address
+     */
+    public int getResponseId()
+    {
+        return responseId;
+    }
+
+    /**
+     * Are the identifiers 29 bits wide (rather than 11)?
+     *
+     * @return true for 29-bit identifiers, false for 11-bit identifiers
+     */
+    public boolean isExtended()
+    {
+        return extended;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Addresses are ordered by response identifier (or source address), so that ECU #1 (which
+     * ISO 15765-4 reserves for the engine) comes first.
+     */
+    @Override
+    public int compareTo(EcuAddress other)
+    {
+        if (rank() != other.rank())
+        {
+            return rank() < other.rank() ? -1 : 1;
+        }
+        return responseId < other.responseId ? -1 : (responseId == other.responseId ? 0 : 1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o)
+    {
+        if (!(o instanceof EcuAddress))
+        {
+            return false;
+        }
+        EcuAddress other = (EcuAddress) o;
+        return responseId == other.responseId && extended == other.extended &&
+                addressable == other.addressable;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode()
+    {
+        return addressable ? (extended ? ~responseId : responseId) : responseId << 16;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        if (!addressable)
+        {
+            return String.format("%02X", responseId);
+        }
+        return String.format(extended ? "%08X/%08X" : "%03X/%03X", requestId, responseId);
+    }
+
+    /// Orders 11-bit identifiers before 29-bit identifiers before source addresses
+    private int rank()
+    {
+        return addressable ? (extended ? 1 : 0) : 2;
+    }
+}
@@ -10,5 +10,9 @@ public enum FailureCode
     IO_ERROR,
     IO_LINK_ERROR,
     REQUEST_NOT_SUPPORTED,
-    CONFIGURATION_COMMAND_NOT_RECOGNIZED, UNRECOGNIZED_RESPONSE, INVALID_PROTOCOL, CONDITIONS_NOT_CORRECT
+    CONFIGURATION_COMMAND_NOT_RECOGNIZED, UNRECOGNIZED_RESPONSE, INVALID_PROTOCOL, CONDITIONS_NOT_CORRECT,
+    REQUEST_TIMED_OUT,
+    REQUEST_DROPPED,
+    LINK_LOST,
+    TRANSFORM_FAILED
 }
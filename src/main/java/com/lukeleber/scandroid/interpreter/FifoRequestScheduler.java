@@ -0,0 +1,80 @@
+// This file is protected under the KILLGPL.
+// For more information, visit http://www.lukeleber.github.io/KILLGPL.html
+//
+// Copyright (c) Luke Leber <LukeLeber@gmail.com>
+
+package com.lukeleber.scandroid.interpreter;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A {@link RequestScheduler} that writes requests strictly in the order that they were sent,
+ * ignoring their {@link Request.Priority priorities} and deadlines.
+ *
+ * @param <U>
+ *         the type of data that is received over the interpreter
+ */
+public class FifoRequestScheduler<U>
+        implements RequestScheduler<U>
+{
+    /// The queue of pending requests
+    private final BlockingQueue<PendingRequest<U>> queue = new LinkedBlockingQueue<>();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PendingRequest<U> offer(PendingRequest<U> request)
+    {
+        queue.add(request);
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PendingRequest<U> take()
+            throws
+            InterruptedException
+    {
+        return queue.take();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PendingRequest<U> poll()
+    {
+        return queue.poll();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean remove(PendingRequest<U> request)
+    {
+        return queue.remove(request);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size()
+    {
+        return queue.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int capacity()
+    {
+        return Integer.MAX_VALUE;
+    }
+}
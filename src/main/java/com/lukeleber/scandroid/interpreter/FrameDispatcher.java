@@ -0,0 +1,258 @@
+// This file is protected under the KILLGPL.
+// For more information, visit http://www.lukeleber.github.io/KILLGPL.html
+//
+// Copyright (c) Luke Leber <LukeLeber@gmail.com>
+
+package com.lukeleber.scandroid.interpreter;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>An {@link java.util.concurrent.Executor} that gathers callbacks from any thread and runs
+ * them on the Android main (UI) thread once per display frame (as paced by the {@link
+ * android.view.Choreographer}), rather than posting a message to the main looper for each
+ * one.  At high poll rates this keeps the looper free for input and drawing.</p>
+ * <p/>
+ * <p>Each frame runs callbacks (in the order that they were submitted) for no longer than its
+ * budget; whatever is left over waits for the next frame.  Once a frame has run any callbacks,
+ * every {@link FrameListener} is told, so that views can be invalidated once per frame instead of
+ * once per reply.</p>
+ *
+ * @see CallbackExecutors#frameAligned()
+ */
+public final class FrameDispatcher
+        implements Executor
+{
+    /**
+     * Told (on the main thread) after each frame in which callbacks were run
+     */
+    public interface FrameListener
+    {
+        /**
+         * Invoked after the callbacks of a frame have run
+         */
+        void onFrameDelivered();
+    }
+
+    /**
+     * Asks for frames on behalf of a FrameDispatcher, which runs {@link #dispatch()} on each one
+     */
+    interface Frames
+    {
+        /**
+         * Asks for the first frame of a batch of callbacks.  May be invoked on any thread.
+         */
+        void request();
+
+        /**
+         * Asks for the next frame because callbacks were left over.  Invoked on the main thread,
+         * during a frame.
+         */
+        void requestNext();
+    }
+
+    /**
+     * Asks the {@link android.view.Choreographer} of the main thread for frames
+     */
+    private final class ChoreographerFrames
+            implements Frames
+    {
+        /// The handler of the main looper, through which the first frame of a batch is asked for
+        private final Handler handler = new Handler(Looper.getMainLooper());
+
+        /// Runs the callbacks on each frame
+        private final Choreographer.FrameCallback frame = new Choreographer.FrameCallback()
+        {
+            @Override
+            public void doFrame(long frameTimeNanos)
+            {
+                dispatch();
+            }
+        };
+
+        /// Asks the Choreographer (which must be fetched on the main thread) for the next frame
+        private final Runnable arm = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                requestNext();
+            }
+        };
+
+        @Override
+        public void request()
+        {
+            handler.post(arm);
+        }
+
+        @Override
+        public void requestNext()
+        {
+            Choreographer.getInstance()
+                         .postFrameCallback(frame);
+        }
+    }
+
+    /// The default share of each frame (in milliseconds) that may be spent running callbacks
+    public final static long DEFAULT_BUDGET = 4;
+
+    /// The longest (in nanoseconds) that callbacks may run for in a single frame
+    private final long budget;
+
+    /// The callbacks that have yet to run
+    private final Queue<Runnable> pending = new ArrayDeque<>();
+
+    /// The listeners that are told after each frame (copied on write, so that a listener may
+    /// remove itself while it is being told)
+    private final List<FrameListener> listeners = new CopyOnWriteArrayList<>();
+
+    /// Where the frames come from
+    private final Frames frames;
+
+    /// Is a frame already on its way? (guarded by {@link #pending})
+    private boolean scheduled;
+
+    /**
+     * Constructs a FrameDispatcher with the {@link #DEFAULT_BUDGET}
+     */
+    public FrameDispatcher()
+    {
+        this(DEFAULT_BUDGET, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Constructs a FrameDispatcher with the provided budget
+     *
+     * @param budget
+     *         the longest that callbacks may run for in a single frame
+     * @param unit
+     *         the unit of the budget
+     */
+    public FrameDispatcher(long budget, TimeUnit unit)
+    {
+        this(budget, unit, null);
+    }
+
+    /**
+     * Constructs a FrameDispatcher with the provided budget that runs its callbacks on the frames
+     * of the provided source (for the test cases, which step through the frames by hand)
+     *
+     * @param budget
+     *         the longest that callbacks may run for in a single frame
+     * @param unit
+     *         the unit of the budget
+     * @param frames
+     *         where the frames come from, or null for the {@link android.view.Choreographer}
+     */
+    FrameDispatcher(long budget, TimeUnit unit, Frames frames)
+    {
+        if (budget <= 0)
+        {
+            throw new IllegalArgumentException("budget <= 0");
+        }
+        this.budget = unit.toNanos(budget);
+        this.frames = frames == null ? new ChoreographerFrames() : frames;
+    }
+
+    /**
+     * Adds a listener that is told after each frame in which callbacks were run.  Must be called
+     * on the main thread; a listener that is added while the listeners are being told is first
+     * told after the next frame.
+     *
+     * @param listener
+     *         the listener to add
+     */
+    public void addFrameListener(FrameListener listener)
+    {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener that was added by {@link #addFrameListener(FrameListener)}.  Must be
+     * called on the main thread, and may be called from {@link FrameListener#onFrameDelivered()}.
+     *
+     * @param listener
+     *         the listener to remove
+     */
+    public void removeFrameListener(FrameListener listener)
+    {
+        listeners.remove(listener);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute(Runnable command)
+    {
+        synchronized (pending)
+        {
+            pending.add(command);
+            if (scheduled)
+            {
+                return;
+            }
+            scheduled = true;
+        }
+        frames.request();
+    }
+
+    /**
+     * Runs the callbacks of a frame until they run out or the budget is spent, then tells the
+     * listeners.  Whatever is left (even if a callback threw) is run on the next frame.  Invoked
+     * on the main thread.
+     */
+    void dispatch()
+    {
+        long deadline = System.nanoTime() + budget;
+        boolean ran = false;
+        try
+        {
+            Runnable command;
+            while (System.nanoTime() - deadline < 0)
+            {
+                synchronized (pending)
+                {
+                    command = pending.poll();
+                }
+                if (command == null)
+                {
+                    break;
+                }
+                command.run();
+                ran = true;
+            }
+        }
+        finally
+        {
+            boolean more;
+            synchronized (pending)
+            {
+                more = !pending.isEmpty();
+                scheduled = more;
+            }
+            if (more)
+            {
+                /// Out of time (or a callback threw); the rest waits for the next frame
+                frames.requestNext();
+            }
+        }
+        if (ran)
+        {
+            for (FrameListener listener : listeners)
+            {
+                listener.onFrameDelivered();
+            }
+        }
+    }
+}
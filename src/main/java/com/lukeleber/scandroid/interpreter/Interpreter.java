@@ -9,10 +9,17 @@ import android.content.Context;
 import android.support.annotation.StringRes;
 
 import com.lukeleber.scandroid.R;
+import com.lukeleber.scandroid.interpreter.metrics.InterpreterMetrics;
 import com.lukeleber.scandroid.io.CommunicationInterface;
+import com.lukeleber.scandroid.sae.j1979.PID;
+import com.lukeleber.scandroid.sae.j1979.Service;
 import com.lukeleber.scandroid.util.Internationalized;
+import com.lukeleber.scandroid.util.Unit;
 
 import java.io.Closeable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
 
 /**
  * The ultimate base class for all interpreter implementations.  <code>Interpreters</code> are
@@ -29,6 +36,7 @@ public interface Interpreter
     {
         DISCONNECTED(R.string.disconnected),
         CONNECTED(R.string.connected),
+        RECONNECTING(R.string.reconnecting),
         ERROR(R.string.error);
 
         private final @StringRes int id;
@@ -74,6 +82,24 @@ public interface Interpreter
         void onShutdown();
     }
 
+    /**
+     * Told (on the I/O thread) when the link to the remote hardware is lost and when it has been
+     * re-established.  Requests fail with {@link FailureCode#LINK_LOST} in between; only if the
+     * link cannot be re-established are the {@link ErrorListener ErrorListeners} told.
+     */
+    public interface LinkListener
+    {
+        /**
+         * Invoked when the link is lost, before reconnecting is attempted
+         */
+        void onLinkLost();
+
+        /**
+         * Invoked once the link has been re-established and the remote hardware configured again
+         */
+        void onLinkRestored();
+    }
+
     /**
      * Retrieves the {@link com.lukeleber.scandroid.io.CommunicationInterface} that this {@link
      * Interpreter} utilizes.
@@ -96,29 +122,134 @@ public interface Interpreter
 
     /**
      * Sends an asynchronous request over this {@link Interpreter}
-     * and invokes a default {@link ResponseListener} on the UI thread when a reply is received, the
+     * and invokes a default {@link ResponseListener} on the default {@link
+     * java.util.concurrent.Executor} of this {@link Interpreter} (the UI thread unless stated
+     * otherwise) when a reply is received, the
      * request times out, or an error occurs.
      *
      * @param request
      *         the {@link com.lukeleber.scandroid.interpreter.Request} to send over this {@link Interpreter}
      *
+     * @return a {@link RequestHandle} through which the request may be cancelled
+     *
      * @since 1.0
      */
-    <V> void sendRequest(Request<V> request);
+    <V> RequestHandle sendRequest(Request<V> request);
 
     /**
      * Sends an asynchronous request over this {@link Interpreter}
-     * and invokes the provided {@link ResponseListener} on the UI thread when a reply is received,
-     * the request times out, or an error occurs.
+     * and invokes a default {@link ResponseListener} on the provided {@link
+     * java.util.concurrent.Executor} when a reply is received, the request times out, or an error
+     * occurs.
+     *
+     * @param request
+     *         the {@link com.lukeleber.scandroid.interpreter.Request} to send over this {@link Interpreter}
+     * @param executor
+     *         the {@link java.util.concurrent.Executor} to invoke the listener on (see {@link
+     *         CallbackExecutors})
+     *
+     * @return a {@link RequestHandle} through which the request may be cancelled
+     */
+    <V> RequestHandle sendRequest(Request<V> request, Executor executor);
+
+    /**
+     * Sends an asynchronous request over this {@link Interpreter}
+     * and invokes the provided {@link ResponseListener} on the default {@link
+     * java.util.concurrent.Executor} of this {@link Interpreter} (the UI thread unless stated
+     * otherwise) when a reply is received, the request times out, or an error occurs.
      *
      * @param request
      *         the {@link com.lukeleber.scandroid.interpreter.Request} to send over this {@link Interpreter}
      * @param listener
      *         the {@link ResponseListener} to handle the reply from the remote hardware
      *
+     * @return a {@link RequestHandle} through which the request may be cancelled
+     *
      * @since 1.0
      */
-    <V> void sendRequest(Request<V> request, ResponseListener<?> listener);
+    <V> RequestHandle sendRequest(Request<V> request, ResponseListener<?> listener);
+
+    /**
+     * Sends an asynchronous request over this {@link Interpreter}
+     * and invokes the provided {@link ResponseListener} on the provided {@link
+     * java.util.concurrent.Executor} when a reply is received, the request times out, or an error
+     * occurs.  Listeners that never touch views (such as loggers) should use a background
+     * executor so that they do not compete with rendering for the UI thread.
+     *
+     * @param request
+     *         the {@link com.lukeleber.scandroid.interpreter.Request} to send over this {@link Interpreter}
+     * @param listener
+     *         the {@link ResponseListener} to handle the reply from the remote hardware
+     * @param executor
+     *         the {@link java.util.concurrent.Executor} to invoke the listener on (see {@link
+     *         CallbackExecutors})
+     *
+     * @return a {@link RequestHandle} through which the request may be cancelled
+     */
+    <V> RequestHandle sendRequest(Request<V> request, ResponseListener<?> listener,
+                                  Executor executor);
+
+    /**
+     * Requests the provided {@link com.lukeleber.scandroid.sae.j1979.PID} under the provided
+     * {@link com.lukeleber.scandroid.sae.j1979.Service} (in its default unit) over this {@link
+     * Interpreter}, as a {@link RequestFuture} that can be composed with others.  Handlers of the
+     * future run on the default {@link java.util.concurrent.Executor} of this {@link Interpreter}.
+     *
+     * @param service
+     *         the {@link com.lukeleber.scandroid.sae.j1979.Service} to request the PID under
+     * @param pid
+     *         the {@link com.lukeleber.scandroid.sae.j1979.PID} to request
+     *
+     * @return the future value of the PID; cancelling it cancels the request
+     */
+    <T> RequestFuture<T> submit(Service service, PID<T> pid);
+
+    /**
+     * Requests the provided {@link com.lukeleber.scandroid.sae.j1979.PID} under the provided
+     * {@link com.lukeleber.scandroid.sae.j1979.Service} (in the provided unit) over this {@link
+     * Interpreter}, as a {@link RequestFuture} that can be composed with others.  Handlers of the
+     * future run on the default {@link java.util.concurrent.Executor} of this {@link Interpreter}.
+     *
+     * @param service
+     *         the {@link com.lukeleber.scandroid.sae.j1979.Service} to request the PID under
+     * @param pid
+     *         the {@link com.lukeleber.scandroid.sae.j1979.PID} to request
+     * @param unit
+     *         the {@link com.lukeleber.scandroid.util.Unit} to decode the PID in
+     *
+     * @return the future value of the PID; cancelling it cancels the request
+     */
+    <T> RequestFuture<T> submit(Service service, PID<T> pid, Unit unit);
+
+    /**
+     * Broadcasts a request for the provided {@link com.lukeleber.scandroid.sae.j1979.PID} under the
+     * provided {@link com.lukeleber.scandroid.sae.j1979.Service} (in its default unit) and collects
+     * the answer of every ECU that answers it (see {@link MultiEcuServiceRequest}).  Handlers of
+     * the future run on the default {@link java.util.concurrent.Executor} of this {@link
+     * Interpreter}.
+     *
+     * @param service
+     *         the {@link com.lukeleber.scandroid.sae.j1979.Service} to request the PID under
+     * @param pid
+     *         the {@link com.lukeleber.scandroid.sae.j1979.PID} to request
+     *
+     * @return the future answers of the ECUs (in {@link EcuAddress} order); it fails with {@link
+     * FailureCode#REQUEST_NOT_SUPPORTED} if no ECU answered or if this {@link Interpreter} can't
+     * tell the answers apart
+     */
+    <T> RequestFuture<Map<EcuAddress, T>> submitToAll(Service service, PID<T> pid);
+
+    /**
+     * Finds the ECUs that answer a broadcast request for the PIDs supported by service $01, so that
+     * later requests may be addressed to one of them (see {@link Request#setTarget(EcuAddress)}).
+     * Handlers of the future run on the default {@link java.util.concurrent.Executor} of this
+     * {@link Interpreter}.
+     *
+     * @return the future addresses of the ECUs that answered (in {@link EcuAddress} order); the
+     * list is empty if the vehicle does not support physical addressing, and the future fails with
+     * {@link FailureCode#REQUEST_NOT_SUPPORTED} if this {@link Interpreter} does not
+     */
+    RequestFuture<List<EcuAddress>> findResponders();
 
     void addErrorListener(ErrorListener listener);
 
@@ -126,6 +257,10 @@ public interface Interpreter
 
     void addShutdownListener(ShutdownListener listener);
 
+    void addLinkListener(LinkListener listener);
+
+    void removeLinkListener(LinkListener listener);
+
     /**
      * Asynchronously starts this {@link Interpreter}
      *
@@ -140,7 +275,29 @@ public interface Interpreter
      */
     boolean stop();
 
+    /**
+     * Retrieves the mean time between sending a request and receiving its reply
+     *
+     * @return the mean latency (in milliseconds), or zero if no request has completed yet
+     */
     long getAverageLatency();
 
+    /**
+     * Retrieves the performance counters of this {@link Interpreter}
+     *
+     * @return the {@link com.lukeleber.scandroid.interpreter.metrics.InterpreterMetrics} of this
+     * {@link Interpreter}
+     */
+    InterpreterMetrics getMetrics();
+
+    /**
+     * Retrieves how full the request queue of this {@link Interpreter} is.  Producers that send
+     * periodically should slow down as this rises, since a full queue drops or holds up requests
+     * (see {@link BoundedRequestScheduler}).
+     *
+     * @return the fraction (between 0 and 1) of the capacity of the request queue that is in use
+     */
+    double getQueuePressure();
+
     LinkStatus getLinkStatus();
 }
@@ -0,0 +1,121 @@
+// This file is protected under the KILLGPL.
+// For more information, visit http://www.lukeleber.github.io/KILLGPL.html
+//
+// Copyright (c) Luke Leber <LukeLeber@gmail.com>
+
+package com.lukeleber.scandroid.interpreter;
+
+import com.lukeleber.scandroid.sae.j1979.PID;
+import com.lukeleber.scandroid.sae.j1979.Service;
+import com.lukeleber.scandroid.util.Unit;
+
+import java.util.Map;
+
+/**
+ * <p>A request for a single {@link com.lukeleber.scandroid.sae.j1979.PID} that is broadcast to
+ * every ECU, and whose {@link Handler} receives the answer of each ECU that answered, by {@link
+ * EcuAddress}.  Where a {@link ServiceRequest} takes the first answer and drops the rest, a single
+ * MultiEcuServiceRequest collects the data of every module on the bus (the PIDs that each one
+ * supports, for example) in one round trip.</p>
+ * <p/>
+ * <p>An ECU whose answer can't be unmarshalled is left out of the map.  The request fails with
+ * {@link FailureCode#REQUEST_NOT_SUPPORTED} if no ECU answered (or if the interpreter can't tell
+ * the answers apart), and with {@link FailureCode#UNRECOGNIZED_RESPONSE} if none of the answers
+ * could be understood.</p>
+ *
+ * @param <T>
+ *         the type of the value that each ECU answers with
+ */
+public class MultiEcuServiceRequest<T>
+        extends Request<Map<EcuAddress, T>>
+{
+    /// The {@link com.lukeleber.scandroid.sae.j1979.Service} that this request is sent for
+    private final Service service;
+
+    /// The {@link com.lukeleber.scandroid.sae.j1979.PID} that is being requested
+    private final PID<T> pid;
+
+    /// The {@link com.lukeleber.scandroid.util.Unit} whose unmarshaller should be called
+    private final Unit preferredUnit;
+
+    /**
+     * Constructs a MultiEcuServiceRequest that decodes the answers in the default unit of the
+     * PID.  This constructor is equivalent to <code>MultiEcuServiceRequest(service, pid, handler,
+     * pid.getDefaultUnit());</code>
+     *
+     * @param service
+     *         the {@link com.lukeleber.scandroid.sae.j1979.Service} that this request is sent for
+     * @param pid
+     *         the {@link com.lukeleber.scandroid.sae.j1979.PID} that is being requested
+     * @param handler
+     *         the {@link Handler} that receives the answer of each ECU
+     */
+    public MultiEcuServiceRequest(Service service, PID<T> pid, Handler<Map<EcuAddress, T>> handler)
+    {
+        this(service, pid, handler, pid.getDefaultUnit());
+    }
+
+    /**
+     * Constructs a MultiEcuServiceRequest
+     *
+     * @param service
+     *         the {@link com.lukeleber.scandroid.sae.j1979.Service} that this request is sent for
+     * @param pid
+     *         the {@link com.lukeleber.scandroid.sae.j1979.PID} that is being requested
+     * @param handler
+     *         the {@link Handler} that receives the answer of each ECU
+     * @param preferredUnit
+     *         the {@link com.lukeleber.scandroid.util.Unit} whose unmarshaller should be called
+     */
+    public MultiEcuServiceRequest(Service service, PID<T> pid, Handler<Map<EcuAddress, T>> handler,
+                                  Unit preferredUnit)
+    {
+        super(handler);
+        this.service = service;
+        this.pid = pid;
+        this.preferredUnit = preferredUnit;
+    }
+
+    /**
+     * Retrieves the {@link com.lukeleber.scandroid.sae.j1979.Service} that this request is sent for
+     *
+     * @return the {@link com.lukeleber.scandroid.sae.j1979.Service} that this request is sent for
+     */
+    public final Service getService()
+    {
+        return service;
+    }
+
+    /**
+     * Retrieves the {@link com.lukeleber.scandroid.sae.j1979.PID} that is being requested
+     *
+     * @return the {@link com.lukeleber.scandroid.sae.j1979.PID} that is being requested
+     */
+    public final PID<T> getPID()
+    {
+        return pid;
+    }
+
+    /**
+     * Retrieves the {@link com.lukeleber.scandroid.sae.j1979.PID.Unmarshaller} that decodes the
+     * answer of a single ECU
+     *
+     * @return the {@link com.lukeleber.scandroid.sae.j1979.PID.Unmarshaller} of each answer
+     */
+    public final PID.Unmarshaller<T> getAnswerUnmarshaller()
+    {
+        return pid.getUnmarshallerForUnit(preferredUnit);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The answers are not unmarshalled as a whole, so this always returns null; see {@link
+     * #getAnswerUnmarshaller()}.
+     */
+    @Override
+    public final PID.Unmarshaller<Map<EcuAddress, T>> getUnmarshaller()
+    {
+        return null;
+    }
+}
@@ -0,0 +1,301 @@
+// This file is protected under the KILLGPL.
+// For more information, visit http://www.lukeleber.github.io/KILLGPL.html
+//
+// Copyright (c) Luke Leber <LukeLeber@gmail.com>
+
+package com.lukeleber.scandroid.interpreter;
+
+import com.lukeleber.scandroid.interpreter.metrics.RequestTrace;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link Request} that has been sent over an {@link AbstractInterpreter} but not yet written to
+ * the remote hardware, paired with the {@link ResponseListener} that will receive its reply.
+ * <p/>
+ * Requests that ask for exactly the same thing while this one is still waiting may be coalesced
+ * into it as <i>followers</i>; the single reply is then shared with each of them.
+ * <p/>
+ * A PendingRequest is also the {@link RequestHandle} that is returned to the sender, and moves
+ * through the states WAITING, WRITING and DONE, or to CANCELLED from either of the first two.
+ *
+ * @param <U>
+ *         the type of data that is received over the interpreter
+ */
+public final class PendingRequest<U>
+        implements RequestHandle
+{
+    /// The request is waiting to be written
+    private final static int WAITING = 0;
+
+    /// The request has been taken by the I/O thread
+    private final static int WRITING = 1;
+
+    /// The listener of the request has been invoked
+    private final static int DONE = 2;
+
+    /// The request was cancelled
+    private final static int CANCELLED = 3;
+
+    /// The interpreter that the request was sent over (may be null)
+    private final AbstractInterpreter<U> owner;
+
+    /// The request that was sent
+    private final Request<?> request;
+
+    /// The listener that will receive the reply to the request
+    private final ResponseListener<U> listener;
+
+    /// The executor that the listener is invoked on
+    private final Executor executor;
+
+    /// The order in which this request was sent (used to break ties between equal keys)
+    private final long sequence;
+
+    /// The nano-time at which this request entered the queue
+    private final long enqueueTime;
+
+    /// The unix timestamp by which this request should have been serviced
+    private final long absoluteDeadline;
+
+    /// The stages that this request has been through
+    private final RequestTrace trace;
+
+    /// The requests that have been coalesced into this one (lazily created)
+    private List<PendingRequest<U>> followers;
+
+    /// The current state of this request
+    private final AtomicInteger state = new AtomicInteger(WAITING);
+
+    /**
+     * Constructs a PendingRequest
+     *
+     * @param request
+     *         the request that was sent
+     * @param listener
+     *         the listener that will receive the reply to the request
+     * @param sequence
+     *         the order in which this request was sent
+     */
+    PendingRequest(Request<?> request, ResponseListener<U> listener, long sequence)
+    {
+        this(null, request, listener, CallbackExecutors.direct(), sequence);
+    }
+
+    /**
+     * Constructs a PendingRequest that notifies the provided interpreter when it is cancelled
+     *
+     * @param owner
+     *         the interpreter that the request was sent over
+     * @param request
+     *         the request that was sent
+     * @param listener
+     *         the listener that will receive the reply to the request
+     * @param executor
+     *         the {@link java.util.concurrent.Executor} that the listener is invoked on
+     * @param sequence
+     *         the order in which this request was sent
+     */
+    PendingRequest(AbstractInterpreter<U> owner, Request<?> request, ResponseListener<U> listener,
+                   Executor executor, long sequence)
+    {
+        this.owner = owner;
+        this.request = request;
+        this.listener = listener;
+        this.executor = executor;
+        this.sequence = sequence;
+        this.enqueueTime = System.nanoTime();
+        long now = System.currentTimeMillis();
+        long deadline = now + request.getDeadline();
+        this.absoluteDeadline = deadline < now ? Long.MAX_VALUE : deadline; /// Saturate on overflow
+        this.trace = new RequestTrace(sequence, request, enqueueTime);
+    }
+
+    /**
+     * Retrieves the request that was sent
+     *
+     * @return the request that was sent
+     */
+    public Request<?> getRequest()
+    {
+        return request;
+    }
+
+    /**
+     * Retrieves the listener that will receive the reply to the request
+     *
+     * @return the listener that will receive the reply to the request
+     */
+    public ResponseListener<U> getListener()
+    {
+        return listener;
+    }
+
+    /**
+     * Retrieves the {@link java.util.concurrent.Executor} that the listener is invoked on
+     *
+     * @return the {@link java.util.concurrent.Executor} that the listener is invoked on
+     */
+    public Executor getExecutor()
+    {
+        return executor;
+    }
+
+    /**
+     * Retrieves the order in which this request was sent; requests sent earlier have lower
+     * sequence numbers
+     *
+     * @return the order in which this request was sent
+     */
+    public long getSequence()
+    {
+        return sequence;
+    }
+
+    /**
+     * Retrieves the {@link System#nanoTime() nano-time} at which this request entered the queue
+     *
+     * @return the nano-time at which this request entered the queue
+     */
+    public long getEnqueueTime()
+    {
+        return enqueueTime;
+    }
+
+    /**
+     * Retrieves the unix timestamp by which this request should have been serviced: the time at
+     * which it was sent plus the {@link Request#getDeadline() deadline} of its request.  This is
+     * fixed when the request is sent, so sending the same request again while this one is still
+     * waiting leaves the order of the waiting requests alone.  It is the ordering key of
+     * earliest-deadline-first scheduling.
+     *
+     * @return the unix timestamp by which this request should have been serviced
+     */
+    public long getAbsoluteDeadline()
+    {
+        return absoluteDeadline;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RequestTrace getTrace()
+    {
+        return trace;
+    }
+
+    /**
+     * Coalesces another request into this one so that it shares the reply to this request
+     *
+     * @param follower
+     *         the request to coalesce into this one
+     */
+    void addFollower(PendingRequest<U> follower)
+    {
+        if (followers == null)
+        {
+            followers = new ArrayList<>(2);
+        }
+        followers.add(follower);
+    }
+
+    /**
+     * Retrieves the requests that have been coalesced into this one
+     *
+     * @return the requests that have been coalesced into this one (never null)
+     */
+    public List<PendingRequest<U>> getFollowers()
+    {
+        return followers == null ? Collections.<PendingRequest<U>>emptyList() : followers;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean cancel()
+    {
+        while (true)
+        {
+            int current = state.get();
+            if (current == DONE || current == CANCELLED)
+            {
+                return false;
+            }
+            if (state.compareAndSet(current, CANCELLED))
+            {
+                if (current == WAITING && owner != null)
+                {
+                    owner.onCancelled(this);
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isCancelled()
+    {
+        return state.get() == CANCELLED;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isDone()
+    {
+        int current = state.get();
+        return current == DONE || current == CANCELLED;
+    }
+
+    /**
+     * Marks this request as taken by the I/O thread
+     *
+     * @return true if this request is still wanted, or false if it was cancelled
+     */
+    boolean beginWrite()
+    {
+        return state.compareAndSet(WAITING, WRITING);
+    }
+
+    /**
+     * Marks this request as done, just before its listener is invoked
+     *
+     * @return true if the listener should be invoked, or false if this request was cancelled
+     */
+    boolean complete()
+    {
+        return state.compareAndSet(WRITING, DONE);
+    }
+
+    /**
+     * Is this request, or any of its followers, still wanted?
+     *
+     * @return true if this request or any of its followers has not been cancelled
+     */
+    boolean isWanted()
+    {
+        if (!isCancelled())
+        {
+            return true;
+        }
+        for (int i = 0; i < getFollowers().size(); ++i)
+        {
+            if (!followers.get(i)
+                          .isCancelled())
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
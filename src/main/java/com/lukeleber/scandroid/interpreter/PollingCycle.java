@@ -0,0 +1,111 @@
+// This file is protected under the KILLGPL.
+// For more information, visit http://www.lukeleber.github.io/KILLGPL.html
+//
+// Copyright (c) Luke Leber <LukeLeber@gmail.com>
+
+package com.lukeleber.scandroid.interpreter;
+
+import com.lukeleber.scandroid.interpreter.elm327.Protocol;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * <p>A set of service requests that is sent over and over, such as the parameters that are shown
+ * by a live datastream.  The requests are {@link BatchServiceRequest#batch(Protocol, List)
+ * batched} the first time that the cycle is sent after its members changed, and every cycle after
+ * that sends the very same {@link ServiceRequest} and {@link BatchServiceRequest} instances again,
+ * so polling creates no garbage and interpreters may keep what they compiled for each request
+ * (see {@link Request#attach(Interpreter, Object)}).</p>
+ * <p/>
+ * <p>Instances are not thread safe; the members must not change while a cycle is being sent.</p>
+ */
+public final class PollingCycle
+{
+    /// The protocol that the vehicle communicates over (may be null if unknown)
+    private final Protocol protocol;
+
+    /// The requests that make up the cycle
+    private final List<ServiceRequest<?>> members = new ArrayList<>();
+
+    /// What is sent every cycle, or null if the members changed since it was last built
+    private List<Request<?>> requests;
+
+    /**
+     * Constructs an empty PollingCycle
+     *
+     * @param protocol
+     *         the {@link com.lukeleber.scandroid.interpreter.elm327.Protocol} that the vehicle
+     *         communicates over (may be null if unknown)
+     */
+    public PollingCycle(Protocol protocol)
+    {
+        this.protocol = protocol;
+    }
+
+    /**
+     * Adds a request to this cycle
+     *
+     * @param request
+     *         the request to send every cycle
+     */
+    public void add(ServiceRequest<?> request)
+    {
+        members.add(request);
+        requests = null;
+    }
+
+    /**
+     * Removes every request from this cycle
+     */
+    public void clear()
+    {
+        members.clear();
+        requests = null;
+    }
+
+    /**
+     * Retrieves the number of requests in this cycle, each of which is answered exactly once per
+     * cycle (whether or not it was batched)
+     *
+     * @return the number of requests in this cycle
+     */
+    public int size()
+    {
+        return members.size();
+    }
+
+    /**
+     * Retrieves what is sent every cycle, batching the requests of this cycle if they changed
+     * since the last time
+     *
+     * @return the requests (and batches) that are sent every cycle
+     */
+    public List<Request<?>> getRequests()
+    {
+        if (requests == null)
+        {
+            requests = Collections.unmodifiableList(BatchServiceRequest.batch(protocol, members));
+        }
+        return requests;
+    }
+
+    /**
+     * Sends every request of this cycle over the provided interpreter
+     *
+     * @param interpreter
+     *         the {@link Interpreter} to send the requests over
+     * @param executor
+     *         the {@link java.util.concurrent.Executor} that the handlers are invoked on
+     */
+    public void send(Interpreter interpreter, Executor executor)
+    {
+        List<Request<?>> toSend = getRequests();
+        for (int i = 0; i < toSend.size(); ++i)
+        {
+            interpreter.sendRequest(toSend.get(i), executor);
+        }
+    }
+}
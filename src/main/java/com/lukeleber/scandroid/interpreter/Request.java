@@ -8,7 +8,12 @@ package com.lukeleber.scandroid.interpreter;
 import com.lukeleber.scandroid.sae.j1979.PID;
 
 /**
- * A common base class for all requests that may be sent over an interpreter.
+ * <p>A common base class for all requests that may be sent over an interpreter.</p>
+ * <p/>
+ * <p>A request may be sent again once its previous reply has been handled, and its deadline then
+ * starts over.  Polling loops build their requests (and bind their handlers) once and resend them
+ * every cycle, so that interpreters can also keep whatever they compiled the request into (see
+ * {@link #attach(Interpreter, Object)}) and the steady state creates no garbage.</p>
  *
  * @param <T>
  *         the type of data that represents the serializable content of this request
@@ -16,9 +21,86 @@ import com.lukeleber.scandroid.sae.j1979.PID;
 @SuppressWarnings("unused")
 public abstract class Request<T>
 {
+    /**
+     * The urgency of a request.  Higher priorities are always serviced first, unless a lower
+     * priority request has been waiting for so long that it must be serviced to avoid starvation
+     * (see {@link DeadlineRequestScheduler}).  Each priority carries a default deadline that is
+     * used when a request does not specify its own.
+     */
+    public enum Priority
+    {
+        /// Explicit user actions (clearing codes, reading the supply voltage, ...)
+        INTERACTIVE(100),
+
+        /// The default priority
+        NORMAL(1000),
+
+        /// Periodic polling (the live datastream, for example)
+        BACKGROUND(5000);
+
+        /// The default deadline (in milliseconds) of requests of this priority
+        private final long defaultDeadline;
+
+        Priority(long defaultDeadline)
+        {
+            this.defaultDeadline = defaultDeadline;
+        }
+
+        /**
+         * Retrieves the default deadline (in milliseconds, relative to the creation of the
+         * request) of requests of this priority
+         *
+         * @return the default deadline of requests of this priority
+         */
+        public final long getDefaultDeadline()
+        {
+            return defaultDeadline;
+        }
+    }
+
+    /// Indicates that a request uses the default deadline of its priority
+    public final static long DEFAULT_DEADLINE = -1;
+
+    /// The default number of milliseconds to wait for a reply once a request has been written
+    public final static long DEFAULT_TIMEOUT = 10000;
+
+    /// Indicates that a request waits for its reply indefinitely
+    public final static long NO_TIMEOUT = 0;
+
+    /// An interpreter paired with what it attached to a request
+    private final static class Attachment
+    {
+        /// The interpreter that made the attachment
+        final Interpreter owner;
+
+        /// What was attached
+        final Object value;
+
+        Attachment(Interpreter owner, Object value)
+        {
+            this.owner = owner;
+            this.value = value;
+        }
+    }
+
     /// The unix timestamp marking the creation of this request
     private final long timestamp;
 
+    /// What an interpreter attached to this request, or null
+    private volatile Attachment attachment;
+
+    /// The urgency of this request
+    private Priority priority = Priority.NORMAL;
+
+    /// The deadline (in milliseconds, relative to each time that it is sent) of this request
+    private long deadline = DEFAULT_DEADLINE;
+
+    /// The number of milliseconds to wait for a reply once this request has been written
+    private long timeout = DEFAULT_TIMEOUT;
+
+    /// The ECU that this request is addressed to, or null if it is broadcast to all of them
+    private EcuAddress target;
+
     /// The {@link killgpl.scandroid.interpreter.Handler} for this request
     private final Handler<T> handler;
 
@@ -49,10 +131,161 @@ public abstract class Request<T>
         return handler;
     }
 
+    /**
+     * Retrieves the unix timestamp at which this request was created
+     *
+     * @return the unix timestamp at which this request was created
+     */
     public final long getTimestamp()
     {
         return timestamp;
     }
 
+    /**
+     * Attaches an interpreter-specific object to this request, such as its compiled wire form,
+     * replacing anything attached by any interpreter before
+     *
+     * @param owner
+     *         the interpreter that makes the attachment
+     * @param value
+     *         what to attach
+     */
+    public final void attach(Interpreter owner, Object value)
+    {
+        attachment = new Attachment(owner, value);
+    }
+
+    /**
+     * Retrieves what the provided interpreter attached to this request
+     *
+     * @param owner
+     *         the interpreter that made the attachment
+     *
+     * @return what the provided interpreter attached to this request, or null if it attached
+     * nothing (or another interpreter attached something since)
+     */
+    public final Object getAttachment(Interpreter owner)
+    {
+        Attachment current = attachment;
+        return current != null && current.owner == owner ? current.value : null;
+    }
+
+    /**
+     * Retrieves the {@link Priority} of this request
+     *
+     * @return the {@link Priority} of this request
+     */
+    public final Priority getPriority()
+    {
+        return priority;
+    }
+
+    /**
+     * Sets the {@link Priority} of this request.  This must be done before the request is sent.
+     *
+     * @param priority
+     *         the {@link Priority} of this request
+     *
+     * @return this request (for chaining)
+     */
+    public final Request<T> setPriority(Priority priority)
+    {
+        if (priority == null)
+        {
+            throw new IllegalArgumentException("priority == null");
+        }
+        this.priority = priority;
+        return this;
+    }
+
+    /**
+     * Retrieves the deadline of this request in milliseconds relative to the time at which it is
+     * sent.  A request that is sent over and over again gets a fresh deadline each time (see
+     * {@link PendingRequest#getAbsoluteDeadline()}).
+     *
+     * @return the deadline of this request in milliseconds relative to the time it is sent
+     */
+    public final long getDeadline()
+    {
+        return deadline == DEFAULT_DEADLINE ? priority.getDefaultDeadline() : deadline;
+    }
+
+    /**
+     * Sets the deadline of this request.  This must be done before the request is sent.
+     *
+     * @param deadline
+     *         the deadline in milliseconds relative to the time at which this request is sent, or
+     *         {@link #DEFAULT_DEADLINE} to use the default of its {@link Priority}
+     *
+     * @return this request (for chaining)
+     */
+    public final Request<T> setDeadline(long deadline)
+    {
+        if (deadline < 0 && deadline != DEFAULT_DEADLINE)
+        {
+            throw new IllegalArgumentException("deadline < 0");
+        }
+        this.deadline = deadline;
+        return this;
+    }
+
+    /**
+     * Retrieves the number of milliseconds to wait for a reply once this request has been written
+     * to the remote hardware
+     *
+     * @return the timeout of this request in milliseconds, or {@link #NO_TIMEOUT}
+     */
+    public final long getTimeout()
+    {
+        return timeout;
+    }
+
+    /**
+     * Sets the number of milliseconds to wait for a reply once this request has been written to
+     * the remote hardware.  A request whose reply does not arrive in time fails with {@link
+     * FailureCode#REQUEST_TIMED_OUT}.  This must be done before the request is sent.
+     *
+     * @param timeout
+     *         the timeout of this request in milliseconds, or {@link #NO_TIMEOUT}
+     *
+     * @return this request (for chaining)
+     */
+    public final Request<T> setTimeout(long timeout)
+    {
+        if (timeout < 0)
+        {
+            throw new IllegalArgumentException("timeout < 0");
+        }
+        this.timeout = timeout;
+        return this;
+    }
+
+    /**
+     * Retrieves the ECU that this request is addressed to
+     *
+     * @return the {@link EcuAddress} of the ECU, or null if this request is broadcast to all ECUs
+     */
+    public final EcuAddress getTarget()
+    {
+        return target;
+    }
+
+    /**
+     * Addresses this request to a single ECU rather than broadcasting it to all of them.  Only
+     * requests to the vehicle honour the target, and only on interpreters (and vehicles) that
+     * support physical addressing; elsewhere the request is broadcast as usual.  This must be done
+     * before the request is sent.
+     *
+     * @param target
+     *         the {@link EcuAddress} of the ECU, or null to broadcast this request
+     *
+     * @return this request (for chaining)
+     */
+    public final Request<T> setTarget(EcuAddress target)
+    {
+        this.target = target;
+        return this;
+    }
+
     public abstract PID.Unmarshaller<T> getUnmarshaller();
 }
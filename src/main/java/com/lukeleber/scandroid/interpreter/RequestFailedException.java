@@ -0,0 +1,53 @@
+// This file is protected under the KILLGPL.
+// For more information, visit http://www.lukeleber.github.io/KILLGPL.html
+//
+// Copyright (c) Luke Leber <LukeLeber@gmail.com>
+
+package com.lukeleber.scandroid.interpreter;
+
+/**
+ * Thrown (as the cause of a {@link java.util.concurrent.ExecutionException}) by {@link
+ * RequestFuture#get()} when the request failed
+ */
+public class RequestFailedException
+        extends Exception
+{
+    /// The reason that the request failed
+    private final FailureCode code;
+
+    /**
+     * Constructs a RequestFailedException
+     *
+     * @param code
+     *         the reason that the request failed
+     */
+    public RequestFailedException(FailureCode code)
+    {
+        super(String.valueOf(code));
+        this.code = code;
+    }
+
+    /**
+     * Constructs a RequestFailedException
+     *
+     * @param code
+     *         the reason that the request failed
+     * @param cause
+     *         the exception that made it fail, or null
+     */
+    public RequestFailedException(FailureCode code, Throwable cause)
+    {
+        super(String.valueOf(code), cause);
+        this.code = code;
+    }
+
+    /**
+     * Retrieves the reason that the request failed
+     *
+     * @return the reason that the request failed
+     */
+    public FailureCode getFailureCode()
+    {
+        return code;
+    }
+}
@@ -0,0 +1,834 @@
+// This file is protected under the KILLGPL.
+// For more information, visit http://www.lukeleber.github.io/KILLGPL.html
+//
+// Copyright (c) Luke Leber <LukeLeber@gmail.com>
+
+package com.lukeleber.scandroid.interpreter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>The eventual outcome of one or more requests, as a composable alternative to chaining {@link
+ * Handler Handlers} by hand (see {@link Interpreter#submit(com.lukeleber.scandroid.sae.j1979.Service,
+ * com.lukeleber.scandroid.sae.j1979.PID)}).  Procedures of several requests are built with
+ * {@link #then(Transform)} (one after another), {@link #all(List)} and {@link #any(List)} (side by
+ * side, so that the requests can share the bus), and bounded with {@link #withTimeout(long,
+ * TimeUnit)}:</p>
+ * <pre>
+ *     RequestFuture.all(Arrays.asList(interpreter.submit(Service.LIVE_DATASTREAM, ENGINE_SPEED),
+ *                                     interpreter.submit(Service.LIVE_DATASTREAM, VEHICLE_SPEED)))
+ *                  .withTimeout(2, TimeUnit.SECONDS)
+ *                  .handle(new Handler&lt;List&lt;Object&gt;&gt;() { ... });
+ * </pre>
+ * <p>Handlers and {@link Transform Transforms} run on the {@link java.util.concurrent.Executor}
+ * of the future (for futures made by an interpreter, the one that its listeners run on by
+ * default), and a future that is derived from another inherits its executor.  A future is also a
+ * {@link Handler}, so it can be completed by hand or handed to a request in place of one.
+ * Headless code may simply block in {@link #get()}, so long as it is not on the thread that the
+ * future is completed on.</p>
+ * <p/>
+ * <p>Cancelling a future cancels the request (or the futures) that it is waiting on; a cancelled
+ * future never invokes its handlers.</p>
+ *
+ * @param <T>
+ *         the type of the value
+ */
+public final class RequestFuture<T>
+        implements Future<T>, Handler<T>
+{
+    /**
+     * A step in a procedure, applied to the value of a future
+     *
+     * @param <A>
+     *         the type of the value that is applied to
+     * @param <B>
+     *         the type of the result
+     */
+    public interface Transform<A, B>
+    {
+        /**
+         * Applies this step to the provided value
+         *
+         * @param value
+         *         the value of the future
+         *
+         * @return the result
+         */
+        B apply(A value);
+    }
+
+    /// The future has not completed
+    private final static int PENDING = 0;
+
+    /// The future completed with a value
+    private final static int SUCCEEDED = 1;
+
+    /// The future completed with a failure
+    private final static int FAILED = 2;
+
+    /// The future was cancelled
+    private final static int CANCELLED = 3;
+
+    /// Lazily holds the timer that enforces {@link #withTimeout(long, TimeUnit)}
+    private final static class TimerHolder
+    {
+        /// The timer; its thread is a daemon so that it never keeps a JVM alive
+        private final static ScheduledExecutorService INSTANCE =
+                Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+                {
+                    @Override
+                    public Thread newThread(Runnable r)
+                    {
+                        Thread t = new Thread(r, "RequestFuture-Timer");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+    }
+
+    /// The executor that handlers and transforms run on
+    private final Executor executor;
+
+    /// The state of this future (guarded by this)
+    private int state = PENDING;
+
+    /// The value (if this future succeeded)
+    private T value;
+
+    /// The reason for the failure (if this future failed)
+    private FailureCode failure;
+
+    /// The exception that made this future fail, if any (guarded by this)
+    private Throwable cause;
+
+    /// The request that this future is the outcome of, if any (guarded by this)
+    private RequestHandle handle;
+
+    /// The futures that this future is waiting on, if any (guarded by this)
+    private List<RequestFuture<?>> sources;
+
+    /// What to run once this future completes; null once it has (guarded by this)
+    private List<Runnable> completions = new ArrayList<>(2);
+
+    /**
+     * Constructs a RequestFuture whose handlers and transforms run on the provided {@link
+     * java.util.concurrent.Executor}
+     *
+     * @param executor
+     *         the executor that handlers and transforms run on (see {@link CallbackExecutors})
+     */
+    public RequestFuture(Executor executor)
+    {
+        this.executor = executor;
+    }
+
+    /**
+     * Creates a future that has already succeeded
+     *
+     * @param value
+     *         the value of the future
+     * @param <T>
+     *         the type of the value
+     *
+     * @return a future that has already succeeded
+     */
+    public static <T> RequestFuture<T> completed(T value)
+    {
+        RequestFuture<T> rv = new RequestFuture<>(CallbackExecutors.direct());
+        rv.onResponse(value);
+        return rv;
+    }
+
+    /**
+     * Creates a future that has already failed
+     *
+     * @param code
+     *         the reason for the failure
+     * @param <T>
+     *         the type of the value
+     *
+     * @return a future that has already failed
+     */
+    public static <T> RequestFuture<T> failed(FailureCode code)
+    {
+        RequestFuture<T> rv = new RequestFuture<>(CallbackExecutors.direct());
+        rv.onFailure(code);
+        return rv;
+    }
+
+    /**
+     * Creates a future that succeeds with the values of all of the provided futures (in the same
+     * order) once they have all succeeded, or fails as soon as any of them fails, cancelling the
+     * rest.  Its handlers run on the executor of the first future.
+     *
+     * @param futures
+     *         the futures to wait on
+     * @param <T>
+     *         the common type of their values
+     *
+     * @return a future of the values of all of the provided futures
+     */
+    public static <T> RequestFuture<List<T>> all(final List<? extends RequestFuture<? extends T>> futures)
+    {
+        final RequestFuture<List<T>> rv = new RequestFuture<>(executorOf(futures));
+        if (futures.isEmpty())
+        {
+            rv.onResponse(Collections.<T>emptyList());
+            return rv;
+        }
+        rv.waitOn(futures);
+        final Object[] values = new Object[futures.size()];
+        final AtomicInteger remaining = new AtomicInteger(values.length);
+        for (int i = 0; i < values.length; ++i)
+        {
+            final int index = i;
+            final RequestFuture<? extends T> future = futures.get(i);
+            future.whenComplete(new Runnable()
+            {
+                @Override
+                @SuppressWarnings("unchecked")
+                public void run()
+                {
+                    switch (future.state())
+                    {
+                        case SUCCEEDED:
+                            values[index] = future.value;
+                            if (remaining.decrementAndGet() == 0)
+                            {
+                                rv.onResponse((List<T>) Arrays.asList(values));
+                            }
+                            break;
+                        case FAILED:
+                            rv.completeAndCancelSources(FAILED, null, future.failure);
+                            break;
+                        default:
+                            rv.cancel(false);
+                            break;
+                    }
+                }
+            });
+        }
+        return rv;
+    }
+
+    /**
+     * Creates a future that succeeds with the value of the first of the provided futures to
+     * succeed, cancelling the rest, or fails (with the reason of the last failure) once they have
+     * all failed.  Its handlers run on the executor of the first future.
+     *
+     * @param futures
+     *         the futures to wait on
+     * @param <T>
+     *         the common type of their values
+     *
+     * @return a future of the value of the first of the provided futures to succeed
+     */
+    public static <T> RequestFuture<T> any(final List<? extends RequestFuture<? extends T>> futures)
+    {
+        final RequestFuture<T> rv = new RequestFuture<>(executorOf(futures));
+        if (futures.isEmpty())
+        {
+            rv.onFailure(FailureCode.REQUEST_NOT_SUPPORTED);
+            return rv;
+        }
+        rv.waitOn(futures);
+        final AtomicInteger remaining = new AtomicInteger(futures.size());
+        for (final RequestFuture<? extends T> future : futures)
+        {
+            future.whenComplete(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    int outcome = future.state();
+                    if (outcome == SUCCEEDED)
+                    {
+                        rv.completeAndCancelSources(SUCCEEDED, future.value, null);
+                    }
+                    else if (remaining.decrementAndGet() == 0)
+                    {
+                        if (outcome == FAILED)
+                        {
+                            rv.onFailure(future.failure);
+                        }
+                        else
+                        {
+                            rv.cancel(false);
+                        }
+                    }
+                }
+            });
+        }
+        return rv;
+    }
+
+    /**
+     * Creates a future of the result of applying the provided transform to the value of this
+     * future.  If this future fails (or is cancelled), so does the new one; if the transform
+     * throws, the new one fails with {@link FailureCode#TRANSFORM_FAILED} (see {@link
+     * #getFailureCause()}).
+     *
+     * @param transform
+     *         the transform to apply
+     * @param <R>
+     *         the type of the result
+     *
+     * @return a future of the result
+     */
+    public <R> RequestFuture<R> map(final Transform<? super T, ? extends R> transform)
+    {
+        final RequestFuture<R> rv = derive();
+        whenComplete(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (state() != SUCCEEDED)
+                {
+                    propagate(rv);
+                    return;
+                }
+                executor.execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        R result;
+                        try
+                        {
+                            result = transform.apply(value);
+                        }
+                        catch (RuntimeException re)
+                        {
+                            rv.fail(FailureCode.TRANSFORM_FAILED, re);
+                            return;
+                        }
+                        rv.onResponse(result);
+                    }
+                });
+            }
+        });
+        return rv;
+    }
+
+    /**
+     * Creates a future of the future that the provided transform starts with the value of this
+     * future; that is, the next step of a procedure.  If this future fails (or is cancelled), so
+     * does the new one, and the next step is never started.  If the transform throws, or returns
+     * null instead of a future, the new one fails with {@link FailureCode#TRANSFORM_FAILED} (see
+     * {@link #getFailureCause()}).
+     *
+     * @param transform
+     *         the transform that starts the next step
+     * @param <R>
+     *         the type of the result of the next step
+     *
+     * @return a future of the result of the next step
+     */
+    public <R> RequestFuture<R> then(final Transform<? super T, RequestFuture<R>> transform)
+    {
+        final RequestFuture<R> rv = derive();
+        whenComplete(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (state() != SUCCEEDED)
+                {
+                    propagate(rv);
+                    return;
+                }
+                executor.execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        final RequestFuture<R> next;
+                        try
+                        {
+                            next = transform.apply(value);
+                        }
+                        catch (RuntimeException re)
+                        {
+                            rv.fail(FailureCode.TRANSFORM_FAILED, re);
+                            return;
+                        }
+                        if (next == null)
+                        {
+                            rv.fail(FailureCode.TRANSFORM_FAILED, new NullPointerException(
+                                    "The next step of the procedure is null"));
+                            return;
+                        }
+                        rv.waitOn(Collections.singletonList(next));
+                        next.whenComplete(new Runnable()
+                        {
+                            @Override
+                            public void run()
+                            {
+                                next.propagate(rv);
+                            }
+                        });
+                    }
+                });
+            }
+        });
+        return rv;
+    }
+
+    /**
+     * Creates a future that succeeds with the provided fallback if this future fails for any
+     * reason
+     *
+     * @param fallback
+     *         the value to succeed with instead of failing
+     *
+     * @return a future that does not fail
+     */
+    public RequestFuture<T> orElse(T fallback)
+    {
+        return orElse(null, fallback);
+    }
+
+    /**
+     * Creates a future that succeeds with the provided fallback if this future fails for the
+     * provided reason (such as {@link FailureCode#REQUEST_NOT_SUPPORTED})
+     *
+     * @param code
+     *         the reason for the failure to recover from, or null to recover from any failure
+     * @param fallback
+     *         the value to succeed with instead of failing
+     *
+     * @return a future that does not fail for the provided reason
+     */
+    public RequestFuture<T> orElse(final FailureCode code, final T fallback)
+    {
+        final RequestFuture<T> rv = derive();
+        whenComplete(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (state() == FAILED && (code == null || code == failure))
+                {
+                    rv.onResponse(fallback);
+                }
+                else
+                {
+                    propagate(rv);
+                }
+            }
+        });
+        return rv;
+    }
+
+    /**
+     * Bounds this future in time: if it has not completed once the provided timeout has elapsed,
+     * it fails with {@link FailureCode#REQUEST_TIMED_OUT} and whatever it is waiting on is
+     * cancelled
+     *
+     * @param timeout
+     *         the longest that this future may take
+     * @param unit
+     *         the unit of the timeout
+     *
+     * @return this future
+     */
+    public RequestFuture<T> withTimeout(long timeout, TimeUnit unit)
+    {
+        final ScheduledFuture<?> timer = TimerHolder.INSTANCE.schedule(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                completeAndCancelSources(FAILED, null, FailureCode.REQUEST_TIMED_OUT);
+            }
+        }, timeout, unit);
+        whenComplete(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                timer.cancel(false);
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Hands the outcome of this future to the provided handler (on the executor of this future)
+     * once it is known.  The handler is not invoked if this future is cancelled.
+     *
+     * @param handler
+     *         the handler to invoke
+     *
+     * @return this future
+     */
+    public RequestFuture<T> handle(final Handler<? super T> handler)
+    {
+        whenComplete(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                final int outcome = state();
+                if (outcome == CANCELLED)
+                {
+                    return;
+                }
+                executor.execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        if (outcome == SUCCEEDED)
+                        {
+                            handler.onResponse(value);
+                        }
+                        else
+                        {
+                            handler.onFailure(failure);
+                        }
+                    }
+                });
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Completes this future with the provided value, unless it has already completed
+     *
+     * @param value
+     *         the value
+     */
+    @Override
+    public void onResponse(T value)
+    {
+        complete(SUCCEEDED, value, null);
+    }
+
+    /**
+     * Completes this future with the provided failure, unless it has already completed
+     *
+     * @param code
+     *         the reason for the failure
+     */
+    @Override
+    public void onFailure(FailureCode code)
+    {
+        complete(FAILED, null, code);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The request (or the futures) that this future is waiting on is cancelled as well.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning)
+    {
+        return completeAndCancelSources(CANCELLED, null, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean isCancelled()
+    {
+        return state == CANCELLED;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean isDone()
+    {
+        return state != PENDING;
+    }
+
+    /**
+     * Retrieves the reason that this future failed
+     *
+     * @return the reason that this future failed, or null if it has not (or not yet) failed
+     */
+    public synchronized FailureCode getFailureCode()
+    {
+        return failure;
+    }
+
+    /**
+     * Retrieves the exception that made this future fail, such as the one that a {@link
+     * Transform} threw
+     *
+     * @return the exception that made this future fail, or null if there is none
+     */
+    public synchronized Throwable getFailureCause()
+    {
+        return cause;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws java.util.concurrent.ExecutionException
+     *         if the future failed; the cause is a {@link RequestFailedException}
+     */
+    @Override
+    public synchronized T get()
+            throws
+            InterruptedException,
+            ExecutionException
+    {
+        while (state == PENDING)
+        {
+            wait();
+        }
+        return result();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws java.util.concurrent.ExecutionException
+     *         if the future failed; the cause is a {@link RequestFailedException}
+     */
+    @Override
+    public synchronized T get(long timeout, TimeUnit unit)
+            throws
+            InterruptedException,
+            ExecutionException,
+            TimeoutException
+    {
+        long remaining = unit.toNanos(timeout);
+        long deadline = System.nanoTime() + remaining;
+        while (state == PENDING)
+        {
+            if (remaining <= 0)
+            {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            remaining = deadline - System.nanoTime();
+        }
+        return result();
+    }
+
+    /**
+     * Ties this future to the request that it is the outcome of, so that cancelling it cancels
+     * the request
+     *
+     * @param handle
+     *         the handle of the request
+     */
+    void bind(RequestHandle handle)
+    {
+        boolean cancelled;
+        synchronized (this)
+        {
+            this.handle = handle;
+            cancelled = state == CANCELLED;
+        }
+        if (cancelled)
+        {
+            handle.cancel();
+        }
+    }
+
+    /// Retrieves the outcome of this future once it has completed; the caller holds the lock
+    private T result()
+            throws
+            ExecutionException
+    {
+        if (state == CANCELLED)
+        {
+            throw new CancellationException();
+        }
+        if (state == FAILED)
+        {
+            throw new ExecutionException(new RequestFailedException(failure, cause));
+        }
+        return value;
+    }
+
+    /// Retrieves the state of this future
+    private synchronized int state()
+    {
+        return state;
+    }
+
+    /// Moves this future out of PENDING and runs its completions; false if it had already left
+    private boolean complete(int outcome, T value, FailureCode failure)
+    {
+        List<Runnable> pending = settle(outcome, value, failure);
+        if (pending == null)
+        {
+            return false;
+        }
+        run(pending);
+        return true;
+    }
+
+    /// Fails this future with the provided reason and the exception behind it, unless it has
+    /// already completed
+    private void fail(FailureCode code, Throwable cause)
+    {
+        List<Runnable> pending;
+        synchronized (this)
+        {
+            pending = settle(FAILED, null, code);
+            if (pending != null)
+            {
+                this.cause = cause;
+            }
+        }
+        if (pending != null)
+        {
+            run(pending);
+        }
+    }
+
+    /// As {@link #complete}, but cancels what this future waits on before anything is told
+    private boolean completeAndCancelSources(int outcome, T value, FailureCode failure)
+    {
+        List<Runnable> pending = settle(outcome, value, failure);
+        if (pending == null)
+        {
+            return false;
+        }
+        cancelSources();
+        run(pending);
+        return true;
+    }
+
+    /// Moves this future out of PENDING; its completions (or null if it had already left)
+    private synchronized List<Runnable> settle(int outcome, T value, FailureCode failure)
+    {
+        if (state != PENDING)
+        {
+            return null;
+        }
+        this.state = outcome;
+        this.value = value;
+        this.failure = failure;
+        List<Runnable> pending = completions;
+        completions = null;
+        notifyAll();
+        return pending;
+    }
+
+    /// Runs the completions of this future
+    private static void run(List<Runnable> completions)
+    {
+        for (int i = 0; i < completions.size(); ++i)
+        {
+            completions.get(i)
+                       .run();
+        }
+    }
+
+    /// Runs the provided completion (on the completing thread) once this future has completed
+    private void whenComplete(Runnable completion)
+    {
+        synchronized (this)
+        {
+            if (completions != null)
+            {
+                completions.add(completion);
+                return;
+            }
+        }
+        completion.run();
+    }
+
+    /// Creates a future that waits on this one
+    private <R> RequestFuture<R> derive()
+    {
+        RequestFuture<R> rv = new RequestFuture<>(executor);
+        rv.waitOn(Collections.singletonList(this));
+        return rv;
+    }
+
+    /// Records the futures that this future waits on, and cancels them if it already was
+    private void waitOn(List<? extends RequestFuture<?>> futures)
+    {
+        boolean cancelled;
+        synchronized (this)
+        {
+            sources = new ArrayList<RequestFuture<?>>(futures);
+            cancelled = state == CANCELLED;
+        }
+        if (cancelled)
+        {
+            cancelSources();
+        }
+    }
+
+    /// Cancels the request and the futures that this future waits on
+    private void cancelSources()
+    {
+        RequestHandle h;
+        List<RequestFuture<?>> s;
+        synchronized (this)
+        {
+            h = handle;
+            s = sources;
+        }
+        if (h != null)
+        {
+            h.cancel();
+        }
+        if (s != null)
+        {
+            for (int i = 0; i < s.size(); ++i)
+            {
+                s.get(i)
+                 .cancel(false);
+            }
+        }
+    }
+
+    /// Hands the failure (or cancellation) of this completed future on to the provided one
+    @SuppressWarnings("unchecked")
+    private <R> void propagate(RequestFuture<R> target)
+    {
+        switch (state())
+        {
+            case SUCCEEDED:
+                target.onResponse((R) value);
+                break;
+            case FAILED:
+                target.fail(failure, getFailureCause());
+                break;
+            default:
+                target.cancel(false);
+                break;
+        }
+    }
+
+    /// Retrieves the executor of the first of the provided futures
+    private static Executor executorOf(List<? extends RequestFuture<?>> futures)
+    {
+        if (futures.isEmpty())
+        {
+            return CallbackExecutors.direct();
+        }
+        RequestFuture<?> first = futures.get(0);
+        return first.executor;
+    }
+}
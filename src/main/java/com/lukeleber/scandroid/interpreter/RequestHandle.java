@@ -0,0 +1,50 @@
+// This file is protected under the KILLGPL.
+// For more information, visit http://www.lukeleber.github.io/KILLGPL.html
+//
+// Copyright (c) Luke Leber <LukeLeber@gmail.com>
+
+package com.lukeleber.scandroid.interpreter;
+
+import com.lukeleber.scandroid.interpreter.metrics.RequestTrace;
+
+/**
+ * A handle to a {@link Request} that has been sent over an {@link Interpreter}, through which the
+ * request may be cancelled.
+ *
+ * @see Interpreter#sendRequest(Request)
+ */
+public interface RequestHandle
+{
+    /**
+     * Attempts to cancel the request.  A request that has not yet been written to the remote
+     * hardware is dropped altogether; a request that has already been written is left to finish,
+     * but its reply is discarded.  Either way, once this method returns true the listener of the
+     * request will not be invoked.
+     *
+     * @return true if the request was cancelled, or false if it had already completed (or been
+     * cancelled)
+     */
+    boolean cancel();
+
+    /**
+     * Was the request cancelled?
+     *
+     * @return true if the request was cancelled, otherwise false
+     */
+    boolean isCancelled();
+
+    /**
+     * Has the request completed (successfully or not) or been cancelled?
+     *
+     * @return true if the request has completed or been cancelled, otherwise false
+     */
+    boolean isDone();
+
+    /**
+     * Retrieves the {@link com.lukeleber.scandroid.interpreter.metrics.RequestTrace} of the
+     * request.  The trace is only complete once the listener of the request has returned.
+     *
+     * @return the {@link com.lukeleber.scandroid.interpreter.metrics.RequestTrace} of the request
+     */
+    RequestTrace getTrace();
+}
@@ -0,0 +1,77 @@
+// This file is protected under the KILLGPL.
+// For more information, visit http://www.lukeleber.github.io/KILLGPL.html
+//
+// Copyright (c) Luke Leber <LukeLeber@gmail.com>
+
+package com.lukeleber.scandroid.interpreter;
+
+/**
+ * <p>Decides the order in which the {@link PendingRequest PendingRequests} of an {@link
+ * AbstractInterpreter} are written to the remote hardware.</p>
+ * <p/>
+ * <p>Requests are offered from any thread and taken by the single I/O thread of the
+ * interpreter, so implementations must be thread-safe.</p>
+ *
+ * @param <U>
+ *         the type of data that is received over the interpreter
+ *
+ * @see FifoRequestScheduler
+ * @see DeadlineRequestScheduler
+ * @see BoundedRequestScheduler
+ */
+public interface RequestScheduler<U>
+{
+    /**
+     * Adds a request to this scheduler.  A bounded scheduler may turn a request away to stay
+     * within its {@link #capacity()}: either the offered request or one that was waiting.
+     *
+     * @param request
+     *         the request to add
+     *
+     * @return the request that was turned away, or null if every request was kept
+     */
+    PendingRequest<U> offer(PendingRequest<U> request);
+
+    /**
+     * Removes the request that should be written next, blocking until one is available
+     *
+     * @return the request that should be written next
+     *
+     * @throws InterruptedException
+     *         if the calling thread is interrupted while waiting
+     */
+    PendingRequest<U> take()
+            throws
+            InterruptedException;
+
+    /**
+     * Removes the request that should be written next, if there is one, without waiting
+     *
+     * @return the request that should be written next, or null if none is waiting
+     */
+    PendingRequest<U> poll();
+
+    /**
+     * Removes a request from this scheduler before it is taken (because it was cancelled)
+     *
+     * @param request
+     *         the request to remove
+     *
+     * @return true if the request was removed, or false if it was not waiting in this scheduler
+     */
+    boolean remove(PendingRequest<U> request);
+
+    /**
+     * Retrieves the number of requests that are waiting in this scheduler
+     *
+     * @return the number of requests that are waiting in this scheduler
+     */
+    int size();
+
+    /**
+     * Retrieves the largest number of requests that may wait in this scheduler
+     *
+     * @return the capacity of this scheduler, or {@link Integer#MAX_VALUE} if it is unbounded
+     */
+    int capacity();
+}
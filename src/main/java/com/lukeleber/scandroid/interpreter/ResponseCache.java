@@ -0,0 +1,240 @@
+// This file is protected under the KILLGPL.
+// For more information, visit http://www.lukeleber.github.io/KILLGPL.html
+//
+// Copyright (c) Luke Leber <LukeLeber@gmail.com>
+
+package com.lukeleber.scandroid.interpreter;
+
+import com.lukeleber.scandroid.sae.j1979.PID;
+import com.lukeleber.scandroid.sae.j1979.Service;
+import com.lukeleber.scandroid.sae.j1979.detail.AppendixB;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Remembers the latest decoded value of each Service/PID, so that an {@link AbstractInterpreter}
+ * can answer a {@link ServiceRequest} from memory instead of spending a round trip on the bus when
+ * a fresh enough value is already known.  Several screens polling the same slow-changing PIDs then
+ * cost the bus one request per freshness window instead of one each.</p>
+ * <p/>
+ * <p>How fresh a value must be is decided per Service/PID by its <i>freshness window</i> (engine
+ * speed changes within milliseconds, barometric pressure hardly at all), unless the request states
+ * its own {@link ServiceRequest#setMaxStaleness(long) maximum staleness}.  A Service/PID without a
+ * window is never answered from memory unless the request asks for it.  A value is only reused for
+ * a request in the same {@link com.lukeleber.scandroid.util.Unit}, and only for a request to the
+ * same ECU (see {@link Request#getTarget()}): a value that one ECU answered with is never passed
+ * off as that of another, and neither is used for a broadcast request.</p>
+ * <p/>
+ * <p>Clearing diagnostic information (service $04) forgets everything, as freeze frames and
+ * monitor results are reset along with it.</p>
+ *
+ * @see AbstractInterpreter#setResponseCache(ResponseCache)
+ */
+public final class ResponseCache
+{
+    /// Indicates that a Service/PID is not answered from memory unless a request asks for it
+    public final static long NOT_CACHED = 0;
+
+    /// The number of Service/PID pairs that are tracked
+    private final static int KEYS = 0x10 * 0x100;
+
+    /// The latest value of a Service/PID from a single ECU (or from a broadcast request)
+    private final static class Entry
+    {
+        /// The ECU that was asked for the value, or null if the request was broadcast
+        EcuAddress target;
+
+        /// The entry of the same Service/PID for another target, or null
+        Entry next;
+
+        /// The unmarshaller (and thereby the unit) that decoded the value
+        PID.Unmarshaller<?> unmarshaller;
+
+        /// The value
+        Object value;
+
+        /// The nano-time at which the value was decoded
+        long time;
+    }
+
+    /// The freshness window (in nanoseconds) of each Service/PID, or {@link #NOT_CACHED}
+    private final long[] freshness = new long[KEYS];
+
+    /// The latest value of each Service/PID, one per target (created the first time that it is
+    /// stored)
+    private final Entry[] entries = new Entry[KEYS];
+
+    /**
+     * Constructs a ResponseCache in which no Service/PID has a freshness window
+     */
+    public ResponseCache()
+    {
+
+    }
+
+    /**
+     * Constructs a ResponseCache with sensible freshness windows for the live datastream: quickly
+     * changing PIDs such as engine speed stay fresh for a few tens of milliseconds, temperatures
+     * for seconds, and fuel level and barometric pressure for ten seconds
+     *
+     * @return a ResponseCache with freshness windows for the live datastream
+     */
+    public static ResponseCache withDefaults()
+    {
+        ResponseCache rv = new ResponseCache();
+        Service live = Service.LIVE_DATASTREAM;
+        rv.setFreshness(live, AppendixB.ENGINE_SPEED, 50, TimeUnit.MILLISECONDS);
+        rv.setFreshness(live, AppendixB.VEHICLE_SPEED, 100, TimeUnit.MILLISECONDS);
+        rv.setFreshness(live, AppendixB.CALCULATED_ENGINE_LOAD, 100, TimeUnit.MILLISECONDS);
+        rv.setFreshness(live, AppendixB.ABSOLUTE_THROTTLE_POSITION, 50, TimeUnit.MILLISECONDS);
+        rv.setFreshness(live, AppendixB.ENGINE_COOLANT_TEMPERATURE, 2, TimeUnit.SECONDS);
+        rv.setFreshness(live, AppendixB.INTAKE_AIR_TEMPERATURE, 2, TimeUnit.SECONDS);
+        rv.setFreshness(live, AppendixB.FUEL_LEVEL_INPUT, 10, TimeUnit.SECONDS);
+        rv.setFreshness(live, AppendixB.BAROMETRIC_PRESSURE, 10, TimeUnit.SECONDS);
+        rv.setFreshness(live, AppendixB.MONITOR_STATUS, 1, TimeUnit.SECONDS);
+        rv.setFreshness(live, AppendixB.OBD_SUPPORT, 1, TimeUnit.HOURS);
+        return rv;
+    }
+
+    /**
+     * Sets the freshness window of a Service/PID
+     *
+     * @param service
+     *         the {@link com.lukeleber.scandroid.sae.j1979.Service}
+     * @param pid
+     *         the {@link com.lukeleber.scandroid.sae.j1979.PID}
+     * @param window
+     *         how old a value may be and still be used, or {@link #NOT_CACHED}
+     * @param unit
+     *         the unit of the window
+     *
+     * @return this cache (for chaining)
+     */
+    public synchronized ResponseCache setFreshness(Service service, PID<?> pid, long window,
+                                                   TimeUnit unit)
+    {
+        if (window < 0)
+        {
+            throw new IllegalArgumentException("window < 0");
+        }
+        int key = key(service, pid);
+        if (key == -1)
+        {
+            throw new IllegalArgumentException("Service/PID out of range");
+        }
+        freshness[key] = unit.toNanos(window);
+        return this;
+    }
+
+    /**
+     * Retrieves the freshness window of a Service/PID
+     *
+     * @param service
+     *         the {@link com.lukeleber.scandroid.sae.j1979.Service}
+     * @param pid
+     *         the {@link com.lukeleber.scandroid.sae.j1979.PID}
+     * @param unit
+     *         the unit to express the window in
+     *
+     * @return how old a value may be and still be used, or {@link #NOT_CACHED}
+     */
+    public synchronized long getFreshness(Service service, PID<?> pid, TimeUnit unit)
+    {
+        int key = key(service, pid);
+        return key == -1 ? NOT_CACHED : unit.convert(freshness[key], TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Forgets every value (but not the freshness windows)
+     */
+    public synchronized void clear()
+    {
+        Arrays.fill(entries, null);
+    }
+
+    /**
+     * Retrieves a value that is fresh enough to answer the provided request
+     *
+     * @param request
+     *         the request to answer
+     *
+     * @return a fresh enough value, or null if the request must go to the bus
+     */
+    synchronized Object lookup(ServiceRequest<?> request)
+    {
+        int key = key(request.getService(), request.getPID());
+        Entry entry = key == -1 ? null : find(key, request.getTarget());
+        if (entry == null)
+        {
+            return null;
+        }
+        long window = request.getMaxStaleness() == ServiceRequest.DEFAULT_STALENESS ?
+                freshness[key] : TimeUnit.MILLISECONDS.toNanos(request.getMaxStaleness());
+        if (window == NOT_CACHED || System.nanoTime() - entry.time > window ||
+                entry.unmarshaller != request.getUnmarshaller())
+        {
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+     * Remembers the value that was decoded from the reply to the provided request.  Invoked on
+     * the decode thread.
+     *
+     * @param request
+     *         the request that was answered
+     * @param value
+     *         the decoded value
+     */
+    synchronized void store(ServiceRequest<?> request, Object value)
+    {
+        if (request.getService() == Service.CLEAR_DTC)
+        {
+            clear();
+            return;
+        }
+        int key = key(request.getService(), request.getPID());
+        if (key == -1 || value == null)
+        {
+            return;
+        }
+        Entry entry = find(key, request.getTarget());
+        if (entry == null)
+        {
+            entry = new Entry();
+            entry.target = request.getTarget();
+            entry.next = entries[key];
+            entries[key] = entry;
+        }
+        entry.unmarshaller = request.getUnmarshaller();
+        entry.value = value;
+        entry.time = System.nanoTime();
+    }
+
+    /// Finds the entry of a slot for the provided target, or returns null if there is none
+    private Entry find(int key, EcuAddress target)
+    {
+        for (Entry entry = entries[key]; entry != null; entry = entry.next)
+        {
+            if (target == null ? entry.target == null : target.equals(entry.target))
+            {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /// Maps a Service/PID to its slot, or -1 if it is out of range (or has no PID)
+    private static int key(Service service, PID<?> pid)
+    {
+        if (service == null || pid == null)
+        {
+            return -1;
+        }
+        int s = service.getID();
+        int p = pid.getID();
+        return s < 0 || s >= 0x10 || p < 0 || p >= 0x100 ? -1 : (s << 8) | p;
+    }
+}
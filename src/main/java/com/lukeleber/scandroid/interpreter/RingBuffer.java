@@ -0,0 +1,193 @@
+// This file is protected under the KILLGPL.
+// For more information, visit http://www.lukeleber.github.io/KILLGPL.html
+//
+// Copyright (c) Luke Leber <LukeLeber@gmail.com>
+
+package com.lukeleber.scandroid.interpreter;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>A fixed-size, lock-free queue between exactly one producer thread and exactly one consumer
+ * thread, used to hand work from one stage of an {@link AbstractInterpreter} to the next.  The
+ * slots are allocated once, so nothing is allocated per element, and a waiting thread is parked
+ * rather than woken through a monitor.</p>
+ * <p/>
+ * <p>Only one thread may ever call {@link #offer(Object)} and {@link #put(Object)}, and only one
+ * (other) thread may ever call {@link #poll()} and {@link #take()}.</p>
+ *
+ * @param <E>
+ *         the type of the elements
+ */
+final class RingBuffer<E>
+{
+    /// The slots, indexed by position modulo their (power of two) number
+    private final Object[] slots;
+
+    /// Maps a position to its slot
+    private final int mask;
+
+    /// The position of the next element to remove (only advanced by the consumer)
+    private final AtomicLong head = new AtomicLong();
+
+    /// The position of the next element to add (only advanced by the producer)
+    private final AtomicLong tail = new AtomicLong();
+
+    /// The consumer, while it is parked waiting for an element
+    private volatile Thread parkedConsumer;
+
+    /// The producer, while it is parked waiting for room
+    private volatile Thread parkedProducer;
+
+    /**
+     * Constructs a RingBuffer
+     *
+     * @param capacity
+     *         the number of elements that it can hold (rounded up to a power of two)
+     */
+    RingBuffer(int capacity)
+    {
+        if (capacity <= 0)
+        {
+            throw new IllegalArgumentException("capacity <= 0");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity)
+        {
+            size <<= 1;
+        }
+        this.slots = new Object[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Adds an element unless this buffer is full.  Producer only.
+     *
+     * @param element
+     *         the element to add
+     *
+     * @return true if the element was added, or false if this buffer is full
+     */
+    boolean offer(E element)
+    {
+        long t = tail.get();
+        if (t - head.get() == slots.length)
+        {
+            return false;
+        }
+        slots[(int) t & mask] = element;
+        tail.set(t + 1);
+        Thread consumer = parkedConsumer;
+        if (consumer != null)
+        {
+            LockSupport.unpark(consumer);
+        }
+        return true;
+    }
+
+    /**
+     * Adds an element, waiting for room if this buffer is full.  Producer only.
+     *
+     * @param element
+     *         the element to add
+     *
+     * @throws InterruptedException
+     *         if the producer is interrupted while waiting
+     */
+    void put(E element)
+            throws
+            InterruptedException
+    {
+        while (!offer(element))
+        {
+            parkedProducer = Thread.currentThread();
+            try
+            {
+                if (tail.get() - head.get() == slots.length)
+                {
+                    LockSupport.park(this);
+                }
+            }
+            finally
+            {
+                parkedProducer = null;
+            }
+            if (Thread.interrupted())
+            {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    /**
+     * Removes the oldest element, if there is one.  Consumer only.
+     *
+     * @return the oldest element, or null if this buffer is empty
+     */
+    @SuppressWarnings("unchecked")
+    E poll()
+    {
+        long h = head.get();
+        if (h == tail.get())
+        {
+            return null;
+        }
+        int index = (int) h & mask;
+        E element = (E) slots[index];
+        slots[index] = null;
+        head.set(h + 1);
+        Thread producer = parkedProducer;
+        if (producer != null)
+        {
+            LockSupport.unpark(producer);
+        }
+        return element;
+    }
+
+    /**
+     * Removes the oldest element, waiting for one if this buffer is empty.  Consumer only.
+     *
+     * @return the oldest element
+     *
+     * @throws InterruptedException
+     *         if the consumer is interrupted while waiting
+     */
+    E take()
+            throws
+            InterruptedException
+    {
+        E element;
+        while ((element = poll()) == null)
+        {
+            parkedConsumer = Thread.currentThread();
+            try
+            {
+                if (head.get() == tail.get())
+                {
+                    LockSupport.park(this);
+                }
+            }
+            finally
+            {
+                parkedConsumer = null;
+            }
+            if (Thread.interrupted())
+            {
+                throw new InterruptedException();
+            }
+        }
+        return element;
+    }
+
+    /**
+     * Retrieves the number of elements in this buffer.  The answer may be stale by the time that
+     * it is used.
+     *
+     * @return the number of elements in this buffer
+     */
+    int size()
+    {
+        return (int) (tail.get() - head.get());
+    }
+}
@@ -36,6 +36,12 @@ public class ServiceRequest<T>
     /// The {@link com.lukeleber.scandroid.util.Unit} whose unmarshaller should be called
     private final Unit preferredUnit;
 
+    /// Indicates that a request accepts values as stale as the freshness window of its PID
+    public final static long DEFAULT_STALENESS = -1;
+
+    /// How old (in milliseconds) a remembered value may be to answer this request
+    private long maxStaleness = DEFAULT_STALENESS;
+
     public ServiceRequest(Service service)
     {
         this(service, null);
@@ -121,4 +127,55 @@ public class ServiceRequest<T>
     {
         return pid.getUnmarshallerForUnit(preferredUnit);
     }
+
+    /**
+     * Retrieves how old (in milliseconds) a remembered value may be to answer this request
+     *
+     * @return the maximum staleness of this request, or {@link #DEFAULT_STALENESS}
+     */
+    public final long getMaxStaleness()
+    {
+        return maxStaleness;
+    }
+
+    /**
+     * Sets how old a remembered value may be to answer this request instead of the remote
+     * hardware, if the interpreter has a {@link ResponseCache}.  A consumer that needs a value
+     * straight from the vehicle passes zero.  This must be done before the request is sent.
+     *
+     * @param maxStaleness
+     *         the maximum staleness in milliseconds, or {@link #DEFAULT_STALENESS} to accept
+     *         values as stale as the freshness window of the PID
+     *
+     * @return this request (for chaining)
+     */
+    public final ServiceRequest<T> setMaxStaleness(long maxStaleness)
+    {
+        if (maxStaleness < 0 && maxStaleness != DEFAULT_STALENESS)
+        {
+            throw new IllegalArgumentException("maxStaleness < 0");
+        }
+        this.maxStaleness = maxStaleness;
+        return this;
+    }
+
+    /**
+     * Determines whether the provided request asks the remote hardware for exactly the same
+     * thing as this request (the same {@link com.lukeleber.scandroid.sae.j1979.Service}, {@link
+     * com.lukeleber.scandroid.sae.j1979.PID} and {@link com.lukeleber.scandroid.util.Unit} of the
+     * same {@link #getTarget() target}), so that a single reply can satisfy both
+     *
+     * @param other
+     *         the request to compare against
+     *
+     * @return true if a single reply can satisfy both requests, otherwise false
+     */
+    public final boolean isEquivalentTo(ServiceRequest<?> other)
+    {
+        return other != null && service == other.service && preferredUnit == other.preferredUnit &&
+                (getTarget() == null ? other.getTarget() == null :
+                        getTarget().equals(other.getTarget())) &&
+                (pid == null ? other.pid == null : other.pid != null &&
+                        pid.getID() == other.pid.getID());
+    }
 }
@@ -0,0 +1,903 @@
+// This file is protected under the KILLGPL.
+// For more information, visit http://www.lukeleber.github.io/KILLGPL.html
+//
+// Copyright (c) Luke Leber <LukeLeber@gmail.com>
+
+package com.lukeleber.scandroid.interpreter.binary;
+
+import android.util.Log;
+
+import com.lukeleber.scandroid.BuildConfig;
+import com.lukeleber.scandroid.interpreter.AbstractInterpreter;
+import com.lukeleber.scandroid.interpreter.BatchServiceRequest;
+import com.lukeleber.scandroid.interpreter.ConfigurationRequest;
+import com.lukeleber.scandroid.interpreter.DeadlineRequestScheduler;
+import com.lukeleber.scandroid.interpreter.EcuAddress;
+import com.lukeleber.scandroid.interpreter.FailureCode;
+import com.lukeleber.scandroid.interpreter.Handler;
+import com.lukeleber.scandroid.interpreter.MultiEcuServiceRequest;
+import com.lukeleber.scandroid.interpreter.Request;
+import com.lukeleber.scandroid.interpreter.RequestHandle;
+import com.lukeleber.scandroid.interpreter.RequestScheduler;
+import com.lukeleber.scandroid.interpreter.ResponseListener;
+import com.lukeleber.scandroid.interpreter.ServiceRequest;
+import com.lukeleber.scandroid.io.CommunicationInterface;
+import com.lukeleber.scandroid.io.ReadTimeoutException;
+import com.lukeleber.scandroid.sae.j1979.PID;
+import com.lukeleber.scandroid.sae.j1979.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+
+/**
+ * <p>An {@link com.lukeleber.scandroid.interpreter.Interpreter} for remote hardware that speaks a
+ * compact binary protocol instead of the hex text of the ELM327, over any {@link
+ * com.lukeleber.scandroid.io.CommunicationInterface}.  Requests and replies carry the raw J1979
+ * messages, so a service $01 request costs a dozen bytes on the host link and its reply is never
+ * formatted or parsed as text on either side.</p>
+ * <p/>
+ * <p>Every message is sent in a {@link FrameCodec frame} that carries a sequence number and a
+ * CRC.  The host sends:</p>
+ * <ul>
+ *     <li>{@link #TYPE_REQUEST}: the address that the request is sent to (see below), followed by
+ *     the J1979 request message (the service ID and any PIDs)</li>
+ *     <li>{@link #TYPE_CONFIGURE}: an implementation defined command, as text</li>
+ * </ul>
+ * <p>and the remote hardware answers each with exactly one {@link #TYPE_REPLY} frame of the same
+ * sequence number, whose body is a status byte ({@link #STATUS_OK} and so on) followed by the
+ * answer of each ECU that answered: its address, the length of its message (two bytes, big
+ * endian) and the (reassembled) J1979 response message itself.  An address is a kind ({@link
+ * #ADDRESS_STANDARD}, {@link #ADDRESS_EXTENDED}, {@link #ADDRESS_SOURCE} or {@link
+ * #ADDRESS_BROADCAST}) followed by a CAN identifier or source address (four bytes, big
+ * endian).</p>
+ * <p/>
+ * <p>As the replies are tagged, up to {@link #getMaxInFlight()} requests are written before the
+ * reply to the first has been read, so the vehicle bus is kept busy while replies make their way
+ * back over the host link.  A reply that arrives ahead of its turn is held until its request is
+ * read, and one that arrives after its request timed out is recognized by its sequence number
+ * and dropped.</p>
+ */
+public class BinaryInterpreter
+        extends AbstractInterpreter<byte[]>
+{
+    /// @internal tag for debug logging
+    private final static String TAG = BinaryInterpreter.class.getName();
+
+    /// The type of a frame that carries a request to the vehicle
+    public final static int TYPE_REQUEST = 0x01;
+
+    /// The type of a frame that carries a command to the remote hardware
+    public final static int TYPE_CONFIGURE = 0x02;
+
+    /// The type of a frame that carries a reply
+    public final static int TYPE_REPLY = 0x81;
+
+    /// The status of a reply that holds the answers of the vehicle
+    public final static int STATUS_OK = 0x00;
+
+    /// The status of a reply to a request that no ECU answered
+    public final static int STATUS_NO_DATA = 0x01;
+
+    /// The status of a reply to a request or command that the remote hardware does not support
+    public final static int STATUS_REJECTED = 0x02;
+
+    /// The status of a reply to a request that could not be sent on the vehicle bus
+    public final static int STATUS_BUS_ERROR = 0x03;
+
+    /// The status of a reply to a frame that the remote hardware received corrupted
+    public final static int STATUS_BAD_FRAME = 0x04;
+
+    /// The kind of an address that is an 11-bit CAN identifier
+    public final static int ADDRESS_STANDARD = 0x00;
+
+    /// The kind of an address that is a 29-bit CAN identifier
+    public final static int ADDRESS_EXTENDED = 0x01;
+
+    /// The kind of an address that is the source address of a header (not ISO 15765-4)
+    public final static int ADDRESS_SOURCE = 0x02;
+
+    /// The kind of the address of a request that is broadcast to every ECU
+    public final static int ADDRESS_BROADCAST = 0xFF;
+
+    /// The number of requests that are in flight at once unless set otherwise
+    public final static int DEFAULT_MAX_IN_FLIGHT = 4;
+
+    /// The most requests that may be in flight at once
+    public final static int MAX_IN_FLIGHT = 16;
+
+    /// The number of bytes in front of the message of each answer (address and length)
+    private final static int ANSWER_HEADER_SIZE = 7;
+
+    /// The number of distinct sequence numbers
+    private final static int SEQUENCES = 0x100;
+
+    /// The longest data that is handed to an unmarshaller without allocating an array for it
+    private final static int MAX_SLICE_LENGTH = 32;
+
+    /// What {@link #readReply(ResponseListener, long)} returns; the reply itself is held in a
+    /// {@link Reply} until it is decoded
+    private final static byte[] HELD = new byte[0];
+
+    /// The body of a reply frame, held in an array that is allocated once and reused
+    private final static class Reply
+    {
+        /// The bytes of the body
+        private final byte[] bytes = new byte[FrameCodec.MAX_BODY];
+
+        /// The number of bytes of the body
+        private int length;
+
+        /// Copies the body of the last frame that the provided codec decoded into this reply
+        private void fill(FrameCodec codec)
+        {
+            ByteBuffer body = codec.getBody();
+            length = body.remaining();
+            body.get(bytes, 0, length);
+        }
+
+        /// Copies this reply into an exactly sized array
+        private byte[] toArray()
+        {
+            return Arrays.copyOf(bytes, length);
+        }
+    }
+
+    /// Frames the traffic on the I/O thread
+    private final FrameCodec codec = new FrameCodec();
+
+    /// Holds the body of the request that is being written
+    private final ByteBuffer scratch = ByteBuffer.allocate(FrameCodec.MAX_BODY);
+
+    /// The sequence numbers of the requests in flight, oldest first (a ring; I/O thread only)
+    private final int[] outstanding = new int[MAX_IN_FLIGHT];
+
+    /// The index of the oldest sequence number in {@link #outstanding}
+    private int head;
+
+    /// The number of requests in flight
+    private int count;
+
+    /// Is the reply with each sequence number still wanted? (I/O thread only)
+    private final boolean[] awaited = new boolean[SEQUENCES];
+
+    /// The reply that is being read, until it is handed to the decode thread (I/O thread only)
+    private Reply reading = new Reply();
+
+    /// The replies that arrived ahead of their turn, by sequence number (I/O thread only)
+    private final Reply[] early = new Reply[SEQUENCES];
+
+    /// The replies that are free to hold another early reply (I/O thread only)
+    private final ArrayDeque<Reply> spares = new ArrayDeque<>();
+
+    /// The arrays that decoded data is handed to the unmarshallers in (decode thread only)
+    private final byte[][] slices = BatchServiceRequest.Answers.newScratch(MAX_SLICE_LENGTH);
+
+    /// The sequence number of the next request
+    private int nextSequence;
+
+    /// The number of CRC errors of the codec that were recorded in the metrics
+    private long recordedCrcErrors;
+
+    /// The number of requests that may be in flight at once
+    private volatile int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+
+    /**
+     * Constructs a {@link BinaryInterpreter} with the provided
+     * {@link com.lukeleber.scandroid.io.CommunicationInterface}
+     *
+     * @param com
+     *         the {@link com.lukeleber.scandroid.io.CommunicationInterface} to communicate with the
+     *         remote hardware through
+     */
+    public BinaryInterpreter(CommunicationInterface com)
+    {
+        super(com);
+    }
+
+    /**
+     * Constructs a {@link BinaryInterpreter} with the provided
+     * {@link com.lukeleber.scandroid.io.CommunicationInterface} that invokes listeners on the
+     * provided {@link java.util.concurrent.Executor} unless they are sent with another.  Use this
+     * constructor (with a non-Android executor) to run a BinaryInterpreter on a plain JVM.
+     *
+     * @param com
+     *         the {@link com.lukeleber.scandroid.io.CommunicationInterface} to communicate with the
+     *         remote hardware through
+     * @param callbackExecutor
+     *         the default {@link java.util.concurrent.Executor} for listeners (see {@link
+     *         com.lukeleber.scandroid.interpreter.CallbackExecutors})
+     */
+    public BinaryInterpreter(CommunicationInterface com, Executor callbackExecutor)
+    {
+        super(com, new DeadlineRequestScheduler<byte[]>(), callbackExecutor);
+    }
+
+    /**
+     * Constructs a {@link BinaryInterpreter} with the provided
+     * {@link com.lukeleber.scandroid.io.CommunicationInterface} that schedules its requests with
+     * the provided {@link com.lukeleber.scandroid.interpreter.RequestScheduler} and invokes
+     * listeners on the provided {@link java.util.concurrent.Executor} unless they are sent with
+     * another.
+     *
+     * @param com
+     *         the {@link com.lukeleber.scandroid.io.CommunicationInterface} to communicate with the
+     *         remote hardware through
+     * @param scheduler
+     *         the {@link com.lukeleber.scandroid.interpreter.RequestScheduler} that decides the
+     *         order in which requests are written
+     * @param callbackExecutor
+     *         the default {@link java.util.concurrent.Executor} for listeners (see {@link
+     *         com.lukeleber.scandroid.interpreter.CallbackExecutors})
+     */
+    public BinaryInterpreter(CommunicationInterface com, RequestScheduler<byte[]> scheduler,
+                             Executor callbackExecutor)
+    {
+        super(com, scheduler, callbackExecutor);
+    }
+
+    /**
+     * Sets the number of requests that may be in flight at once.  Remote hardware that can only
+     * queue a few requests (or a vehicle bus that is slower than the host link) may need fewer
+     * than {@link #DEFAULT_MAX_IN_FLIGHT}.
+     *
+     * @param maxInFlight
+     *         the number of requests that may be in flight at once (1 to {@link #MAX_IN_FLIGHT})
+     *
+     * @throws IllegalArgumentException
+     *         if the number is out of range
+     */
+    public final void setMaxInFlight(int maxInFlight)
+    {
+        if (maxInFlight < 1 || maxInFlight > MAX_IN_FLIGHT)
+        {
+            throw new IllegalArgumentException("maxInFlight must be between 1 and " +
+                                                       MAX_IN_FLIGHT);
+        }
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected final int getMaxInFlight()
+    {
+        return maxInFlight;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Whatever was left of the traffic of an earlier connection is forgotten.
+     */
+    @Override
+    protected void init()
+            throws
+            IOException
+    {
+        codec.reset();
+        head = count = 0;
+        Arrays.fill(awaited, false);
+        for (int i = 0; i < early.length; ++i)
+        {
+            if (early[i] != null)
+            {
+                spares.push(early[i]);
+                early[i] = null;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The answers of the vehicle are tagged with the address of the ECU that sent them.
+     */
+    @Override
+    protected boolean supportsMultiEcuRequests()
+    {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void writeRequest(Request<?> request)
+            throws
+            IOException
+    {
+        int type = TYPE_REQUEST;
+        scratch.clear();
+        if (request instanceof ServiceRequest)
+        {
+            ServiceRequest<?> sr = (ServiceRequest<?>) request;
+            putAddress(request.getTarget());
+            scratch.put((byte) sr.getService()
+                                 .getID());
+            if (sr.getPID() != null)
+            {
+                scratch.put((byte) sr.getPID()
+                                     .getID());
+            }
+        }
+        else if (request instanceof BatchServiceRequest)
+        {
+            BatchServiceRequest br = (BatchServiceRequest) request;
+            putAddress(request.getTarget());
+            scratch.put((byte) br.getService()
+                                 .getID());
+            for (ServiceRequest<?> member : br.getMembers())
+            {
+                scratch.put((byte) member.getPID()
+                                         .getID());
+                if (br.getService() == Service.FREEZE_FRAME_DATA)
+                {
+                    scratch.put((byte) 0); /// Frame #0 is the only frame that J1979 mandates
+                }
+            }
+        }
+        else if (request instanceof MultiEcuServiceRequest)
+        {
+            MultiEcuServiceRequest<?> mr = (MultiEcuServiceRequest<?>) request;
+            putAddress(null);
+            scratch.put((byte) mr.getService()
+                                 .getID());
+            scratch.put((byte) mr.getPID()
+                                 .getID());
+        }
+        else if (request instanceof ConfigurationRequest)
+        {
+            ConfigurationRequest<?, ?> cr = (ConfigurationRequest<?, ?>) request;
+            type = TYPE_CONFIGURE;
+            scratch.put(String.format(String.valueOf(cr.getOption()
+                                                       .getOption()), cr.getArgs())
+                              .getBytes());
+        }
+        else
+        {
+            throw new UnsupportedOperationException(
+                    "Request types of " + request.getClass()
+                                                 .getSimpleName() +
+                            " are not supported by the " + getName() + " interpreter"
+            );
+        }
+        scratch.flip();
+        int sequence = nextSequence;
+        ByteBuffer frame = codec.encode(sequence, type, scratch);
+        getCommunicationInterface().getOutputStream()
+                                   .write(frame.array(), frame.arrayOffset(), frame.limit());
+        getMetrics().recordBytesOut(frame.limit());
+        nextSequence = (sequence + 1) % SEQUENCES;
+        awaited[sequence] = true;
+        outstanding[(head + count++) % MAX_IN_FLIGHT] = sequence;
+    }
+
+    /// Puts the address of a request (or the broadcast address) into the scratch buffer
+    private void putAddress(EcuAddress target)
+    {
+        if (target == null || !target.isAddressable())
+        {
+            scratch.put((byte) ADDRESS_BROADCAST);
+            scratch.putInt(0);
+            return;
+        }
+        scratch.put((byte) (target.isExtended() ? ADDRESS_EXTENDED : ADDRESS_STANDARD));
+        scratch.putInt(target.getRequestId());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected byte[] readReply()
+            throws
+            IOException
+    {
+        readReply(null, Request.NO_TIMEOUT);
+        return reading.toArray();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Reads the reply to the oldest request in flight: the body of its {@link #TYPE_REPLY}
+     * frame, from the status byte on.  Replies to younger requests that arrive first are held
+     * for their turn, and replies that are no longer wanted are dropped.  No {@link
+     * #resynchronize()} is needed after a timeout: the late reply is dropped whenever it comes.
+     * <p/>
+     * The reply is not returned but held in a buffer that is reused (see {@link
+     * #captureReply(Object)}), so reading it allocates nothing.
+     */
+    @Override
+    protected byte[] readReply(ResponseListener<byte[]> listener, long timeout)
+            throws
+            IOException
+    {
+        if (count == 0)
+        {
+            throw new IllegalStateException("No request is in flight");
+        }
+        int sequence = outstanding[head];
+        head = (head + 1) % MAX_IN_FLIGHT;
+        --count;
+        Reply held = early[sequence];
+        if (held != null)
+        {
+            early[sequence] = null;
+            awaited[sequence] = false;
+            spares.push(reading);
+            reading = held;
+            return HELD;
+        }
+        long deadline = System.currentTimeMillis() + timeout;
+        while (true)
+        {
+            while (codec.next())
+            {
+                int tag = codec.getSequence();
+                if (codec.getType() != TYPE_REPLY || !awaited[tag])
+                {
+                    if (BuildConfig.DEBUG)
+                    {
+                        Log.d(TAG, "Dropped an unwanted frame (sequence " + tag + ")");
+                    }
+                    continue;
+                }
+                if (tag == sequence)
+                {
+                    awaited[tag] = false;
+                    reading.fill(codec);
+                    return HELD;
+                }
+                Reply ahead = spares.isEmpty() ? new Reply() : spares.pop();
+                ahead.fill(codec);
+                early[tag] = ahead;
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (timeout != Request.NO_TIMEOUT && remaining <= 0)
+            {
+                awaited[sequence] = false; /// Whenever it comes, it comes too late
+                throw new ReadTimeoutException(timeout, 0);
+            }
+            int n = codec.receive(getCommunicationInterface(),
+                                  timeout == Request.NO_TIMEOUT ? 0 : remaining);
+            getMetrics().recordBytesIn(n);
+            for (; recordedCrcErrors < codec.getCrcErrors(); ++recordedCrcErrors)
+            {
+                getMetrics().recordError();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The reply that was just read is handed over in its buffer, and a spare one takes its place.
+     */
+    @Override
+    protected Object captureReply(Object spare)
+    {
+        Reply full = reading;
+        reading = spare == null ? new Reply() : (Reply) spare;
+        return full;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The reply is decoded here, on the decode thread, straight out of the buffer that it was
+     * read into, for the listeners that this interpreter sends requests with.  All other
+     * listeners receive a copy of the body of the reply frame.
+     */
+    @Override
+    protected byte[] decodeReply(byte[] reply, Object context, ResponseListener<byte[]> listener)
+    {
+        if (!(context instanceof Reply))
+        {
+            return reply;
+        }
+        Reply held = (Reply) context;
+        if (!(listener instanceof DecodingListener))
+        {
+            return held.toArray();
+        }
+        DecodingListener<?> decoder = (DecodingListener<?>) listener;
+        decoder.decode(held.bytes, held.length, slices);
+        if (decoder.isUnrecognized())
+        {
+            getMetrics().recordError();
+        }
+        if (getResponseCache() != null)
+        {
+            decoder.remember(this);
+        }
+        return reply;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName()
+    {
+        return "Binary Interpreter";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final <V> RequestHandle sendRequest(Request<V> request, Executor executor)
+    {
+        RequestHandle answered = answerFromCache(request, executor);
+        if (answered != null)
+        {
+            return answered;
+        }
+        return super.sendRequest(request, new DecodingListener<>(request), executor);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close()
+    {
+        /// no-op; nothing is held beyond the communication interface
+    }
+
+    /**
+     * Finds the address of the ECU that sent an answer
+     *
+     * @param kind
+     *         the kind of the address
+     * @param id
+     *         the CAN identifier or source address
+     *
+     * @return the address of the ECU, or null if it is not one that can be told apart
+     */
+    static EcuAddress toEcuAddress(int kind, int id)
+    {
+        switch (kind)
+        {
+            case ADDRESS_STANDARD:
+                return EcuAddress.fromResponseId(id, false);
+            case ADDRESS_EXTENDED:
+                return EcuAddress.fromResponseId(id, true);
+            case ADDRESS_SOURCE:
+                return EcuAddress.fromSourceAddress(id);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Maps the status of a reply to the failure that it stands for
+     *
+     * @param status
+     *         the status byte of the reply
+     * @param configuration
+     *         is the reply to a {@link com.lukeleber.scandroid.interpreter.ConfigurationRequest}?
+     *
+     * @return the failure, or null if the status is {@link #STATUS_OK}
+     */
+    static FailureCode toFailureCode(int status, boolean configuration)
+    {
+        switch (status)
+        {
+            case STATUS_OK:
+                return null;
+            case STATUS_NO_DATA:
+                return FailureCode.REQUEST_NOT_SUPPORTED;
+            case STATUS_REJECTED:
+                return configuration ? FailureCode.CONFIGURATION_COMMAND_NOT_RECOGNIZED :
+                        FailureCode.REQUEST_NOT_SUPPORTED;
+            case STATUS_BUS_ERROR:
+                return FailureCode.IO_ERROR;
+            case STATUS_BAD_FRAME:
+                return FailureCode.IO_LINK_ERROR;
+            default:
+                return FailureCode.UNRECOGNIZED_RESPONSE;
+        }
+    }
+
+    /**
+     * The {@link com.lukeleber.scandroid.interpreter.ResponseListener} that every request is sent
+     * with.  The reply is decoded on the decode thread by {@link #decode(byte[], int, byte[][])},
+     * and the outcome is handed to the {@link com.lukeleber.scandroid.interpreter.Handler} of the
+     * request (or of each member of a batch) on the executor that it was sent with.  The reply to
+     * a {@link com.lukeleber.scandroid.interpreter.ConfigurationRequest} is handed over as the text
+     * that follows its status byte.
+     *
+     * @param <T>
+     *         the type of the value that the request is answered with
+     */
+    private final static class DecodingListener<T>
+            implements ResponseListener<byte[]>
+    {
+        /// The request that was sent
+        private final Request<T> request;
+
+        /// The decoded value (if {@link #failure} is null)
+        private T value;
+
+        /// The reason that decoding failed, or null if it succeeded
+        private FailureCode failure;
+
+        /// The answers to a batch, split up by member (or null if the request is not a batch)
+        private final BatchServiceRequest.Answers memberAnswers;
+
+        /**
+         * Constructs a DecodingListener for the provided request
+         *
+         * @param request
+         *         the request that is being sent
+         */
+        DecodingListener(Request<T> request)
+        {
+            this.request = request;
+            this.memberAnswers = request instanceof BatchServiceRequest ?
+                    new BatchServiceRequest.Answers((BatchServiceRequest) request) : null;
+        }
+
+        /**
+         * Decodes the reply.  Invoked on the decode thread.
+         *
+         * @param reply
+         *         the array that holds the body of the reply frame
+         * @param length
+         *         the length of the body
+         * @param scratch
+         *         the arrays that data is handed to the unmarshallers in (see {@link
+         *         com.lukeleber.scandroid.interpreter.BatchServiceRequest.Answers#newScratch(int)})
+         */
+        @SuppressWarnings("unchecked")
+        void decode(byte[] reply, int length, byte[][] scratch)
+        {
+            FailureCode code = length == 0 ? FailureCode.UNRECOGNIZED_RESPONSE :
+                    toFailureCode(reply[0] & 0xFF, request instanceof ConfigurationRequest);
+            if (code != null)
+            {
+                failure = code;
+                if (memberAnswers != null)
+                {
+                    memberAnswers.fail(code);
+                }
+            }
+            else if (request instanceof ConfigurationRequest)
+            {
+                value = (T) new String(reply, 1, length - 1);
+            }
+            else if (memberAnswers != null)
+            {
+                for (int at = 1; at + ANSWER_HEADER_SIZE <= length; at = next(reply, at, length))
+                {
+                    memberAnswers.add(reply, at + ANSWER_HEADER_SIZE, lengthOf(reply, at, length),
+                                scratch);
+                }
+                memberAnswers.finish(false);
+            }
+            else if (request instanceof MultiEcuServiceRequest)
+            {
+                value = (T) decodeMulti((MultiEcuServiceRequest<?>) request, reply, length,
+                                        scratch);
+            }
+            else
+            {
+                decodeService((ServiceRequest<T>) request, reply, length, scratch);
+            }
+        }
+
+        /**
+         * Did the decoded reply (or any part of it) fail with {@link
+         * com.lukeleber.scandroid.interpreter.FailureCode#UNRECOGNIZED_RESPONSE}?
+         *
+         * @return true if the decoded reply could not be understood, otherwise false
+         */
+        boolean isUnrecognized()
+        {
+            return failure == FailureCode.UNRECOGNIZED_RESPONSE ||
+                    memberAnswers != null && memberAnswers.isUnrecognized();
+        }
+
+        /**
+         * Hands the decoded value(s) to the {@link com.lukeleber.scandroid.interpreter.ResponseCache}
+         * of the provided interpreter.  Invoked on the decode thread, after {@link
+         * #decode(byte[], int, byte[][])}.
+         *
+         * @param owner
+         *         the interpreter that decoded the reply
+         */
+        void remember(BinaryInterpreter owner)
+        {
+            if (memberAnswers != null)
+            {
+                List<ServiceRequest<?>> members = ((BatchServiceRequest) request).getMembers();
+                for (int i = 0; i < members.size(); ++i)
+                {
+                    if (memberAnswers.getFailure(i) == null)
+                    {
+                        owner.rememberResponse(members.get(i), memberAnswers.getValue(i));
+                    }
+                }
+            }
+            else if (failure == null && request instanceof ServiceRequest)
+            {
+                owner.rememberResponse((ServiceRequest<?>) request, value);
+            }
+        }
+
+        /// Decodes the reply to a single {@link com.lukeleber.scandroid.interpreter.ServiceRequest}
+        @SuppressWarnings("unchecked")
+        private void decodeService(ServiceRequest<T> serviceRequest, byte[] reply, int end,
+                                   byte[][] scratch)
+        {
+            int header = 0x40 + serviceRequest.getService()
+                                              .getID();
+            for (int at = 1; at + ANSWER_HEADER_SIZE <= end; at = next(reply, at, end))
+            {
+                int offset = at + ANSWER_HEADER_SIZE;
+                int length = lengthOf(reply, at, end);
+                if (length < 1 || (reply[offset] & 0xFF) != header)
+                {
+                    continue;
+                }
+                if (serviceRequest.getService() == Service.CLEAR_DTC)
+                {
+                    value = (T) "DTCs Cleared";
+                    return;
+                }
+                if (serviceRequest.getPID() == null || length < 2 ||
+                        (reply[offset + 1] & 0xFF) != serviceRequest.getPID()
+                                                                    .getID())
+                {
+                    continue;
+                }
+                try
+                {
+                    value = serviceRequest.getUnmarshaller()
+                                          .invoke(slice(reply, offset + 2, length - 2, scratch));
+                }
+                catch (RuntimeException e)
+                {
+                    if (BuildConfig.DEBUG)
+                    {
+                        Log.w(TAG, "Unable to unmarshal response", e);
+                    }
+                    failure = FailureCode.UNRECOGNIZED_RESPONSE;
+                }
+                return;
+            }
+            failure = FailureCode.UNRECOGNIZED_RESPONSE;
+        }
+
+        /**
+         * Unmarshals the first answer of each ECU to a {@link
+         * com.lukeleber.scandroid.interpreter.MultiEcuServiceRequest}
+         *
+         * @param multi
+         *         the request that was sent
+         * @param reply
+         *         the array that holds the body of the reply frame
+         * @param end
+         *         the length of the body
+         * @param scratch
+         *         the arrays that data is handed to the unmarshaller in
+         *
+         * @return the answer of each ECU, or null if the request failed
+         */
+        private <V> Map<EcuAddress, V> decodeMulti(MultiEcuServiceRequest<V> multi, byte[] reply,
+                                                   int end, byte[][] scratch)
+        {
+            int header = 0x40 + multi.getService()
+                                     .getID();
+            int pid = multi.getPID()
+                           .getID();
+            PID.Unmarshaller<V> unmarshaller = multi.getAnswerUnmarshaller();
+            Map<EcuAddress, V> answered = new TreeMap<>();
+            for (int at = 1; at + ANSWER_HEADER_SIZE <= end; at = next(reply, at, end))
+            {
+                int offset = at + ANSWER_HEADER_SIZE;
+                int length = lengthOf(reply, at, end);
+                EcuAddress source = toEcuAddress(reply[at] & 0xFF,
+                                                 ByteBuffer.wrap(reply, at + 1, 4)
+                                                           .getInt());
+                if (source == null || length < 2 || (reply[offset] & 0xFF) != header ||
+                        (reply[offset + 1] & 0xFF) != pid || answered.containsKey(source))
+                {
+                    continue;
+                }
+                try
+                {
+                    answered.put(source, unmarshaller.invoke(
+                            slice(reply, offset + 2, length - 2, scratch)));
+                }
+                catch (RuntimeException e)
+                {
+                    if (BuildConfig.DEBUG)
+                    {
+                        Log.w(TAG, "Unable to unmarshal the response of " + source, e);
+                    }
+                }
+            }
+            if (answered.isEmpty())
+            {
+                failure = FailureCode.UNRECOGNIZED_RESPONSE;
+                return null;
+            }
+            return answered;
+        }
+
+        /// Retrieves the length of the message of the answer at the provided offset (clipped to
+        /// the end of the body)
+        private static int lengthOf(byte[] reply, int at, int end)
+        {
+            int length = (reply[at + 5] & 0xFF) << 8 | reply[at + 6] & 0xFF;
+            return Math.min(length, end - at - ANSWER_HEADER_SIZE);
+        }
+
+        /// Retrieves the offset of the answer that follows the one at the provided offset
+        private static int next(byte[] reply, int at, int end)
+        {
+            return at + ANSWER_HEADER_SIZE + lengthOf(reply, at, end);
+        }
+
+        /// Copies a run of the reply into an exactly sized array (a scratch one if it is short)
+        private static byte[] slice(byte[] reply, int offset, int length, byte[][] scratch)
+        {
+            byte[] rv = length < scratch.length ? scratch[length] : new byte[length];
+            System.arraycopy(reply, offset, rv, 0, length);
+            return rv;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onSuccess(byte[] reply)
+        {
+            if (memberAnswers != null)
+            {
+                memberAnswers.deliver();
+                return;
+            }
+            Handler<T> handler = request.getHandler();
+            if (handler != null)
+            {
+                if (failure != null)
+                {
+                    handler.onFailure(failure);
+                }
+                else
+                {
+                    handler.onResponse(value);
+                }
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onFailure(FailureCode code)
+        {
+            if (memberAnswers != null)
+            {
+                memberAnswers.deliverFailure(code);
+                return;
+            }
+            Handler<T> handler = request.getHandler();
+            if (handler != null)
+            {
+                handler.onFailure(code);
+            }
+        }
+    }
+}
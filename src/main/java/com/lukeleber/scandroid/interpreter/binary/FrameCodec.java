@@ -0,0 +1,341 @@
+// This file is protected under the KILLGPL.
+// For more information, visit http://www.lukeleber.github.io/KILLGPL.html
+//
+// Copyright (c) Luke Leber <LukeLeber@gmail.com>
+
+package com.lukeleber.scandroid.interpreter.binary;
+
+import com.lukeleber.scandroid.io.CommunicationInterface;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>Frames the messages of the binary protocol that a {@link BinaryInterpreter} speaks.  Every
+ * message, in either direction, is sent as a frame of the form</p>
+ * <pre>
+ *     +------+--------+----------+------+------+-----------+
+ *     | SYNC | LENGTH | SEQUENCE | TYPE | BODY | CRC       |
+ *     | $A5  | 2 (BE) | 1        | 1    | ...  | 2 (BE)    |
+ *     +------+--------+----------+------+------+-----------+
+ * </pre>
+ * <p>where LENGTH counts the sequence number, the type and the body, and the CRC is the
+ * CRC-16/CCITT-FALSE of everything between the sync byte and the CRC.  A frame whose length is
+ * out of range or whose CRC does not match is skipped one byte at a time until the next sync byte
+ * that starts a valid frame, so a corrupted or half-received frame costs nothing more than
+ * itself.</p>
+ * <p/>
+ * <p>Frames are encoded into, and decoded out of, buffers that are allocated once: {@link
+ * #encode(int, int, java.nio.ByteBuffer)} returns the same buffer every time, and the body of a
+ * decoded frame is a view into the receive buffer.  Instances of this class are therefore only
+ * to be used by a single thread (the I/O thread of their interpreter).</p>
+ */
+public final class FrameCodec
+{
+    /// The byte that starts every frame
+    public final static byte SYNC = (byte) 0xA5;
+
+    /// The number of bytes that a frame adds to its body
+    public final static int OVERHEAD = 7;
+
+    /// The largest body that a frame may carry (enough for a reassembled ISO-TP message)
+    public final static int MAX_BODY = 4096;
+
+    /// The number of bytes in front of the body (sync, length, sequence and type)
+    private final static int HEADER_SIZE = 5;
+
+    /// The CRC-16/CCITT-FALSE of each byte value
+    private final static char[] CRC_TABLE = new char[0x100];
+
+    static
+    {
+        for (int i = 0; i < CRC_TABLE.length; ++i)
+        {
+            int crc = i << 8;
+            for (int bit = 0; bit < 8; ++bit)
+            {
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+            CRC_TABLE[i] = (char) crc;
+        }
+    }
+
+    /// Holds the frame that is being sent
+    private final ByteBuffer out = ByteBuffer.allocate(OVERHEAD + MAX_BODY);
+
+    /// Holds the bytes that were received but not yet decoded, between position and limit
+    private final ByteBuffer in = ByteBuffer.allocate(2 * (OVERHEAD + MAX_BODY));
+
+    /// A read-only view of the receive buffer that holds the body of the last decoded frame
+    private final ByteBuffer body;
+
+    /// The sequence number of the last decoded frame
+    private int sequence;
+
+    /// The type of the last decoded frame
+    private int type;
+
+    /// The number of frames that were skipped because their CRC did not match
+    private long crcErrors;
+
+    /// The number of bytes that were skipped while looking for the next valid frame
+    private long skipped;
+
+    /**
+     * Constructs a FrameCodec with an empty receive buffer
+     */
+    public FrameCodec()
+    {
+        in.limit(0);
+        body = in.asReadOnlyBuffer();
+        body.limit(0);
+    }
+
+    /**
+     * Computes the CRC-16/CCITT-FALSE (polynomial $1021, initial value $FFFF) of a run of bytes
+     *
+     * @param bytes
+     *         the array that holds the bytes
+     * @param offset
+     *         the offset of the first byte
+     * @param length
+     *         the number of bytes
+     *
+     * @return the CRC of the bytes
+     */
+    public static int crc(byte[] bytes, int offset, int length)
+    {
+        int crc = 0xFFFF;
+        for (int i = offset; i < offset + length; ++i)
+        {
+            crc = (crc << 8 ^ CRC_TABLE[(crc >> 8 ^ bytes[i]) & 0xFF]) & 0xFFFF;
+        }
+        return crc;
+    }
+
+    /**
+     * Encodes a frame
+     *
+     * @param sequence
+     *         the sequence number of the frame (only the low eight bits are sent)
+     * @param type
+     *         the type of the frame (only the low eight bits are sent)
+     * @param body
+     *         the body of the frame, between its position and limit (the position is advanced
+     *         past it)
+     *
+     * @return the encoded frame, between position zero and the limit of a buffer that is backed
+     * by an array (shared; it is overwritten by the next call)
+     *
+     * @throws IllegalArgumentException
+     *         if the body is longer than {@link #MAX_BODY}
+     */
+    public ByteBuffer encode(int sequence, int type, ByteBuffer body)
+    {
+        if (body.remaining() > MAX_BODY)
+        {
+            throw new IllegalArgumentException(
+                    "A body of " + body.remaining() + " bytes does not fit into a frame");
+        }
+        out.clear();
+        out.put(SYNC);
+        out.putShort((short) (body.remaining() + 2));
+        out.put((byte) sequence);
+        out.put((byte) type);
+        out.put(body);
+        out.putShort((short) crc(out.array(), out.arrayOffset() + 1, out.position() - 1));
+        out.flip();
+        return out;
+    }
+
+    /**
+     * Appends received bytes to the receive buffer
+     *
+     * @param src
+     *         the received bytes, between its position and limit (the position is advanced past
+     *         them)
+     *
+     * @throws IllegalArgumentException
+     *         if there is no room for the bytes (more than a frame's worth is left undecoded)
+     */
+    public void receive(ByteBuffer src)
+    {
+        in.compact();
+        try
+        {
+            if (src.remaining() > in.remaining())
+            {
+                throw new IllegalArgumentException(
+                        "No room for " + src.remaining() + " more bytes");
+            }
+            in.put(src);
+        }
+        finally
+        {
+            in.flip();
+        }
+    }
+
+    /**
+     * Reads whatever is available from the provided
+     * {@link com.lukeleber.scandroid.io.CommunicationInterface} into the receive buffer, waiting
+     * for the first byte for no longer than the provided timeout
+     *
+     * @param com
+     *         the {@link com.lukeleber.scandroid.io.CommunicationInterface} to read from
+     * @param timeout
+     *         the maximum number of milliseconds to wait, or zero to wait forever
+     *
+     * @return the number of bytes that were read, or zero if none arrived in time
+     *
+     * @throws java.io.EOFException
+     *         if the end of the stream has been reached
+     * @throws java.io.IOException
+     *         if any other I/O error occurs
+     */
+    public int receive(CommunicationInterface com, long timeout)
+            throws
+            IOException
+    {
+        in.compact();
+        int n;
+        try
+        {
+            int offset = in.arrayOffset() + in.position();
+            n = com.read(in.array(), offset, in.remaining(), timeout);
+            if (n > 0)
+            {
+                in.position(in.position() + n);
+            }
+        }
+        finally
+        {
+            in.flip();
+        }
+        if (n < 0)
+        {
+            throw new EOFException();
+        }
+        return n;
+    }
+
+    /**
+     * Decodes the next valid frame out of the receive buffer, skipping whatever comes before it.
+     * The frame can then be looked at through {@link #getSequence()}, {@link #getType()} and
+     * {@link #getBody()}.
+     *
+     * @return true if a frame was decoded, or false if the receive buffer does not (yet) hold a
+     * complete one
+     */
+    public boolean next()
+    {
+        while (in.hasRemaining())
+        {
+            int start = in.position();
+            if (in.get(start) != SYNC)
+            {
+                skip();
+                continue;
+            }
+            if (in.remaining() < 3)
+            {
+                return false;
+            }
+            int length = in.getShort(start + 1) & 0xFFFF;
+            if (length < 2 || length > MAX_BODY + 2)
+            {
+                skip(); /// Not a frame after all
+                continue;
+            }
+            int end = start + 3 + length;
+            if (in.limit() < end + 2)
+            {
+                return false;
+            }
+            if ((in.getShort(end) & 0xFFFF) != crc(in.array(), in.arrayOffset() + start + 1,
+                                                    length + 2))
+            {
+                ++crcErrors;
+                skip();
+                continue;
+            }
+            sequence = in.get(start + 3) & 0xFF;
+            type = in.get(start + 4) & 0xFF;
+            body.limit(end);
+            body.position(start + HEADER_SIZE);
+            in.position(end + 2);
+            return true;
+        }
+        return false;
+    }
+
+    /// Skips the byte that seemed to start a frame
+    private void skip()
+    {
+        in.position(in.position() + 1);
+        ++skipped;
+    }
+
+    /**
+     * Retrieves the sequence number of the last decoded frame
+     *
+     * @return the sequence number (0 to 255)
+     */
+    public int getSequence()
+    {
+        return sequence;
+    }
+
+    /**
+     * Retrieves the type of the last decoded frame
+     *
+     * @return the type (0 to 255)
+     */
+    public int getType()
+    {
+        return type;
+    }
+
+    /**
+     * Retrieves the body of the last decoded frame
+     *
+     * @return a read-only view of the body, between its position and limit, that is only valid
+     * until the next call to either <code>receive</code> method (shared; it is reset by the next
+     * call to {@link #next()})
+     */
+    public ByteBuffer getBody()
+    {
+        return body;
+    }
+
+    /**
+     * Discards whatever is left in the receive buffer
+     */
+    public void reset()
+    {
+        in.clear();
+        in.limit(0);
+        body.limit(0);
+    }
+
+    /**
+     * Retrieves the number of frames that were skipped because their CRC did not match
+     *
+     * @return the number of CRC errors
+     */
+    public long getCrcErrors()
+    {
+        return crcErrors;
+    }
+
+    /**
+     * Retrieves the number of bytes that were skipped while looking for the next valid frame
+     *
+     * @return the number of skipped bytes
+     */
+    public long getSkippedBytes()
+    {
+        return skipped;
+    }
+}
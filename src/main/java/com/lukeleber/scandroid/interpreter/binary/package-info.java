@@ -0,0 +1,26 @@
+// This file is protected under the KILLGPL.
+// For more information, visit http://www.lukeleber.github.io/KILLGPL.html
+//
+// Copyright (c) Luke Leber <LukeLeber@gmail.com>
+
+/**
+ * <p>An interpreter for remote hardware that speaks a binary, length-prefixed protocol instead of
+ * hex text.  See {@link com.lukeleber.scandroid.interpreter.binary.BinaryInterpreter} for the
+ * messages and {@link com.lukeleber.scandroid.interpreter.binary.FrameCodec} for the frames that
+ * carry them.</p>
+ *
+ * <p>Using the binary implementation is no different from using the ELM327 one:
+ * <pre>
+ *     /// arbitrary communication interface
+ *     CommunicationInterface comm = ...;
+ *
+ *     BinaryInterpreter interpreter = new BinaryInterpreter(comm);
+ *
+ *     /// asynchronously start the interpreter
+ *     interpreter.start();
+ *
+ *     /// start talking with a vehicle
+ *     interpreter.sendRequest(...);
+ * </pre></p>
+ */
+package com.lukeleber.scandroid.interpreter.binary;
@@ -0,0 +1,259 @@
+// This file is protected under the KILLGPL.
+// For more information, visit http://www.lukeleber.github.io/KILLGPL.html
+//
+// Copyright (c) Luke Leber <LukeLeber@gmail.com>
+
+package com.lukeleber.scandroid.interpreter.elm327;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>What a particular ELM327 (or clone) was found to support when it was probed upon connecting
+ * (see {@link ELM327#getCapabilities()}).  Clones differ widely in which commands they actually
+ * implement, whatever version they claim to be, so each optional command that a fast path of the
+ * {@link ELM327} depends on is tried rather than assumed.  The {@link ELM327} then only uses the
+ * fast paths that are safe on the adapter at hand.</p>
+ * <p/>
+ * <p>Response count hints can't be tried without a vehicle, so their support is taken from the
+ * version (1.3 and later); an adapter that claims them falsely is still caught by the first
+ * rejected request (see {@link ResponseCountHints}).</p>
+ * <p/>
+ * <p>Instances of this class are immutable.</p>
+ */
+public final class AdapterCapabilities
+{
+    /// The version that response count hints first appeared in (as major * 100 + minor)
+    private final static int RESPONSE_COUNT_HINTS_VERSION = 103;
+
+    /// The identification string (as in "ELM327 v1.5"), or null if the adapter gave none
+    private final String identity;
+
+    /// The device description (as in "OBDII to RS232 Interpreter"), or null if not supported
+    private final String description;
+
+    /// The version as major * 100 + minor, or -1 if the identity holds none
+    private final int version;
+
+    /// Was "AT ST" accepted?
+    private final boolean timeout;
+
+    /// Were "AT AT1" and "AT AT2" accepted?
+    private final boolean adaptiveTiming;
+
+    /// Were "AT CAF0" and "AT CAF1" accepted?
+    private final boolean canAutoFormatting;
+
+    /// Were "AT H1", "AT H0" and "AT SH" accepted?
+    private final boolean headerControl;
+
+    /// The shortest time (in nanoseconds) that the adapter took to answer a command
+    private final long roundTripTime;
+
+    /**
+     * Constructs an AdapterCapabilities from the outcome of a probe
+     *
+     * @param identity
+     *         the identification string, or null if the adapter gave none
+     * @param description
+     *         the device description, or null if not supported
+     * @param timeout
+     *         was "AT ST" accepted?
+     * @param adaptiveTiming
+     *         were "AT AT1" and "AT AT2" accepted?
+     * @param canAutoFormatting
+     *         were "AT CAF0" and "AT CAF1" accepted?
+     * @param headerControl
+     *         were "AT H1", "AT H0" and "AT SH" accepted?
+     * @param roundTripTime
+     *         the shortest time (in nanoseconds) that the adapter took to answer a command
+     */
+    AdapterCapabilities(String identity, String description, boolean timeout,
+                        boolean adaptiveTiming, boolean canAutoFormatting, boolean headerControl,
+                        long roundTripTime)
+    {
+        this.identity = identity;
+        this.description = description;
+        this.version = parseVersion(identity);
+        this.timeout = timeout;
+        this.adaptiveTiming = adaptiveTiming;
+        this.canAutoFormatting = canAutoFormatting;
+        this.headerControl = headerControl;
+        this.roundTripTime = roundTripTime;
+    }
+
+    /**
+     * Retrieves the identification string of the adapter (the reply to "AT I")
+     *
+     * @return the identification string (as in "ELM327 v1.5"), or null if the adapter gave none
+     */
+    public String getIdentity()
+    {
+        return identity;
+    }
+
+    /**
+     * Retrieves the device description of the adapter (the reply to "AT @1")
+     *
+     * @return the device description, or null if the adapter does not support it
+     */
+    public String getDescription()
+    {
+        return description;
+    }
+
+    /**
+     * Does the adapter identify itself as an ELM327 of the provided version or later?
+     *
+     * @param major
+     *         the major version
+     * @param minor
+     *         the minor version
+     *
+     * @return true if the adapter claims to be at least the provided version
+     */
+    public boolean isAtLeast(int major, int minor)
+    {
+        return version >= major * 100 + minor;
+    }
+
+    /**
+     * Does the adapter identify itself as an ELM327 at all?
+     *
+     * @return true if the identification string names an ELM327 of a known version
+     */
+    public boolean isIdentified()
+    {
+        return version != -1;
+    }
+
+    /**
+     * May the number of expected messages be appended to requests (as in "010C1")?
+     *
+     * @return true if the adapter claims version 1.3 or later
+     */
+    public boolean supportsResponseCountHints()
+    {
+        return version >= RESPONSE_COUNT_HINTS_VERSION;
+    }
+
+    /**
+     * Does the adapter accept "AT ST" (set timeout)?
+     *
+     * @return true if "AT ST" was accepted
+     */
+    public boolean supportsTimeout()
+    {
+        return timeout;
+    }
+
+    /**
+     * Does the adapter accept the adaptive timing modes ("AT AT1" and "AT AT2")?
+     *
+     * @return true if both modes were accepted
+     */
+    public boolean supportsAdaptiveTiming()
+    {
+        return adaptiveTiming;
+    }
+
+    /**
+     * Can CAN auto-formatting be switched off and on ("AT CAF0" and "AT CAF1")?
+     *
+     * @return true if both commands were accepted
+     */
+    public boolean supportsCanAutoFormatting()
+    {
+        return canAutoFormatting;
+    }
+
+    /**
+     * Can headers be shown ("AT H1") and set ("AT SH")?
+     *
+     * @return true if the header commands were accepted
+     */
+    public boolean supportsHeaderControl()
+    {
+        return headerControl;
+    }
+
+    /**
+     * Retrieves the shortest time that the adapter took to answer a command, which is the cost of
+     * the link itself (and the adapter) in every request
+     *
+     * @param unit
+     *         the unit to express the time in
+     *
+     * @return the round-trip time of the adapter
+     */
+    public long getRoundTripTime(TimeUnit unit)
+    {
+        return unit.convert(roundTripTime, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return identity + " [ST " + timeout + ", AT " + adaptiveTiming + ", CAF " +
+                canAutoFormatting + ", H " + headerControl + ", hints " +
+                supportsResponseCountHints() + ", RTT " +
+                getRoundTripTime(TimeUnit.MICROSECONDS) + " us]";
+    }
+
+    /**
+     * Finds the version in an identification string such as "ELM327 v1.5" or "ELM327 v2.1a"
+     *
+     * @param identity
+     *         the identification string (may be null)
+     *
+     * @return the version as major * 100 + minor, or -1 if the string names no ELM327 version
+     */
+    static int parseVersion(String identity)
+    {
+        if (identity == null)
+        {
+            return -1;
+        }
+        int at = identity.indexOf("ELM327");
+        if (at == -1)
+        {
+            return -1;
+        }
+        int v = identity.indexOf('v', at);
+        int dot = v == -1 ? -1 : identity.indexOf('.', v);
+        if (dot == -1)
+        {
+            return -1;
+        }
+        int major = digits(identity, v + 1, dot);
+        int end = dot + 1;
+        while (end < identity.length() && Character.isDigit(identity.charAt(end)))
+        {
+            ++end;
+        }
+        int minor = digits(identity, dot + 1, end);
+        return major == -1 || minor == -1 ? -1 : major * 100 + minor;
+    }
+
+    /// Parses the decimal digits between the provided indices, or -1 if there are none (or others)
+    private static int digits(String s, int start, int end)
+    {
+        if (start >= end)
+        {
+            return -1;
+        }
+        int value = 0;
+        for (int i = start; i < end; ++i)
+        {
+            char c = s.charAt(i);
+            if (!Character.isDigit(c))
+            {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
@@ -0,0 +1,279 @@
+// This file is protected under the KILLGPL.
+// For more information, visit http://www.lukeleber.github.io/KILLGPL.html
+//
+// Copyright (c) Luke Leber <LukeLeber@gmail.com>
+
+package com.lukeleber.scandroid.interpreter.elm327;
+
+import android.util.Log;
+
+import com.lukeleber.scandroid.BuildConfig;
+import com.lukeleber.scandroid.interpreter.metrics.InterpreterMetrics;
+import com.lukeleber.scandroid.io.ReadTimeoutException;
+import com.lukeleber.scandroid.io.SerialInterface;
+
+import java.io.IOException;
+
+/**
+ * <p>Steps an ELM327 on a {@link com.lukeleber.scandroid.io.SerialInterface} up from its power-on
+ * baud rate (usually 38400) to the fastest one that works reliably, with the handshake that the
+ * datasheet describes for "AT BRD hh":</p>
+ * <ol>
+ *     <li>the host sends "AT BRD hh", and the ELM327 answers "OK" at the old rate (or "?" if it
+ *     does not support the command)</li>
+ *     <li>both sides switch to 4000 / hh kbps, and the ELM327 sends its identification string</li>
+ *     <li>the host answers with a carriage return within the "AT BRT" time, and the ELM327
+ *     confirms with "OK" and a prompt at the new rate</li>
+ * </ol>
+ * <p>If the host hears nothing sensible at the new rate it switches back, and the ELM327 falls
+ * back on its own once the "AT BRT" time passes without a carriage return.  A rate that passes
+ * the handshake must then survive a few "AT I" round trips; if it doesn't, the next slower rate is
+ * tried from there.</p>
+ * <p/>
+ * <p>Instances of this class are only used on the I/O thread of their {@link ELM327}, while
+ * nothing else is being sent.</p>
+ */
+final class BaudRateNegotiator
+{
+    /// @internal tag for debug logging
+    private final static String TAG = BaudRateNegotiator.class.getName();
+
+    /// The rate (in bits per second) that a baud rate divisor divides
+    private final static int CLOCK = 4000000;
+
+    /// The divisors that are tried (fastest first), each with the standard rate nearest to it
+    private final static int[][] CANDIDATES = {{0x08, 500000},
+                                               {0x11, 230400},
+                                               {0x23, 115200},
+                                               {0x45, 57600}};
+
+    /// The "AT BRT" value (in units of 5 ms) that is used during the handshake
+    private final static int HANDSHAKE_TIMEOUT = 0x28;
+
+    /// The number of milliseconds in each unit of "AT BRT"
+    private final static int MILLIS_PER_UNIT = 5;
+
+    /// The number of milliseconds to wait for the reply to a command
+    private final static long COMMAND_TIMEOUT = 1000;
+
+    /// The number of "AT I" round trips that a new rate must survive
+    private final static int VERIFICATIONS = 3;
+
+    /// The outcome of a single attempt
+    private enum Outcome
+    {
+        /// Both sides use the new rate
+        SWITCHED,
+
+        /// Both sides still use the old rate
+        FAILED,
+
+        /// The adapter does not support "AT BRD"
+        REJECTED
+    }
+
+    /// The transport of the ELM327
+    private final SerialInterface serial;
+
+    /// The performance counters to record traffic in
+    private final InterpreterMetrics metrics;
+
+    /// What the ELM327 identifies itself as (see {@link AdapterCapabilities#getIdentity()})
+    private final String identity;
+
+    /// Holds the reply that is being read
+    private final byte[] buffer = new byte[128];
+
+    /**
+     * Constructs a BaudRateNegotiator
+     *
+     * @param serial
+     *         the transport of the ELM327
+     * @param metrics
+     *         the performance counters to record traffic in
+     * @param identity
+     *         what the ELM327 identifies itself as
+     */
+    BaudRateNegotiator(SerialInterface serial, InterpreterMetrics metrics, String identity)
+    {
+        this.serial = serial;
+        this.metrics = metrics;
+        this.identity = identity;
+    }
+
+    /**
+     * Steps the ELM327 up to the fastest baud rate that works reliably
+     *
+     * @return true if the ELM327 now runs faster than its power-on baud rate
+     *
+     * @throws java.io.IOException
+     *         if any I/O error occurs, or if the ELM327 could not be brought back to a working rate
+     */
+    boolean negotiate()
+            throws
+            IOException
+    {
+        int original = serial.getBaudRate();
+        write(String.format(OpCode.ELM327_BAUD_RATE_TIMEOUT.getOption(), HANDSHAKE_TIMEOUT));
+        if (!readPrompt(COMMAND_TIMEOUT, "OK"))
+        {
+            return false; /// Too old for "AT BRT", and so for "AT BRD"
+        }
+        for (int[] candidate : CANDIDATES)
+        {
+            if (candidate[1] <= original || candidate[1] > serial.getMaxBaudRate())
+            {
+                continue;
+            }
+            Outcome outcome = attempt(candidate[0], candidate[1]);
+            if (outcome == Outcome.REJECTED)
+            {
+                break;
+            }
+            if (outcome == Outcome.SWITCHED && verify())
+            {
+                if (BuildConfig.DEBUG)
+                {
+                    Log.i(TAG, "Baud rate raised from " + original + " to " + candidate[1]);
+                }
+                return true;
+            }
+        }
+        if (serial.getBaudRate() != original &&
+                attempt(Math.round((float) CLOCK / original), original) != Outcome.SWITCHED)
+        {
+            throw new IOException("Unable to return to " + original + " baud");
+        }
+        return false;
+    }
+
+    /**
+     * Performs the handshake for a single baud rate
+     *
+     * @param divisor
+     *         the divisor to send with "AT BRD"
+     * @param baudRate
+     *         the baud rate that the host side should switch to
+     *
+     * @return the outcome of the attempt
+     *
+     * @throws java.io.IOException
+     *         if any I/O error occurs
+     */
+    private Outcome attempt(int divisor, int baudRate)
+            throws
+            IOException
+    {
+        int previous = serial.getBaudRate();
+        write(String.format(OpCode.ELM327_BAUD_RATE_DIVISOR.getOption(), divisor));
+        String reply = readLine(COMMAND_TIMEOUT);
+        while (reply != null && !reply.equals("OK") && !reply.equals("?"))
+        {
+            reply = readLine(COMMAND_TIMEOUT); /// The echo (if echo is on)
+        }
+        if (reply == null || reply.equals("?"))
+        {
+            readPrompt(COMMAND_TIMEOUT, null);
+            return reply == null ? Outcome.FAILED : Outcome.REJECTED;
+        }
+        serial.setBaudRate(baudRate);
+        long window = HANDSHAKE_TIMEOUT * MILLIS_PER_UNIT;
+        String id = readLine(window);
+        if (id != null && id.contains(identity))
+        {
+            write("");
+            if (readPrompt(COMMAND_TIMEOUT, "OK"))
+            {
+                return Outcome.SWITCHED;
+            }
+        }
+        serial.setBaudRate(previous);
+        /// The ELM327 falls back once the handshake times out, and then prints a prompt
+        readPrompt(window + COMMAND_TIMEOUT, null);
+        return Outcome.FAILED;
+    }
+
+    /**
+     * Makes sure that a few round trips at the current baud rate come back intact
+     *
+     * @return true if every round trip came back intact
+     *
+     * @throws java.io.IOException
+     *         if any I/O error occurs
+     */
+    private boolean verify()
+            throws
+            IOException
+    {
+        for (int i = 0; i < VERIFICATIONS; ++i)
+        {
+            write(OpCode.ELM327_IDENTIFY.getOption());
+            if (!readPrompt(COMMAND_TIMEOUT, identity))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /// Writes a command (and the carriage return that ends it)
+    private void write(String command)
+            throws
+            IOException
+    {
+        byte[] bytes = (command + '\r').getBytes();
+        serial.getOutputStream()
+              .write(bytes);
+        metrics.recordBytesOut(bytes.length);
+    }
+
+    /// Reads the next non-empty line, or returns null if none arrives in time
+    private String readLine(long timeout)
+            throws
+            IOException
+    {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (true)
+        {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0)
+            {
+                return null;
+            }
+            int n;
+            try
+            {
+                n = serial.readUntil((byte) '\r', buffer, 0, buffer.length, remaining);
+            }
+            catch (ReadTimeoutException rte)
+            {
+                return null;
+            }
+            metrics.recordBytesIn(n + 1);
+            String line = new String(buffer, 0, Math.min(n, buffer.length)).trim();
+            if (!line.isEmpty())
+            {
+                return line;
+            }
+        }
+    }
+
+    /// Reads up to the next prompt, returning whether it came in time (and held the expected text)
+    private boolean readPrompt(long timeout, String expected)
+            throws
+            IOException
+    {
+        int n;
+        try
+        {
+            n = serial.readUntil((byte) '>', buffer, 0, buffer.length, timeout);
+        }
+        catch (ReadTimeoutException rte)
+        {
+            return false;
+        }
+        metrics.recordBytesIn(n + 1);
+        return expected == null ||
+                new String(buffer, 0, Math.min(n, buffer.length)).contains(expected);
+    }
+}
@@ -10,19 +10,42 @@ import android.util.Log;
 
 import com.lukeleber.scandroid.BuildConfig;
 import com.lukeleber.scandroid.interpreter.AbstractInterpreter;
+import com.lukeleber.scandroid.interpreter.BatchServiceRequest;
+import com.lukeleber.scandroid.interpreter.CallbackExecutors;
 import com.lukeleber.scandroid.interpreter.ConfigurationRequest;
+import com.lukeleber.scandroid.interpreter.DeadlineRequestScheduler;
+import com.lukeleber.scandroid.interpreter.EcuAddress;
 import com.lukeleber.scandroid.interpreter.FailureCode;
 import com.lukeleber.scandroid.interpreter.Handler;
+import com.lukeleber.scandroid.interpreter.MultiEcuServiceRequest;
 import com.lukeleber.scandroid.interpreter.Option;
 import com.lukeleber.scandroid.interpreter.Request;
+import com.lukeleber.scandroid.interpreter.RequestHandle;
+import com.lukeleber.scandroid.interpreter.RequestScheduler;
 import com.lukeleber.scandroid.interpreter.ResponseListener;
 import com.lukeleber.scandroid.interpreter.ServiceRequest;
+import com.lukeleber.scandroid.interpreter.metrics.RequestTrace;
 import com.lukeleber.scandroid.io.CommunicationInterface;
+import com.lukeleber.scandroid.io.ReadTimeoutException;
+import com.lukeleber.scandroid.io.SerialInterface;
 import com.lukeleber.scandroid.sae.j1979.PID;
+import com.lukeleber.scandroid.sae.j1979.PIDSupport;
+import com.lukeleber.scandroid.sae.j1979.Service;
+import com.lukeleber.scandroid.sae.j1979.detail.AppendixA;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * <p>An {@link com.lukeleber.scandroid.interpreter.Interpreter} that utilizes the ELM327 integrated
@@ -38,6 +61,172 @@ public class ELM327
     /// @internal tag for debug logging
     private final static String TAG = ELM327.class.getName();
 
+    /// The placeholder reply for listeners that decode the reply themselves (see
+    /// {@link #decodeReply(String, Object, com.lukeleber.scandroid.interpreter.ResponseListener)})
+    private final static String DECODED = "";
+
+    /// The parser (and its buffers) that the next reply is read through; only touched on the I/O
+    /// thread, and swapped for a spare whenever a reply is handed to the decode thread
+    private ResponseParser parser = new ResponseParser();
+
+    /// The number of milliseconds to wait for a prompt while resynchronizing
+    private final static long RESYNCHRONIZATION_TIMEOUT = 1000;
+
+    /// The number of milliseconds to wait for the reply to a timing command
+    private final static long COMMAND_TIMEOUT = 1000;
+
+    /// Chooses the timing settings; only touched on the I/O thread (see {@link TimingTuner})
+    private final TimingTuner tuner = new TimingTuner();
+
+    /// Keeps K-line sessions open between requests; only touched on the I/O thread and the
+    /// keepalive timer (see {@link KeepaliveScheduler})
+    private final KeepaliveScheduler keepalive = new KeepaliveScheduler();
+
+    /// Lazily holds the timer that queues idle requests (see {@link KeepaliveScheduler})
+    private final static class TimerHolder
+    {
+        /// The timer; its thread is a daemon so that it never keeps a JVM alive
+        private final static ScheduledExecutorService INSTANCE =
+                Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+                {
+                    @Override
+                    public Thread newThread(Runnable r)
+                    {
+                        Thread t = new Thread(r, "ELM327-Keepalive");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+    }
+
+    /// The number of times per {@link KeepaliveScheduler#IDLE_INTERVAL} that the timer looks
+    private final static int IDLE_CHECKS = 4;
+
+    /// The periodic check for due idle requests, or null if idle requests are not in use; only
+    /// touched on the I/O thread
+    private ScheduledFuture<?> idleTimer;
+
+    /// The nano-time at which the last request was written
+    private long writeFinished;
+
+    /// Was the last request a service request (whose reply teaches the tuner)?
+    private boolean tunable;
+
+    /// Learns the number of messages to expect for each Service/PID (see {@link ResponseCountHints})
+    private final ResponseCountHints hints = new ResponseCountHints();
+
+    /// The service and PID of the last request if it was a single service request, otherwise -1
+    private int hintService = -1, hintPid = -1;
+
+    /// The count that was appended to the last request, or zero if none was
+    private int hint;
+
+    /// The wire form of each Service/PID, by response count hint (see {@link #encode(int, int, int)})
+    private final byte[][][] encoded = new byte[0x10 * 0x101][][];
+
+    /// What an ELM327 attaches to each request that is sent over it
+    private final static class Compiled
+    {
+        /// The listener of the latest send
+        DefaultResponseListener<?> listener;
+
+        /// The listener of the send before, which may still be handing out its reply
+        DefaultResponseListener<?> spare;
+
+        /// The wire form of a batch (only touched on the I/O thread)
+        byte[] wire;
+    }
+
+    /// What is written to have the ELM327 repeat the last command
+    private final static byte[] REPEAT = OpCode.ELM327_REPEAT_LAST_COMMAND.getOption()
+                                                                          .getBytes();
+
+    /// The last command that the ELM327 performed, or null if unknown
+    private byte[] lastSent;
+
+    /// May identical service requests be sent as a bare carriage return?
+    private volatile boolean repeating = true;
+
+    /// What the adapter was found to support, or null until it has been probed
+    private volatile AdapterCapabilities capabilities;
+
+    /// The number of times that "AT I" is sent to measure the round-trip time of the adapter
+    private final static int PROBE_ROUND_TRIPS = 3;
+
+    /// The header that is set to see whether "AT SH" is supported (the functional CAN header)
+    private final static String PROBE_HEADER = "ATSH7DF";
+
+    /// Does the adapter run faster than its power-on baud rate (so that "AT Z", which would undo
+    /// that, is sent as "AT WS")?  Only touched on the I/O thread.
+    private boolean raisedBaudRate;
+
+    /// The CAN ID that addresses every ECU on an 11-bit bus
+    private final static int FUNCTIONAL_ID = 0x7DF;
+
+    /// The CAN ID that addresses every ECU on a 29-bit bus
+    private final static int EXTENDED_FUNCTIONAL_ID = 0x18DB33F1;
+
+    /// The ECU that the header currently addresses, or null if requests are broadcast; only
+    /// touched on the I/O thread
+    private EcuAddress addressed;
+
+    /// May requests be addressed to a single ECU (see {@link #address(EcuAddress)})?
+    private volatile boolean addressing = true;
+
+    /// Are headers shown ("AT H1")?  Only touched on the I/O thread.
+    private boolean showingHeaders;
+
+    /// Were headers turned on by a configuration request (rather than for a {@link
+    /// MultiEcuServiceRequest}), so that they must stay on?  Only touched on the I/O thread.
+    private boolean headersRequested;
+
+    /// The commands that reset the ELM327 to its defaults
+    private final static EnumSet<OpCode> RESETS = EnumSet.of(OpCode.ELM327_RESET_ALL,
+                                                             OpCode.ELM327_WARM_START,
+                                                             OpCode.ELM327_RESET_TO_DEFAULT);
+
+    /// The commands that query, monitor, act once or write non-volatile memory, rather than change
+    /// a setting that is lost with the link
+    private final static EnumSet<OpCode> NOT_REPLAYABLE = EnumSet.of(
+            OpCode.ELM327_REPEAT_LAST_COMMAND,
+            OpCode.ELM327_OBD_DISPLAY_ACTIVITY_MONITOR_COUNT,
+            OpCode.ELM327_OBD_BUFFER_DUMP,
+            OpCode.ELM327_OBD_BYPASS_INITIALIZATION,
+            OpCode.ELM327_BAUD_RATE_DIVISOR,
+            OpCode.ELM327_SHOW_CAN_STATUS_COUNTS,
+            OpCode.ELM327_VOLTAGE_READING_CALIBRATE_VOLTAGE,
+            OpCode.ELM327_VOLTAGE_READING_RESTORE_FACTORY_CALIBRATION,
+            OpCode.ELM327_DESCRIBE_CURRENT_PROTOCOL,
+            OpCode.ELM327_DESCRIBE_CURRENT_PROTOCOL_BY_NUMBER,
+            OpCode.ELM327_FORGET_EVENTS,
+            OpCode.ELM327_ISO_FAST_INITIATION,
+            OpCode.ELM327_IDENTIFY,
+            OpCode.ELM327_ISO_DISPLAY_KEY_WORDS,
+            OpCode.ELM327_OTHER_IGNITION_MONITOR_INPUT_LEVEL,
+            OpCode.ELM327_ENTER_LOW_POWER_MODE,
+            OpCode.ELM327_OBD_MONITOR_ALL_MESSAGES,
+            OpCode.ELM327_J1939_MONITOR_FOR_PNG_HHHH,
+            OpCode.ELM327_J1939_MONITOR_FOR_PNG_HHHH_N,
+            OpCode.ELM327_J1939_MONITOR_FOR_PNG_HHHHHH,
+            OpCode.ELM327_J1939_MONITOR_FOR_PNG_HHHHHH_N,
+            OpCode.ELM327_OBD_MONITOR_FOR_RECEIVER,
+            OpCode.ELM327_OBD_MONITOR_FOR_TRANSMITTER,
+            OpCode.ELM327_OBD_PROTOCOL_CLOSE,
+            OpCode.ELM327_PROGRAMMABLE_PARAMETER_DISABLE,
+            OpCode.ELM327_PROGRAMMABLE_PARAMETER_DISABLE_ALL,
+            OpCode.ELM327_PROGRAMMABLE_PARAMETER_ENABLE,
+            OpCode.ELM327_PROGRAMMABLE_PARAMETER_ENABLE_ALL,
+            OpCode.ELM327_PROGRAMMABLE_PARAMETER_SET_PARAMETER,
+            OpCode.ELM327_PROGRAMMABLE_PARAMETER_SUMMARY,
+            OpCode.ELM327_READ_USER_MEMORY,
+            OpCode.ELM327_CAN_SEND_RTR_MESSAGE,
+            OpCode.ELM327_VOLTAGE_READING_READ_INPUT_VOLTAGE,
+            OpCode.ELM327_WRITE_USER_MEMORY,
+            OpCode.ELM327_ISO_PERFORM_SLOW_INITIATION,
+            OpCode.ELM327_DISPLAY_DEVICE_DESCRIPTION,
+            OpCode.ELM327_DISPLAY_DEVICE_IDENTIFIER,
+            OpCode.ELM327_STORE_DEVICE_IDENTIFIER);
+
     public static class ConfigurationRequest extends com.lukeleber.scandroid.interpreter.ConfigurationRequest<String, String>
     {
 
@@ -66,148 +255,1051 @@ public class ELM327
             super(handler, option, args);
         }
 
-        @Override
-        public PID.Unmarshaller<String> getUnmarshaller()
+        @Override
+        public PID.Unmarshaller<String> getUnmarshaller()
+        {
+            return new PID.Unmarshaller<String>()
+            {
+                @Override
+                public String invoke(@NonNull byte... bytes)
+                {
+                    return new String(bytes);
+                }
+            };
+        }
+    }
+
+    /**
+     * Constructs an {@link ELM327} with the provided
+     * {@link com.lukeleber.scandroid.io.CommunicationInterface}
+     *
+     * @param com
+     *         the {@link com.lukeleber.scandroid.io.CommunicationInterface} to communicate with the
+     *         ELM327 circuitry through.
+     */
+    public ELM327(CommunicationInterface com)
+    {
+        super(com);
+    }
+
+    /**
+     * Constructs an {@link ELM327} with the provided
+     * {@link com.lukeleber.scandroid.io.CommunicationInterface} that invokes listeners on the
+     * provided {@link java.util.concurrent.Executor} unless they are sent with another.  Use this
+     * constructor (with a non-Android executor) to run an ELM327 on a plain JVM.
+     *
+     * @param com
+     *         the {@link com.lukeleber.scandroid.io.CommunicationInterface} to communicate with the
+     *         ELM327 circuitry through.
+     * @param callbackExecutor
+     *         the default {@link java.util.concurrent.Executor} for listeners (see {@link
+     *         com.lukeleber.scandroid.interpreter.CallbackExecutors})
+     */
+    public ELM327(CommunicationInterface com, Executor callbackExecutor)
+    {
+        super(com, new DeadlineRequestScheduler<String>(), callbackExecutor);
+    }
+
+    /**
+     * Constructs an {@link ELM327} with the provided
+     * {@link com.lukeleber.scandroid.io.CommunicationInterface} that schedules its requests with
+     * the provided {@link com.lukeleber.scandroid.interpreter.RequestScheduler} (such as a {@link
+     * com.lukeleber.scandroid.interpreter.BoundedRequestScheduler}) and invokes listeners on the
+     * provided {@link java.util.concurrent.Executor} unless they are sent with another.
+     *
+     * @param com
+     *         the {@link com.lukeleber.scandroid.io.CommunicationInterface} to communicate with the
+     *         ELM327 circuitry through.
+     * @param scheduler
+     *         the {@link com.lukeleber.scandroid.interpreter.RequestScheduler} that decides the
+     *         order in which requests are written
+     * @param callbackExecutor
+     *         the default {@link java.util.concurrent.Executor} for listeners (see {@link
+     *         com.lukeleber.scandroid.interpreter.CallbackExecutors})
+     */
+    public ELM327(CommunicationInterface com, RequestScheduler<String> scheduler,
+                  Executor callbackExecutor)
+    {
+        super(com, scheduler, callbackExecutor);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The ELM327 may still hold the timing settings of an earlier session, so the {@link
+     * TimingTuner} sends its own before the first service request.  Nor are the header and the
+     * header display of an earlier session taken for granted, as the adapter may or may not have
+     * been power-cycled since: upon reconnecting it is put back to its defaults ("AT D"), so that
+     * the next request to a single ECU sets the header again, and headers are only shown again
+     * once a replayed configuration request or a {@link MultiEcuServiceRequest} turns them on.
+     * Upon the first connection the adapter is instead probed for what it supports (see {@link
+     * AdapterCapabilities}), which leaves it at its defaults as well, and any fast path that it
+     * does not support is disabled.  An adapter on a {@link
+     * com.lukeleber.scandroid.io.SerialInterface} is then stepped up to the fastest baud rate that
+     * works reliably (see {@link BaudRateNegotiator}).
+     */
+    @Override
+    protected void init()
+            throws
+            IOException
+    {
+        tuner.onConnected();
+        keepalive.onConnected();
+        lastSent = null;
+        raisedBaudRate = false;
+        addressed = null;
+        showingHeaders = headersRequested = false;
+        if (capabilities == null)
+        {
+            AdapterCapabilities probed = probe();
+            if (!probed.supportsResponseCountHints())
+            {
+                hints.setEnabled(false);
+            }
+            if (!probed.supportsTimeout() || !probed.supportsAdaptiveTiming())
+            {
+                tuner.setEnabled(false);
+            }
+            if (!probed.isIdentified())
+            {
+                /// Not even the basics can be taken for granted
+                repeating = false;
+            }
+            capabilities = probed;
+            if (BuildConfig.DEBUG)
+            {
+                Log.i(TAG, "Adapter capabilities: " + probed);
+            }
+        }
+        else
+        {
+            attempt(OpCode.ELM327_RESET_TO_DEFAULT.getOption());
+            tuner.onReset();
+            lastSent = null;
+        }
+        if (getCommunicationInterface() instanceof SerialInterface && capabilities.isIdentified())
+        {
+            raisedBaudRate = new BaudRateNegotiator(
+                    (SerialInterface) getCommunicationInterface(), getMetrics(),
+                    capabilities.getIdentity()).negotiate();
+            lastSent = null;
+        }
+    }
+
+    /**
+     * Tries each optional command that a fast path depends on, and measures how long the adapter
+     * takes to answer.  Every setting that is touched is put back to its default afterwards.
+     * Invoked on the I/O thread while nothing else is being sent.
+     *
+     * @return what the adapter was found to support
+     *
+     * @throws java.io.IOException
+     *         if any I/O error occurs
+     */
+    private AdapterCapabilities probe()
+            throws
+            IOException
+    {
+        String identity = null;
+        long roundTrip = Long.MAX_VALUE;
+        for (int i = 0; i < PROBE_ROUND_TRIPS; ++i)
+        {
+            long start = System.nanoTime();
+            String reply = attempt(OpCode.ELM327_IDENTIFY.getOption());
+            roundTrip = Math.min(roundTrip, System.nanoTime() - start);
+            if (reply != null)
+            {
+                identity = reply;
+            }
+        }
+        String description = attempt(OpCode.ELM327_DISPLAY_DEVICE_DESCRIPTION.getOption());
+        boolean timeout = attempt(String.format(OpCode.ELM327_OBD_SET_TIMEOUT.getOption(),
+                                              TimingTuner.DEFAULT_TIMEOUT)) != null;
+        boolean adaptive = attempt(OpCode.ELM327_OBD_ADAPTIVE_TIMING_AUTO2.getOption()) != null &
+                attempt(OpCode.ELM327_OBD_ADAPTIVE_TIMING_AUTO1.getOption()) != null;
+        boolean formatting =
+                attempt(OpCode.ELM327_OBD_CAN_AUTO_FORMATTING_OFF.getOption()) != null &
+                attempt(OpCode.ELM327_OBD_CAN_AUTO_FORMATTING_ON.getOption()) != null;
+        boolean headers = attempt(OpCode.ELM327_OBD_HEADERS_ON.getOption()) != null &
+                attempt(OpCode.ELM327_OBD_HEADERS_OFF.getOption()) != null &
+                attempt(PROBE_HEADER) != null;
+        /// Forget the header (and anything else) that was set along the way
+        attempt(OpCode.ELM327_RESET_TO_DEFAULT.getOption());
+        tuner.onReset();
+        lastSent = null;
+        addressed = null;
+        return new AdapterCapabilities(identity, description, timeout, adaptive, formatting,
+                                       headers, roundTrip);
+    }
+
+    /**
+     * Writes a command while probing the adapter
+     *
+     * @param command
+     *         the command to write (without the carriage return)
+     *
+     * @return the reply (without the echo of the command, should echo be on), or null if the
+     * adapter rejected the command or did not answer in time
+     *
+     * @throws java.io.IOException
+     *         if any I/O error occurs
+     */
+    private String attempt(String command)
+            throws
+            IOException
+    {
+        try
+        {
+            command(command);
+        }
+        catch (ReadTimeoutException rte)
+        {
+            resynchronize();
+            return null;
+        }
+        parser.parse();
+        if (parser.isRejected())
+        {
+            return null;
+        }
+        for (String line : parser.toString()
+                                 .split("[\\r\\n]+"))
+        {
+            line = line.trim();
+            if (!line.isEmpty() && !line.equalsIgnoreCase(command))
+            {
+                return line;
+            }
+        }
+        return "";
+    }
+
+    /**
+     * Retrieves what the adapter was found to support when it was first connected
+     *
+     * @return the {@link AdapterCapabilities} of the adapter, or null if it has not been probed
+     * yet
+     */
+    public final AdapterCapabilities getCapabilities()
+    {
+        return capabilities;
+    }
+
+    /**
+     * Enables or disables the repeat fast path: a service request that is identical to the last
+     * command is sent as a bare carriage return (see {@link OpCode#ELM327_REPEAT_LAST_COMMAND}),
+     * which spares both the link and the ELM327 the full command.  This is what makes a {@link
+     * com.lukeleber.scandroid.interpreter.Burst} fast on slow links.  It is enabled by default.
+     *
+     * @param repeating
+     *         true to enable the repeat fast path, false to disable it
+     */
+    public final void setRepeatingEnabled(boolean repeating)
+    {
+        this.repeating = repeating;
+    }
+
+    /**
+     * Is the repeat fast path enabled?
+     *
+     * @return true if the repeat fast path is enabled, otherwise false
+     */
+    public final boolean isRepeatingEnabled()
+    {
+        return repeating;
+    }
+
+    /**
+     * Retrieves the {@link TimingTuner} that chooses the "AT ST" timeout and adaptive timing mode
+     * of this ELM327
+     *
+     * @return the {@link TimingTuner} of this ELM327
+     */
+    public final TimingTuner getTimingTuner()
+    {
+        return tuner;
+    }
+
+    /**
+     * Retrieves the {@link KeepaliveScheduler} that keeps K-line sessions open between requests
+     *
+     * @return the {@link KeepaliveScheduler} of this ELM327
+     */
+    public final KeepaliveScheduler getKeepaliveScheduler()
+    {
+        return keepalive;
+    }
+
+    /**
+     * Retrieves the {@link ResponseCountHints} that tell this ELM327 how many messages to expect
+     * in reply to each Service/PID
+     *
+     * @return the {@link ResponseCountHints} of this ELM327
+     */
+    public final ResponseCountHints getResponseCountHints()
+    {
+        return hints;
+    }
+
+    /**
+     * Sends any timing settings that the {@link TimingTuner} has changed its mind about.  This
+     * method is invoked on the I/O thread right before a service request is written, while the
+     * ELM327 is idle.
+     *
+     * @throws java.io.IOException
+     *         if any I/O error occurs
+     */
+    private void tune()
+            throws
+            IOException
+    {
+        if (!tuner.hasPendingChange())
+        {
+            return;
+        }
+        int timeout = tuner.getTimeout();
+        OpCode mode = tuner.getMode();
+        if (!tuner.isApplied(timeout))
+        {
+            command(String.format(OpCode.ELM327_OBD_SET_TIMEOUT.getOption(), timeout));
+            tuner.onApplied(timeout);
+        }
+        if (!tuner.isApplied(mode))
+        {
+            command(mode.getOption());
+            tuner.onApplied(mode);
+        }
+        if (BuildConfig.DEBUG)
+        {
+            Log.d(TAG, String.format("Timing set to ST %02X (%d ms), %s", timeout, timeout * 4,
+                                     mode.getOption()));
+        }
+    }
+
+    /**
+     * Sends whatever the {@link KeepaliveScheduler} needs before the next request: "AT DPN" once
+     * a protocol that was found automatically is in session, and the wakeup settings on K-line
+     * protocols.  This method is invoked on the I/O thread right before a request to the vehicle is
+     * written, while the ELM327 is idle.
+     *
+     * @throws java.io.IOException
+     *         if any I/O error occurs
+     */
+    private void keepAlive()
+            throws
+            IOException
+    {
+        if (keepalive.needsProtocol())
+        {
+            keepalive.onDescribedProtocol(
+                    attempt(OpCode.ELM327_DESCRIBE_CURRENT_PROTOCOL_BY_NUMBER.getOption()));
+        }
+        if (keepalive.needsWakeups())
+        {
+            keepalive.onWakeups(attempt(String.format(OpCode.ELM327_ISO_SET_WAKEUP.getOption(),
+                                                      KeepaliveScheduler.WAKEUP_INTERVAL)) != null &&
+                                        attempt(String.format(
+                                                OpCode.ELM327_ISO_SET_WAKEUP_MESSAGE.getOption(),
+                                                keepalive.getWakeupMessage())) != null);
+        }
+    }
+
+    /**
+     * Starts the timer that queues an idle request whenever the {@link KeepaliveScheduler} says
+     * that one is due, and stops it again when this ELM327 shuts down.  The idle requests are
+     * queued like any other, at {@link Request.Priority#BACKGROUND} priority, so they never hold
+     * up real traffic.  Invoked on the I/O thread.
+     */
+    private void startIdleRequests()
+    {
+        long period = KeepaliveScheduler.IDLE_INTERVAL / IDLE_CHECKS;
+        idleTimer = TimerHolder.INSTANCE.scheduleAtFixedRate(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                long now = System.nanoTime();
+                if (getLinkStatus() != LinkStatus.CONNECTED || !keepalive.isIdleRequestDue(now))
+                {
+                    return;
+                }
+                /// Not again until this one has had the chance to be written
+                keepalive.onWrite(now);
+                sendRequest(new ServiceRequest<PIDSupport>(
+                                    Service.LIVE_DATASTREAM,
+                                    AppendixA.J1979_CHECK_PID_SUPPORT_1_TO_20, null)
+                                    .setPriority(Request.Priority.BACKGROUND)
+                                    .setDeadline(KeepaliveScheduler.IDLE_INTERVAL),
+                            CallbackExecutors.direct());
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+        addShutdownListener(new ShutdownListener()
+        {
+            @Override
+            public void onShutdown()
+            {
+                idleTimer.cancel(false);
+            }
+        });
+    }
+
+    /**
+     * Writes a command on behalf of the interpreter itself and discards its reply
+     *
+     * @param command
+     *         the command to write (without the carriage return)
+     *
+     * @throws java.io.IOException
+     *         if any I/O error occurs
+     */
+    private void command(String command)
+            throws
+            IOException
+    {
+        command((command + '\r').getBytes());
+    }
+
+    /**
+     * Writes a command on behalf of the interpreter itself and discards its reply
+     *
+     * @param toSend
+     *         the command to write (including the carriage return)
+     *
+     * @throws java.io.IOException
+     *         if any I/O error occurs
+     */
+    private void command(byte[] toSend)
+            throws
+            IOException
+    {
+        command(toSend, COMMAND_TIMEOUT);
+    }
+
+    /**
+     * Writes a command on behalf of the interpreter itself and reads its reply into the parser,
+     * waiting no longer than the provided timeout
+     *
+     * @param toSend
+     *         the command to write (including the carriage return)
+     * @param timeout
+     *         the number of milliseconds to wait for the reply (zero waits forever)
+     *
+     * @throws java.io.IOException
+     *         if any I/O error occurs
+     */
+    private void command(byte[] toSend, long timeout)
+            throws
+            IOException
+    {
+        getCommunicationInterface().getOutputStream()
+                                   .write(toSend);
+        lastSent = toSend;
+        writeFinished = System.nanoTime();
+        getMetrics().recordBytesOut(toSend.length);
+        getMetrics().recordBytesIn(parser.read(getCommunicationInterface(), timeout) + 1);
+    }
+
+    /**
+     * Keeps the {@link TimingTuner} informed of configuration requests that affect timing
+     *
+     * @param option
+     *         the option that was configured
+     * @param args
+     *         the arguments of the option
+     */
+    private void observe(Option<String> option, Object[] args)
+    {
+        if (RESETS.contains(option))
+        {
+            tuner.onReset();
+            keepalive.onReset();
+            /// The header and the headers shown are back to their defaults
+            addressed = null;
+            showingHeaders = headersRequested = false;
+        }
+        else if (option == OpCode.ELM327_OBD_HEADERS_ON || option == OpCode.ELM327_OBD_HEADERS_OFF)
+        {
+            showingHeaders = headersRequested = option == OpCode.ELM327_OBD_HEADERS_ON;
+        }
+        else if (isProtocol(option))
+        {
+            if (args != null && args.length > 0 && args[0] instanceof Number)
+            {
+                tuner.onProtocol(((Number) args[0]).intValue());
+            }
+            /// With a fallback to automatic search, the protocol is only known once it is asked for
+            keepalive.onProtocol(args != null && args.length > 0 && args[0] instanceof Number &&
+                                         option != OpCode.ELM327_OBD_SET_DEFAULT_PROTOCOL_AUTO &&
+                                         option != OpCode.ELM327_OBD_TRY_PROTOCOL_FALLBACK_AUTO ?
+                                         ((Number) args[0]).intValue() :
+                                         Protocol.AUTOMATIC.getID());
+        }
+        else if (option == OpCode.ELM327_OBD_PROTOCOL_CLOSE)
+        {
+            keepalive.onClosed();
+        }
+        else if (option == OpCode.ELM327_ISO_SET_WAKEUP ||
+                option == OpCode.ELM327_ISO_SET_WAKEUP_MESSAGE ||
+                option == OpCode.ELM327_ISO_STOP_SENDING_WAKEUPS)
+        {
+            /// Wakeups chosen by hand win
+            keepalive.setEnabled(false);
+        }
+        else if (option == OpCode.ELM327_OBD_SET_TIMEOUT ||
+                option == OpCode.ELM327_OBD_ADAPTIVE_OFF ||
+                option == OpCode.ELM327_OBD_ADAPTIVE_TIMING_AUTO1 ||
+                option == OpCode.ELM327_OBD_ADAPTIVE_TIMING_AUTO2)
+        {
+            /// Timing chosen by hand wins
+            tuner.setEnabled(false);
+        }
+    }
+
+    /// Does the provided option select a protocol?
+    private static boolean isProtocol(Option<String> option)
+    {
+        return option == OpCode.ELM327_OBD_SET_PROTOCOL ||
+                option == OpCode.ELM327_OBD_SET_DEFAULT_PROTOCOL_AUTO ||
+                option == OpCode.ELM327_OBD_TRY_PROTOCOL ||
+                option == OpCode.ELM327_OBD_TRY_PROTOCOL_FALLBACK_AUTO;
+    }
+
+    /**
+     * Points the header (and the CAN receive address) at the provided ECU, unless it already
+     * points there.  Requests are broadcast instead if the adapter can't set headers, or if it
+     * rejected an earlier attempt.  This method is invoked on the I/O thread right before a request
+     * to the vehicle is written, while the ELM327 is idle.
+     *
+     * @param target
+     *         the ECU to address, or null to broadcast
+     *
+     * @throws java.io.IOException
+     *         if any I/O error occurs
+     */
+    private void address(EcuAddress target)
+            throws
+            IOException
+    {
+        if (target != null && (!target.isAddressable() || !addressing || capabilities == null ||
+                !capabilities.supportsHeaderControl()))
+        {
+            target = null;
+        }
+        if (target == null ? addressed == null : target.equals(addressed))
+        {
+            return;
+        }
+        boolean accepted;
+        if (target == null)
+        {
+            accepted = broadcast(addressed.isExtended());
+        }
+        else if (target.isExtended())
+        {
+            accepted = attempt(String.format(OpCode.ELM327_OBD_SET_HEADER_WW_XX_YY_ZZ.getOption(),
+                                             target.getRequestId())) != null &&
+                    attempt(String.format(OpCode.ELM327_CAN_SET_RECEIVE_ADDRESS_29_BIT.getOption(),
+                                          target.getResponseId())) != null;
+        }
+        else
+        {
+            accepted = attempt(String.format(OpCode.ELM327_OBD_SET_HEADER_00_0X_YZ.getOption(),
+                                             target.getRequestId())) != null &&
+                    attempt(String.format(OpCode.ELM327_CAN_SET_RECEIVE_ADDRESS_11_BIT.getOption(),
+                                          target.getResponseId())) != null;
+        }
+        if (accepted)
+        {
+            addressed = target;
+            return;
+        }
+        if (BuildConfig.DEBUG)
+        {
+            Log.i(TAG, "Unable to address " + target + "; broadcasting from now on");
+        }
+        addressing = false;
+        if (target != null)
+        {
+            broadcast(target.isExtended());
+        }
+        addressed = null;
+    }
+
+    /**
+     * Points the header back at every ECU and restores the default CAN receive filters
+     *
+     * @param extended
+     *         are the CAN IDs 29 bits wide (rather than 11)?
+     *
+     * @return true if the adapter accepted both commands
+     *
+     * @throws java.io.IOException
+     *         if any I/O error occurs
+     */
+    private boolean broadcast(boolean extended)
+            throws
+            IOException
+    {
+        String header = extended ?
+                String.format(OpCode.ELM327_OBD_SET_HEADER_WW_XX_YY_ZZ.getOption(),
+                              EXTENDED_FUNCTIONAL_ID) :
+                String.format(OpCode.ELM327_OBD_SET_HEADER_00_0X_YZ.getOption(), FUNCTIONAL_ID);
+        return attempt(header) != null &&
+                attempt(OpCode.ELM327_CAN_RESET_RECEIVE_ADDRESS.getOption()) != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The ECUs are told apart by the headers of their answers, which are shown for {@link
+     * MultiEcuServiceRequest MultiEcuServiceRequests} alone (an adapter that can't show headers
+     * fails them with {@link FailureCode#REQUEST_NOT_SUPPORTED}).
+     */
+    @Override
+    protected boolean supportsMultiEcuRequests()
+    {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean isReset(
+            com.lukeleber.scandroid.interpreter.ConfigurationRequest<?, ?> request)
+    {
+        return RESETS.contains(request.getOption());
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Every command that changes a volatile setting is replayed, including the protocol, so that
+     * no protocol search is needed after reconnecting.
+     */
+    @Override
+    protected boolean isReplayable(
+            com.lukeleber.scandroid.interpreter.ConfigurationRequest<?, ?> request)
+    {
+        return !NOT_REPLAYABLE.contains(request.getOption());
+    }
+
+    /**
+     * {inheritDoc}
+     * <p/>
+     * The wire form of each service request is compiled once per Service/PID (and response count
+     * hint), and that of each batch once per batch, so that requests which are sent over and
+     * over again are written without formatting anything.
+     */
+    @Override
+    protected void writeRequest(Request<?> request)
+            throws
+            IOException
+    {
+        byte[] toSend;
+        tunable = request instanceof ServiceRequest || request instanceof BatchServiceRequest;
+        hintService = hintPid = -1;
+        hint = 0;
+        if (showingHeaders && !headersRequested && !(request instanceof MultiEcuServiceRequest))
+        {
+            /// Hidden again after a MultiEcuServiceRequest, as every other reply is read without
+            command(OpCode.ELM327_OBD_HEADERS_OFF.getOption());
+            showingHeaders = false;
+        }
+        if (tunable)
+        {
+            address(request.getTarget());
+            tune();
+            keepAlive();
+        }
+        if (request instanceof ServiceRequest)
+        {
+            ServiceRequest<?> sr = (ServiceRequest<?>) request;
+            int service = sr.getService()
+                            .getID();
+            int pid = -1;
+            if (sr.getPID() != null)
+            {
+                pid = hintPid = sr.getPID()
+                                  .getID();
+                hintService = service;
+                hint = hints.get(service, pid);
+            }
+            toSend = encode(service, pid, hint);
+        }
+        else if (request instanceof BatchServiceRequest)
+        {
+            Compiled compiled = compiled(request);
+            if (compiled.wire == null)
+            {
+                compiled.wire = compile((BatchServiceRequest) request);
+            }
+            toSend = compiled.wire;
+        }
+        else if (request instanceof MultiEcuServiceRequest)
+        {
+            MultiEcuServiceRequest<?> mr = (MultiEcuServiceRequest<?>) request;
+            address(null);
+            if (!showingHeaders && capabilities != null && capabilities.supportsHeaderControl())
+            {
+                command(OpCode.ELM327_OBD_HEADERS_ON.getOption());
+                showingHeaders = true;
+            }
+            toSend = encode(mr.getService()
+                              .getID(), mr.getPID()
+                                          .getID(), 0);
+        }
+        else if (request instanceof ConfigurationRequest)
+        {
+            ConfigurationRequest cr = (ConfigurationRequest) request;
+            if (isProtocol(cr.getOption()))
+            {
+                /// A header that was set for one protocol means nothing on another
+                address(null);
+            }
+            String s = raisedBaudRate && cr.getOption() == OpCode.ELM327_RESET_ALL ?
+                    /// A full reset would drop the adapter back to its power-on baud rate
+                    OpCode.ELM327_WARM_START.getOption() :
+                    String.format(cr.getOption()
+                                    .getOption(), cr.getArgs());
+            toSend = new byte[s.length() + 1];
+            System.arraycopy(s.getBytes(), 0, toSend, 0, s.length());
+            toSend[toSend.length - 1] = 0x0D;
+            observe(cr.getOption(), cr.getArgs());
+        }
+        else
+        {
+            throw new UnsupportedOperationException(
+                    "Request types of " + request.getClass()
+                                                 .getSimpleName() +
+                            " are not supported by the " + getName() + " interpreter"
+            );
+        }
+        if (tunable && repeating && (toSend == lastSent || Arrays.equals(toSend, lastSent)))
+        {
+            toSend = REPEAT;
+        }
+        else
+        {
+            lastSent = toSend;
+        }
+        getCommunicationInterface().getOutputStream()
+                                   .write(toSend);
+        writeFinished = System.nanoTime();
+        if (!(request instanceof ConfigurationRequest))
+        {
+            keepalive.onWrite(writeFinished);
+        }
+        getMetrics().recordBytesOut(toSend.length);
+    }
+
+    /**
+     * Retrieves the wire form of a service request, compiling it the first time that it is needed.
+     * Must be called on the I/O thread.
+     *
+     * @param service
+     *         the ID of the service
+     * @param pid
+     *         the ID of the PID, or -1 for a request without one
+     * @param hint
+     *         the response count to append, or zero for none
+     *
+     * @return the wire form of the request (shared; never modify it)
+     */
+    private byte[] encode(int service, int pid, int hint)
+    {
+        if (service < 0 || service >= 0x10)
+        {
+            return compile(service, pid, hint);
+        }
+        int key = service * 0x101 + (pid == -1 ? 0x100 : pid);
+        byte[][] variants = encoded[key];
+        if (variants == null)
+        {
+            variants = encoded[key] = new byte[0x10][];
+        }
+        byte[] rv = variants[hint];
+        if (rv == null)
+        {
+            rv = variants[hint] = compile(service, pid, hint);
+        }
+        return rv;
+    }
+
+    /// Builds the wire form of a service request
+    private static byte[] compile(int service, int pid, int hint)
+    {
+        String s = pid == -1 ? String.format("%02x", service) :
+                String.format("%02x%02x", service, pid);
+        if (hint != 0)
+        {
+            s += Character.forDigit(hint, 16);
+        }
+        return (s + '\r').getBytes();
+    }
+
+    /// Builds the wire form of a batch
+    private static byte[] compile(BatchServiceRequest batch)
+    {
+        StringBuilder sb = new StringBuilder(String.format("%02x", batch.getService()
+                                                                        .getID()));
+        for (ServiceRequest<?> member : batch.getMembers())
+        {
+            sb.append(String.format("%02x", member.getPID()
+                                                  .getID()));
+            if (batch.getService() == Service.FREEZE_FRAME_DATA)
+            {
+                sb.append("00"); /// Frame #0 is the only frame that J1979 mandates
+            }
+        }
+        return sb.append('\r')
+                 .toString()
+                 .getBytes();
+    }
+
+    /**
+     * Retrieves what this ELM327 attached to the provided request, attaching it first if needed
+     *
+     * @param request
+     *         the request to look up
+     *
+     * @return what this ELM327 attached to the provided request
+     */
+    private Compiled compiled(Request<?> request)
+    {
+        Object attachment = request.getAttachment(this);
+        if (attachment instanceof Compiled)
+        {
+            return (Compiled) attachment;
+        }
+        Compiled rv = new Compiled();
+        request.attach(this, rv);
+        return rv;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Always returns "ELM327"
+     */
+    @Override
+    public String getName()
+    {
+        return "ELM327";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final <V> RequestHandle sendRequest(Request<V> request, Executor executor)
+    {
+        RequestHandle answered = answerFromCache(request, executor);
+        if (answered != null)
         {
-            return new PID.Unmarshaller<String>()
-            {
-                @Override
-                public String invoke(@NonNull byte... bytes)
-                {
-                    return new String(bytes);
-                }
-            };
+            return answered;
         }
+        return super.sendRequest(request, listenerFor(request), executor);
     }
 
     /**
-     * Constructs an {@link ELM327} with the provided
-     * {@link com.lukeleber.scandroid.io.CommunicationInterface}
+     * Retrieves the {@link DefaultResponseListener} of the provided request.  A request that is
+     * sent again gets one of the two listeners that it had before: usually the last one, or the
+     * one before if the last is still handing out its reply (a handler that sends its request
+     * again does exactly that).  Only when both are still busy is a new one made.
      *
-     * @param com
-     *         the {@link com.lukeleber.scandroid.io.CommunicationInterface} to communicate with the
-     *         ELM327 circuitry through.
+     * @param request
+     *         the request that is being sent
+     *
+     * @return a listener that is ready to handle the reply to the provided request
      */
-    public ELM327(CommunicationInterface com)
+    @SuppressWarnings("unchecked")
+    private <V> DefaultResponseListener<V> listenerFor(Request<V> request)
     {
-        super(com);
+        Compiled compiled = compiled(request);
+        synchronized (compiled)
+        {
+            DefaultResponseListener<V> listener = (DefaultResponseListener<V>) compiled.listener;
+            if (listener != null && listener.acquire())
+            {
+                return listener;
+            }
+            listener = (DefaultResponseListener<V>) compiled.spare;
+            if (listener == null || !listener.acquire())
+            {
+                listener = new DefaultResponseListener<>(request);
+                listener.acquire();
+            }
+            compiled.spare = compiled.listener;
+            compiled.listener = listener;
+            return listener;
+        }
     }
 
     /**
-     * {@inheritDoc}
+     * {inheritDoc}
      */
     @Override
-    protected void init()
+    public String readReply()
             throws
             IOException
     {
-        /// no-op
-        /// In the future some custom scan tools might require tweaking the communication
-        /// protocol, baud-rates, etc...to access some non-OBDII functionality in the remote
-        /// systems
+        getMetrics().recordBytesIn(parser.read(getCommunicationInterface()) + 1);
+        return parser.toString();
     }
 
     /**
-     * {inheritDoc}
+     * {@inheritDoc}
+     * <p/>
+     * The reply is parsed here, so that "NO DATA" replies are counted by the {@link #getMetrics()
+     * metrics} and the timing and response count hints can learn from it, but it is left in the
+     * {@link ResponseParser} to be decoded by {@link #decodeReply(String, Object,
+     * com.lukeleber.scandroid.interpreter.ResponseListener)}.
      */
     @Override
-    protected void writeRequest(Request<?> request)
+    protected String readReply(ResponseListener<String> listener, long timeout)
             throws
             IOException
     {
-        byte[] toSend;
-        if (request instanceof ServiceRequest)
+        getMetrics().recordBytesIn(parser.read(getCommunicationInterface(), timeout) + 1);
+        trace(RequestTrace.Stage.FIRST_BYTE, parser.getFirstByteTime());
+        trace(RequestTrace.Stage.REPLY_RECEIVED, System.nanoTime());
+        parser.parse(showingHeaders);
+        if (hint != 0 && parser.isRejected())
         {
-            @SuppressWarnings("unchecked")
-            ServiceRequest<?> sr = (ServiceRequest<?>) request;
-            String s = null;
-            if(sr.getPID() != null)
+            /// Adapters before version 1.3 don't understand the count; ask again without it, as
+            /// patiently as the request asked for
+            if (BuildConfig.DEBUG)
             {
-                s = String.format("%02x%02x", sr.getService()
-                                                .getID(), sr.getPID()
-                                                            .getID());
+                Log.i(TAG, "Response count hints are not supported; disabling them");
             }
-            else
+            hints.setEnabled(false);
+            command(encode(hintService, hintPid, 0), timeout);
+            hint = 0;
+            trace(RequestTrace.Stage.REPLY_RECEIVED, System.nanoTime());
+            parser.parse(showingHeaders);
+        }
+        if (hintPid != -1)
+        {
+            hints.record(hintService, hintPid, hint, parser);
+        }
+        if (tunable)
+        {
+            keepalive.onReply(parser.getMessageCount() > 0, parser.isBusInit());
+            if (idleTimer == null && keepalive.isUsingIdleRequests())
             {
-                s = String.format("%02x", sr.getService().getID());
+                /// The adapter can't keep the session open by itself
+                startIdleRequests();
             }
-            toSend = new byte[s.length() + 1];
-            System.arraycopy(s.getBytes(), 0, toSend, 0, s.length());
-
         }
-        else if (request instanceof ConfigurationRequest)
+        if (parser.isNoData())
         {
-            ConfigurationRequest cr = (ConfigurationRequest) request;
-            String s = String.format(cr.getOption()
-                                       .getOption(), cr.getArgs());
-            toSend = new byte[s.length() + 1];
-            System.arraycopy(s.getBytes(), 0, toSend, 0, s.length());
+            getMetrics().recordNoData();
+            if (tunable)
+            {
+                tuner.recordNoData();
+            }
         }
-        else
+        else if (tunable && parser.getMessageCount() > 0)
         {
-            throw new UnsupportedOperationException(
-                    "Request types of " + request.getClass()
-                                                 .getSimpleName() +
-                            " are not supported by the " + getName() + " interpreter"
-            );
+            tuner.record(parser.getFirstByteTime() - writeFinished, parser.getMessageCount());
         }
-        toSend[toSend.length - 1] = 0x0D;
-        getCommunicationInterface().getOutputStream()
-                                   .write(toSend);
+        if (listener instanceof DefaultResponseListener &&
+                ((DefaultResponseListener<?>) listener).isDecodable())
+        {
+            return DECODED;
+        }
+        return parser.toString();
     }
 
     /**
      * {@inheritDoc}
      * <p/>
-     * Always returns "ELM327"
+     * The {@link ResponseParser} that holds the reply is handed over as-is, and a spare one takes
+     * its place, so replies are never copied.
      */
     @Override
-    public String getName()
+    protected Object captureReply(Object spare)
     {
-        return "ELM327";
+        ResponseParser full = parser;
+        parser = spare == null ? new ResponseParser() : (ResponseParser) spare;
+        return full;
     }
 
     /**
      * {@inheritDoc}
+     * <p/>
+     * Replies to requests sent through {@link #sendRequest(com.lukeleber.scandroid.interpreter.Request,
+     * java.util.concurrent.Executor)}
+     * are decoded straight out of the buffers of the {@link ResponseParser} without ever being
+     * turned into a string, and replies that can't be understood are counted by the {@link
+     * #getMetrics() metrics}.  All other listeners receive the reply as a string, as they always
+     * have.
      */
     @Override
-    public final <V> void sendRequest(Request<V> request)
+    protected String decodeReply(String reply, Object context, ResponseListener<String> listener)
     {
-        super.sendRequest(request, new DefaultResponseListener<>(request));
+        ResponseParser held = (ResponseParser) context;
+        if (listener instanceof DefaultResponseListener &&
+                ((DefaultResponseListener<?>) listener).decode(held))
+        {
+            if (((DefaultResponseListener<?>) listener).isUnrecognized())
+            {
+                getMetrics().recordError();
+            }
+            if (getResponseCache() != null)
+            {
+                ((DefaultResponseListener<?>) listener).remember(this);
+            }
+            return DECODED;
+        }
+        return reply == DECODED ? held.toString() : reply;
     }
 
     /**
-     * {inheritDoc}
+     * {@inheritDoc}
+     * <p/>
+     * A {@link DefaultResponseListener} is freed for the next send of its request, so that
+     * cancelling a request does not cost it one of its pooled listeners.
      */
     @Override
-    public String readReply()
+    protected void releaseListener(ResponseListener<String> listener)
+    {
+        if (listener instanceof DefaultResponseListener)
+        {
+            ((DefaultResponseListener<?>) listener).release();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Any character that is sent while the ELM327 is busy aborts what it is doing, after which it
+     * prints "STOPPED" and a fresh prompt; when it is idle, a space is simply ignored.  So a single
+     * space is written and everything up to the next prompt is discarded.
+     */
+    @Override
+    protected void resynchronize()
             throws
             IOException
     {
-        InputStream inputStream = getCommunicationInterface().getInputStream();
-        byte[] response = new byte[256];
-        int i = 0;
-        while (true)
+        getCommunicationInterface().getOutputStream()
+                                   .write(' ');
+        getMetrics().recordBytesOut(1);
+        lastSent = null; /// Whatever was interrupted may not be repeated
+        try
         {
-            /// I found no documentation about any function returning more than 32 bytes
-            /// However this number is subject to change if I missed something...
+            getMetrics().recordBytesIn(parser.read(getCommunicationInterface(),
+                                                   RESYNCHRONIZATION_TIMEOUT) + 1);
+        }
+        catch (ReadTimeoutException rte)
+        {
+            /// The ELM327 was idle all along (the prompt of the late reply was already consumed)
             if (BuildConfig.DEBUG)
             {
-                if (i >= response.length)
-                {
-                    Log.e(TAG, "Buffer overflow in ELM327.readReply");
-                }
-            }
-            if ((response[i++] = (byte) inputStream.read()) == 0x3E) /// Carriage return
-            {
-                break;
-            }
-            else if (response[i] == 0x20) /// Ignore whitespace
-            {
-                --i;
+                Log.d(TAG, "No prompt while resynchronizing; assuming the ELM327 is idle");
             }
         }
-        return new String(Arrays.copyOf(response, i - 2)); /// Chop off "\n>"
     }
 
     /**
@@ -229,17 +1321,21 @@ public class ELM327
      * com.lukeleber.scandroid.interpreter.ConfigurationRequest} - An implementation defined value
      * is sent from the ELM327, generally the string 'OK' upon success.  This value is passed to the
      * provided {@link com.lukeleber.scandroid.interpreter.Handler} verbatim</li> <li>{@link
-     * com.lukeleber.scandroid.interpreter.ServiceRequest} - The first two characters sent from the
-     * ELM327 is "40" plus the service ID; thus a request using service ID 1 ({@link
-     * com.lukeleber.scandroid.sae.j1979.Service#LIVE_DATASTREAM}) shall produce "41".  The following two
-     * characters are the PID/TID/OBDMID/INFOTYPE ID of the request; so PID #1 ({@link
-     * com.lukeleber.scandroid.sae.j1979.detail.AppendixB#MONITOR_STATUS}) shall produce "01".  The
-     * following characters sequence is the actual data response from the ELM327.  So to sum
-     * everything up, a service request $02$04 would produce the following response: "4204??" where
-     * "??" is a single hex-byte representing the calculated engine load.  This {@link
-     * com.lukeleber.scandroid.interpreter.ResponseListener} trims off the first four characters of
-     * each response, invoking the requested {@link com.lukeleber.scandroid.sae.j1979.PID.Unmarshaller}</li>
-     * on only the actual data. </ul>
+     * com.lukeleber.scandroid.interpreter.ServiceRequest} - The first byte sent from the ELM327 is
+     * 0x40 plus the service ID; thus a request using service ID 1 ({@link
+     * com.lukeleber.scandroid.sae.j1979.Service#LIVE_DATASTREAM}) shall produce 0x41.  The
+     * following byte is the PID/TID/OBDMID/INFOTYPE ID of the request; so PID #1 ({@link
+     * com.lukeleber.scandroid.sae.j1979.detail.AppendixB#MONITOR_STATUS}) shall produce 0x01.  The
+     * following bytes are the actual data response from the ELM327.  So to sum everything up, a
+     * service request $01$04 would produce the following response: "4104??" where "??" is a single
+     * hex-byte representing the calculated engine load.  This {@link
+     * com.lukeleber.scandroid.interpreter.ResponseListener} validates both header bytes
+     * numerically and invokes the requested {@link com.lukeleber.scandroid.sae.j1979.PID.Unmarshaller}
+     * on only the actual data.</li> </ul>
+     * <p/>
+     * Service responses are decoded on the decode thread by {@link #decode(ResponseParser)} so that
+     * no intermediate strings are built; the decoded value is then handed to the {@link
+     * com.lukeleber.scandroid.interpreter.Handler} from {@link #onSuccess(String)} as before.
      *
      * @param <T>
      *         the type of data that shall be unmarshalled from the response
@@ -250,6 +1346,21 @@ public class ELM327
         /// The {@link com.lukeleber.scandroid.interpreter.Request Requests} that was sent
         private final Request<T> request;
 
+        /// Has the response been decoded by {@link #decode(ResponseParser)}?
+        private boolean decoded;
+
+        /// The decoded value (if {@link #failure} is null)
+        private T value;
+
+        /// The reason that decoding failed, or null if it succeeded
+        private FailureCode failure;
+
+        /// The answers to a batch, split up by member (or null if the request is not a batch)
+        private final BatchServiceRequest.Answers memberAnswers;
+
+        /// Is a send of the request outstanding?
+        private final AtomicBoolean busy = new AtomicBoolean();
+
         /**
          * Constructs a DefaultResponseListener for the provided {@link
          * com.lukeleber.scandroid.interpreter.Request}
@@ -260,81 +1371,339 @@ public class ELM327
         DefaultResponseListener(Request<T> request)
         {
             this.request = request;
+            this.memberAnswers = request instanceof BatchServiceRequest ?
+                    new BatchServiceRequest.Answers((BatchServiceRequest) request) : null;
         }
 
         /**
-         * {@inheritDoc}
+         * Claims this listener for a send of its request and forgets the previous reply
+         *
+         * @return true if this listener was claimed, or false if a send of its request is still
+         * outstanding
          */
-        @Override
-        public void onSuccess(String resp)
+        boolean acquire()
         {
-            resp = resp.toUpperCase();
-            Handler<T> handler = request.getHandler();
-            if (resp.substring(0, resp.length() - 1)
-                    .equals(OpCode.ELM327_NO_DATA))
+            if (!busy.compareAndSet(false, true))
+            {
+                return false;
+            }
+            decoded = false;
+            value = null;
+            failure = null;
+            if (memberAnswers != null)
+            {
+                memberAnswers.clear();
+            }
+            return true;
+        }
+
+        /**
+         * Frees this listener for the next send of its request without handing anything to the
+         * handler(s), because the send was cancelled
+         */
+        void release()
+        {
+            busy.set(false);
+        }
+
+        /**
+         * Decodes the reply that is held (and already parsed) by the provided {@link
+         * ResponseParser}.  This method is invoked on the decode thread, before {@link
+         * #onSuccess(String)}.
+         *
+         * @param parser
+         *         the {@link ResponseParser} that holds the reply
+         *
+         * @return true if the reply was decoded, or false if it must be delivered as a string
+         * (as is the case for configuration requests)
+         */
+        @SuppressWarnings("unchecked")
+        boolean decode(ResponseParser parser)
+        {
+            if (!isDecodable())
+            {
+                return false;
+            }
+            if (request instanceof BatchServiceRequest)
+            {
+                decodeBatch(parser);
+            }
+            else if (request instanceof MultiEcuServiceRequest)
+            {
+                value = (T) decodeMulti((MultiEcuServiceRequest<?>) request, parser);
+            }
+            else
+            {
+                decodeService((ServiceRequest<T>) request, parser);
+            }
+            decoded = true;
+            return true;
+        }
+
+        /**
+         * Can the reply be decoded by {@link #decode(ResponseParser)}?  Configuration requests
+         * are delivered as strings instead.
+         *
+         * @return true if the reply can be decoded, otherwise false
+         */
+        boolean isDecodable()
+        {
+            return request instanceof BatchServiceRequest || request instanceof ServiceRequest ||
+                    request instanceof MultiEcuServiceRequest;
+        }
+
+        /**
+         * Did the decoded reply (or any part of it) fail with {@link
+         * com.lukeleber.scandroid.interpreter.FailureCode#UNRECOGNIZED_RESPONSE}?
+         *
+         * @return true if the decoded reply could not be understood, otherwise false
+         */
+        boolean isUnrecognized()
+        {
+            return failure == FailureCode.UNRECOGNIZED_RESPONSE ||
+                    memberAnswers != null && memberAnswers.isUnrecognized();
+        }
+
+        /**
+         * Hands the decoded value(s) to the {@link com.lukeleber.scandroid.interpreter.ResponseCache}
+         * of the provided interpreter.  Invoked on the decode thread, after {@link
+         * #decode(ResponseParser)}.
+         *
+         * @param owner
+         *         the interpreter that decoded the reply
+         */
+        void remember(ELM327 owner)
+        {
+            if (memberAnswers != null)
+            {
+                List<ServiceRequest<?>> members = ((BatchServiceRequest) request).getMembers();
+                for (int i = 0; i < members.size(); ++i)
+                {
+                    if (memberAnswers.getFailure(i) == null)
+                    {
+                        owner.rememberResponse(members.get(i), memberAnswers.getValue(i));
+                    }
+                }
+            }
+            else if (failure == null && request instanceof ServiceRequest)
             {
-                onFailure(FailureCode.REQUEST_NOT_SUPPORTED);
+                owner.rememberResponse((ServiceRequest<?>) request, value);
             }
-            else if (request instanceof ServiceRequest)
+        }
+
+        /// Decodes the reply to a single {@link com.lukeleber.scandroid.interpreter.ServiceRequest}
+        @SuppressWarnings("unchecked")
+        private void decodeService(ServiceRequest<T> serviceRequest, ResponseParser parser)
+        {
+            int header = 0x40 + serviceRequest.getService()
+                                              .getID();
+            int count = parser.getMessageCount();
+            for (int m = 0; m < count; ++m)
             {
-                ServiceRequest<T> serviceRequest = (ServiceRequest<T>) request;
-                if (!resp.startsWith(String.valueOf(40 + serviceRequest.getService()
-                                                                       .getID())
-                                           .toUpperCase()))
+                int length = parser.getMessageLength(m);
+                if (parser.getByte(m, 0) != header)
                 {
-                    throw new IllegalStateException(
-                            "Invalid message header received" + " expected " + String.valueOf(
-                                    40 + serviceRequest.getService()
-                                                       .getID())
-                                                                                     .toUpperCase() + " but received " + resp);
+                    continue;
                 }
-                if (resp.startsWith("44")) // Special case for "clear DTCs"
+                if (serviceRequest.getService() == Service.CLEAR_DTC)
                 {
                     /// TODO custom handler?
-                    handler.onResponse((T)"DTCs Cleared");
+                    value = (T) "DTCs Cleared";
                     return;
                 }
-                resp = resp.substring(2);
-                if (!resp.startsWith(String.format("%02x", serviceRequest.getPID()
-                                                                         .getID())
-                                           .toUpperCase()))
+                if (serviceRequest.getPID() == null || length < 2 ||
+                        parser.getByte(m, 1) != serviceRequest.getPID()
+                                                              .getID())
                 {
-                    throw new IllegalStateException(
-                            "Invalid message header received: " + resp.substring(0,
-                                                                                 2) + " but expected " + String.format(
-                                    "%02x", serviceRequest.getPID()
-                                                          .getID()));
+                    continue;
                 }
-                resp = resp.substring(2);
-                byte[] parsed = new byte[resp.length() / 2];
-                for (int i = 0;
-                     i < resp.length() - 2;
-                     i += 2)
+                try
                 {
-                    parsed[i / 2] = (byte) (Integer.decode("0x" + resp.substring(i, i + 2)) & 0xFF);
+                    value = serviceRequest.getUnmarshaller()
+                                          .invoke(parser.slice(m, 2, length - 2));
                 }
-                if (handler != null)
+                catch (RuntimeException e)
                 {
-                    handler.onResponse(serviceRequest.getUnmarshaller()
-                                                     .invoke(parsed));
+                    if (BuildConfig.DEBUG)
+                    {
+                        Log.w(TAG, "Unable to unmarshal response", e);
+                    }
+                    failure = FailureCode.UNRECOGNIZED_RESPONSE;
                 }
+                return;
             }
-            else
+            failure = parser.isNoData() ? FailureCode.REQUEST_NOT_SUPPORTED :
+                    FailureCode.UNRECOGNIZED_RESPONSE;
+        }
+
+        /**
+         * Splits the reply to a {@link com.lukeleber.scandroid.interpreter.MultiEcuServiceRequest}
+         * up by the ECU that sent each message, and unmarshals the first answer of each ECU.  The
+         * reply must have been received with headers shown; otherwise the answers can't be told
+         * apart and the request fails with {@link
+         * com.lukeleber.scandroid.interpreter.FailureCode#REQUEST_NOT_SUPPORTED}.
+         *
+         * @param multi
+         *         the {@link com.lukeleber.scandroid.interpreter.MultiEcuServiceRequest} that was
+         *         sent
+         * @param parser
+         *         the {@link ResponseParser} that holds the reply
+         *
+         * @return the answer of each ECU, or null if the request failed
+         */
+        private <V> Map<EcuAddress, V> decodeMulti(MultiEcuServiceRequest<V> multi,
+                                                   ResponseParser parser)
+        {
+            int header = 0x40 + multi.getService()
+                                     .getID();
+            int pid = multi.getPID()
+                           .getID();
+            PID.Unmarshaller<V> unmarshaller = multi.getAnswerUnmarshaller();
+            Map<EcuAddress, V> answers = new TreeMap<>();
+            boolean answered = false;
+            int count = parser.getMessageCount();
+            for (int m = 0; m < count; ++m)
             {
-                if (handler != null)
+                int length = parser.getMessageLength(m);
+                if (length < 2 || parser.getByte(m, 0) != header || parser.getByte(m, 1) != pid)
                 {
-                    resp = resp.replace(""+(char)13, "");
-                    if(resp.equals("?"))
-                    {
-                        handler.onFailure(FailureCode.CONFIGURATION_COMMAND_NOT_RECOGNIZED);
-                    }
-                    else
+                    continue;
+                }
+                EcuAddress source = parser.getSource(m);
+                if (source == null)
+                {
+                    failure = FailureCode.REQUEST_NOT_SUPPORTED; /// Headers were not shown
+                    return null;
+                }
+                answered = true;
+                if (answers.containsKey(source))
+                {
+                    continue;
+                }
+                try
+                {
+                    answers.put(source, unmarshaller.invoke(parser.slice(m, 2, length - 2)));
+                }
+                catch (RuntimeException e)
+                {
+                    if (BuildConfig.DEBUG)
                     {
-                        ((ELM327.ConfigurationRequest) request).getHandler()
-                                                                        .onResponse(resp);
+                        Log.w(TAG, "Unable to unmarshal the response of " + source, e);
                     }
                 }
             }
+            if (!answered)
+            {
+                failure = parser.isNoData() ? FailureCode.REQUEST_NOT_SUPPORTED :
+                        FailureCode.UNRECOGNIZED_RESPONSE;
+                return null;
+            }
+            if (answers.isEmpty())
+            {
+                failure = FailureCode.UNRECOGNIZED_RESPONSE;
+                return null;
+            }
+            return answers;
+        }
+
+        /**
+         * Splits the response to a {@link com.lukeleber.scandroid.interpreter.BatchServiceRequest}
+         * up by PID (see {@link com.lukeleber.scandroid.interpreter.BatchServiceRequest.Answers})
+         *
+         * @param parser
+         *         the {@link ResponseParser} that holds the reply
+         */
+        private void decodeBatch(ResponseParser parser)
+        {
+            int count = parser.getMessageCount();
+            for (int m = 0; m < count; ++m)
+            {
+                parser.addTo(memberAnswers, m);
+            }
+            memberAnswers.finish(parser.isNoData());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onSuccess(String resp)
+        {
+            if (decoded && memberAnswers == null)
+            {
+                /// Released first, since the handler may send the request again straight away
+                T decodedValue = value;
+                FailureCode decodedFailure = failure;
+                busy.set(false);
+                deliver(decodedValue, decodedFailure);
+                return;
+            }
+            try
+            {
+                handle(resp);
+            }
+            finally
+            {
+                busy.set(false);
+            }
+        }
+
+        /// Hands the reply to the handler(s)
+        private void handle(String resp)
+        {
+            if (decoded)
+            {
+                deliver();
+                return;
+            }
+            resp = resp.toUpperCase();
+            Handler<T> handler = request.getHandler();
+            if (resp.substring(0, resp.length() - 1)
+                    .equals(OpCode.ELM327_NO_DATA))
+            {
+                fail(FailureCode.REQUEST_NOT_SUPPORTED);
+            }
+            else if (handler != null)
+            {
+                resp = resp.replace(""+(char)13, "");
+                if(resp.equals("?"))
+                {
+                    handler.onFailure(FailureCode.CONFIGURATION_COMMAND_NOT_RECOGNIZED);
+                }
+                else
+                {
+                    ((ELM327.ConfigurationRequest) request).getHandler()
+                                                                    .onResponse(resp);
+                }
+            }
+        }
+
+        /// Hands the value(s) decoded by {@link #decode(ResponseParser)} to the handler(s)
+        private void deliver()
+        {
+            if (memberAnswers != null)
+            {
+                memberAnswers.deliver();
+                return;
+            }
+            deliver(value, failure);
+        }
+
+        /// Hands a decoded value (or failure) to the handler of a single request
+        private void deliver(T decodedValue, FailureCode decodedFailure)
+        {
+            Handler<T> handler = request.getHandler();
+            if (handler != null)
+            {
+                if (decodedFailure != null)
+                {
+                    handler.onFailure(decodedFailure);
+                }
+                else
+                {
+                    handler.onResponse(decodedValue);
+                }
+            }
         }
 
         /**
@@ -343,6 +1712,30 @@ public class ELM327
         @Override
         public void onFailure(FailureCode code)
         {
+            if (memberAnswers == null)
+            {
+                busy.set(false);
+                fail(code);
+                return;
+            }
+            try
+            {
+                fail(code);
+            }
+            finally
+            {
+                busy.set(false);
+            }
+        }
+
+        /// Hands the failure to the handler(s)
+        private void fail(FailureCode code)
+        {
+            if (memberAnswers != null)
+            {
+                memberAnswers.deliverFailure(code);
+                return;
+            }
             Handler<T> handler = request.getHandler();
             if (handler != null)
             {
@@ -0,0 +1,309 @@
+// This file is protected under the KILLGPL.
+// For more information, visit http://www.lukeleber.github.io/KILLGPL.html
+//
+// Copyright (c) Luke Leber <LukeLeber@gmail.com>
+
+package com.lukeleber.scandroid.interpreter.elm327;
+
+import android.util.Log;
+
+import com.lukeleber.scandroid.BuildConfig;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Keeps the diagnostic session of the K-line protocols ({@link Protocol#ISO_9141_2} and both
+ * ISO 14230-4 protocols) open between requests.  The ECUs on these protocols close the session
+ * once the bus has been silent for P3max (five seconds), after which the next request has to wait
+ * for a fresh 5-baud or fast initiation: up to three seconds before it is even sent.</p>
+ * <p/>
+ * <p>The ELM327 can keep the session open by itself, with periodic "wakeup" messages that it only
+ * sends once the bus has been idle for the "AT SW" interval, so they never get in the way of
+ * requests.  Before the first request on a K-line protocol, the interval is set to {@link
+ * #WAKEUP_INTERVAL} and the message to the one that the protocol expects ("AT WM").  Adapters that
+ * reject either command, and those whose session had to be initiated again anyway ("BUS INIT" in
+ * the reply to a later request), are kept alive with idle requests instead: a request for the PIDs
+ * supported by service $01 is queued whenever nothing has been written for {@link #IDLE_INTERVAL}
+ * milliseconds, so that real traffic always pauses them.</p>
+ * <p/>
+ * <p>When the protocol was chosen automatically, it is asked for ("AT DPN") once the vehicle
+ * first answers.</p>
+ * <p/>
+ * <p>The ELM327 reports every write, reply and setting to the scheduler from its I/O thread.  The
+ * keepalive timer runs on a thread of its own and only asks {@link #isUsingIdleRequests()} and
+ * {@link #isIdleRequestDue(long)}, which read volatile state; the switch ({@link
+ * #setEnabled(boolean)}) may be flipped from any thread.</p>
+ */
+public final class KeepaliveScheduler
+{
+    /// @internal tag for debug logging
+    private final static String TAG = KeepaliveScheduler.class.getName();
+
+    /// The "AT SW" value that is asked for (in units of 20 ms; two seconds, well within P3max)
+    public final static int WAKEUP_INTERVAL = 0x64;
+
+    /// The number of milliseconds without a write after which an idle request is queued
+    public final static long IDLE_INTERVAL = 2000;
+
+    /// The wakeup message of ISO 9141-2 (a service $01 PID $00 request, without the checksum)
+    private final static String ISO_9141_WAKEUP_MESSAGE = "686AF10100";
+
+    /// The wakeup message of ISO 14230-4 (a "tester present" request, without the checksum)
+    private final static String ISO_14230_WAKEUP_MESSAGE = "C133F13E";
+
+    /// Is the scheduler enabled?
+    private volatile boolean enabled = true;
+
+    /// Are idle requests used instead of the wakeup messages of the ELM327?
+    private volatile boolean idleRequests;
+
+    /// The nano-time of the last write to the ELM327
+    private volatile long lastWrite = System.nanoTime();
+
+    /// Is the protocol that the ELM327 uses a K-line protocol (while it is in session)?
+    private volatile boolean keptAlive;
+
+    /// The protocol that the ELM327 was last told to use
+    private Protocol protocol = Protocol.AUTOMATIC;
+
+    /// Has the ELM327 been asked for the protocol that it found automatically?
+    private boolean described;
+
+    /// Have the wakeup messages been set up since the ELM327 was last reset?
+    private boolean wakeupsSet;
+
+    /// Has the vehicle answered since the protocol was chosen (so that a session is open)?
+    private boolean established;
+
+    /**
+     * Constructs a KeepaliveScheduler for an ELM327 whose settings are not yet known
+     */
+    KeepaliveScheduler()
+    {
+
+    }
+
+    /**
+     * Enables or disables the scheduler.  A disabled scheduler sends nothing, so the ELM327 keeps
+     * whatever wakeup settings it currently has.  The scheduler is disabled for good as soon as a
+     * wakeup command is sent by hand.
+     *
+     * @param enabled
+     *         true to enable the scheduler, false to disable it
+     */
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Is the scheduler enabled?
+     *
+     * @return true if the scheduler is enabled, otherwise false
+     */
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Are idle requests used instead of the wakeup messages of the ELM327?
+     *
+     * @return true if the session is kept open with idle requests, otherwise false
+     */
+    public boolean isUsingIdleRequests()
+    {
+        return idleRequests;
+    }
+
+    /**
+     * Records that a connection was just made.  The ELM327 may have been power-cycled since the
+     * last one, so the wakeup settings are sent again and the first reply must open the session
+     * again before idle requests are due.
+     */
+    void onConnected()
+    {
+        wakeupsSet = established = false;
+        keptAlive = false;
+    }
+
+    /**
+     * Records that the ELM327 was reset, which forgets the wakeup settings and closes the session
+     */
+    void onReset()
+    {
+        wakeupsSet = established = false;
+        keptAlive = false;
+    }
+
+    /**
+     * Records that the session was closed on purpose ("AT PC"), so that the next "BUS INIT" is
+     * expected
+     */
+    void onClosed()
+    {
+        established = false;
+        keptAlive = false;
+    }
+
+    /**
+     * Records that the ELM327 was told to use the protocol with the provided ID ("AT SP"), which
+     * closes any session.  The wakeup message depends on the protocol, and an automatic choice is
+     * asked for once the vehicle answers.
+     *
+     * @param id
+     *         the ID of the protocol (see {@link Protocol#getID()})
+     */
+    void onProtocol(int id)
+    {
+        protocol = Protocol.AUTOMATIC;
+        for (Protocol p : Protocol.values())
+        {
+            if (p.getID() == id)
+            {
+                protocol = p;
+                break;
+            }
+        }
+        described = protocol != Protocol.AUTOMATIC;
+        established = false;
+        keptAlive = false;
+    }
+
+    /**
+     * Records the reply of the ELM327 to "AT DPN", such as "A3" (the protocol that it found
+     * automatically) or "5"
+     *
+     * @param reply
+     *         the reply, or null if the command was rejected
+     */
+    void onDescribedProtocol(String reply)
+    {
+        described = true;
+        if (reply == null || reply.isEmpty())
+        {
+            return;
+        }
+        int id = Character.digit(reply.charAt(reply.length() - 1), 16);
+        for (Protocol p : Protocol.values())
+        {
+            if (p.getID() == id && p != Protocol.AUTOMATIC)
+            {
+                protocol = p;
+                keptAlive = established && isKLine(p);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Should the ELM327 be asked for the protocol that it found automatically?
+     *
+     * @return true if "AT DPN" should be sent before the next request
+     */
+    boolean needsProtocol()
+    {
+        return enabled && established && !described;
+    }
+
+    /**
+     * Should the wakeup messages of the ELM327 be set up before the next request?
+     *
+     * @return true if "AT SW" and "AT WM" should be sent before the next request
+     */
+    boolean needsWakeups()
+    {
+        return enabled && isKLine(protocol) && !wakeupsSet && !idleRequests;
+    }
+
+    /**
+     * Retrieves the wakeup message that the protocol expects
+     *
+     * @return the header and data bytes of the wakeup message, as hex digits
+     */
+    String getWakeupMessage()
+    {
+        return protocol == Protocol.ISO_9141_2 ? ISO_9141_WAKEUP_MESSAGE : ISO_14230_WAKEUP_MESSAGE;
+    }
+
+    /**
+     * Records whether the ELM327 accepted the wakeup settings; if it did not, idle requests are
+     * used from then on
+     *
+     * @param accepted
+     *         did the ELM327 accept both "AT SW" and "AT WM"?
+     */
+    void onWakeups(boolean accepted)
+    {
+        wakeupsSet = true;
+        if (!accepted)
+        {
+            if (BuildConfig.DEBUG)
+            {
+                Log.i(TAG, "Wakeup messages are not supported; sending idle requests instead");
+            }
+            idleRequests = true;
+        }
+    }
+
+    /**
+     * Records that something was just written to the ELM327
+     *
+     * @param nanos
+     *         the nano-time of the write
+     */
+    void onWrite(long nanos)
+    {
+        lastWrite = nanos;
+    }
+
+    /**
+     * Records the reply to a request to the vehicle
+     *
+     * @param answered
+     *         did the reply hold at least one message?
+     * @param busInit
+     *         did the reply start with "BUS INIT" (so that the session was initiated for it)?
+     */
+    void onReply(boolean answered, boolean busInit)
+    {
+        if (busInit && established && wakeupsSet && !idleRequests && isKLine(protocol))
+        {
+            /// The wakeup messages were accepted but did not keep the session open
+            if (BuildConfig.DEBUG)
+            {
+                Log.i(TAG, "The session was closed despite wakeup messages; sending idle " +
+                        "requests instead");
+            }
+            idleRequests = true;
+        }
+        if (answered)
+        {
+            established = true;
+            keptAlive = isKLine(protocol);
+        }
+    }
+
+    /**
+     * Is an idle request due?  Invoked from the keepalive timer of the ELM327.
+     *
+     * @param nanos
+     *         the current nano-time
+     *
+     * @return true if idle requests are in use, a K-line session is open and nothing has been
+     * written for {@link #IDLE_INTERVAL} milliseconds
+     */
+    boolean isIdleRequestDue(long nanos)
+    {
+        return enabled && idleRequests && keptAlive &&
+                nanos - lastWrite >= TimeUnit.MILLISECONDS.toNanos(IDLE_INTERVAL);
+    }
+
+    /// Is the provided protocol a K-line protocol, whose session closes when the bus is idle?
+    private static boolean isKLine(Protocol protocol)
+    {
+        return protocol == Protocol.ISO_9141_2 ||
+                protocol == Protocol.ISO_14230_4_KWP_5_BAUD_INIT ||
+                protocol == Protocol.ISO_14230_4_KWP_FAST_INIT;
+    }
+}
@@ -8,7 +8,9 @@ package com.lukeleber.scandroid.interpreter.elm327;
 import com.lukeleber.scandroid.interpreter.Option;
 
 /**
- * All of the op-codes provided with the ELM327 documentation.
+ * All of the op-codes provided with the ELM327 documentation.  Every op-code (but the bare carriage
+ * return that repeats the last command) carries its "AT" prefix, so {@link #getOption()} is exactly
+ * what is sent to the ELM327 (after formatting it with any arguments).
  *
  * <p><strong>The documentation contained within this file is the intellectual property of
  * <a href=http://www.elmelectronics.com>ELM Electronics</a> and is embedded herein with
@@ -34,7 +36,7 @@ public enum OpCode
      * is selected, the ELM327 will allow long sends (eight data bytes) and long receives (unlimited
      * in number). The default is AL off (and NL selected).
      */
-    ELM327_OBD_ALLOW_LONG_MESSAGES("AL"),
+    ELM327_OBD_ALLOW_LONG_MESSAGES("ATAL"),
 
     /**
      * AMC [ display Activity Monitor Count ] The Activity Monitor uses a counter to determine just
@@ -44,7 +46,7 @@ public enum OpCode
      * your own logic based on OBD activity. The counter will not increment past FF (internal logic
      * stops it there), and stays at 00 while monitoring
      */
-    ELM327_OBD_DISPLAY_ACTIVITY_MONITOR_COUNT("AMC"),
+    ELM327_OBD_DISPLAY_ACTIVITY_MONITOR_COUNT("ATAMC"),
 
     /**
      * AMT hh [ set the Act Mon Timeout to hh ] When the Activity Monitor Count (ie time) exceeds a
@@ -54,7 +56,7 @@ public enum OpCode
      * should you provide it. The actual time to alarm will be (hh+1) x 0.65536 seconds. Note that a
      * value of 00 is accepted for AMT, but is used to block all Activity Monitor outputs.
      */
-    ELM327_OBD_ACTIVITY_MONITOR_TIMEOUT("AMT%d"),
+    ELM327_OBD_ACTIVITY_MONITOR_TIMEOUT("ATAMT%d"),
 
     /**
      * AR [ Automatically set the Receive address ] Responses from the vehicle will be acknowledged
@@ -67,7 +69,7 @@ public enum OpCode
      * value with the SR or RA commands. Auto Receive is turned on by default, and is not used by
      * the J1939 protocol.
      */
-    ELM327_OBD_AUTOMATICALLY_SET_RECEIVE_ADDRESS("AR"),
+    ELM327_OBD_AUTOMATICALLY_SET_RECEIVE_ADDRESS("ATAR"),
 
     /**
      * AT0 , AT1 and AT2 [ Adaptive Timing control ] When receiving responses from a vehicle, the
@@ -90,17 +92,17 @@ public enum OpCode
     /**
      * AT0 [Adaptive Timing Off] Disables Adaptive Timing (uses the timeout specified by "AT ST"
      */
-    ELM327_OBD_ADAPTIVE_OFF("AT0"),
+    ELM327_OBD_ADAPTIVE_OFF("ATAT0"),
 
     /**
      * AT1 [Adaptive Timing control 1] The default (recommended) adaptive timing mode.
      */
-    ELM327_OBD_ADAPTIVE_TIMING_AUTO1("AT1"),
+    ELM327_OBD_ADAPTIVE_TIMING_AUTO1("ATAT1"),
 
     /**
      * AT2 [Adaptive Timing control 2] A more aggressive version of AT1
      */
-    ELM327_OBD_ADAPTIVE_TIMING_AUTO2("AT2"),
+    ELM327_OBD_ADAPTIVE_TIMING_AUTO2("ATAT2"),
 
     /**
      * BD [ perform an OBD Buffer Dump ] All messages sent and received by the ELM327 are stored
@@ -118,7 +120,7 @@ public enum OpCode
      * number of bytes received, mod 256. Note that only the first twelve bytes received are stored
      * in the buffer.
      */
-    ELM327_OBD_BUFFER_DUMP("BD"),
+    ELM327_OBD_BUFFER_DUMP("ATBD"),
 
     /**
      * BI [ Bypass the Initialization sequence ] This command should be used with caution. It allows
@@ -127,7 +129,7 @@ public enum OpCode
      * results may be difficult to predict. It should not be used for routine OBD use, and has only
      * been provided to allow the construction of ECU simulators and training demonstrators.
      */
-    ELM327_OBD_BYPASS_INITIALIZATION("BI"),
+    ELM327_OBD_BYPASS_INITIALIZATION("ATBI"),
 
     /**
      * BRD hh [ try Baud Rate Divisor hh ] This command is used to change the RS232 baud rate
@@ -141,7 +143,7 @@ public enum OpCode
      * actual baud rate (in kbps) will be 4000 divided by the divisor (hh). The value 00 is not
      * accepted by the BRD command.
      */
-    ELM327_BAUD_RATE_DIVISOR("BRD%d"),
+    ELM327_BAUD_RATE_DIVISOR("ATBRD%02X"),
 
     /**
      * BRT hh [ set Baud Rate Timeout to hh ] This command allows the timeout used for the Baud Rate
@@ -150,7 +152,7 @@ public enum OpCode
      * value of 00 does not result in 0 msec - it provides the maximum time of 256 x 5.0 msec, or
      * 1.28 seconds.
      */
-    ELM327_BAUD_RATE_TIMEOUT("BRT%d"),
+    ELM327_BAUD_RATE_TIMEOUT("ATBRT%02X"),
 
     /**
      * CAF0 and CAF1 [ CAN Auto Formatting off or on ] These commands determine whether the ELM327
@@ -188,18 +190,18 @@ public enum OpCode
     /**
      * CAF0 [CAN Auto Formatting off] CAN Auto Formatting is disabled
      */
-    ELM327_OBD_CAN_AUTO_FORMATTING_OFF("CAF0"),
+    ELM327_OBD_CAN_AUTO_FORMATTING_OFF("ATCAF0"),
 
     /**
      * CAF1 [CAN Auto Formatting on] CAN Auto formatting is enabled
      */
-    ELM327_OBD_CAN_AUTO_FORMATTING_ON("CAF1"),
+    ELM327_OBD_CAN_AUTO_FORMATTING_ON("ATCAF1"),
 
     /**
      * CEA [ turn off the CAN Extended Address ] The CEA command is used to turn off the special
      * features that are set with the CEA hh command.
      */
-    ELM327_CAN_EXTENDED_ADDRESS_OFF("CEA"),
+    ELM327_CAN_EXTENDED_ADDRESS_OFF("ATCEA"),
 
     /**
      * CEA hh [ set the CAN Extended Address to hh ] Some (non-OBD) CAN protocols extend the
@@ -215,7 +217,7 @@ public enum OpCode
      * off at any time by sending AT CEA, with no address. Note that the CEA setting has no effect
      * when J1939 formatting is on.
      */
-    ELM327_CAN_EXTENDED_ADDRESS_ON("CEA%d"),
+    ELM327_CAN_EXTENDED_ADDRESS_ON("ATCEA%d"),
 
     /**
      * CF hhh [ set the CAN ID Filter to hhh ] The CAN Filter works in conjunction with the CAN Mask
@@ -228,7 +230,7 @@ public enum OpCode
      * stored as four bytes internally however, with this command adding leading zeros for the other
      * bytes. See the CM command(s) for more details.
      */
-    ELM327_CAN_ID_FILTER_11_BIT("CF%d"),
+    ELM327_CAN_ID_FILTER_11_BIT("ATCF%d"),
 
     /**
      * CF hh hh hh hh [ set the CAN ID Filter to hhhhhhhh ] This command allows all four bytes
@@ -237,7 +239,7 @@ public enum OpCode
      * filters as well, since they are stored in the same locations internally (entering AT CF 00 00
      * 0h hh is exactly the same as entering the shorter AT CF hhh command).
      */
-    ELM327_CAN_ID_FILTER_29_BIT("CF%d"),
+    ELM327_CAN_ID_FILTER_29_BIT("ATCF%d"),
 
     /**
      * CFC0 and CFC1 [ CAN Flow Control off or on ] The ISO 15765-4 CAN protocol expects a ‘Flow
@@ -253,12 +255,12 @@ public enum OpCode
     /**
      * CFC0 [ CAN Flow Control off ] Turns off CAN Flow Control
      */
-    ELM327_CAN_FLOW_CONTROL_OFF("CFC0"),
+    ELM327_CAN_FLOW_CONTROL_OFF("ATCFC0"),
 
     /**
      * CFC1 [ CAN Flow Control on ] Turns on CAN Flow Control
      */
-    ELM327_CAN_FLOW_CONTROL_ON("CFC1"),
+    ELM327_CAN_FLOW_CONTROL_ON("ATCFC1"),
 
     /**
      * CM hhh [ set the CAN ID Mask to hhh ] There can be a great many messages being transmitted in
@@ -274,7 +276,7 @@ public enum OpCode
      * extra typing. The values are right justified, so you would need to provide five leading zeros
      * followed by the three mask bytes.
      */
-    ELM327_CAN_ID_MASK_11_BIT("CM%d"),
+    ELM327_CAN_ID_MASK_11_BIT("ATCM%d"),
 
     /**
      * CM hh hh hh hh [ set the CAN ID Mask to hhhhhhhh ] This command is used to assign mask values
@@ -282,7 +284,7 @@ public enum OpCode
      * identical, except for the length. Note that the three most significant bits that you provide
      * in the first digit will be ignored.
      */
-    ELM327_CAN_ID_MASK_29_BIT("CM%d"),
+    ELM327_CAN_ID_MASK_29_BIT("ATCM%d"),
 
     /**
      * CP hh [ set CAN Priority bits to hh ] This command is used to assign the five most
@@ -293,13 +295,13 @@ public enum OpCode
      * byte). The default value for these priority bits is hex 18, which can be restored at any time
      * with the AT D command.
      */
-    ELM327_CAN_PRIORITY_BITS("CP%d"),
+    ELM327_CAN_PRIORITY_BITS("ATCP%d"),
 
     /**
      * CRA [ reset the CAN Rx Addr ] The AT CRA command is used to restore the CAN receive filters
      * to their default values. Note that it does not have any arguments (ie no data).
      */
-    ELM327_CAN_RESET_RECEIVE_ADDRESS("CRA"),
+    ELM327_CAN_RESET_RECEIVE_ADDRESS("ATCRA"),
 
     /**
      * CRA hhh [ set the CAN Rx Addr to hhh ] Setting the CAN masks and filters can be difficult at
@@ -312,14 +314,14 @@ public enum OpCode
      * to assign a mask and filter. To reverse the changes made by the CRA command, simply send AT
      * CRA or AT AR.
      */
-    ELM327_CAN_SET_RECEIVE_ADDRESS_11_BIT("CRA%d"),
+    ELM327_CAN_SET_RECEIVE_ADDRESS_11_BIT("ATCRA%03X"),
 
     /**
      * CRA hhhhhhhh [set the CAN Rx Addr to hhhhhhhh] This command is identical to the previous one,
      * except that it is used with 29 bit CAN IDs. Sending either AT CRA or AT AR will also reverse
      * any changes made by this command.
      */
-    ELM327_CAN_SET_RECEIVE_ADDRESS_29_BIT("CRA%d"),
+    ELM327_CAN_SET_RECEIVE_ADDRESS_29_BIT("ATCRA%08X"),
 
     /**
      * CS [ show the CAN Status counts ] The CAN protocol requires that statistics be kept regarding
@@ -330,7 +332,7 @@ public enum OpCode
      * transmitter (Tx) and the receiver (Rx) error counts, in hexadecimal. If the transmitter
      * should be off (count >FF), you will see ‘OFF’ rather than a specific count.
      */
-    ELM327_SHOW_CAN_STATUS_COUNTS("CS"),
+    ELM327_SHOW_CAN_STATUS_COUNTS("ATCS"),
 
     /**
      * CSM0 and CSM1 [ CAN Silent Monitoring off or on ] The ELM327 was designed to be completely
@@ -347,19 +349,19 @@ public enum OpCode
     /**
      * CSM0 [ CAN Silent Monitoring off ] Turns CAN silent monitoring off
      */
-    ELM327_CAN_SILENT_MONITORING_OFF("CSM0"),
+    ELM327_CAN_SILENT_MONITORING_OFF("ATCSM0"),
 
     /**
      * CSM1 [ CAN Silent Monitoring on ] Turns CAN silent monitoring on
      */
-    ELM327_CAN_SILENT_MONITORING_ON("CSM1"),
+    ELM327_CAN_SILENT_MONITORING_ON("ATCSM1"),
 
     /**
      * CTM1 [ set the Timer Multiplier to 1 ] This command causes all timeouts set by AT ST to be
      * multiplied by a factor of 1. Note that this currently only affects the CAN protocols (6 to
      * C). CTM1 is the default setting.
      */
-    ELM327_CAN_SET_TIMER_MULTIPLIER_1("CTM1"),
+    ELM327_CAN_SET_TIMER_MULTIPLIER_1("ATCTM1"),
 
     /**
      * CTM5 [ set the Timer Multiplier to 5 ] This command causes all timeouts set by AT ST to be
@@ -370,7 +372,7 @@ public enum OpCode
      * the Adaptive Timing code does not monitor changes in the setting, so we advise turning it off
      * (with AT AT0). By default, this multiplier is off.
      */
-    ELM327_CAN_SET_TIMER_MULTIPLIER_5("CTM5"),
+    ELM327_CAN_SET_TIMER_MULTIPLIER_5("ATCTM5"),
 
     /**
      * CV dddd [ Calibrate the Voltage to dd.dd volts ] The voltage reading that the ELM327 shows
@@ -383,7 +385,7 @@ public enum OpCode
      * will actually read 12.0V due to digit roundoff). See page 29 for some more information on how
      * to read voltages and perform the calibration.
      */
-    ELM327_VOLTAGE_READING_CALIBRATE_VOLTAGE("CV %d"),
+    ELM327_VOLTAGE_READING_CALIBRATE_VOLTAGE("ATCV %d"),
 
     /**
      * CV 0000 [ restore the factory Calibration Value ] If you are experimenting with the CV dddd
@@ -391,7 +393,7 @@ public enum OpCode
      * If this happens, you can always send AT CV 0000 to restore the ELM327 to the original
      * calibration value.
      */
-    ELM327_VOLTAGE_READING_RESTORE_FACTORY_CALIBRATION("CV0000"),
+    ELM327_VOLTAGE_READING_RESTORE_FACTORY_CALIBRATION("ATCV0000"),
 
     /**
      * D [ set all to Defaults ] This command is used to set the options to their default (or
@@ -401,7 +403,7 @@ public enum OpCode
      * restored to their default values, and all timer settings will also be restored to their
      * defaults.
      */
-    ELM327_RESET_TO_DEFAULT("D"),
+    ELM327_RESET_TO_DEFAULT("ATD"),
 
     /**
      * D0 and D1 [ display of DLC off or on ] Standard CAN (ISO 15765-4) OBD requires that all
@@ -416,12 +418,12 @@ public enum OpCode
     /**
      * D0 [ display of DLC off ] Turns displaying of DLC off
      */
-    ELM327_CAN_DISPLAY_DLC_OFF("D0"),
+    ELM327_CAN_DISPLAY_DLC_OFF("ATD0"),
 
     /**
      * D1 [ display of DLC on ] Turns displaying of DLC on
      */
-    ELM327_CAN_DISPLAY_DLC_ON("D1"),
+    ELM327_CAN_DISPLAY_DLC_ON("ATD1"),
 
     /**
      * DM1 [ monitor for DM1s ] The SAE J1939 Protocol broadcasts trouble codes periodically, by way
@@ -433,7 +435,7 @@ public enum OpCode
      * or C) has been selected for J1939 formatting. It returns an error if attempted under any
      * other conditions.
      */
-    ELM327_J1939_CAN_ENABLE_DM1("DM1"),
+    ELM327_J1939_CAN_ENABLE_DM1("ATDM1"),
 
     /**
      * DP [ Describe the current Protocol ] The ELM327 automatically detects a vehicle’s OBD
@@ -477,7 +479,7 @@ public enum OpCode
      * CAN filler byte, if required by the protocol. Data provided with this command is only used
      * when Flow Control modes 1 or 2 have been enabled.
      */
-    ELM327_CAN_FLOW_CONTROL_SET_DATA("FCSD%d"),
+    ELM327_CAN_FLOW_CONTROL_SET_DATA("ATFCSD%d"),
 
     /**
      * FC SH hhh [ Flow Control Set Header to... ] The header (or more properly ‘CAN ID’) bytes used
@@ -485,7 +487,7 @@ public enum OpCode
      * those provided will be used - the most significant bit is always removed. This command only
      * affects Flow Control mode 1.
      */
-    ELM327_CAN_FLOW_CONTROL_SET_HEADER_11_BIT("FCSH%d"),
+    ELM327_CAN_FLOW_CONTROL_SET_HEADER_11_BIT("ATFCSH%d"),
 
     /**
      * FC SH hhhhhhhh [ Flow Control Set Header to... ] This command is used to set the header (or
@@ -493,7 +495,7 @@ public enum OpCode
      * define 32 bits, only the right-most 29 bits of those provided will be used - the most
      * significant three bits are always removed. This command only affects Flow Control mode 1.
      */
-    ELM327_CAN_FLOW_CONTROL_SET_HEADER_29_BIT("FCSH%d"),
+    ELM327_CAN_FLOW_CONTROL_SET_HEADER_29_BIT("ATFCSH%d"),
 
     /**
      * FC SM h [ Flow Control Set Mode to h ] This command sets how the ELM327 responds to First
@@ -504,7 +506,7 @@ public enum OpCode
      * have not, you will get an error. More complete details and examples can be found in the
      * Altering Flow Control Messages section (page 60).
      */
-    ELM327_CAN_FLOW_CONTROL_SET_MOE("FCSM%d"),
+    ELM327_CAN_FLOW_CONTROL_SET_MOE("ATFCSM%d"),
 
     /**
      * FE [ Forget Events ] There are certain events which may change how the ELM327 responds from
@@ -515,7 +517,7 @@ public enum OpCode
      * prevent searches through CAN protocols if PP 2A bit 4 is ‘1’. It may also be forgotten with
      * the AT FE command.
      */
-    ELM327_FORGET_EVENTS("FE"),
+    ELM327_FORGET_EVENTS("ATFE"),
 
     /**
      * FI [ perform a Fast Initiation ] One version of the Keyword protocol uses what is known as a
@@ -547,25 +549,25 @@ public enum OpCode
     /**
      * H0 [ Headers off ] Disables the display of header bytes
      */
-    ELM327_OBD_HEADERS_OFF("H0"),
+    ELM327_OBD_HEADERS_OFF("ATH0"),
 
     /**
      * H1 [ Headers on ] Enables the display of header bytes
      */
-    ELM327_OBD_HEADERS_ON("H1"),
+    ELM327_OBD_HEADERS_ON("ATH1"),
 
     /**
      * I [ Identify yourself ] Issuing this command causes the chip to identify itself, by printing
      * the startup product ID string (currently ‘ELM327 v2.1’). Software can use this to determine
      * exactly which integrated circuit it is talking to, without having to reset the IC.
      */
-    ELM327_IDENTIFY("I"),
+    ELM327_IDENTIFY("ATI"),
 
     /**
      * IB 10 [ set the ISO Baud rate to 10400 ] This command restores the ISO 9141-2 and ISO 14230-4
      * baud rates to the default value of 10400.
      */
-    ELM327_ISO_BAUD_RATE_10400("IB10"),
+    ELM327_ISO_BAUD_RATE_10400("ATIB10"),
 
     /**
      * IB 48 [ set the ISO Baud rate to 4800 ] This command is used to change the baud rate used for
@@ -574,7 +576,7 @@ public enum OpCode
      * experimenting with some vehicles. Normal (10,400 baud) operation may be restored at any time
      * with the IB 10 command.
      */
-    ELM327_ISO_BAUD_RATE_4800("IB48"),
+    ELM327_ISO_BAUD_RATE_4800("ATIB48"),
 
     /**
      * IB 96 [ set the ISO Baud rate to 9600 ] This command is used to change the baud rate used for
@@ -583,7 +585,7 @@ public enum OpCode
      * experimenting with some vehicles. Normal (10,400 baud) operation may be restored at any time
      * with the IB 10 command.
      */
-    ELM327_ISO_BAUD_RATE_9600("IB96"),
+    ELM327_ISO_BAUD_RATE_9600("ATIB96"),
 
     /**
      * IFR0, IFR1 , and IFR2 [ IFR control ] The SAE J1850 protocol allows for an In-Frame Response
@@ -599,17 +601,17 @@ public enum OpCode
     /**
      * IFR0 [ IFR control mode 0 ] Completely disables in frame responses
      */
-    ELM327_J1850_DISABLE_IN_FRAME_RESPONSE("IFR0"),
+    ELM327_J1850_DISABLE_IN_FRAME_RESPONSE("ATIFR0"),
 
     /**
      * IFR1 [ IFR control mode 1 ] In frame responses determined by k-bit of header (default)
      */
-    ELM327_J1850_K_BIT_IN_FRAME_RESPONSE("IFR1"),
+    ELM327_J1850_K_BIT_IN_FRAME_RESPONSE("ATIFR1"),
 
     /**
      * IFR2 [ IFR control mode 2] In frame responses forced in all circumstances
      */
-    ELM327_J1850_FORCE_IN_FRAME_RESPONSE("IFR2"),
+    ELM327_J1850_FORCE_IN_FRAME_RESPONSE("ATIFR2"),
 
     /**
      * IFR H and IFR S [ IFR from Header or Source ] The value sent in the J1850 In-Frame Response
@@ -625,12 +627,12 @@ public enum OpCode
     /**
      * IFRH [ IFR from Header ] Sets the IFR byte to those provided in the header (default)
      */
-    ELM327_J1850_IN_FRAME_RESPONSE_FROM_HEADER("IFRH"),
+    ELM327_J1850_IN_FRAME_RESPONSE_FROM_HEADER("ATIFRH"),
 
     /**
      * IFRS [ IFR from Source ] Sets the IFR byte to the Source Address byte
      */
-    ELM327_J1850_IN_FRAME_RESPONSE_FROM_SOURCE("IFRS"),
+    ELM327_J1850_IN_FRAME_RESPONSE_FROM_SOURCE("ATIFRS"),
 
     /**
      * IGN [ read the IgnMon input level ] This command reads the signal level at pin 15. It assumes
@@ -644,7 +646,7 @@ public enum OpCode
      * at pin 15 using AT IGN. If it is found to be OFF, you can perform an orderly shutdown
      * yourself.
      */
-    ELM327_OTHER_IGNITION_MONITOR_INPUT_LEVEL("IGN"),
+    ELM327_OTHER_IGNITION_MONITOR_INPUT_LEVEL("ATIGN"),
 
     /**
      * IIA hh [ set the ISO Init Address to hh ] The ISO 9141-2 and ISO 14230-4 standards state that
@@ -657,7 +659,7 @@ public enum OpCode
      * setting this value does not affect any address values used in the header bytes. The ISO init
      * address is restored to $33 whenever the defaults, or the ELM327, are reset.
      */
-    ELM327_ISO_SET_INIT_ADDRESS("IIA%d"),
+    ELM327_ISO_SET_INIT_ADDRESS("ATIIA%d"),
 
     /**
      * JE [ enables the J1939 ELM data format ] The J1939 standard requires that PGN requests be
@@ -672,7 +674,7 @@ public enum OpCode
      * engine temperature PGN, you would send 00 FE EE (and not EE FE 00). The ‘JE’ type of
      * automatic formatting is enabled by default.
      */
-    ELM327_ENABLE_J1939_ELM_DATA_FORMAT("JE"),
+    ELM327_ENABLE_J1939_ELM_DATA_FORMAT("ATJE"),
 
     /**
      * JHF0 and JHF1 [ J1939 Header Formatting off or on ] When printing responses, the ELM327
@@ -687,12 +689,12 @@ public enum OpCode
     /**
      * JHF0 [ J1939 Header Formatting off ] Turns off header formatting for the J1939 protocol
      */
-    ELM327_J1939_HEADER_FORMATTING_OFF("JHF0"),
+    ELM327_J1939_HEADER_FORMATTING_OFF("ATJHF0"),
 
     /**
      * JHF1 [J1939 Header Formatting on ] Turns on header formatting for the J1939 protocol
      */
-    ELM327_J1939_HEADER_FORMATTING_ON("JHF1"),
+    ELM327_J1939_HEADER_FORMATTING_ON("ATJHF1"),
 
     /**
      * JS [ enables the J1939 SAE data format ] The AT JS command disables the automatic byte
@@ -703,21 +705,21 @@ public enum OpCode
      * ELM327 as EE FE 00 (this is also known as little-endian byte ordering). The JS type of data
      * formatting is off by default.
      */
-    ELM327_J1939_ENABLE_J1939_SAE_DATA_FORMAT("JS"),
+    ELM327_J1939_ENABLE_J1939_SAE_DATA_FORMAT("ATJS"),
 
     /**
      * JTM1 [ set the J1939 Timer Multiplier to 1 ] This used to set the AT ST time multiplier to 1,
      * for the SAE J1939 protocol. As of firmware v2.1, this command now simply calls the CTM1
      * command.
      */
-    ELM327_J1939_SET_J1939_TIMER_MULTIPLIER_1("JTM1"),
+    ELM327_J1939_SET_J1939_TIMER_MULTIPLIER_1("ATJTM1"),
 
     /**
      * JTM5 [ set the J1939 Timer Multiplier to 5 ] This used to set the AT ST time multiplier to 5,
      * for the SAE J1939 protocol. As of firmware v2.1, this command now simply calls the CTM5
      * command.
      */
-    ELM327_J1939_SET_J1939_TIMER_MULTIPLIER_5("JTM5"),
+    ELM327_J1939_SET_J1939_TIMER_MULTIPLIER_5("ATJTM5"),
 
     /**
      * KW [ display the Key Words ] When the ISO 9141-2 and ISO 14230-4 protocols are initialized,
@@ -725,7 +727,7 @@ public enum OpCode
      * determine whether a particular protocol variation can be supported by the ELM327). If you
      * wish to see what the value of these bytes were, simply send the AT KW command.
      */
-    ELM327_ISO_DISPLAY_KEY_WORDS("KW"),
+    ELM327_ISO_DISPLAY_KEY_WORDS("ATKW"),
 
     /**
      * KW0 and KW1 [ Key Word checks off or on ] The ELM327 looks for specific bytes (called key
@@ -745,12 +747,12 @@ public enum OpCode
     /**
      * KW0 [ Key Word checks off ] Disables key word checks
      */
-    ELM327_ISO_KEY_WORD_CHECKING_OFF("KW0"),
+    ELM327_ISO_KEY_WORD_CHECKING_OFF("ATKW0"),
 
     /**
      * KW1 [ Key Word checks on ] Enables key word checks
      */
-    ELM327_ISO_KEY_WORD_CHECKING_ON("KW1"),
+    ELM327_ISO_KEY_WORD_CHECKING_ON("ATKW1"),
 
     /**
      * L0 and L1 [ Linefeeds off or on ] This option controls the sending of linefeed characters
@@ -782,7 +784,7 @@ public enum OpCode
      * then on, a low on pin 1, or a brownout). See the Power Control section (page 64) for more
      * information.
      */
-    ELM327_ENTER_LOW_POWER_MODE("LP"),
+    ELM327_ENTER_LOW_POWER_MODE("ATLP"),
 
     /**
      * M0 and M1 [ Memory off or on ] The ELM327 has internal ‘non-volatile’ memory that is capable
@@ -809,12 +811,12 @@ public enum OpCode
     /**
      * M0 [ Memory off ] Disables internal 'non-volatile' memory for the remainder of the session
      */
-    ELM327_MEMORY_OFF("M0"),
+    ELM327_MEMORY_OFF("ATM0"),
 
     /**
      * M1 [ Memory on ] Enables internal 'non-volatile' memory for the remainder of the session
      */
-    ELM327_MEMORY_ON("M1"),
+    ELM327_MEMORY_ON("ATM1"),
 
     /**
      * MA [ Monitor All messages ] This command places the ELM327 into a bus monitoring mode, in
@@ -841,7 +843,7 @@ public enum OpCode
      * again be initialized, and you may see messages stating this. ‘SEARCHING...’ may also be seen,
      * depending on what changes were made while monitoring.
      */
-    ELM327_OBD_MONITOR_ALL_MESSAGES("MA"),
+    ELM327_OBD_MONITOR_ALL_MESSAGES("ATMA"),
 
     /**
      * MP hhhh [ Monitor for PGN hhhh ] The AT MA, MR and MT commands are quite useful for when you
@@ -858,7 +860,7 @@ public enum OpCode
      * that this version of the ELM327 only displays responses that match the criteria, not the
      * requests that are asking for the PGN information.
      */
-    ELM327_J1939_MONITOR_FOR_PNG_HHHH("MP%d"),
+    ELM327_J1939_MONITOR_FOR_PNG_HHHH("ATMP%d"),
 
     /**
      * MP hhhh n [ Monitor for PGN, get n messages ] This is very similar to the above command, but
@@ -866,7 +868,7 @@ public enum OpCode
      * automatically stops monitoring and prints a prompt character. The value ‘n’ may be any single
      * hex digit.
      */
-    ELM327_J1939_MONITOR_FOR_PNG_HHHH_N("MP%d%d"),
+    ELM327_J1939_MONITOR_FOR_PNG_HHHH_N("ATMP%d%d"),
 
     /**
      * MP hhhhhh [ Monitor for PGN hhhhhh ] This command is very similar to the MP hhhh command, but
@@ -876,7 +878,7 @@ public enum OpCode
      * Data Page bit set. Note that only the Data Page bit is relevant in the extra byte - the other
      * bits are ignored.
      */
-    ELM327_J1939_MONITOR_FOR_PNG_HHHHHH("MP%d"),
+    ELM327_J1939_MONITOR_FOR_PNG_HHHHHH("ATMP%d"),
 
     /**
      * MP hhhhhh n [ Monitor for PGN, get n messages ] This is very similar to the previous command,
@@ -884,7 +886,7 @@ public enum OpCode
      * ELM327 automatically stops monitoring and prints a prompt character. The value ‘n’ may be any
      * single hex digit.
      */
-    ELM327_J1939_MONITOR_FOR_PNG_HHHHHH_N("MP%d%d"),
+    ELM327_J1939_MONITOR_FOR_PNG_HHHHHH_N("ATMP%d%d"),
 
     /**
      * MR hh [ Monitor for Receiver hh ] This command is very similar to the AT MA command except
@@ -901,7 +903,7 @@ public enum OpCode
      * begins by performing an internal Protocol Close. Subsequent OBD requests may show ‘SEARCHING’
      * or ‘BUS INIT’, etc. messages when the protocol is reactivated.
      */
-    ELM327_OBD_MONITOR_FOR_RECEIVER("MR%d"),
+    ELM327_OBD_MONITOR_FOR_RECEIVER("ATMR%d"),
 
     /**
      * MT hh [ Monitor for Transmitter hh ] This command is also very similar to the AT MA command,
@@ -918,7 +920,7 @@ public enum OpCode
      * this command begins by performing an internal Protocol Close. Subsequent OBD requests may
      * show ‘SEARCHING’ or ‘BUS INIT’, etc. messages when the protocol is reactivated.
      */
-    ELM327_OBD_MONITOR_FOR_TRANSMITTER("MT%d"),
+    ELM327_OBD_MONITOR_FOR_TRANSMITTER("ATMT%d"),
 
     /**
      * NL [ Normal Length messages ] Setting the NL mode on forces all sends and receives to be
@@ -928,7 +930,7 @@ public enum OpCode
      * determined by the header length values). You can simply leave the IC set to the default
      * setting of NL, and all of the received bytes will be shown.
      */
-    ELM327_OBD_NORMAL_LENGTH_MESSAGES("NL"),
+    ELM327_OBD_NORMAL_LENGTH_MESSAGES("ATNL"),
 
     /**
      * PB xx yy [ set Protocol B parameters ] This command allows you to change the protocol B
@@ -946,7 +948,7 @@ public enum OpCode
      * over power cycles, then you may wish to store them in the Programmable Parameter for CAN
      * protocols USER1 or USER2.
      */
-    ELM327_CAN_SET_PROTOCOL_B_PARAMETERS("PB%d%d"),
+    ELM327_CAN_SET_PROTOCOL_B_PARAMETERS("ATPB%d%d"),
 
     /**
      * PC [ Protocol Close ] There may be occasions where it is desirable to stop (deactivate) a
@@ -955,7 +957,7 @@ public enum OpCode
      * messages, or have another reason. The PC command is used in these cases to force a protocol
      * to close.
      */
-    ELM327_OBD_PROTOCOL_CLOSE("PC"),
+    ELM327_OBD_PROTOCOL_CLOSE("ATPC"),
 
     /**
      * PP hh OFF [ turn Prog. Parameter hh OFF ] This command disables Programmable Parameter number
@@ -974,12 +976,12 @@ public enum OpCode
      * jumper on for more than a few seconds and do not see the RS232 receive light flashing, remove
      * the jumper and try again, as there may be a problem with your connection.
      */
-    ELM327_PROGRAMMABLE_PARAMETER_DISABLE("PP%dOFF"),
+    ELM327_PROGRAMMABLE_PARAMETER_DISABLE("ATPP%dOFF"),
 
     /**
      * PP FF OFF [ Disables all programmable parameters ]
      */
-    ELM327_PROGRAMMABLE_PARAMETER_DISABLE_ALL("PPFFOFF"),
+    ELM327_PROGRAMMABLE_PARAMETER_DISABLE_ALL("ATPPFFOFF"),
 
     /**
      * PP hh ON [ turn Programmable Parameter hh ON ] This command enables Programmable Parameter
@@ -991,19 +993,19 @@ public enum OpCode
      * for more information on the types. Note that ‘PP FF ON’ is a special command that enables all
      * of the Programmable Parameters at the same time.
      */
-    ELM327_PROGRAMMABLE_PARAMETER_ENABLE("PP%dON"),
+    ELM327_PROGRAMMABLE_PARAMETER_ENABLE("ATPP%dON"),
 
     /**
      * PP FF ON [ Enables all programmable parameters ]
      */
-    ELM327_PROGRAMMABLE_PARAMETER_ENABLE_ALL("PPFFON"),
+    ELM327_PROGRAMMABLE_PARAMETER_ENABLE_ALL("ATPPFFON"),
 
     /**
      * PP hh SV yy [ Prog. Param. hh: Set the Value to yy ] A value is assigned to a Programmable
      * Parameter using this command. The system will not be able to use this new value until the
      * Programmable Parameter has been enabled, with PP hh ON.
      */
-    ELM327_PROGRAMMABLE_PARAMETER_SET_PARAMETER("PP%dSV%d"),
+    ELM327_PROGRAMMABLE_PARAMETER_SET_PARAMETER("ATPP%dSV%d"),
 
     /**
      * PPS [ Programmable Parameter Summary ] The complete range of current Programmable Parameters
@@ -1012,7 +1014,7 @@ public enum OpCode
      * digit – either ‘N’ or ‘F’ to show that it is ON (enabled), or OFF (disabled), respectively.
      * See the Programmable Parameters section for a more complete discussion.
      */
-    ELM327_PROGRAMMABLE_PARAMETER_SUMMARY("PPS"),
+    ELM327_PROGRAMMABLE_PARAMETER_SUMMARY("ATPPS"),
 
     /**
      * R0 and R1 [ Responses off or on ] These commands control the ELM327’s automatic receive (and
@@ -1031,12 +1033,12 @@ public enum OpCode
     /**
      * R0 [ Responses off ] Disables the displaying of positive responses
      */
-    ELM327_OBD_RESPONSES_OFF("R0"),
+    ELM327_OBD_RESPONSES_OFF("ATR0"),
 
     /**
      * R1 [ Responses on ] Enables the displaying of positive responses
      */
-    ELM327_OBD_RESPONSES_ON("R1"),
+    ELM327_OBD_RESPONSES_ON("ATR1"),
 
     /**
      * RA hh [ set the Receive Address to hh ] Depending on the application, users may wish to
@@ -1052,13 +1054,13 @@ public enum OpCode
      * command, and can be used interchangeably. Note that CAN Extended Addressing does not use this
      * value - it uses the one set by the AT TA command.
      */
-    ELM327_OBD_SET_RECEIVE_ADDRESS_A("RA%d"),
+    ELM327_OBD_SET_RECEIVE_ADDRESS_A("ATRA%d"),
 
     /**
      * RD [ Read the Data in the user memory ] The byte value stored with the SD command is
      * retrieved with this command. There is only one memory location, so no address is required.
      */
-    ELM327_READ_USER_MEMORY("RD"),
+    ELM327_READ_USER_MEMORY("ATRD"),
 
     /**
      * RTR [ send an RTR message ] This command causes a special ‘Remote Frame’ CAN message to be
@@ -1072,7 +1074,7 @@ public enum OpCode
      * ELM327 treats an RTR just like any other message sent, and will wait for a response from the
      * vehicle (unless AT R0 has been chosen).
      */
-    ELM327_CAN_SEND_RTR_MESSAGE("RTR"),
+    ELM327_CAN_SEND_RTR_MESSAGE("ATRTR"),
 
     /**
      * RV [ Read the input Voltage ] This initiates the reading of the voltage present at pin 2, and
@@ -1111,7 +1113,7 @@ public enum OpCode
      * data (AT RD) command. This location is ideal for storing user preferences, unit ids,
      * occurrence counts, or other information.
      */
-    ELM327_WRITE_USER_MEMORY("SD%d"),
+    ELM327_WRITE_USER_MEMORY("ATSD%d"),
 
     /**
      * SH xyz [ Set the Header to 00 0x yz ] Entering CAN 11 bit ID words (headers) normally
@@ -1121,7 +1123,7 @@ public enum OpCode
      * you. As an example, AT SH 7DF is a valid command, and is quite useful for working with 11 bit
      * CAN systems. It actually results in the header bytes being stored internally as 00 07 DF.
      */
-    ELM327_OBD_SET_HEADER_00_0X_YZ("SH%d%d%d"),
+    ELM327_OBD_SET_HEADER_00_0X_YZ("ATSH%03X"),
 
     /**
      * SH xx yy zz [ Set the Header to xx yy zz ] This command allows the user to manually control
@@ -1157,14 +1159,14 @@ public enum OpCode
      * ISO 14230-4 OBD standard, but it is in use by many KWP2000 systems for (non-OBD) data
      * transfer, so may be useful when experimenting.
      */
-    ELM327_OBD_SET_HEADER_XX_YY_ZZ("SH%d%d%d"),
+    ELM327_OBD_SET_HEADER_XX_YY_ZZ("ATSH%06X"),
 
     /**
      * SH ww xx yy zz [ Set the Header to ww xx yy zz ] This four byte version of the AT SH command
      * allows setting a complete 29 bit CAN ID in one instruction. Alternatively, AT SP (for the
      * five most significant bits) and AT SH (for the other three bytes) may be used.
      */
-    ELM327_OBD_SET_HEADER_WW_XX_YY_ZZ("SH%d%d%d%d"),
+    ELM327_OBD_SET_HEADER_WW_XX_YY_ZZ("ATSH%08X"),
 
     /**
      * SI [ perform a Slow Initiation ] Protocols 3 and 4 use what is sometimes called a 5 baud, or
@@ -1175,7 +1177,7 @@ public enum OpCode
      * may need to experiment a little to get the right amount of delay. Protocol 3 or 4 must be
      * selected to use the AT SI command, or an error will result.
      */
-    ELM327_ISO_PERFORM_SLOW_INITIATION("SI"),
+    ELM327_ISO_PERFORM_SLOW_INITIATION("ATSI"),
 
     /**
      * SP h [ Set Protocol to h ] This command is used to set the ELM327 for operation using the
@@ -1219,7 +1221,7 @@ public enum OpCode
      * however, so we provided this command. It should not normally be used when connecting to a
      * vehicle.
      */
-    ELM327_OBD_ERASE_STORED_PROTOCOL("SP00"),
+    ELM327_OBD_ERASE_STORED_PROTOCOL("ATSP00"),
 
     /**
      * SP Ah [ Set Protocol to Auto, h ] This variation of the SP command allows you to choose a
@@ -1249,7 +1251,7 @@ public enum OpCode
      * interchangeably with it. Note that CAN Extended Addressing does not use this value - it uses
      * the one set by the AT TA command.
      */
-    ELM327_OBD_SET_RECEIVE_ADDRESS_B("SR%d"),
+    ELM327_OBD_SET_RECEIVE_ADDRESS_B("ATSR%d"),
 
     /**
      * SS [ use the Standard Sequence for searches ] SAE standard J1978 specifies a protocol search
@@ -1257,7 +1259,7 @@ public enum OpCode
      * ELM327 protocols. In order to provide a faster search, the ELM327 does not normally follow
      * this order, but it will if you command it to with AT SS.
      */
-    ELM327_OBD_USE_STANDARD_SEARCH_SEQUENCE("SS"),
+    ELM327_OBD_USE_STANDARD_SEARCH_SEQUENCE("ATSS"),
 
     /**
      * ST hh [ Set Timeout to hh ] After sending a request, the ELM327 waits a preset time for a
@@ -1274,7 +1276,7 @@ public enum OpCode
      * will restore the timer to the default value. Also, during protocol searches, an internally
      * set minimum time is used - you may select longer times with AT ST, but not shorter ones.
      */
-    ELM327_OBD_SET_TIMEOUT("ST%d"),
+    ELM327_OBD_SET_TIMEOUT("ATST%02X"),
 
     /**
      * SW hh [ Set Wakeup to hh ] Once a data connection has been established, some protocols
@@ -1296,12 +1298,12 @@ public enum OpCode
      * protocol is re- initialized. Once periodic messages have been turned off with AT SW, they can
      * only be reestablished by closing and reinitializing the protocol.
      */
-    ELM327_ISO_SET_WAKEUP("SW%d"),
+    ELM327_ISO_SET_WAKEUP("ATSW%02X"),
 
     /**
      * SW00 [ Stop sending Wakeups ] Stops sending 'wakeup' messages
      */
-    ELM327_ISO_STOP_SENDING_WAKEUPS("SW00"),
+    ELM327_ISO_STOP_SENDING_WAKEUPS("ATSW00"),
 
     /**
      * TA hh [ set the Tester Address to hh ] This command is used to change the current tester (ie.
@@ -1313,7 +1315,7 @@ public enum OpCode
      * is not recommended that you try to change this address after a protocol is active, as the
      * results may be unpredictable.
      */
-    ELM327_OBD_SET_TESTER_ADDRESS("TA%d"),
+    ELM327_OBD_SET_TESTER_ADDRESS("ATTA%d"),
 
     /**
      * TP h [ Try Protocol h ] This command is identical to the SP command, except that the protocol
@@ -1345,12 +1347,12 @@ public enum OpCode
     /**
      * V0 [ Variable data lengths off ] Disables the forced sending of variable length CAN messages
      */
-    ELM327_CAN_VARIABLE_DATA_LENGTH_OFF("V0"),
+    ELM327_CAN_VARIABLE_DATA_LENGTH_OFF("ATV0"),
 
     /**
      * V1 [ Variable data lengths on ] Enables the forced sending of variable length CAN messages
      */
-    ELM327_CAN_VARIABLE_DATA_LENGTH_ON("V1"),
+    ELM327_CAN_VARIABLE_DATA_LENGTH_ON("ATV1"),
 
     /**
      * WM [1 to 6 bytes] [ set Wakeup Message to... ] This command allows the user to override the
@@ -1360,7 +1362,7 @@ public enum OpCode
      * rate determined by the AT SW setting. Default settings will send the bytes 68 6A F1 01 00 for
      * ISO 9141, and C1 33 F1 3E for KWP.
      */
-    ELM327_ISO_SET_WAKEUP_MESSAGE("WM%l"),
+    ELM327_ISO_SET_WAKEUP_MESSAGE("ATWM%s"),
 
     /**
      * WS [ Warm Start ] This command causes the ELM327 to perform a complete reset. It is very
@@ -1369,7 +1371,7 @@ public enum OpCode
      * If using variable RS232 baud rates (ie AT BRD commands), it is preferred that you reset the
      * IC using this command rather than AT Z, as AT WS will not affect the chosen RS232 baud rate.
      */
-    ELM327_WARM_START("WS"),
+    ELM327_WARM_START("ATWS"),
 
     /**
      * Z [ reset all ] This command causes the chip to perform a complete reset as if power were
@@ -1408,6 +1410,8 @@ public enum OpCode
 
     public static final String ELM327_NO_DATA = "NO DATA";
 
+    public static final String ELM327_BUS_INIT = "BUS INIT";
+
     /// The actual string op-code
     private final String request;
 
@@ -82,4 +82,24 @@ public enum Protocol implements Parcelable
     {
         return baudrate;
     }
+
+    /**
+     * Is this protocol one of the ISO 15765-4 (CAN) protocols mandated by SAE-J1979?  Only these
+     * protocols permit a single service $01 or $02 request to carry more than one PID.
+     *
+     * @return true if this protocol is an ISO 15765-4 protocol, otherwise false
+     */
+    public final boolean isISO15765()
+    {
+        switch (this)
+        {
+            case ISO_15765_4_CAN_11_BIT_500_KBAUD:
+            case ISO_15765_4_CAN_29_BIT_500_KBAUD:
+            case ISO_15765_4_CAN_11_BIT_250_KBAUD:
+            case ISO_15765_4_CAN_29_BIT_250_KBAUD:
+                return true;
+            default:
+                return false;
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,176 @@
+// This file is protected under the KILLGPL.
+// For more information, visit http://www.lukeleber.github.io/KILLGPL.html
+//
+// Copyright (c) Luke Leber <LukeLeber@gmail.com>
+
+package com.lukeleber.scandroid.interpreter.elm327;
+
+/**
+ * <p>Learns how many messages the vehicle sends in reply to each Service/PID, so that the count
+ * can be appended to the request (as in "010C1").  Given the count, the ELM327 prints its prompt as
+ * soon as that many messages have arrived instead of waiting out its timeout in case another ECU
+ * has something to say; on a vehicle with a single ECU that saves roughly the whole timeout on
+ * every request.</p>
+ * <p/>
+ * <p>A count is only used once {@link #CONFIRMATIONS} replies in a row agree on it, only if every
+ * message fits a single frame (a count is ambiguous for multi-frame replies), and only up to 15 (a
+ * single hex digit).  Every {@link #REVERIFY_INTERVAL}th request is still sent without a count, so
+ * that an ECU that only answers now and then (or a change of vehicle) is noticed.</p>
+ * <p/>
+ * <p>Older adapters (before version 1.3 of the ELM327) reject such requests with "?"; the hints are
+ * then disabled for good.</p>
+ * <p/>
+ * <p>The counts are learned and appended while each request is written and its reply parsed,
+ * both on the I/O thread of the ELM327, so the table of counts has no lock.  The hints can be
+ * switched off ({@link #setEnabled(boolean)}) from any thread, say while chasing a misbehaving
+ * adapter.</p>
+ */
+public final class ResponseCountHints
+{
+    /// The number of replies in a row that must agree before their count is used
+    public final static int CONFIRMATIONS = 3;
+
+    /// Every how many hinted requests one is sent without a count
+    public final static int REVERIFY_INTERVAL = 64;
+
+    /// The largest count that can be sent
+    private final static int MAX_HINT = 0xF;
+
+    /// The largest number of data bytes that a single frame carries on any protocol
+    private final static int MAX_SINGLE_FRAME_LENGTH = 7;
+
+    /// The number of Service/PID pairs that are tracked
+    private final static int KEYS = 0x10 * 0x100;
+
+    /// The learned count of each Service/PID, or zero if none has been learned
+    private final byte[] learned = new byte[KEYS];
+
+    /// The count that the latest replies of each Service/PID agreed on
+    private final byte[] candidate = new byte[KEYS];
+
+    /// The number of replies in a row of each Service/PID that agreed on the candidate
+    private final byte[] streak = new byte[KEYS];
+
+    /// The number of hinted requests of each Service/PID since the last one without a count
+    private final byte[] uses = new byte[KEYS];
+
+    /// Are the hints enabled?
+    private volatile boolean enabled = true;
+
+    /**
+     * Constructs a ResponseCountHints that has learned nothing yet
+     */
+    ResponseCountHints()
+    {
+
+    }
+
+    /**
+     * Enables or disables the hints.  They are disabled automatically on adapters that do not
+     * support them.
+     *
+     * @param enabled
+     *         true to enable the hints, false to disable them
+     */
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Are the hints enabled?
+     *
+     * @return true if the hints are enabled, otherwise false
+     */
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Retrieves the count to append to the next request of the provided Service/PID
+     *
+     * @param service
+     *         the ID of the service
+     * @param pid
+     *         the ID of the PID
+     *
+     * @return the count to append, or zero if none should be appended
+     */
+    int get(int service, int pid)
+    {
+        int key = key(service, pid);
+        if (!enabled || key == -1 || learned[key] == 0)
+        {
+            return 0;
+        }
+        if (++uses[key] >= REVERIFY_INTERVAL)
+        {
+            uses[key] = 0;
+            return 0;
+        }
+        return learned[key];
+    }
+
+    /**
+     * Learns from the (parsed) reply to a request of the provided Service/PID
+     *
+     * @param service
+     *         the ID of the service
+     * @param pid
+     *         the ID of the PID
+     * @param hint
+     *         the count that was appended to the request, or zero if none was
+     * @param parser
+     *         the {@link ResponseParser} that holds the reply
+     */
+    void record(int service, int pid, int hint, ResponseParser parser)
+    {
+        int key = key(service, pid);
+        if (key == -1)
+        {
+            return;
+        }
+        int count = parser.getMessageCount();
+        for (int m = 0; m < count; ++m)
+        {
+            if (parser.getMessageLength(m) > MAX_SINGLE_FRAME_LENGTH)
+            {
+                count = 0;
+                break;
+            }
+        }
+        if (count == 0 || count > MAX_HINT || parser.isNoData())
+        {
+            learned[key] = candidate[key] = streak[key] = 0;
+        }
+        else if (hint != 0)
+        {
+            if (count != hint)
+            {
+                /// Fewer arrived than before; stop relying on the count
+                learned[key] = streak[key] = 0;
+            }
+        }
+        else if (count == candidate[key])
+        {
+            if (streak[key] < CONFIRMATIONS && ++streak[key] == CONFIRMATIONS)
+            {
+                learned[key] = (byte) count;
+            }
+        }
+        else
+        {
+            learned[key] = 0;
+            candidate[key] = (byte) count;
+            streak[key] = 1;
+        }
+    }
+
+    /// Maps a Service/PID to an index into the arrays, or -1 if it is out of range
+    private static int key(int service, int pid)
+    {
+        return service < 0 || service >= 0x10 || pid < 0 || pid >= 0x100 ? -1 :
+                (service << 8) | pid;
+    }
+}
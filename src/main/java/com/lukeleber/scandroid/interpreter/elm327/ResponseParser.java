@@ -0,0 +1,717 @@
+// This file is protected under the KILLGPL.
+// For more information, visit http://www.lukeleber.github.io/KILLGPL.html
+//
+// Copyright (c) Luke Leber <LukeLeber@gmail.com>
+
+package com.lukeleber.scandroid.interpreter.elm327;
+
+import android.util.Log;
+
+import com.lukeleber.scandroid.BuildConfig;
+
+import com.lukeleber.scandroid.interpreter.BatchServiceRequest;
+import com.lukeleber.scandroid.interpreter.EcuAddress;
+import com.lukeleber.scandroid.io.CommunicationInterface;
+import com.lukeleber.scandroid.io.ReadTimeoutException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>A byte-level parser for the replies of the ELM327.  A single instance is owned by the I/O
+ * thread of an {@link ELM327} and all of its buffers are allocated once up front, so that parsing
+ * a reply in the steady state produces no garbage at all.</p>
+ * <p/>
+ * <p>A reply is first read verbatim up to the "&gt;" prompt by {@link
+ * #read(com.lukeleber.scandroid.io.CommunicationInterface)} and then decoded line-by-line by a
+ * small state machine in {@link #parse()}.  Each line of hex digits becomes a message (the data
+ * bytes of one ECU); ISO 15765-4 multi-frame replies (a byte count line followed by "0:", "1:",
+ * ... lines) are joined into a single message.  Lines that are not hex (such as "SEARCHING..." or
+ * "NO DATA") are skipped.</p>
+ * <p/>
+ * <p>With headers shown ("AT H1"), {@link #parse(boolean)} also records which ECU sent each
+ * message (see {@link #getSource(int)}), so that the answers of several ECUs to a single request
+ * can be told apart.  The header (and the checksum on protocols other than ISO 15765-4) is
+ * stripped, and ISO 15765-4 frames are put back together by their PCI byte, per ECU, even when the
+ * frames of several ECUs arrive interleaved.</p>
+ * <p/>
+ * <p>Instances of this class are not thread-safe.</p>
+ */
+final class ResponseParser
+{
+    /// @internal tag for debug logging
+    private final static String TAG = ResponseParser.class.getName();
+
+    /// The prompt character that terminates every reply
+    private final static byte PROMPT = '>';
+
+    /// The largest reply (in characters) that is retained
+    private final static int MAX_REPLY_LENGTH = 4096;
+
+    /// The largest number of messages that are retained per reply
+    private final static int MAX_MESSAGES = 32;
+
+    /// The largest slice that is served from the preallocated scratch arrays
+    private final static int MAX_SCRATCH_LENGTH = 32;
+
+    /// The "NO DATA" reply as raw bytes
+    private final static byte[] NO_DATA = OpCode.ELM327_NO_DATA.getBytes();
+
+    /// The reply of the ELM327 to a command that it does not understand
+    private final static byte[] REJECTED = {'?'};
+
+    /// The start of the line that the ELM327 prints while it initiates a K-line session
+    private final static byte[] BUS_INIT = OpCode.ELM327_BUS_INIT.getBytes();
+
+    /// Maps each ASCII character to its hex value, or -1 if it is not a hex digit
+    private final static byte[] HEX = new byte[256];
+
+    static
+    {
+        for (int i = 0; i < HEX.length; ++i)
+        {
+            HEX[i] = -1;
+        }
+        for (int i = 0; i < 10; ++i)
+        {
+            HEX['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; ++i)
+        {
+            HEX['A' + i] = (byte) (10 + i);
+            HEX['a' + i] = (byte) (10 + i);
+        }
+    }
+
+    /// The raw characters of the current reply (excluding the prompt)
+    private final byte[] raw = new byte[MAX_REPLY_LENGTH];
+
+    /// The number of valid characters in {@link #raw}
+    private int rawLength;
+
+    /// The decoded bytes of every message of the current reply, back to back
+    private final byte[] data = new byte[MAX_REPLY_LENGTH / 2];
+
+    /// The offset into {@link #data} of each message
+    private final int[] offsets = new int[MAX_MESSAGES];
+
+    /// The length of each message
+    private final int[] lengths = new int[MAX_MESSAGES];
+
+    /// The number of messages in the current reply
+    private int messageCount;
+
+    /// Did any line of the current reply read "NO DATA"?
+    private boolean noData;
+
+    /// Did any line of the current reply read "?"
+    private boolean rejected;
+
+    /// Did any line of the current reply start with "BUS INIT"?
+    private boolean busInit;
+
+    /// The nano-time at which the first character of the current reply arrived
+    private long firstByteTime;
+
+    /// The ECU that sent each message, or null if headers were not shown
+    private final EcuAddress[] sources = new EcuAddress[MAX_MESSAGES];
+
+    /// The largest number of hex digits that a line with headers holds
+    private final static int MAX_LINE_DIGITS = 128;
+
+    /// The hex digits of the line that is being parsed (with headers shown)
+    private final byte[] line = new byte[MAX_LINE_DIGITS];
+
+    /// The message that each ISO 15765-4 multi-frame message being put back together is in
+    private final int[] assembling = new int[MAX_MESSAGES];
+
+    /// The number of bytes that each multi-frame message being put back together will hold
+    private final int[] assemblyLengths = new int[MAX_MESSAGES];
+
+    /// The number of multi-frame messages that are being put back together
+    private int assemblies;
+
+    /// Exactly sized arrays handed to unmarshallers; scratch[n].length == n
+    private final byte[][] scratch = BatchServiceRequest.Answers.newScratch(MAX_SCRATCH_LENGTH);
+
+    /**
+     * Constructs a ResponseParser
+     */
+    ResponseParser()
+    {
+
+    }
+
+    /**
+     * Reads a single reply (up to and including the prompt) from the provided {@link
+     * com.lukeleber.scandroid.io.CommunicationInterface}, waiting for as long as it takes.  This
+     * is equivalent to <code>read(com, 0);</code>
+     *
+     * @param com
+     *         the {@link com.lukeleber.scandroid.io.CommunicationInterface} to read from
+     *
+     * @return the number of characters retained (excluding the prompt)
+     *
+     * @throws java.io.IOException
+     *         if any I/O error occurs or the stream ends before a prompt is seen
+     */
+    int read(CommunicationInterface com)
+            throws
+            IOException
+    {
+        return read(com, 0);
+    }
+
+    /**
+     * Reads a single reply (up to and including the prompt) from the provided {@link
+     * com.lukeleber.scandroid.io.CommunicationInterface}.  Characters beyond {@link
+     * #MAX_REPLY_LENGTH} are consumed but discarded.
+     *
+     * @param com
+     *         the {@link com.lukeleber.scandroid.io.CommunicationInterface} to read from
+     * @param timeout
+     *         the number of milliseconds to wait for the prompt, or zero to wait forever
+     *
+     * @return the number of characters retained (excluding the prompt)
+     *
+     * @throws com.lukeleber.scandroid.io.ReadTimeoutException
+     *         if the prompt is not seen before the timeout elapses
+     * @throws java.io.IOException
+     *         if any other I/O error occurs or the stream ends before a prompt is seen
+     */
+    int read(CommunicationInterface com, long timeout)
+            throws
+            IOException
+    {
+        messageCount = 0;
+        noData = rejected = busInit = false;
+        rawLength = 0;
+        long start = System.nanoTime();
+        /// The first character is read on its own so that its arrival can be timed
+        int first = com.read(raw, 0, 1, timeout);
+        if (first == -1)
+        {
+            throw new EOFException("Stream ended before the reply began");
+        }
+        if (first == 0)
+        {
+            throw new ReadTimeoutException(timeout, 0);
+        }
+        firstByteTime = System.nanoTime();
+        if (raw[0] == PROMPT)
+        {
+            return 0;
+        }
+        long remaining = 0;
+        if (timeout != 0)
+        {
+            remaining = Math.max(1, timeout - TimeUnit.NANOSECONDS.toMillis(firstByteTime - start));
+        }
+        int n = com.readUntil(PROMPT, raw, 1, raw.length - 1, remaining) + 1;
+        if (n > raw.length && BuildConfig.DEBUG)
+        {
+            Log.e(TAG, "Buffer overflow in ResponseParser.read");
+        }
+        rawLength = Math.min(n, raw.length);
+        return rawLength;
+    }
+
+    /**
+     * Retrieves the {@link System#nanoTime() nano-time} at which the first character of the
+     * current reply arrived
+     *
+     * @return the nano-time at which the first character of the current reply arrived
+     */
+    long getFirstByteTime()
+    {
+        return firstByteTime;
+    }
+
+    /**
+     * Decodes the current reply into messages, with or without headers
+     *
+     * @param headers
+     *         were headers shown ("AT H1") when the reply was received?
+     *
+     * @return the number of messages in the current reply
+     */
+    int parse(boolean headers)
+    {
+        return headers ? parseWithHeaders() : parse();
+    }
+
+    /**
+     * Decodes the current reply (received with headers hidden) into messages
+     *
+     * @return the number of messages in the current reply
+     */
+    int parse()
+    {
+        messageCount = 0;
+        noData = rejected = busInit = false;
+        int pos = 0;            /// The write position into data
+        int lineStart = 0;      /// The index into raw of the first character of the line
+        int lineData = 0;       /// The write position into data at the start of the line
+        int digits = 0;         /// The number of hex digits seen on the line
+        int value = 0;          /// The value of the line (only meaningful for byte counts)
+        boolean frame = false;  /// Is this line a numbered frame ("0:", "1:", ...)?
+        boolean skip = false;   /// Is this line something other than hex?
+        int multiFrameStart = -1;
+        int multiFrameLength = 0;
+        for (int i = 0; i <= rawLength; ++i)
+        {
+            byte c = i < rawLength ? raw[i] : (byte) '\r';
+            if (c == '\r' || c == '\n')
+            {
+                if (skip)
+                {
+                    noData |= matches(lineStart, i, NO_DATA);
+                    rejected |= matches(lineStart, i, REJECTED);
+                    busInit |= startsWith(lineStart, i, BUS_INIT);
+                    pos = lineData;
+                }
+                else if (frame)
+                {
+                    if (multiFrameStart == -1)
+                    {
+                        /// A frame without a byte count; take whatever arrives
+                        multiFrameStart = lineData;
+                        multiFrameLength = Integer.MAX_VALUE;
+                    }
+                }
+                else if (digits == 3)
+                {
+                    /// The byte count that precedes an ISO 15765-4 multi-frame message
+                    if (multiFrameStart != -1)
+                    {
+                        addMessage(multiFrameStart,
+                                   Math.min(lineData - multiFrameStart, multiFrameLength));
+                    }
+                    multiFrameStart = pos = lineData;
+                    multiFrameLength = value;
+                }
+                else if (digits > 0 && digits % 2 == 0)
+                {
+                    if (multiFrameStart != -1)
+                    {
+                        /// Another ECU interrupted; the multi-frame message ends here
+                        addMessage(multiFrameStart,
+                                   Math.min(lineData - multiFrameStart, multiFrameLength));
+                        multiFrameStart = -1;
+                    }
+                    addMessage(lineData, pos - lineData);
+                }
+                else
+                {
+                    pos = lineData;
+                }
+                lineStart = i + 1;
+                lineData = pos;
+                digits = value = 0;
+                frame = skip = false;
+                continue;
+            }
+            if (skip || c == ' ')
+            {
+                continue;
+            }
+            if (c == ':' && !frame && digits > 0)
+            {
+                /// Discard the frame number and continue the multi-frame message
+                frame = true;
+                digits = 0;
+                pos = lineData;
+                continue;
+            }
+            int nibble = HEX[c & 0xFF];
+            if (nibble == -1 || pos >= data.length)
+            {
+                skip = true;
+                continue;
+            }
+            value = (value << 4) | nibble;
+            if ((digits++ & 1) == 0)
+            {
+                data[pos] = (byte) (nibble << 4);
+            }
+            else
+            {
+                data[pos++] |= (byte) nibble;
+            }
+        }
+        if (multiFrameStart != -1)
+        {
+            addMessage(multiFrameStart, Math.min(pos - multiFrameStart, multiFrameLength));
+        }
+        return messageCount;
+    }
+
+    /// Decodes the current reply (received with headers shown) into messages
+    private int parseWithHeaders()
+    {
+        messageCount = 0;
+        assemblies = 0;
+        noData = rejected = busInit = false;
+        int pos = 0;            /// The write position into data
+        int lineStart = 0;      /// The index into raw of the first character of the line
+        int digits = 0;         /// The number of hex digits seen on the line
+        boolean skip = false;   /// Is this line something other than hex?
+        for (int i = 0; i <= rawLength; ++i)
+        {
+            byte c = i < rawLength ? raw[i] : (byte) '\r';
+            if (c == '\r' || c == '\n')
+            {
+                if (skip)
+                {
+                    noData |= matches(lineStart, i, NO_DATA);
+                    rejected |= matches(lineStart, i, REJECTED);
+                    busInit |= startsWith(lineStart, i, BUS_INIT);
+                }
+                else if (digits > 0)
+                {
+                    pos = addLine(digits, pos);
+                }
+                lineStart = i + 1;
+                digits = 0;
+                skip = false;
+                continue;
+            }
+            if (skip || c == ' ')
+            {
+                continue;
+            }
+            int nibble = HEX[c & 0xFF];
+            if (nibble == -1 || digits == line.length)
+            {
+                skip = true;
+                continue;
+            }
+            line[digits++] = (byte) nibble;
+        }
+        return messageCount;
+    }
+
+    /**
+     * Adds the line of hex digits in {@link #line} to the messages.  An odd number of digits means
+     * an 11-bit CAN ID, a line that starts with $18DA a 29-bit CAN ID, and anything else the three
+     * header bytes and trailing checksum of the other protocols.
+     *
+     * @param digits
+     *         the number of hex digits on the line
+     * @param pos
+     *         the write position into {@link #data}
+     *
+     * @return the new write position into {@link #data}
+     */
+    private int addLine(int digits, int pos)
+    {
+        if ((digits & 1) == 1)
+        {
+            return digits < 5 ? pos :
+                    addFrame(EcuAddress.fromResponseId(digitsAt(0, 3), false), 3, digits, pos);
+        }
+        if (digits >= 10 && digitsAt(0, 4) == 0x18DA)
+        {
+            return addFrame(EcuAddress.fromResponseId(digitsAt(0, 8), true), 8, digits, pos);
+        }
+        /// Three header bytes, at least one data byte and the checksum
+        if (digits < 10 || pos + (digits - 8) / 2 > data.length)
+        {
+            return pos;
+        }
+        int start = pos;
+        for (int d = 6; d < digits - 2; d += 2)
+        {
+            data[pos++] = (byte) digitsAt(d, 2);
+        }
+        addMessage(start, pos - start, EcuAddress.fromSourceAddress(digitsAt(4, 2)));
+        return pos;
+    }
+
+    /**
+     * Adds a single ISO 15765-4 frame (as shown with CAN auto-formatting on) to the messages:
+     * single frames become messages of their own, first frames reserve room for the whole message,
+     * and consecutive frames fill it up
+     *
+     * @param source
+     *         the ECU that sent the frame, or null if its CAN ID is not one of an ECU
+     * @param first
+     *         the index of the PCI byte on the line (in digits)
+     * @param digits
+     *         the number of hex digits on the line
+     * @param pos
+     *         the write position into {@link #data}
+     *
+     * @return the new write position into {@link #data}
+     */
+    private int addFrame(EcuAddress source, int first, int digits, int pos)
+    {
+        if (source == null || digits < first + 2)
+        {
+            return pos;
+        }
+        int pci = digitsAt(first, 2);
+        int d = first + 2;
+        switch (pci >> 4)
+        {
+            case 0: /// Single frame
+            {
+                int length = Math.min(pci & 0x0F, (digits - d) / 2);
+                if (length == 0 || pos + length > data.length)
+                {
+                    return pos;
+                }
+                for (int i = 0; i < length; ++i, d += 2)
+                {
+                    data[pos + i] = (byte) digitsAt(d, 2);
+                }
+                addMessage(pos, length, source);
+                return pos + length;
+            }
+            case 1: /// First frame
+            {
+                if (digits < d + 2 || assemblies == assembling.length)
+                {
+                    return pos;
+                }
+                int length = Math.min((pci & 0x0F) << 8 | digitsAt(d, 2), data.length - pos);
+                d += 2;
+                int filled = 0;
+                for (; filled < length && d + 2 <= digits; ++filled, d += 2)
+                {
+                    data[pos + filled] = (byte) digitsAt(d, 2);
+                }
+                if (filled == 0 || !addMessage(pos, filled, source))
+                {
+                    return pos;
+                }
+                assembling[assemblies] = messageCount - 1;
+                assemblyLengths[assemblies++] = length;
+                return pos + length;
+            }
+            case 2: /// Consecutive frame
+            {
+                for (int a = 0; a < assemblies; ++a)
+                {
+                    int m = assembling[a];
+                    if (sources[m] != source)
+                    {
+                        continue;
+                    }
+                    for (; lengths[m] < assemblyLengths[a] && d + 2 <= digits; d += 2)
+                    {
+                        data[offsets[m] + lengths[m]++] = (byte) digitsAt(d, 2);
+                    }
+                    break;
+                }
+                return pos;
+            }
+            default: /// Flow control (or garbage)
+                return pos;
+        }
+    }
+
+    /// Reads the value of the provided number of hex digits of {@link #line} from the provided one
+    private int digitsAt(int from, int count)
+    {
+        int value = 0;
+        for (int i = from; i < from + count; ++i)
+        {
+            value = value << 4 | line[i];
+        }
+        return value;
+    }
+
+    /// Records a message, silently dropping any beyond {@link #MAX_MESSAGES}
+    private void addMessage(int offset, int length)
+    {
+        addMessage(offset, length, null);
+    }
+
+    /// Records a message sent by the provided ECU, returning false if it had to be dropped
+    private boolean addMessage(int offset, int length, EcuAddress source)
+    {
+        if (messageCount < MAX_MESSAGES && length > 0)
+        {
+            offsets[messageCount] = offset;
+            sources[messageCount] = source;
+            lengths[messageCount++] = length;
+            return true;
+        }
+        return false;
+    }
+
+    /// Does raw[begin, end) (ignoring leading spaces) start with the provided token?
+    private boolean startsWith(int begin, int end, byte[] token)
+    {
+        while (begin < end && raw[begin] == ' ')
+        {
+            ++begin;
+        }
+        if (end - begin < token.length)
+        {
+            return false;
+        }
+        for (int j = 0; j < token.length; ++j)
+        {
+            if (raw[begin + j] != token[j])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /// Does raw[begin, end) (ignoring spaces) equal the provided token?
+    private boolean matches(int begin, int end, byte[] token)
+    {
+        int j = 0;
+        for (int i = begin; i < end; ++i)
+        {
+            if (raw[i] == ' ' && (j == 0 || j == token.length))
+            {
+                continue;
+            }
+            if (j == token.length || raw[i] != token[j++])
+            {
+                return false;
+            }
+        }
+        return j == token.length;
+    }
+
+    /**
+     * Retrieves the number of messages in the current reply
+     *
+     * @return the number of messages in the current reply
+     */
+    int getMessageCount()
+    {
+        return messageCount;
+    }
+
+    /**
+     * Retrieves the length (in bytes) of the provided message
+     *
+     * @param message
+     *         the index of the message
+     *
+     * @return the length (in bytes) of the provided message
+     */
+    int getMessageLength(int message)
+    {
+        return lengths[message];
+    }
+
+    /**
+     * Retrieves the ECU that sent the provided message
+     *
+     * @param message
+     *         the index of the message
+     *
+     * @return the {@link com.lukeleber.scandroid.interpreter.EcuAddress} of the ECU, or null if
+     * headers were not shown (or the sender was not an ECU)
+     */
+    EcuAddress getSource(int message)
+    {
+        return sources[message];
+    }
+
+    /**
+     * Retrieves a single (unsigned) byte of the provided message
+     *
+     * @param message
+     *         the index of the message
+     * @param index
+     *         the index of the byte within the message
+     *
+     * @return the unsigned value of the byte
+     */
+    int getByte(int message, int index)
+    {
+        return data[offsets[message] + index] & 0xFF;
+    }
+
+    /**
+     * Copies a range of the provided message into an exactly sized array.  For small ranges the
+     * array is one of a set of preallocated scratch arrays that is overwritten by the next call, so
+     * the result must be consumed immediately (unmarshallers do exactly that) and never retained.
+     *
+     * @param message
+     *         the index of the message
+     * @param index
+     *         the index of the first byte within the message
+     * @param length
+     *         the number of bytes to copy
+     *
+     * @return an array holding exactly the requested bytes
+     */
+    byte[] slice(int message, int index, int length)
+    {
+        byte[] rv = length <= MAX_SCRATCH_LENGTH ? scratch[length] : new byte[length];
+        System.arraycopy(data, offsets[message] + index, rv, 0, length);
+        return rv;
+    }
+
+    /**
+     * Hands a message to the answers to a {@link
+     * com.lukeleber.scandroid.interpreter.BatchServiceRequest}, which unmarshal its data straight
+     * out of the buffers of this parser
+     *
+     * @param message
+     *         the index of the message
+     * @param answers
+     *         the answers to the batch
+     *
+     * @return true if the message answers the service of the batch, otherwise false
+     */
+    boolean addTo(BatchServiceRequest.Answers answers, int message)
+    {
+        return answers.add(data, offsets[message], lengths[message], scratch);
+    }
+
+    /**
+     * Did any line of the current reply read "NO DATA"?  Only meaningful after {@link #parse()}.
+     *
+     * @return true if any line of the current reply read "NO DATA", otherwise false
+     */
+    boolean isNoData()
+    {
+        return noData;
+    }
+
+    /**
+     * Did any line of the current reply read "?" (the reply of the ELM327 to a command that it
+     * does not understand)?  Only meaningful after {@link #parse()}.
+     *
+     * @return true if any line of the current reply read "?", otherwise false
+     */
+    boolean isRejected()
+    {
+        return rejected;
+    }
+
+    /**
+     * Did any line of the current reply start with "BUS INIT" (so that the ELM327 had to initiate
+     * a K-line session before it could send the request)?  Only meaningful after {@link #parse()}.
+     *
+     * @return true if any line of the current reply started with "BUS INIT", otherwise false
+     */
+    boolean isBusInit()
+    {
+        return busInit;
+    }
+
+    /**
+     * Builds a string from the current reply in the format that raw listeners have always
+     * received: every character up to (but excluding) the final character before the prompt
+     *
+     * @return the current reply as a string
+     */
+    @Override
+    public String toString()
+    {
+        return new String(raw, 0, Math.max(0, rawLength - 1));
+    }
+}
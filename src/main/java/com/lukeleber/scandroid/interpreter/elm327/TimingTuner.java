@@ -0,0 +1,357 @@
+// This file is protected under the KILLGPL.
+// For more information, visit http://www.lukeleber.github.io/KILLGPL.html
+//
+// Copyright (c) Luke Leber <LukeLeber@gmail.com>
+
+package com.lukeleber.scandroid.interpreter.elm327;
+
+import com.lukeleber.scandroid.interpreter.metrics.LatencyHistogram;
+
+import java.util.EnumMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Learns how quickly the vehicle actually answers on each {@link Protocol} and decides on the
+ * tightest "AT ST" timeout (and the adaptive timing mode) that is still safe for it.  The ELM327
+ * waits for the "AT ST" time after every request (and, with adaptive timing, after the last reply)
+ * before it prints a prompt, so the factory default of roughly 200 ms is the single largest cost of
+ * a request on most vehicles.</p>
+ * <p/>
+ * <p>Replies are judged in windows of {@link #WINDOW} requests:</p>
+ * <ul>
+ *     <li>The first window of a protocol is measured at the default timeout; it records how often
+ *     "NO DATA" is the honest answer (unsupported PIDs and such) and how many messages a reply
+ *     usually holds.</li>
+ *     <li>After every window the timeout is set to one and a half times the 99th percentile of the
+ *     time to the first byte of a reply, and the aggressive mode (AT2) is chosen when the response
+ *     times are consistent.</li>
+ *     <li>If a window holds noticeably more "NO DATA" replies, or fewer messages per reply, than
+ *     the first one, the ECUs are too slow for the timeout: it is doubled, never again tightened
+ *     below that, and AT1 is used for the protocol from then on.  If that happens at the default
+ *     timeout, timing was not to blame and the new rates are simply accepted.</li>
+ * </ul>
+ * <p/>
+ * <p>The timeout is never raised above the default.  With headers off the replies of different
+ * ECUs can't be told apart, so the first ECU to answer stands in for all of them; the message
+ * count check covers slower ECUs that are cut off.  SAE J1939 uses fixed timeouts and is left
+ * alone.</p>
+ * <p/>
+ * <p>The measurements and the timing that was last applied belong to the I/O thread of the
+ * ELM327, which both measures the replies and sends "AT ST" and "AT AT", so they are not guarded.
+ * Only the switch ({@link #setEnabled(boolean)}) is volatile, and is read before each request.</p>
+ */
+public final class TimingTuner
+{
+    /// The "AT ST" value that the ELM327 uses by default (roughly 200 ms)
+    public final static int DEFAULT_TIMEOUT = 0x32;
+
+    /// The smallest "AT ST" value that is ever chosen (roughly 32 ms)
+    public final static int MIN_TIMEOUT = 0x08;
+
+    /// The number of requests that are judged together
+    public final static int WINDOW = 32;
+
+    /// The number of milliseconds in each unit of "AT ST"
+    private final static int MILLIS_PER_UNIT = 4;
+
+    /// How much the share of "NO DATA" replies (or of missing messages) may rise before backing off
+    private final static double TOLERANCE = 0.05;
+
+    /// The adaptive timing mode that the ELM327 uses by default
+    private final static OpCode DEFAULT_MODE = OpCode.ELM327_OBD_ADAPTIVE_TIMING_AUTO1;
+
+    /// What has been learned about a single protocol
+    private final static class State
+    {
+        /// The time to the first byte of each reply in the current window
+        final LatencyHistogram latency = new LatencyHistogram();
+
+        /// The number of replies in the current window
+        int replies;
+
+        /// The number of "NO DATA" replies in the current window
+        int noData;
+
+        /// The number of messages held by the other replies in the current window
+        int messages;
+
+        /// Has the first window been judged?
+        boolean learned;
+
+        /// The share of "NO DATA" replies that is normal
+        double baselineNoData;
+
+        /// The number of messages per reply that is normal
+        double baselineMessages;
+
+        /// The chosen "AT ST" value
+        int timeout = DEFAULT_TIMEOUT;
+
+        /// The smallest "AT ST" value that may be chosen
+        int floor = MIN_TIMEOUT;
+
+        /// The chosen adaptive timing mode
+        OpCode mode = DEFAULT_MODE;
+
+        /// May the aggressive adaptive timing mode be chosen?
+        boolean aggressive = true;
+    }
+
+    /// What has been learned about each protocol
+    private final EnumMap<Protocol, State> states = new EnumMap<>(Protocol.class);
+
+    /// Is the tuner enabled?
+    private volatile boolean enabled = true;
+
+    /// The protocol that the ELM327 was last told to use
+    private Protocol protocol = Protocol.AUTOMATIC;
+
+    /// The "AT ST" value that the ELM327 currently uses, or -1 if unknown
+    private int appliedTimeout = -1;
+
+    /// The adaptive timing mode that the ELM327 currently uses, or null if unknown
+    private OpCode appliedMode;
+
+    /**
+     * Constructs a TimingTuner for an ELM327 whose settings are not yet known
+     */
+    TimingTuner()
+    {
+
+    }
+
+    /**
+     * Enables or disables the tuner.  A disabled tuner sends nothing, so the ELM327 keeps whatever
+     * timing it currently has; reset it to return to the defaults.  The tuner is disabled for good
+     * as soon as a timing command is sent by hand.
+     *
+     * @param enabled
+     *         true to enable the tuner, false to disable it
+     */
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Is the tuner enabled?
+     *
+     * @return true if the tuner is enabled, otherwise false
+     */
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Records that a connection to an ELM327 in an unknown state was just made
+     */
+    void onConnected()
+    {
+        appliedTimeout = -1;
+        appliedMode = null;
+    }
+
+    /**
+     * Records that the ELM327 was reset, and thus uses the default timing again
+     */
+    void onReset()
+    {
+        appliedTimeout = DEFAULT_TIMEOUT;
+        appliedMode = DEFAULT_MODE;
+    }
+
+    /**
+     * Records that the ELM327 was told to use the protocol with the provided ID
+     *
+     * @param id
+     *         the ID of the protocol (see {@link Protocol#getID()})
+     */
+    void onProtocol(int id)
+    {
+        for (Protocol p : Protocol.values())
+        {
+            if (p.getID() == id)
+            {
+                protocol = p;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Records the reply to a service request that held at least one message
+     *
+     * @param nanos
+     *         the number of nanoseconds from the end of the request to the first byte of the reply
+     * @param messages
+     *         the number of messages that the reply held
+     */
+    void record(long nanos, int messages)
+    {
+        State state = state();
+        state.latency.record(nanos);
+        state.messages += messages;
+        if (++state.replies >= WINDOW)
+        {
+            judge(state);
+        }
+    }
+
+    /**
+     * Records a "NO DATA" reply to a service request
+     */
+    void recordNoData()
+    {
+        State state = state();
+        ++state.noData;
+        if (++state.replies >= WINDOW)
+        {
+            judge(state);
+        }
+    }
+
+    /**
+     * Does the ELM327 need to be sent new timing settings?
+     *
+     * @return true if {@link #getTimeout()} or {@link #getMode()} differ from the settings that
+     * the ELM327 currently uses
+     */
+    boolean hasPendingChange()
+    {
+        return enabled && protocol != Protocol.SAE_J1939_CAN &&
+                (appliedTimeout != getTimeout() || appliedMode != getMode());
+    }
+
+    /**
+     * Retrieves the "AT ST" value that the ELM327 should use
+     *
+     * @return the "AT ST" value that the ELM327 should use
+     */
+    int getTimeout()
+    {
+        return state().timeout;
+    }
+
+    /**
+     * Retrieves the adaptive timing mode that the ELM327 should use
+     *
+     * @return the adaptive timing mode that the ELM327 should use
+     */
+    OpCode getMode()
+    {
+        return state().mode;
+    }
+
+    /**
+     * Is the provided "AT ST" value in use?
+     *
+     * @param timeout
+     *         the "AT ST" value to check
+     *
+     * @return true if the ELM327 is known to use the provided "AT ST" value
+     */
+    boolean isApplied(int timeout)
+    {
+        return appliedTimeout == timeout;
+    }
+
+    /**
+     * Is the provided adaptive timing mode in use?
+     *
+     * @param mode
+     *         the adaptive timing mode to check
+     *
+     * @return true if the ELM327 is known to use the provided adaptive timing mode
+     */
+    boolean isApplied(OpCode mode)
+    {
+        return appliedMode == mode;
+    }
+
+    /**
+     * Records that the ELM327 now uses the provided "AT ST" value
+     *
+     * @param timeout
+     *         the "AT ST" value that the ELM327 now uses
+     */
+    void onApplied(int timeout)
+    {
+        appliedTimeout = timeout;
+    }
+
+    /**
+     * Records that the ELM327 now uses the provided adaptive timing mode
+     *
+     * @param mode
+     *         the adaptive timing mode that the ELM327 now uses
+     */
+    void onApplied(OpCode mode)
+    {
+        appliedMode = mode;
+    }
+
+    /// Retrieves (creating if needed) what has been learned about the current protocol
+    private State state()
+    {
+        State state = states.get(protocol);
+        if (state == null)
+        {
+            state = new State();
+            states.put(protocol, state);
+        }
+        return state;
+    }
+
+    /// Judges a full window of replies and starts the next one
+    private void judge(State state)
+    {
+        double noDataRate = (double) state.noData / state.replies;
+        int answered = state.replies - state.noData;
+        double messages = answered == 0 ? 0 : (double) state.messages / answered;
+        if (!state.learned)
+        {
+            state.learned = true;
+            state.baselineNoData = noDataRate;
+            state.baselineMessages = messages;
+            tighten(state);
+        }
+        else if (noDataRate > state.baselineNoData + TOLERANCE ||
+                (answered > 0 && messages < state.baselineMessages * (1 - TOLERANCE)))
+        {
+            if (state.timeout >= DEFAULT_TIMEOUT)
+            {
+                /// Not a matter of timing; this is simply what the vehicle says now
+                state.baselineNoData = noDataRate;
+                state.baselineMessages = messages;
+            }
+            else
+            {
+                state.timeout = state.floor = Math.min(DEFAULT_TIMEOUT, state.timeout * 2);
+                state.aggressive = false;
+                state.mode = DEFAULT_MODE;
+            }
+        }
+        else
+        {
+            tighten(state);
+        }
+        state.latency.reset();
+        state.replies = state.noData = state.messages = 0;
+    }
+
+    /// Chooses the timeout and mode from the response times of the current window
+    private void tighten(State state)
+    {
+        if (state.latency.getCount() == 0)
+        {
+            return;
+        }
+        long p50 = state.latency.getPercentile(50, TimeUnit.MICROSECONDS);
+        long p99 = state.latency.getPercentile(99, TimeUnit.MICROSECONDS);
+        long units = (p99 * 3 / 2 + MILLIS_PER_UNIT * 1000 - 1) / (MILLIS_PER_UNIT * 1000);
+        state.timeout = (int) Math.max(state.floor, Math.min(DEFAULT_TIMEOUT, units));
+        state.mode = state.aggressive && p99 <= p50 * 2 ?
+                OpCode.ELM327_OBD_ADAPTIVE_TIMING_AUTO2 : DEFAULT_MODE;
+    }
+}
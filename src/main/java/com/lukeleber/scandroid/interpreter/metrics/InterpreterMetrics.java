@@ -0,0 +1,466 @@
+// This file is protected under the KILLGPL.
+// For more information, visit http://www.lukeleber.github.io/KILLGPL.html
+//
+// Copyright (c) Luke Leber <LukeLeber@gmail.com>
+
+package com.lukeleber.scandroid.interpreter.metrics;
+
+import com.lukeleber.scandroid.sae.j1979.Service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>The performance counters of a single {@link com.lukeleber.scandroid.interpreter.Interpreter}:
+ * latency histograms (overall, per {@link com.lukeleber.scandroid.sae.j1979.Service} and per
+ * PID), throughput, bytes on the wire, "NO DATA" and error counts, the depth of the request
+ * queue, and the {@link RequestTrace traces} of the most recently completed requests.</p>
+ * <p/>
+ * <p>Everything is recorded by the I/O thread (and the threads that send requests) and read by the
+ * UI thread, so every counter is atomic and nothing ever takes a lock or allocates in the steady
+ * state; the per-PID histograms are created the first time that their PID is seen.</p>
+ */
+public final class InterpreterMetrics
+{
+    /// The number of seconds of history that the request rate is averaged over
+    private final static int RATE_WINDOW = 5;
+
+    /// The number of slots in the request rate ring (one more than the window, for the current second)
+    private final static int RATE_SLOTS = RATE_WINDOW + 1;
+
+    /// The number of distinct service IDs that are tracked (J1979 defines $01 - $0A)
+    private final static int MAX_SERVICES = 0x10;
+
+    /// The number of distinct PIDs per service
+    private final static int MAX_PIDS = 0x100;
+
+    /// The latency of every request
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /// The latency of every request, by service ID
+    private final AtomicReferenceArray<LatencyHistogram> serviceLatency
+            = new AtomicReferenceArray<>(MAX_SERVICES);
+
+    /// The latency of every request, by (service ID * {@link #MAX_PIDS} + PID)
+    private final AtomicReferenceArray<LatencyHistogram> pidLatency
+            = new AtomicReferenceArray<>(MAX_SERVICES * MAX_PIDS);
+
+    /// The number of requests that have been sent
+    private final AtomicLong requests = new AtomicLong();
+
+    /// The number of requests that have been completed (successfully or not)
+    private final AtomicLong completed = new AtomicLong();
+
+    /// The number of requests that were answered with "NO DATA"
+    private final AtomicLong noData = new AtomicLong();
+
+    /// The number of requests that failed for any reason other than "NO DATA"
+    private final AtomicLong errors = new AtomicLong();
+
+    /// The number of requests that were dropped because the request queue was full
+    private final AtomicLong dropped = new AtomicLong();
+
+    /// The number of requests that were answered from a response cache instead of the bus
+    private final AtomicLong cacheHits = new AtomicLong();
+
+    /// The number of times that the link to the remote hardware was lost
+    private final AtomicLong linksLost = new AtomicLong();
+
+    /// The number of bytes written to the remote hardware
+    private final AtomicLong bytesOut = new AtomicLong();
+
+    /// The number of bytes read from the remote hardware
+    private final AtomicLong bytesIn = new AtomicLong();
+
+    /// The number of requests that are waiting to be written
+    private final AtomicInteger queueDepth = new AtomicInteger();
+
+    /// The deepest that the request queue has been
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+    /// The traces of the most recently completed requests
+    private final TraceRecorder traces = new TraceRecorder();
+
+    /// The number of requests completed during each second in the rate ring
+    private final AtomicLongArray rateCounts = new AtomicLongArray(RATE_SLOTS);
+
+    /// The second that each slot of the rate ring currently counts
+    private final AtomicLongArray rateSeconds = new AtomicLongArray(RATE_SLOTS);
+
+    /// Retrieves the current second on the monotonic clock
+    private static long currentSecond()
+    {
+        return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+    }
+
+    /// Retrieves (creating it on first use) the histogram at the provided index
+    private static LatencyHistogram histogram(AtomicReferenceArray<LatencyHistogram> array,
+                                              int index)
+    {
+        LatencyHistogram h = array.get(index);
+        if (h == null)
+        {
+            array.compareAndSet(index, null, new LatencyHistogram());
+            h = array.get(index);
+        }
+        return h;
+    }
+
+    /**
+     * Records that a request has been sent
+     */
+    public void recordRequest()
+    {
+        requests.incrementAndGet();
+    }
+
+    /**
+     * Records the latency of a completed request that did not belong to any service (for example,
+     * a configuration request)
+     *
+     * @param nanos
+     *         the time (in nanoseconds) between sending the request and its reply
+     */
+    public void recordLatency(long nanos)
+    {
+        latency.record(nanos);
+        completed.incrementAndGet();
+        long second = currentSecond();
+        int slot = (int) (second % RATE_SLOTS);
+        long stamp = rateSeconds.get(slot);
+        if (stamp != second && rateSeconds.compareAndSet(slot, stamp, second))
+        {
+            /// First completion of a new second; recycle the slot
+            rateCounts.set(slot, 0);
+        }
+        rateCounts.incrementAndGet(slot);
+    }
+
+    /**
+     * Records the latency of a completed request for the provided service and PID
+     *
+     * @param service
+     *         the {@link com.lukeleber.scandroid.sae.j1979.Service} of the request
+     * @param pid
+     *         the ID of the PID of the request, or -1 if the request had no PID
+     * @param nanos
+     *         the time (in nanoseconds) between sending the request and its reply
+     */
+    public void recordLatency(Service service, int pid, long nanos)
+    {
+        recordLatency(nanos);
+        histogram(serviceLatency, service.getID() & (MAX_SERVICES - 1)).record(nanos);
+        recordPidLatency(service, pid, nanos);
+    }
+
+    /**
+     * Records the latency of a PID that was requested as part of a larger request (such as a
+     * batch of several PIDs).  Unlike {@link #recordLatency(Service, int, long)}, this only
+     * updates the histogram of the PID, since the request as a whole is recorded separately.
+     *
+     * @param service
+     *         the {@link com.lukeleber.scandroid.sae.j1979.Service} of the request
+     * @param pid
+     *         the ID of the PID
+     * @param nanos
+     *         the time (in nanoseconds) between sending the request and its reply
+     */
+    public void recordPidLatency(Service service, int pid, long nanos)
+    {
+        if (pid >= 0 && pid < MAX_PIDS)
+        {
+            histogram(pidLatency, (service.getID() & (MAX_SERVICES - 1)) * MAX_PIDS + pid)
+                    .record(nanos);
+        }
+    }
+
+    /**
+     * Records that a request was answered with "NO DATA"
+     */
+    public void recordNoData()
+    {
+        noData.incrementAndGet();
+    }
+
+    /**
+     * Records that a request failed (timed out, could not be understood, or was lost to an I/O
+     * error)
+     */
+    public void recordError()
+    {
+        errors.incrementAndGet();
+    }
+
+    /**
+     * Records that a request was dropped because the request queue was full
+     */
+    public void recordDropped()
+    {
+        dropped.incrementAndGet();
+    }
+
+    /**
+     * Records that a request was answered from a response cache instead of the bus
+     */
+    public void recordCacheHit()
+    {
+        cacheHits.incrementAndGet();
+    }
+
+    /**
+     * Records that the link to the remote hardware was lost
+     */
+    public void recordLinkLost()
+    {
+        linksLost.incrementAndGet();
+    }
+
+    /**
+     * Records that bytes were written to the remote hardware
+     *
+     * @param count
+     *         the number of bytes written
+     */
+    public void recordBytesOut(int count)
+    {
+        bytesOut.addAndGet(count);
+    }
+
+    /**
+     * Records that bytes were read from the remote hardware
+     *
+     * @param count
+     *         the number of bytes read
+     */
+    public void recordBytesIn(int count)
+    {
+        bytesIn.addAndGet(count);
+    }
+
+    /**
+     * Records the current depth of the request queue
+     *
+     * @param depth
+     *         the number of requests that are waiting to be written
+     */
+    public void recordQueueDepth(int depth)
+    {
+        queueDepth.set(depth);
+        int current;
+        while (depth > (current = maxQueueDepth.get()) &&
+                !maxQueueDepth.compareAndSet(current, depth))
+        {
+            /// Lost a race with another writer; try again
+        }
+    }
+
+    /**
+     * Retrieves the latency histogram of every request
+     *
+     * @return the latency histogram of every request
+     */
+    public LatencyHistogram getLatency()
+    {
+        return latency;
+    }
+
+    /**
+     * Retrieves the latency histogram of the provided service
+     *
+     * @param service
+     *         the {@link com.lukeleber.scandroid.sae.j1979.Service} to look up
+     *
+     * @return the latency histogram of the provided service, or null if no request for it has
+     * completed
+     */
+    public LatencyHistogram getLatency(Service service)
+    {
+        return serviceLatency.get(service.getID() & (MAX_SERVICES - 1));
+    }
+
+    /**
+     * Retrieves the latency histogram of the provided PID of the provided service
+     *
+     * @param service
+     *         the {@link com.lukeleber.scandroid.sae.j1979.Service} to look up
+     * @param pid
+     *         the ID of the PID to look up
+     *
+     * @return the latency histogram of the provided PID, or null if no request for it has
+     * completed
+     */
+    public LatencyHistogram getLatency(Service service, int pid)
+    {
+        return pidLatency.get((service.getID() & (MAX_SERVICES - 1)) * MAX_PIDS +
+                                      (pid & (MAX_PIDS - 1)));
+    }
+
+    /**
+     * Retrieves the number of requests that have been sent
+     *
+     * @return the number of requests that have been sent
+     */
+    public long getRequestCount()
+    {
+        return requests.get();
+    }
+
+    /**
+     * Retrieves the number of requests that have been completed (successfully or not)
+     *
+     * @return the number of requests that have been completed
+     */
+    public long getCompletedCount()
+    {
+        return completed.get();
+    }
+
+    /**
+     * Retrieves the number of requests completed per second, averaged over the last few whole
+     * seconds
+     *
+     * @return the number of requests completed per second
+     */
+    public double getRequestRate()
+    {
+        long now = currentSecond();
+        long total = 0;
+        for (int i = 0; i < RATE_SLOTS; ++i)
+        {
+            long age = now - rateSeconds.get(i);
+            if (age >= 1 && age <= RATE_WINDOW)
+            {
+                total += rateCounts.get(i);
+            }
+        }
+        return total / (double) RATE_WINDOW;
+    }
+
+    /**
+     * Retrieves the number of requests that were answered with "NO DATA"
+     *
+     * @return the number of requests that were answered with "NO DATA"
+     */
+    public long getNoDataCount()
+    {
+        return noData.get();
+    }
+
+    /**
+     * Retrieves the fraction of completed requests that were answered with "NO DATA"
+     *
+     * @return the fraction (between 0 and 1) of completed requests that were answered with "NO
+     * DATA", or zero if no request has completed
+     */
+    public double getNoDataRate()
+    {
+        long n = completed.get();
+        return n == 0 ? 0 : Math.min(1, noData.get() / (double) n);
+    }
+
+    /**
+     * Retrieves the number of requests that failed for any reason other than "NO DATA"
+     *
+     * @return the number of requests that failed
+     */
+    public long getErrorCount()
+    {
+        return errors.get();
+    }
+
+    /**
+     * Retrieves the fraction of completed requests that failed for any reason other than "NO DATA"
+     *
+     * @return the fraction (between 0 and 1) of completed requests that failed, or zero if no
+     * request has completed
+     */
+    public double getErrorRate()
+    {
+        long n = completed.get();
+        return n == 0 ? 0 : Math.min(1, errors.get() / (double) n);
+    }
+
+    /**
+     * Retrieves the number of requests that were dropped because the request queue was full
+     *
+     * @return the number of requests that were dropped
+     */
+    public long getDroppedCount()
+    {
+        return dropped.get();
+    }
+
+    /**
+     * Retrieves the number of requests that were answered from a response cache instead of the bus
+     *
+     * @return the number of requests that were answered from a response cache
+     */
+    public long getCacheHitCount()
+    {
+        return cacheHits.get();
+    }
+
+    /**
+     * Retrieves the number of times that the link to the remote hardware was lost
+     *
+     * @return the number of times that the link to the remote hardware was lost
+     */
+    public long getLinkLostCount()
+    {
+        return linksLost.get();
+    }
+
+    /**
+     * Retrieves the number of bytes that have been written to the remote hardware
+     *
+     * @return the number of bytes that have been written to the remote hardware
+     */
+    public long getBytesOut()
+    {
+        return bytesOut.get();
+    }
+
+    /**
+     * Retrieves the number of bytes that have been read from the remote hardware
+     *
+     * @return the number of bytes that have been read from the remote hardware
+     */
+    public long getBytesIn()
+    {
+        return bytesIn.get();
+    }
+
+    /**
+     * Retrieves the {@link TraceRecorder} that keeps the traces of the most recently completed
+     * requests
+     *
+     * @return the {@link TraceRecorder} of the interpreter
+     */
+    public TraceRecorder getTraceRecorder()
+    {
+        return traces;
+    }
+
+    /**
+     * Retrieves the number of requests that are waiting to be written
+     *
+     * @return the number of requests that are waiting to be written
+     */
+    public int getQueueDepth()
+    {
+        return queueDepth.get();
+    }
+
+    /**
+     * Retrieves the deepest that the request queue has been
+     *
+     * @return the deepest that the request queue has been
+     */
+    public int getMaxQueueDepth()
+    {
+        return maxQueueDepth.get();
+    }
+}
@@ -0,0 +1,196 @@
+// This file is protected under the KILLGPL.
+// For more information, visit http://www.lukeleber.github.io/KILLGPL.html
+//
+// Copyright (c) Luke Leber <LukeLeber@gmail.com>
+
+package com.lukeleber.scandroid.interpreter.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>A lock-free histogram of latencies that is cheap enough to update after every request.</p>
+ * <p/>
+ * <p>Samples are recorded in microseconds into log-linear buckets: values below {@link
+ * #LINEAR_LIMIT} get a bucket each, and every power of two above that is split into {@link
+ * #SUB_BUCKETS} equal buckets.  Percentiles are therefore accurate to within 1 / {@link
+ * #SUB_BUCKETS} (12.5%) of the true value, which is plenty for telling a healthy link from a sick
+ * one, while the whole histogram is a single fixed-size array.  Recording never allocates and never
+ * blocks; reading a percentile while samples are being recorded may see some of them and not
+ * others, which is fine for monitoring.</p>
+ */
+public final class LatencyHistogram
+{
+    /// The number of buckets that each power of two is split into
+    private final static int SUB_BUCKETS = 8;
+
+    /// log2({@link #SUB_BUCKETS})
+    private final static int SUB_BUCKET_BITS = 3;
+
+    /// Values (in microseconds) below this limit are recorded exactly
+    private final static int LINEAR_LIMIT = SUB_BUCKETS * 2;
+
+    /// The largest recordable value (in microseconds); larger values are clamped (~17 minutes)
+    private final static long MAX_VALUE = (1L << 30) - 1;
+
+    /// The number of buckets needed to cover [0, {@link #MAX_VALUE}]
+    private final static int BUCKET_COUNT = indexOf(MAX_VALUE) + 1;
+
+    /// The number of samples in each bucket
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    /// The total number of samples
+    private final AtomicLong count = new AtomicLong();
+
+    /// The sum of every sample (in microseconds)
+    private final AtomicLong sum = new AtomicLong();
+
+    /// The largest sample (in microseconds)
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Finds the bucket that the provided value falls into
+     *
+     * @param micros
+     *         the value (in microseconds) between zero and {@link #MAX_VALUE}
+     *
+     * @return the index of the bucket
+     */
+    private static int indexOf(long micros)
+    {
+        if (micros < LINEAR_LIMIT)
+        {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_LIMIT + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Finds the smallest value that falls into the provided bucket
+     *
+     * @param index
+     *         the index of the bucket
+     *
+     * @return the smallest value (in microseconds) that falls into the bucket
+     */
+    private static long lowerBoundOf(int index)
+    {
+        if (index < LINEAR_LIMIT)
+        {
+            return index;
+        }
+        int exponent = (index - LINEAR_LIMIT) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+        int sub = (index - LINEAR_LIMIT) % SUB_BUCKETS;
+        return (1L << exponent) + ((long) sub << (exponent - SUB_BUCKET_BITS));
+    }
+
+    /**
+     * Records a single sample
+     *
+     * @param nanos
+     *         the latency (in nanoseconds); negative values are recorded as zero
+     */
+    public void record(long nanos)
+    {
+        long micros = Math.min(Math.max(0, nanos / 1000), MAX_VALUE);
+        buckets.incrementAndGet(indexOf(micros));
+        count.incrementAndGet();
+        sum.addAndGet(micros);
+        long current;
+        while (micros > (current = max.get()) && !max.compareAndSet(current, micros))
+        {
+            /// Lost a race with another writer; try again
+        }
+    }
+
+    /**
+     * Retrieves the number of samples that have been recorded
+     *
+     * @return the number of samples that have been recorded
+     */
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    /**
+     * Retrieves the mean of every sample
+     *
+     * @param unit
+     *         the unit to express the result in
+     *
+     * @return the mean of every sample, or zero if no samples have been recorded
+     */
+    public long getMean(TimeUnit unit)
+    {
+        long n = count.get();
+        return n == 0 ? 0 : unit.convert(sum.get() / n, TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * Retrieves the largest sample
+     *
+     * @param unit
+     *         the unit to express the result in
+     *
+     * @return the largest sample, or zero if no samples have been recorded
+     */
+    public long getMax(TimeUnit unit)
+    {
+        return unit.convert(max.get(), TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * Retrieves (an approximation of) the provided percentile.  The result is the lower bound of
+     * the bucket that the percentile falls into, but never more than the largest sample (which is
+     * what the 100th percentile reports exactly).
+     *
+     * @param percentile
+     *         the percentile, between 0 and 100 (for example 95 for the 95th percentile)
+     * @param unit
+     *         the unit to express the result in
+     *
+     * @return the provided percentile, or zero if no samples have been recorded
+     */
+    public long getPercentile(double percentile, TimeUnit unit)
+    {
+        long n = count.get();
+        if (n == 0)
+        {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(n * Math.min(100, Math.max(0, percentile)) / 100));
+        if (rank >= n)
+        {
+            return getMax(unit); /// The largest sample is known exactly
+        }
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; ++i)
+        {
+            seen += buckets.get(i);
+            if (seen >= rank)
+            {
+                return unit.convert(Math.min(lowerBoundOf(i), max.get()), TimeUnit.MICROSECONDS);
+            }
+        }
+        /// Samples recorded since the count was read; the answer is the largest one
+        return getMax(unit);
+    }
+
+    /**
+     * Discards every sample.  Samples that are recorded concurrently may or may not survive.
+     */
+    public void reset()
+    {
+        for (int i = 0; i < BUCKET_COUNT; ++i)
+        {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+}
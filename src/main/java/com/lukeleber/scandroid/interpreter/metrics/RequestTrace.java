@@ -0,0 +1,242 @@
+// This file is protected under the KILLGPL.
+// For more information, visit http://www.lukeleber.github.io/KILLGPL.html
+//
+// Copyright (c) Luke Leber <LukeLeber@gmail.com>
+
+package com.lukeleber.scandroid.interpreter.metrics;
+
+import com.lukeleber.scandroid.interpreter.BatchServiceRequest;
+import com.lukeleber.scandroid.interpreter.ConfigurationRequest;
+import com.lukeleber.scandroid.interpreter.Request;
+import com.lukeleber.scandroid.interpreter.ServiceRequest;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>The life story of a single request: the {@link System#nanoTime() monotonic time} at which
+ * it reached each {@link Stage} on its way from the caller to the bus and back.  Comparing the
+ * stages tells where the time went: waiting in the queue, talking to the adapter, waiting for
+ * the ECU, decoding, or waiting for the UI thread.</p>
+ * <p/>
+ * <p>A trace is written by the thread that sends the request, then by the I/O thread, then by
+ * the thread that invokes the listener; each hand-off already happens-before the next, so no
+ * further synchronization is needed.  Requests that were coalesced into another share the stages
+ * that happened on the bus with that request.</p>
+ */
+public final class RequestTrace
+{
+    /**
+     * The stages of a request, in the order that they happen
+     */
+    public enum Stage
+    {
+        /// The request was sent (entered the queue)
+        ENQUEUED,
+
+        /// The I/O thread took the request from the queue
+        DEQUEUED,
+
+        /// The I/O thread started writing the request
+        WRITE_STARTED,
+
+        /// The I/O thread finished writing the request
+        WRITE_FINISHED,
+
+        /// The first byte of the reply arrived
+        FIRST_BYTE,
+
+        /// The end of the reply (the prompt) arrived
+        REPLY_RECEIVED,
+
+        /// The reply was unmarshalled (or failed to be)
+        UNMARSHALLED,
+
+        /// The listener of the request returned
+        HANDLED
+    }
+
+    /// The number of stages (cached, since {@link Stage#values()} copies)
+    private final static int STAGE_COUNT = Stage.values().length;
+
+    /// The order in which the request was sent
+    private final long sequence;
+
+    /// The request that is traced
+    private final Request<?> request;
+
+    /// The nano-time at which each stage was reached
+    private final long[] timestamps = new long[STAGE_COUNT];
+
+    /// The stages that have been reached, one bit per ordinal
+    private int reached;
+
+    /**
+     * Constructs a RequestTrace whose {@link Stage#ENQUEUED} stage is the provided time
+     *
+     * @param sequence
+     *         the order in which the request was sent
+     * @param request
+     *         the request that is traced
+     * @param enqueueTime
+     *         the nano-time at which the request was sent
+     */
+    public RequestTrace(long sequence, Request<?> request, long enqueueTime)
+    {
+        this.sequence = sequence;
+        this.request = request;
+        mark(Stage.ENQUEUED, enqueueTime);
+    }
+
+    /**
+     * Records that the provided stage has been reached just now
+     *
+     * @param stage
+     *         the stage that has been reached
+     */
+    public void mark(Stage stage)
+    {
+        mark(stage, System.nanoTime());
+    }
+
+    /**
+     * Records that the provided stage was reached at the provided time
+     *
+     * @param stage
+     *         the stage that has been reached
+     * @param nanoTime
+     *         the {@link System#nanoTime() nano-time} at which it was reached
+     */
+    public void mark(Stage stage, long nanoTime)
+    {
+        timestamps[stage.ordinal()] = nanoTime;
+        reached |= 1 << stage.ordinal();
+    }
+
+    /**
+     * Copies the stages between {@link Stage#DEQUEUED} and {@link Stage#REPLY_RECEIVED} (the ones
+     * that happen on the bus) from the provided trace
+     *
+     * @param leader
+     *         the trace of the request that this one was coalesced into
+     */
+    public void copyBusStages(RequestTrace leader)
+    {
+        for (int i = Stage.DEQUEUED.ordinal(); i <= Stage.REPLY_RECEIVED.ordinal(); ++i)
+        {
+            if ((leader.reached & (1 << i)) != 0)
+            {
+                timestamps[i] = leader.timestamps[i];
+                reached |= 1 << i;
+            }
+        }
+    }
+
+    /**
+     * Has the provided stage been reached?
+     *
+     * @param stage
+     *         the stage to check
+     *
+     * @return true if the provided stage has been reached, otherwise false
+     */
+    public boolean hasReached(Stage stage)
+    {
+        return (reached & (1 << stage.ordinal())) != 0;
+    }
+
+    /**
+     * Retrieves the {@link System#nanoTime() nano-time} at which the provided stage was reached
+     *
+     * @param stage
+     *         the stage to look up
+     *
+     * @return the nano-time at which the provided stage was reached (meaningless if it has not
+     * been reached; see {@link #hasReached(Stage)})
+     */
+    public long getTimestamp(Stage stage)
+    {
+        return timestamps[stage.ordinal()];
+    }
+
+    /**
+     * Retrieves the time that passed between two stages
+     *
+     * @param from
+     *         the earlier stage
+     * @param to
+     *         the later stage
+     * @param unit
+     *         the unit to express the result in
+     *
+     * @return the time between the two stages, or -1 if either has not been reached
+     */
+    public long getElapsed(Stage from, Stage to, TimeUnit unit)
+    {
+        if (!hasReached(from) || !hasReached(to))
+        {
+            return -1;
+        }
+        return unit.convert(timestamps[to.ordinal()] - timestamps[from.ordinal()],
+                            TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Retrieves the order in which the request was sent
+     *
+     * @return the order in which the request was sent
+     */
+    public long getSequence()
+    {
+        return sequence;
+    }
+
+    /**
+     * Retrieves the request that is traced
+     *
+     * @return the request that is traced
+     */
+    public Request<?> getRequest()
+    {
+        return request;
+    }
+
+    /**
+     * Builds a short, human readable description of the traced request, such as "$01$0C" for a
+     * service request, "$01$0C$0D" for a batch, or the command of a configuration request
+     *
+     * @return a short description of the traced request
+     */
+    public String describe()
+    {
+        if (request instanceof ServiceRequest)
+        {
+            ServiceRequest<?> sr = (ServiceRequest<?>) request;
+            return sr.getPID() == null ?
+                    String.format("$%02X", sr.getService()
+                                             .getID()) :
+                    String.format("$%02X$%02X", sr.getService()
+                                                  .getID(), sr.getPID()
+                                                              .getID());
+        }
+        if (request instanceof BatchServiceRequest)
+        {
+            BatchServiceRequest br = (BatchServiceRequest) request;
+            StringBuilder sb = new StringBuilder(String.format("$%02X", br.getService()
+                                                                          .getID()));
+            for (ServiceRequest<?> member : br.getMembers())
+            {
+                sb.append(String.format("$%02X", member.getPID()
+                                                       .getID()));
+            }
+            return sb.toString();
+        }
+        if (request instanceof ConfigurationRequest)
+        {
+            ConfigurationRequest<?, ?> cr = (ConfigurationRequest<?, ?>) request;
+            return String.format(String.valueOf(cr.getOption()
+                                                  .getOption()), cr.getArgs());
+        }
+        return request.getClass()
+                      .getSimpleName();
+    }
+}
@@ -0,0 +1,149 @@
+// This file is protected under the KILLGPL.
+// For more information, visit http://www.lukeleber.github.io/KILLGPL.html
+//
+// Copyright (c) Luke Leber <LukeLeber@gmail.com>
+
+package com.lukeleber.scandroid.interpreter.metrics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Keeps the {@link RequestTrace traces} of the most recently completed requests in a fixed-size
+ * ring, so that they can be inspected in-process or {@link #export(Appendable) exported} for
+ * analysis elsewhere.  Once the ring is full, each new trace replaces the oldest one.</p>
+ * <p/>
+ * <p>Instances of this class are thread-safe.</p>
+ */
+public final class TraceRecorder
+{
+    /// The default number of traces that are kept
+    public final static int DEFAULT_CAPACITY = 256;
+
+    /// The most recently completed traces
+    private final RequestTrace[] ring;
+
+    /// The index of the slot that the next trace is stored in
+    private int next;
+
+    /// The number of traces currently held
+    private int size;
+
+    /**
+     * Constructs a TraceRecorder that keeps the last {@link #DEFAULT_CAPACITY} traces
+     */
+    public TraceRecorder()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a TraceRecorder that keeps the provided number of traces
+     *
+     * @param capacity
+     *         the number of traces to keep, or zero to keep none
+     */
+    public TraceRecorder(int capacity)
+    {
+        if (capacity < 0)
+        {
+            throw new IllegalArgumentException("capacity < 0");
+        }
+        this.ring = new RequestTrace[capacity];
+    }
+
+    /**
+     * Keeps the provided (completed) trace, discarding the oldest trace if the ring is full
+     *
+     * @param trace
+     *         the trace to keep
+     */
+    public synchronized void record(RequestTrace trace)
+    {
+        if (ring.length == 0)
+        {
+            return;
+        }
+        ring[next] = trace;
+        next = (next + 1) % ring.length;
+        size = Math.min(size + 1, ring.length);
+    }
+
+    /**
+     * Retrieves a snapshot of the traces that are currently held, oldest first
+     *
+     * @return a snapshot of the traces that are currently held
+     */
+    public synchronized List<RequestTrace> getTraces()
+    {
+        List<RequestTrace> rv = new ArrayList<>(size);
+        for (int i = 0; i < size; ++i)
+        {
+            rv.add(ring[(next - size + i + ring.length) % ring.length]);
+        }
+        return rv;
+    }
+
+    /**
+     * Discards every trace that is currently held
+     */
+    public synchronized void clear()
+    {
+        for (int i = 0; i < ring.length; ++i)
+        {
+            ring[i] = null;
+        }
+        next = size = 0;
+    }
+
+    /**
+     * Writes every trace that is currently held as comma separated values, oldest first.  The first
+     * line names the columns: the sequence number, a description of the request (see {@link
+     * RequestTrace#describe()}), its priority, and then the number of microseconds after {@link
+     * RequestTrace.Stage#ENQUEUED} at which every later stage was reached (empty if it was not).
+     *
+     * @param out
+     *         where to write the traces
+     *
+     * @throws java.io.IOException
+     *         if writing fails
+     */
+    public void export(Appendable out)
+            throws
+            IOException
+    {
+        RequestTrace.Stage[] stages = RequestTrace.Stage.values();
+        out.append("sequence,request,priority");
+        for (int i = 1; i < stages.length; ++i)
+        {
+            out.append(',')
+               .append(stages[i].name()
+                                .toLowerCase());
+        }
+        out.append('\n');
+        for (RequestTrace trace : getTraces())
+        {
+            out.append(String.valueOf(trace.getSequence()))
+               .append(",\"")
+               .append(trace.describe()
+                            .replace("\"", "\"\""))
+               .append("\",")
+               .append(trace.getRequest()
+                            .getPriority()
+                            .name());
+            for (int i = 1; i < stages.length; ++i)
+            {
+                out.append(',');
+                long elapsed = trace.getElapsed(RequestTrace.Stage.ENQUEUED, stages[i],
+                                                TimeUnit.MICROSECONDS);
+                if (elapsed >= 0)
+                {
+                    out.append(String.valueOf(elapsed));
+                }
+            }
+            out.append('\n');
+        }
+    }
+}
@@ -0,0 +1,15 @@
+// This file is protected under the KILLGPL.
+// For more information, visit http://www.lukeleber.github.io/KILLGPL.html
+//
+// Copyright (c) Luke Leber <LukeLeber@gmail.com>
+
+/**
+ * <p>Performance counters for {@link com.lukeleber.scandroid.interpreter.Interpreter
+ * Interpreters}.  Every interpreter keeps an {@link
+ * com.lukeleber.scandroid.interpreter.metrics.InterpreterMetrics} that records how long requests
+ * take and how busy the link is, so that a slow vehicle bus can be told apart from a slow adapter
+ * or an overloaded queue.  For a closer look, every request also carries a {@link
+ * com.lukeleber.scandroid.interpreter.metrics.RequestTrace} of when it passed each stage on its way
+ * to the bus and back.</p>
+ */
+package com.lukeleber.scandroid.interpreter.metrics;
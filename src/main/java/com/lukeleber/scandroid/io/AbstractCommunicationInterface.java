@@ -0,0 +1,297 @@
+// This file is protected under the KILLGPL.
+// For more information, visit http://www.lukeleber.github.io/KILLGPL.html
+//
+// Copyright (c) Luke Leber <LukeLeber@gmail.com>
+
+package com.lukeleber.scandroid.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+/**
+ * <p>A reasonable skeletal implementation of the {@link CommunicationInterface} interface.</p>
+ * <p/>
+ * <p>Subclasses provide the raw {@link java.io.InputStream} of their transport through {@link
+ * #getSourceStream()}; this class places a single read-ahead buffer in front of it which serves
+ * both the channel-style read methods and the stream returned by {@link #getInputStream()}, so
+ * the two may be mixed freely.  Data is pulled from the transport in as large chunks as it will
+ * provide, which turns a per-byte system call into one per chunk.</p>
+ * <p/>
+ * <p>Timed reads are implemented by polling {@link java.io.InputStream#available()}, since not all
+ * transports (Bluetooth RFCOMM sockets among them) support read timeouts.  Between polls the
+ * reading thread sleeps for two milliseconds, so data is noticed up to that much later
+ * than a blocking read would notice it, and a thread that waits out a long timeout wakes up some
+ * 500 times a second to do so; that is cheap next to the I/O itself, but not free on a phone.
+ * A timeout of zero waits forever with a plain blocking read, which costs neither.  Subclasses
+ * whose transport supports timeouts may override {@link #read(byte[], int, int, long)}.</p>
+ */
+public abstract class AbstractCommunicationInterface
+        implements CommunicationInterface
+{
+
+    /// The default size of the read-ahead buffer
+    public final static int DEFAULT_BUFFER_SIZE = 1024;
+
+    /// The number of milliseconds to sleep between polls during a timed read
+    private final static long POLL_INTERVAL = 2;
+
+    /// The read-ahead buffer
+    private final byte[] buffer;
+
+    /// The index of the next unread byte in the read-ahead buffer
+    private int position;
+
+    /// The index one past the last valid byte in the read-ahead buffer
+    private int limit;
+
+    /// The buffered view of the source stream handed out by {@link #getInputStream()}
+    private final InputStream bufferedStream = new InputStream()
+    {
+        @Override
+        public int read()
+                throws
+                IOException
+        {
+            if (position == limit && fill() == -1)
+            {
+                return -1;
+            }
+            return buffer[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len)
+                throws
+                IOException
+        {
+            return AbstractCommunicationInterface.this.read(b, off, len);
+        }
+
+        @Override
+        public int available()
+                throws
+                IOException
+        {
+            return (limit - position) + getSourceStream().available();
+        }
+    };
+
+    /**
+     * Constructs an AbstractCommunicationInterface with a read-ahead buffer of {@link
+     * #DEFAULT_BUFFER_SIZE} bytes
+     */
+    protected AbstractCommunicationInterface()
+    {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Constructs an AbstractCommunicationInterface with a read-ahead buffer of the provided size
+     *
+     * @param bufferSize
+     *         the size (in bytes) of the read-ahead buffer
+     */
+    protected AbstractCommunicationInterface(int bufferSize)
+    {
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Retrieves the raw (unbuffered) {@link java.io.InputStream} of the transport
+     *
+     * @return the raw {@link java.io.InputStream} of the transport
+     *
+     * @throws java.io.IOException
+     *         if any I/O error occurs
+     */
+    protected abstract InputStream getSourceStream()
+            throws
+            IOException;
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The returned stream shares the read-ahead buffer of this interface.
+     */
+    @Override
+    public final InputStream getInputStream()
+    {
+        return bufferedStream;
+    }
+
+    /**
+     * Discards whatever is left in the read-ahead buffer.  Implementations call this when the
+     * source stream is replaced (for example after reconnecting), so that bytes from the old
+     * connection are not mistaken for bytes from the new one.
+     */
+    protected final void discardBuffered()
+    {
+        position = limit = 0;
+    }
+
+    /**
+     * Refills the (empty) read-ahead buffer with as much as the source stream will provide,
+     * blocking until at least one byte is available
+     *
+     * @return the number of bytes now buffered, or -1 if the end of the stream has been reached
+     *
+     * @throws java.io.IOException
+     *         if any I/O error occurs
+     */
+    private int fill()
+            throws
+            IOException
+    {
+        position = limit = 0;
+        int n = getSourceStream().read(buffer, 0, buffer.length);
+        if (n > 0)
+        {
+            limit = n;
+        }
+        return n;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read(byte[] dst, int offset, int length)
+            throws
+            IOException
+    {
+        if (length == 0)
+        {
+            return 0;
+        }
+        if (position == limit)
+        {
+            /// Large reads bypass the read-ahead buffer altogether
+            if (length >= buffer.length)
+            {
+                return getSourceStream().read(dst, offset, length);
+            }
+            if (fill() == -1)
+            {
+                return -1;
+            }
+        }
+        int n = Math.min(length, limit - position);
+        System.arraycopy(buffer, position, dst, offset, n);
+        position += n;
+        return n;
+    }
+
+    /**
+     * Waits for the source stream to have data available
+     *
+     * @param deadline
+     *         the nano-time at which to give up
+     *
+     * @return true if data is available, or false if the deadline passed first
+     *
+     * @throws java.io.IOException
+     *         if any I/O error occurs, or if the calling thread is interrupted
+     */
+    private boolean await(long deadline)
+            throws
+            IOException
+    {
+        InputStream source = getSourceStream();
+        while (source.available() <= 0)
+        {
+            if (System.nanoTime() - deadline >= 0)
+            {
+                return false;
+            }
+            try
+            {
+                Thread.sleep(POLL_INTERVAL);
+            }
+            catch (InterruptedException ie)
+            {
+                Thread.currentThread()
+                      .interrupt();
+                throw new InterruptedIOException("Interrupted during a timed read");
+            }
+        }
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * A timeout of zero (or less) blocks until data arrives, as {@link #read(byte[], int, int)}
+     * does; any other timeout polls for data (see the class documentation).
+     */
+    @Override
+    public int read(byte[] dst, int offset, int length, long timeout)
+            throws
+            IOException
+    {
+        if (timeout <= 0)
+        {
+            return read(dst, offset, length);
+        }
+        if (position == limit && !await(System.nanoTime() + timeout * 1000000L))
+        {
+            return 0;
+        }
+        return read(dst, offset, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int readUntil(byte delimiter, byte[] dst, int offset, int length)
+            throws
+            IOException
+    {
+        return readUntil(delimiter, dst, offset, length, 0);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * A timeout of zero (or less) blocks until the delimiter arrives; any other timeout polls for
+     * data (see the class documentation).
+     */
+    @Override
+    public int readUntil(byte delimiter, byte[] dst, int offset, int length, long timeout)
+            throws
+            IOException
+    {
+        long deadline = System.nanoTime() + timeout * 1000000L;
+        int total = 0;
+        while (true)
+        {
+            if (position == limit)
+            {
+                if (timeout > 0 && !await(deadline))
+                {
+                    throw new ReadTimeoutException(timeout, total);
+                }
+                if (fill() == -1)
+                {
+                    throw new EOFException("Stream ended before the delimiter was seen");
+                }
+            }
+            int end = position;
+            while (end < limit && buffer[end] != delimiter)
+            {
+                ++end;
+            }
+            int stored = Math.max(0, Math.min(end - position, length - total));
+            System.arraycopy(buffer, position, dst, offset + total, stored);
+            total += end - position;
+            if (end < limit)
+            {
+                position = end + 1; /// Consume the delimiter
+                return total;
+            }
+            position = limit;
+        }
+    }
+}
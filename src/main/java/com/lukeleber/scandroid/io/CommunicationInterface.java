@@ -10,7 +10,15 @@ import java.io.InputStream;
 import java.io.OutputStream;
 
 /**
- * // todo: docs...left off here.  phwew.
+ * <p>The transport that an {@link com.lukeleber.scandroid.interpreter.Interpreter} uses to talk to
+ * its remote hardware.</p>
+ * <p/>
+ * <p>Besides the raw streams, a <code>CommunicationInterface</code> offers a buffered, channel-style
+ * read API ({@link #read(byte[], int, int)}, {@link #read(byte[], int, int, long)} and {@link
+ * #readUntil(byte, byte[], int, int)}, the latter with an optional timeout) that moves data in
+ * bulk rather than one byte (and one system call) at a time.  Implementations should extend
+ * {@link AbstractCommunicationInterface}, which provides these methods on top of any {@link
+ * java.io.InputStream}.  The read methods are intended to be called from a single I/O thread.</p>
  */
 public interface CommunicationInterface
         extends AutoCloseable
@@ -26,4 +34,106 @@ public interface CommunicationInterface
     void connect()
             throws
             IOException;
+
+    /**
+     * Reads up to <code>length</code> bytes into the provided buffer, blocking until at least one
+     * byte is available
+     *
+     * @param buffer
+     *         the buffer to read into
+     * @param offset
+     *         the offset into the buffer at which to store the first byte
+     * @param length
+     *         the maximum number of bytes to read
+     *
+     * @return the number of bytes read, or -1 if the end of the stream has been reached
+     *
+     * @throws java.io.IOException
+     *         if any I/O error occurs
+     */
+    int read(byte[] buffer, int offset, int length)
+            throws
+            IOException;
+
+    /**
+     * Reads up to <code>length</code> bytes into the provided buffer, blocking for no longer than
+     * the provided timeout for the first byte to arrive.  A timeout of zero means no timeout at
+     * all, just as it does for {@link #readUntil(byte, byte[], int, int, long)}.
+     *
+     * @param buffer
+     *         the buffer to read into
+     * @param offset
+     *         the offset into the buffer at which to store the first byte
+     * @param length
+     *         the maximum number of bytes to read
+     * @param timeout
+     *         the maximum number of milliseconds to wait for data, or zero to wait forever
+     *
+     * @return the number of bytes read, zero if a (non-zero) timeout elapsed before any data
+     * arrived, or -1 if the end of the stream has been reached
+     *
+     * @throws java.io.IOException
+     *         if any I/O error occurs
+     */
+    int read(byte[] buffer, int offset, int length, long timeout)
+            throws
+            IOException;
+
+    /**
+     * Reads bytes into the provided buffer until the provided delimiter is seen.  The delimiter
+     * is consumed but not stored.  Bytes that do not fit into the buffer are consumed and
+     * discarded.
+     *
+     * @param delimiter
+     *         the byte that ends the read (for example, the ELM327 prompt '&gt;')
+     * @param buffer
+     *         the buffer to read into
+     * @param offset
+     *         the offset into the buffer at which to store the first byte
+     * @param length
+     *         the maximum number of bytes to store
+     *
+     * @return the number of bytes that preceded the delimiter; if this exceeds <code>length</code>
+     * then the excess was discarded
+     *
+     * @throws java.io.EOFException
+     *         if the end of the stream is reached before the delimiter
+     * @throws java.io.IOException
+     *         if any other I/O error occurs
+     */
+    int readUntil(byte delimiter, byte[] buffer, int offset, int length)
+            throws
+            IOException;
+
+    /**
+     * Reads bytes into the provided buffer until the provided delimiter is seen, giving up if the
+     * delimiter has not been seen within the provided timeout.  A timeout of zero means no timeout
+     * at all, just as it does for {@link #read(byte[], int, int, long)}.  Otherwise identical to
+     * {@link #readUntil(byte, byte[], int, int)}.
+     *
+     * @param delimiter
+     *         the byte that ends the read (for example, the ELM327 prompt '&gt;')
+     * @param buffer
+     *         the buffer to read into
+     * @param offset
+     *         the offset into the buffer at which to store the first byte
+     * @param length
+     *         the maximum number of bytes to store
+     * @param timeout
+     *         the maximum number of milliseconds to wait for the delimiter, or zero to wait forever
+     *
+     * @return the number of bytes that preceded the delimiter; if this exceeds <code>length</code>
+     * then the excess was discarded
+     *
+     * @throws ReadTimeoutException
+     *         if the delimiter is not seen before the timeout elapses (bytes that were read up to
+     *         that point are consumed)
+     * @throws java.io.EOFException
+     *         if the end of the stream is reached before the delimiter
+     * @throws java.io.IOException
+     *         if any other I/O error occurs
+     */
+    int readUntil(byte delimiter, byte[] buffer, int offset, int length, long timeout)
+            throws
+            IOException;
 }
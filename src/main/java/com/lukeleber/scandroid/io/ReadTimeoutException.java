@@ -0,0 +1,30 @@
+// This file is protected under the KILLGPL.
+// For more information, visit http://www.lukeleber.github.io/KILLGPL.html
+//
+// Copyright (c) Luke Leber <LukeLeber@gmail.com>
+
+package com.lukeleber.scandroid.io;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Thrown when a timed read on a {@link CommunicationInterface} does not complete in time.  Any
+ * bytes that were consumed before the timeout elapsed are reported by {@link #bytesTransferred}.
+ */
+public class ReadTimeoutException
+        extends InterruptedIOException
+{
+    /**
+     * Constructs a ReadTimeoutException
+     *
+     * @param timeout
+     *         the timeout (in milliseconds) that elapsed
+     * @param bytesTransferred
+     *         the number of bytes that were consumed before the timeout elapsed
+     */
+    public ReadTimeoutException(long timeout, int bytesTransferred)
+    {
+        super("Read timed out after " + timeout + " ms");
+        this.bytesTransferred = bytesTransferred;
+    }
+}
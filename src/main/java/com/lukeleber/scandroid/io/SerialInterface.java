@@ -0,0 +1,51 @@
+// This file is protected under the KILLGPL.
+// For more information, visit http://www.lukeleber.github.io/KILLGPL.html
+//
+// Copyright (c) Luke Leber <LukeLeber@gmail.com>
+
+package com.lukeleber.scandroid.io;
+
+import java.io.IOException;
+
+/**
+ * <p>A {@link CommunicationInterface} whose host side is a UART (such as a USB to serial
+ * converter), and whose baud rate the host therefore sets.  An interpreter that knows how may
+ * step the remote hardware up to a faster baud rate than its power-on one, which matters once the
+ * host link rather than the vehicle bus is the bottleneck (as it is at 38400 baud when logging a
+ * busy CAN bus).</p>
+ * <p/>
+ * <p>Wireless transports don't implement this interface: the baud rate between a Bluetooth module
+ * and the remote hardware is fixed by the module.</p>
+ */
+public interface SerialInterface
+        extends CommunicationInterface
+{
+    /**
+     * Retrieves the baud rate that the host side currently uses
+     *
+     * @return the current baud rate
+     */
+    int getBaudRate();
+
+    /**
+     * Switches the host side to the provided baud rate (or the nearest one that it supports).
+     * Whatever was received but not yet read is discarded, as it was received at the old rate.
+     * {@link #connect()} always opens the link at the power-on baud rate of the remote hardware.
+     *
+     * @param baudRate
+     *         the baud rate to use
+     *
+     * @throws java.io.IOException
+     *         if the baud rate could not be changed
+     */
+    void setBaudRate(int baudRate)
+            throws
+            IOException;
+
+    /**
+     * Retrieves the fastest baud rate that the host side supports
+     *
+     * @return the fastest supported baud rate
+     */
+    int getMaxBaudRate();
+}
@@ -15,7 +15,7 @@ import android.util.Log;
 
 import com.lukeleber.scandroid.BuildConfig;
 import com.lukeleber.scandroid.R;
-import com.lukeleber.scandroid.io.CommunicationInterface;
+import com.lukeleber.scandroid.io.AbstractCommunicationInterface;
 import com.lukeleber.scandroid.io.ScandroidIOException;
 
 import java.io.IOException;
@@ -24,6 +24,8 @@ import java.io.OutputStream;
 
 /**
  * An {@link com.lukeleber.scandroid.io.CommunicationInterface} that is implemented via Bluetooth.
+ * Reads from the RFCOMM socket are buffered by {@link
+ * com.lukeleber.scandroid.io.AbstractCommunicationInterface}.
  * <p/>
  * The interpreter hardware used to test this interface is the ELM327 IC paired with a bluetooth
  * adapter and the standard OBDII connector.  This hardware can be a (semi) easy DIY build or can be
@@ -33,21 +35,29 @@ import java.io.OutputStream;
  * dependent on the vehicle manufacturer.
  */
 public class BluetoothInterface
-        implements CommunicationInterface
-
+        extends AbstractCommunicationInterface
 {
 
     /// @internal tag for debug logging
     private final static String TAG = BluetoothInterface.class.getName();
 
-    /// The {@link android.bluetooth.BluetoothSocket} to the remote device;
-    private final BluetoothSocket socket;
+    /// The remote device
+    private final BluetoothDevice remoteDevice;
+
+    /// The UUID of the service record to connect with
+    private final ParcelUuid uuid;
 
-    /// The {@link java.io.InputStream} from the remote device
-    private final InputStream inputStream;
+    /// The {@link android.bluetooth.BluetoothSocket} to the remote device
+    private volatile BluetoothSocket socket;
+
+    /// The raw {@link java.io.InputStream} from the remote device
+    private volatile InputStream inputStream;
 
     /// The {@link java.io.OutputStream} to the remote device
-    private final OutputStream outputStream;
+    private volatile OutputStream outputStream;
+
+    /// Has the socket been closed (so that connecting again needs a new one)?
+    private volatile boolean closed;
 
     /**
      * Constructs a {@link BluetoothInterface} from the
@@ -64,9 +74,25 @@ public class BluetoothInterface
             throws
             IOException
     {
-        this.socket = remoteDevice.createInsecureRfcommSocketToServiceRecord(uuid.getUuid());
-        this.inputStream = socket.getInputStream();
-        this.outputStream = socket.getOutputStream();
+        this.remoteDevice = remoteDevice;
+        this.uuid = uuid;
+        open();
+    }
+
+    /**
+     * Creates a fresh (unconnected) socket to the remote device
+     *
+     * @throws java.io.IOException
+     *         if the socket could not be created
+     */
+    private void open()
+            throws
+            IOException
+    {
+        socket = remoteDevice.createInsecureRfcommSocketToServiceRecord(uuid.getUuid());
+        inputStream = socket.getInputStream();
+        outputStream = socket.getOutputStream();
+        closed = false;
     }
 
     /**
@@ -143,21 +169,28 @@ public class BluetoothInterface
      * {@inheritDoc}
      */
     @Override
-    public final InputStream getInputStream()
+    protected final InputStream getSourceStream()
     {
         return inputStream;
     }
 
     /**
      * {@inheritDoc}
+     * <p/>
+     * A socket cannot be connected again once it has been closed, so connecting after {@link
+     * #close()} (to recover a lost link) creates a fresh one.
      */
     @Override
     public void connect()
             throws
             IOException
     {
+        if (closed)
+        {
+            open();
+            discardBuffered();
+        }
         socket.connect();
-
     }
 
     /**
@@ -168,6 +201,7 @@ public class BluetoothInterface
             throws
             IOException
     {
+        closed = true;
         try
         {
             socket.close();
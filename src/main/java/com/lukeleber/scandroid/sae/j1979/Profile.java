@@ -8,18 +8,24 @@ package com.lukeleber.scandroid.sae.j1979;
 import android.os.Parcel;
 import android.os.Parcelable;
 
+import com.lukeleber.scandroid.interpreter.EcuAddress;
 import com.lukeleber.scandroid.interpreter.FailureCode;
-import com.lukeleber.scandroid.interpreter.Handler;
 import com.lukeleber.scandroid.interpreter.Interpreter;
+import com.lukeleber.scandroid.interpreter.RequestFuture;
+import com.lukeleber.scandroid.interpreter.RequestFuture.Transform;
 import com.lukeleber.scandroid.interpreter.elm327.Protocol;
 import com.lukeleber.scandroid.sae.j1979.detail.AppendixA;
 import com.lukeleber.scandroid.sae.j1979.detail.AppendixB;
 import com.lukeleber.scandroid.sae.j1979.util.CumulativePIDSupport;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 
 /// TODO: Write Unit Tests
 public class Profile
@@ -32,6 +38,12 @@ public class Profile
 
     public final static String QUAD_BANK = "quad_bank";
 
+    /// The ordinals of the services whose PIDs are discovered by {@link #createProfile}
+    private final static int[] DISCOVERED_SERVICES = new int[] {0, 1, 4, 5, 7, 8};
+
+    /// The longest (in seconds) that discovery may take
+    public final static long DISCOVERY_TIMEOUT = 30;
+
     private final static String[] EQUIPMENT_KEYS = new String[]
     {
         DUAL_BANK,
@@ -44,10 +56,31 @@ public class Profile
 
     private final Map<Service, PID<?>[]> pids;
 
+    /// The ECU that powertrain requests are addressed to, or null if they are broadcast
+    private final EcuAddress respondingModule;
+
     public Profile(Protocol protocol,
                    Map<Service, CumulativePIDSupport> supportedPIDs)
+    {
+        this(protocol, supportedPIDs, null);
+    }
+
+    /**
+     * Constructs a Profile
+     *
+     * @param protocol
+     *         the protocol that the vehicle speaks
+     * @param supportedPIDs
+     *         the PIDs that the vehicle supports under each service
+     * @param respondingModule
+     *         the ECU that powertrain requests are addressed to, or null to broadcast them
+     */
+    public Profile(Protocol protocol,
+                   Map<Service, CumulativePIDSupport> supportedPIDs,
+                   EcuAddress respondingModule)
     {
         this.protocol = protocol;
+        this.respondingModule = respondingModule;
         this.equipmentCache = new HashMap<>();
         this.pids = new TreeMap<>();
         for(Service service : Service.values())
@@ -77,6 +110,21 @@ public class Profile
         return protocol;
     }
 
+    /**
+     * Retrieves the ECU that answers powertrain requests: the engine ECU on vehicles that speak
+     * ISO 15765-4, where ECU #1 is reserved for it (or failing that, the first ECU that answered
+     * discovery).  Service $01 requests that are addressed to it (see {@link
+     * com.lukeleber.scandroid.interpreter.Request#setTarget(EcuAddress)}) need not wait for every
+     * other ECU on the bus.  Requests that concern every ECU (such as reading trouble codes) should
+     * still be broadcast.
+     *
+     * @return the {@link EcuAddress} of the ECU, or null if requests can only be broadcast
+     */
+    public EcuAddress getRespondingModule()
+    {
+        return respondingModule;
+    }
+
     private void populateEquipment()
     {
         equipmentCache.put(DUAL_BANK, isSupported(Service.LIVE_DATASTREAM,
@@ -148,70 +196,124 @@ public class Profile
         }
     }
 
-    public static void createProfile(final Interpreter interpreter,
-                                     final Protocol protocol,
-                                     final Handler<Profile> listener)
+    /**
+     * Discovers the services and PIDs that the vehicle supports and builds a profile of them.  The
+     * services are queried side by side, so that their requests share the bus rather than wait on
+     * one another; a service that the vehicle does not support is simply left out.  The ECUs that
+     * answer are found alongside (see {@link Interpreter#findResponders()}), and the first of
+     * them becomes the {@link #getRespondingModule() responding module}.
+     *
+     * @param interpreter
+     *         the interpreter to query through
+     * @param protocol
+     *         the protocol that the vehicle speaks
+     *
+     * @return the future profile; it fails if discovery fails for any other reason or takes longer
+     * than {@link #DISCOVERY_TIMEOUT} seconds
+     */
+    public static RequestFuture<Profile> createProfile(final Interpreter interpreter,
+                                                       final Protocol protocol)
     {
-        final Map<Service, CumulativePIDSupport> serviceMap = new TreeMap<>();
-        final int[] services = new int[] {0, 1, 4, 5, 7, 8};
+        final Service[] services = new Service[DISCOVERED_SERVICES.length];
+        final List<RequestFuture<CumulativePIDSupport>> supports = new ArrayList<>();
+        RequestFuture<List<EcuAddress>> responders =
+                interpreter.findResponders()
+                           .orElse(Collections.<EcuAddress>emptyList());
         /// TODO: Check support for service $03, $04, and $07
         /// TODO: But for now, just assume support (I guess...)
-        CumulativePIDSupport.getSupportedPIDs(Service.values()[0], interpreter,
-                new Handler<CumulativePIDSupport>()
-                {
-
-                    int currentService = 0;
-
-                    @Override
-                    public void onResponse(CumulativePIDSupport value)
-                    {
-                        serviceMap.put(
-                                Service.values()[services[currentService++]],
-                                value);
-                        if(currentService < services.length)
-                        {
-                            CumulativePIDSupport.getSupportedPIDs(
-                                    Service.values()[services[currentService]],
-                                    interpreter,
-                                    this);
-                        }
-                        else
-                        {
-                            listener.onResponse(new Profile(protocol,
-                                    serviceMap));
-                        }
-                    }
+        for (int i = 0; i < services.length; ++i)
+        {
+            services[i] = Service.values()[DISCOVERED_SERVICES[i]];
+            supports.add(CumulativePIDSupport.getSupportedPIDs(services[i], interpreter)
+                                             .orElse(FailureCode.REQUEST_NOT_SUPPORTED, null));
+        }
+        return responders.then(new Transform<List<EcuAddress>, RequestFuture<Profile>>()
+        {
+            @Override
+            public RequestFuture<Profile> apply(List<EcuAddress> ecus)
+            {
+                final EcuAddress module = ecus.isEmpty() ? null : ecus.get(0);
+                return RequestFuture.all(supports)
+                                    .map(new Transform<List<CumulativePIDSupport>, Profile>()
+                                    {
+                                        @Override
+                                        public Profile apply(List<CumulativePIDSupport> value)
+                                        {
+                                            Map<Service, CumulativePIDSupport> serviceMap =
+                                                    new TreeMap<>();
+                                            for (int i = 0; i < services.length; ++i)
+                                            {
+                                                serviceMap.put(services[i], value.get(i));
+                                            }
+                                            return new Profile(protocol, serviceMap, module);
+                                        }
+                                    });
+            }
+        }).withTimeout(DISCOVERY_TIMEOUT, TimeUnit.SECONDS);
+    }
 
-                    @Override
-                    public void onFailure(FailureCode code)
-                    {
-                        if(code ==
-                           FailureCode.REQUEST_NOT_SUPPORTED)
-                        {
-                            serviceMap.put(
-                                    Service.values()[services[currentService++]],
-                                    null);
-                            if(currentService <
-                               services.length)
-                            {
-                                CumulativePIDSupport.getSupportedPIDs(
-                                        Service.values()[services[currentService]],
-                                        interpreter,
-                                        this);
-                            }
-                            else
+    /**
+     * Discovers the services and PIDs that each ECU supports and builds a profile of each.  Every
+     * range of every service is broadcast once and answered by all of the ECUs together (see
+     * {@link CumulativePIDSupport#getSupportedPIDsByEcu(Service, Interpreter)}), rather than asked
+     * of each ECU in turn.  The {@link #getRespondingModule() responding module} of each profile is
+     * its ECU, where requests can be addressed to it.
+     *
+     * @param interpreter
+     *         the interpreter to query through
+     * @param protocol
+     *         the protocol that the vehicle speaks
+     *
+     * @return the future profile of each ECU that answered (in {@link EcuAddress} order); it fails
+     * if discovery fails for any other reason than a service being unsupported, or takes longer
+     * than {@link #DISCOVERY_TIMEOUT} seconds
+     */
+    public static RequestFuture<Map<EcuAddress, Profile>> createProfiles(
+            final Interpreter interpreter, final Protocol protocol)
+    {
+        final Service[] services = new Service[DISCOVERED_SERVICES.length];
+        List<RequestFuture<Map<EcuAddress, CumulativePIDSupport>>> supports = new ArrayList<>();
+        for (int i = 0; i < services.length; ++i)
+        {
+            services[i] = Service.values()[DISCOVERED_SERVICES[i]];
+            supports.add(CumulativePIDSupport.getSupportedPIDsByEcu(services[i], interpreter)
+                                             .orElse(FailureCode.REQUEST_NOT_SUPPORTED,
+                                                     Collections.<EcuAddress,
+                                                             CumulativePIDSupport>emptyMap()));
+        }
+        return RequestFuture.all(supports)
+                            .map(new Transform<List<Map<EcuAddress, CumulativePIDSupport>>,
+                                    Map<EcuAddress, Profile>>()
                             {
-                                listener.onResponse(new Profile(protocol,
-                                        serviceMap));
-                            }
-                        }
-                        else
-                        {
-                            listener.onFailure(code);
-                        }
-                    }
-                });
-
+                                @Override
+                                public Map<EcuAddress, Profile> apply(
+                                        List<Map<EcuAddress, CumulativePIDSupport>> value)
+                                {
+                                    Map<EcuAddress, Profile> rv = new TreeMap<>();
+                                    for (Map<EcuAddress, CumulativePIDSupport> byEcu : value)
+                                    {
+                                        for (EcuAddress ecu : byEcu.keySet())
+                                        {
+                                            if (rv.containsKey(ecu))
+                                            {
+                                                continue;
+                                            }
+                                            Map<Service, CumulativePIDSupport> serviceMap =
+                                                    new TreeMap<>();
+                                            for (int i = 0; i < services.length; ++i)
+                                            {
+                                                serviceMap.put(services[i], value.get(i)
+                                                                                 .get(ecu));
+                                            }
+                                            rv.put(ecu, new Profile(protocol, serviceMap,
+                                                                    ecu.isAddressable() ?
+                                                                            ecu : null));
+                                        }
+                                    }
+                                    return rv;
+                                }
+                            })
+                            .withTimeout(DISCOVERY_TIMEOUT, TimeUnit.SECONDS);
     }
 
     public PID<?> getID(Service service,
@@ -282,11 +384,14 @@ public class Profile
             out.writeParcelable(entry.getKey(), 0);
             out.writeParcelableArray(entry.getValue(), 0);
         }
+        out.writeSerializable(respondingModule);
     }
 
-    private Profile(Protocol protocol, boolean[] cache, Map<Service, PID<?>[]> pids)
+    private Profile(Protocol protocol, boolean[] cache, Map<Service, PID<?>[]> pids,
+                    EcuAddress respondingModule)
     {
         this.protocol = protocol;
+        this.respondingModule = respondingModule;
         this.equipmentCache = new HashMap<>();
         {
             int i = 0;
@@ -314,7 +419,7 @@ public class Profile
                     {
                         pids.put((Service)in.readParcelable(null), (PID<?>[])in.readParcelableArray(null));
                     }
-                    return new Profile(protocol, cache, pids);
+                    return new Profile(protocol, cache, pids, (EcuAddress) in.readSerializable());
                 }
 
                 @Override
@@ -14,6 +14,38 @@ import static com.lukeleber.scandroid.sae.j1979.detail.AppendixB.*;
 public class SAE_J1979
 {
 
+    /// The number of data bytes returned for each service $01 / $02 PID as defined by SAE-J1979
+    /// Appendix A and Appendix B.  A value of zero means that the length is not (yet) known, or
+    /// that it varies; the fuel trims ($06 - $09) carry a second byte when bank 3 or 4 is present.
+    private final static int[] DATA_LENGTHS = new int[]
+        {
+            /* 0x00 */ 4, 4, 2, 2, 1, 1, 0, 0, 0, 0, 1, 1, 2, 1, 1, 1,
+            /* 0x10 */ 2, 1, 1, 1, 2, 2, 2, 2, 2, 2, 2, 2, 1, 1, 1, 2,
+            /* 0x20 */ 4, 2, 2, 2, 4, 4, 4, 4, 4, 4, 4, 4, 1, 1, 1, 1,
+            /* 0x30 */ 1, 2, 2, 1, 4, 4, 4, 4, 4, 4, 4, 4, 2, 2, 2, 2,
+            /* 0x40 */ 4, 4, 2, 2, 2, 1, 1, 1, 1, 1, 1, 1, 1, 2, 2
+        };
+
+    /**
+     * Retrieves the number of data bytes that a vehicle returns in response to a service $01 or
+     * $02 request for the provided PID.  The length excludes the service and PID header bytes as
+     * well as the frame number that accompanies service $02 responses.
+     *
+     * @param pid
+     *         the ID of the PID to retrieve the data length of
+     *
+     * @return the number of data bytes returned for the provided PID, or zero if the length is not
+     * known (as is the case for manufacturer defined PIDs) or depends upon the vehicle
+     */
+    public static int getDataLength(int pid)
+    {
+        if (pid < 0 || pid >= DATA_LENGTHS.length)
+        {
+            return pid > 0 && pid <= 0xFF && pid % 0x20 == 0 ? 4 : 0;
+        }
+        return DATA_LENGTHS[pid];
+    }
+
 
     public final static List<PID<? extends Serializable>> SAE_J1979_STATIC_PIDS
         = Arrays.asList(
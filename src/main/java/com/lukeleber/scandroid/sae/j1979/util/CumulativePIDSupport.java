@@ -5,17 +5,21 @@
 
 package com.lukeleber.scandroid.sae.j1979.util;
 
+import com.lukeleber.scandroid.interpreter.EcuAddress;
 import com.lukeleber.scandroid.interpreter.FailureCode;
-import com.lukeleber.scandroid.interpreter.Handler;
 import com.lukeleber.scandroid.interpreter.Interpreter;
-import com.lukeleber.scandroid.interpreter.ServiceRequest;
+import com.lukeleber.scandroid.interpreter.RequestFuture;
+import com.lukeleber.scandroid.interpreter.RequestFuture.Transform;
 import com.lukeleber.scandroid.sae.j1979.PID;
 import com.lukeleber.scandroid.sae.j1979.PIDSupport;
 import com.lukeleber.scandroid.sae.j1979.Service;
 import com.lukeleber.scandroid.sae.j1979.detail.AppendixA;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * A <code>CumulativePIDSupport</code> is a form of {@link com.lukeleber.scandroid.sae.j1979.PIDSupport}
@@ -39,73 +43,126 @@ public class CumulativePIDSupport
                     AppendixA.J1979_CHECK_PID_SUPPORT_E1_TO_FF
             };
 
-    /// The service mode that is being queried
-    private final transient Service service;
-
-    /// The handler that handles the asynchronous result of running this operation
-    private final transient Handler<CumulativePIDSupport> handler;
-
     /// A list of PIDSupports that are either supported or partially supported.
     List<PIDSupport> pids;
 
-
-    private final class SupportHandler
-            implements Handler<PIDSupport>
+    /// Built up one range at a time by {@link #getSupportedPIDs(Service, Interpreter)}
+    private CumulativePIDSupport()
     {
+        this.pids = new ArrayList<>();
+    }
 
-        /// The current index into {@link PID_RANGE_REQUESTS}
-        private transient int rangeIndex;
-
-        private Interpreter interpreter;
-
-        /*package*/ SupportHandler(Interpreter interpreter)
-        {
-            this.interpreter = interpreter;
-        }
-
-        @Override
-        public void onResponse(PIDSupport value)
-        {
-            pids.add(value);
-            if (value.checkSupport(31)) /// Are additional ranges supported?
-            {
-                ++rangeIndex;
-                interpreter.sendRequest(new ServiceRequest(service, PID_RANGE_REQUESTS[rangeIndex],
-                                                           this));
-            }
-            else
-            {
-                handler.onResponse(CumulativePIDSupport.this);
-                this.interpreter = null;
-            }
-        }
-
-        @Override
-        public void onFailure(FailureCode code)
-        {
-            this.interpreter = null;
-            handler.onFailure(code);
-        }
+    /**
+     * Queries the vehicle for every PID that it supports under the provided service, one range at
+     * a time for as long as each range reports that the next one is supported
+     *
+     * @param service
+     *         the service to query
+     * @param interpreter
+     *         the interpreter to query through
+     *
+     * @return the future support of the service; it fails if the first range is not supported
+     */
+    public static RequestFuture<CumulativePIDSupport> getSupportedPIDs(Service service,
+                                                                       Interpreter interpreter)
+    {
+        return query(new CumulativePIDSupport(), service, interpreter, 0);
     }
 
-    /// The "Helper" handler that is called upon a response to each successive range query
-    private final transient Handler<PIDSupport> supportHandler;
+    /// Queries the range at the provided index and, if the vehicle says so, the ranges after it
+    private static RequestFuture<CumulativePIDSupport> query(final CumulativePIDSupport support,
+                                                             final Service service,
+                                                             final Interpreter interpreter,
+                                                             final int rangeIndex)
+    {
+        return interpreter.submit(service, PID_RANGE_REQUESTS[rangeIndex])
+                          .then(new Transform<PIDSupport, RequestFuture<CumulativePIDSupport>>()
+                          {
+                              @Override
+                              public RequestFuture<CumulativePIDSupport> apply(PIDSupport value)
+                              {
+                                  support.pids.add(value);
+                                  /// Are additional ranges supported?
+                                  if (value.checkSupport(31) &&
+                                          rangeIndex + 1 < PID_RANGE_REQUESTS.length)
+                                  {
+                                      return query(support, service, interpreter, rangeIndex + 1);
+                                  }
+                                  return RequestFuture.completed(support);
+                              }
+                          });
+    }
 
-    public CumulativePIDSupport(Service service, Interpreter interpreter,
-                                Handler<CumulativePIDSupport> handler)
+    /**
+     * Queries every ECU for the PIDs that it supports under the provided service, one range at a
+     * time for as long as any ECU reports that the next one is supported.  Each range is broadcast
+     * once (see {@link Interpreter#submitToAll(Service, PID)}), however many ECUs answer it.
+     *
+     * @param service
+     *         the service to query
+     * @param interpreter
+     *         the interpreter to query through
+     *
+     * @return the future support of the service by each ECU that answered (in {@link EcuAddress}
+     * order); it fails if no ECU supports the first range
+     */
+    public static RequestFuture<Map<EcuAddress, CumulativePIDSupport>> getSupportedPIDsByEcu(
+            Service service, Interpreter interpreter)
     {
-        this.pids = new ArrayList<>();
-        this.service = service;
-        this.handler = handler;
-        this.supportHandler = new SupportHandler(interpreter);
+        return queryAll(new TreeMap<EcuAddress, CumulativePIDSupport>(), service, interpreter, 0);
     }
 
-    public static <T> void getSupportedPIDs(Service service, Interpreter interpreter,
-                                            Handler<CumulativePIDSupport> handler)
+    /// Queries every ECU for the range at the provided index and, if any says so, the ranges after
+    private static RequestFuture<Map<EcuAddress, CumulativePIDSupport>> queryAll(
+            final Map<EcuAddress, CumulativePIDSupport> supports, final Service service,
+            final Interpreter interpreter, final int rangeIndex)
     {
-        CumulativePIDSupport tmp = new CumulativePIDSupport(service, interpreter, handler);
-        interpreter.sendRequest(new ServiceRequest<PIDSupport>(service, PID_RANGE_REQUESTS[0],
-                                                                  tmp.supportHandler));
+        RequestFuture<Map<EcuAddress, PIDSupport>> answers =
+                interpreter.submitToAll(service, PID_RANGE_REQUESTS[rangeIndex]);
+        if (rangeIndex > 0)
+        {
+            /// Only the ECUs that support the range answer; none answering ends the query
+            answers = answers.orElse(FailureCode.REQUEST_NOT_SUPPORTED,
+                                     Collections.<EcuAddress, PIDSupport>emptyMap());
+        }
+        return answers.then(
+                new Transform<Map<EcuAddress, PIDSupport>,
+                        RequestFuture<Map<EcuAddress, CumulativePIDSupport>>>()
+                {
+                    @Override
+                    public RequestFuture<Map<EcuAddress, CumulativePIDSupport>> apply(
+                            Map<EcuAddress, PIDSupport> value)
+                    {
+                        boolean more = false;
+                        for (Map.Entry<EcuAddress, PIDSupport> answer : value.entrySet())
+                        {
+                            CumulativePIDSupport support = supports.get(answer.getKey());
+                            if (support == null)
+                            {
+                                if (rangeIndex > 0)
+                                {
+                                    continue; /// Skipped the ranges before; not to be trusted
+                                }
+                                support = new CumulativePIDSupport();
+                                supports.put(answer.getKey(), support);
+                            }
+                            else if (support.pids.size() != rangeIndex ||
+                                    !support.pids.get(rangeIndex - 1)
+                                                 .checkSupport(31))
+                            {
+                                continue; /// Missed the range before, or said that it ends there
+                            }
+                            support.pids.add(answer.getValue());
+                            more |= answer.getValue()
+                                          .checkSupport(31);
+                        }
+                        if (more && rangeIndex + 1 < PID_RANGE_REQUESTS.length)
+                        {
+                            return queryAll(supports, service, interpreter, rangeIndex + 1);
+                        }
+                        return RequestFuture.completed(supports);
+                    }
+                });
     }
 
     public boolean isSupported(int pid)
@@ -0,0 +1,135 @@
+package com.lukeleber.scandroid.interpreter;
+
+import com.lukeleber.scandroid.interpreter.elm327.Protocol;
+import com.lukeleber.scandroid.sae.j1979.PID;
+import com.lukeleber.scandroid.sae.j1979.Service;
+import com.lukeleber.scandroid.sae.j1979.detail.AppendixB;
+import com.lukeleber.scandroid.util.Unit;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import static org.junit.Assert.*;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Test cases for com.lukeleber.scandroid.interpreter.BatchServiceRequest
+ */
+@Config(manifest = "./src/main/AndroidManifest.xml", emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class BatchServiceRequestTest
+{
+    /// Builds a service $01 request for the provided PID that is decoded in the provided unit
+    private static <T> ServiceRequest<?> live(PID<T> pid, Unit unit)
+    {
+        return new ServiceRequest<>(Service.LIVE_DATASTREAM, pid, null, unit);
+    }
+
+    /// Collects the provided service $01 requests
+    private static List<ServiceRequest<?>> members(ServiceRequest<?>... requests)
+    {
+        return Arrays.asList(requests);
+    }
+
+    /// Converts the provided values to the bytes of a message
+    private static byte[] message(int... values)
+    {
+        byte[] rv = new byte[values.length];
+        for (int i = 0; i < values.length; ++i)
+        {
+            rv[i] = (byte) values[i];
+        }
+        return rv;
+    }
+
+    /// Hands the provided message to the provided answers
+    private static boolean add(BatchServiceRequest.Answers answers, byte[] message)
+    {
+        return answers.add(message, 0, message.length, null);
+    }
+
+    /**
+     * Requests should be grouped no more than six PIDs at a time over ISO 15765-4, and passed
+     * through as-is over any other protocol
+     */
+    @Test
+    public void batchTest()
+    {
+        List<ServiceRequest<?>> requests = members(
+                live(AppendixB.ENGINE_COOLANT_TEMPERATURE, Unit.TEMPERATURE_CELSIUS),
+                live(AppendixB.INTAKE_MANIFOLD_ABSOLUTE_PRESSURE, Unit.KILO_PASCALS),
+                live(AppendixB.ENGINE_SPEED, Unit.ROTATIONS_PER_MINUTE),
+                live(AppendixB.VEHICLE_SPEED, Unit.KILOMETERS_PER_HOUR),
+                live(AppendixB.TIMING_ADVANCE, Unit.ANGLE_DEGREES),
+                live(AppendixB.INTAKE_AIR_TEMPERATURE, Unit.TEMPERATURE_CELSIUS),
+                live(AppendixB.MASS_AIRFLOW_RATE, Unit.GRAMS_PER_SECOND));
+        List<Request<?>> batched = BatchServiceRequest.batch(
+                Protocol.ISO_15765_4_CAN_11_BIT_500_KBAUD, requests);
+        assertEquals(2, batched.size());
+        BatchServiceRequest batch = (BatchServiceRequest) batched.get(0);
+        assertEquals(BatchServiceRequest.MAX_LIVE_DATASTREAM_PIDS, batch.getMembers()
+                                                                        .size());
+        assertEquals(requests.subList(0, 6), batch.getMembers());
+        assertSame(requests.get(6), batched.get(1));
+
+        assertEquals(requests, BatchServiceRequest.batch(Protocol.ISO_9141_2, requests));
+        assertEquals(requests, BatchServiceRequest.batch(null, requests));
+    }
+
+    /**
+     * Each PID of a message should reach its own member whatever its data length and position,
+     * a member whose PID was not answered should fail as not supported, and the first answer to
+     * a PID should be kept
+     */
+    @Test
+    public void demuxTest()
+    {
+        BatchServiceRequest batch = new BatchServiceRequest(Service.LIVE_DATASTREAM, members(
+                live(AppendixB.ENGINE_SPEED, Unit.ROTATIONS_PER_MINUTE),
+                live(AppendixB.VEHICLE_SPEED, Unit.KILOMETERS_PER_HOUR),
+                live(AppendixB.MASS_AIRFLOW_RATE, Unit.GRAMS_PER_SECOND),
+                live(AppendixB.ENGINE_COOLANT_TEMPERATURE, Unit.TEMPERATURE_CELSIUS)));
+        BatchServiceRequest.Answers answers = new BatchServiceRequest.Answers(batch);
+        assertTrue(add(answers, message(0x41, 0x10, 0x01, 0xF4, 0x0C, 0x1A, 0xF8, 0x0D, 0x32)));
+        assertTrue(add(answers, message(0x41, 0x0D, 0x63)));
+        answers.finish(false);
+        assertEquals(1726.0f, (Float) answers.getValue(0), 0.0f);
+        assertEquals(50, answers.getValue(1));
+        assertEquals(5.0f, (Float) answers.getValue(2), 0.0f);
+        assertNull(answers.getValue(3));
+        assertEquals(FailureCode.REQUEST_NOT_SUPPORTED, answers.getFailure(3));
+        assertFalse(answers.isUnrecognized());
+
+        answers.clear();
+        assertNull(answers.getValue(0));
+        assertNull(answers.getFailure(3));
+    }
+
+    /**
+     * A truncated message should yield the PIDs that arrived whole, and a reply that does not
+     * answer the service at all should leave every member unrecognized
+     */
+    @Test
+    public void truncatedTest()
+    {
+        BatchServiceRequest batch = new BatchServiceRequest(Service.LIVE_DATASTREAM, members(
+                live(AppendixB.VEHICLE_SPEED, Unit.KILOMETERS_PER_HOUR),
+                live(AppendixB.ENGINE_SPEED, Unit.ROTATIONS_PER_MINUTE)));
+        BatchServiceRequest.Answers answers = new BatchServiceRequest.Answers(batch);
+        assertTrue(add(answers, message(0x41, 0x0D, 0x32, 0x0C, 0x1A)));
+        answers.finish(false);
+        assertEquals(50, answers.getValue(0));
+        assertEquals(FailureCode.REQUEST_NOT_SUPPORTED, answers.getFailure(1));
+
+        answers.clear();
+        assertFalse(add(answers, message(0x7F, 0x01, 0x12)));
+        answers.finish(false);
+        assertEquals(Arrays.asList(FailureCode.UNRECOGNIZED_RESPONSE,
+                                   FailureCode.UNRECOGNIZED_RESPONSE),
+                     Arrays.asList(answers.getFailure(0), answers.getFailure(1)));
+        assertTrue(answers.isUnrecognized());
+    }
+}
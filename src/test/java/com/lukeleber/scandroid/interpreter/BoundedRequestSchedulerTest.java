@@ -0,0 +1,173 @@
+package com.lukeleber.scandroid.interpreter;
+
+import com.lukeleber.scandroid.sae.j1979.detail.AppendixB;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import static org.junit.Assert.*;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Test cases for com.lukeleber.scandroid.interpreter.BoundedRequestScheduler
+ */
+@Config(manifest = "./src/main/AndroidManifest.xml", emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class BoundedRequestSchedulerTest
+{
+    /// Builds the pending requests that are offered by these tests
+    private final PendingRequests requests = new PendingRequests();
+
+    /**
+     * A full scheduler should drop the oldest of the least urgent requests, or the offered request
+     * if it is less urgent than everything that is waiting
+     */
+    @Test
+    public void dropOldestTest()
+            throws
+            InterruptedException
+    {
+        BoundedRequestScheduler<String> scheduler = new BoundedRequestScheduler<>(
+                2, BoundedRequestScheduler.OverflowPolicy.DROP_OLDEST);
+        PendingRequest<String> normal = requests.pending(AppendixB.ENGINE_SPEED,
+                                                         Request.Priority.NORMAL);
+        PendingRequest<String> background = requests.pending(AppendixB.VEHICLE_SPEED,
+                                                             Request.Priority.BACKGROUND);
+        assertNull(scheduler.offer(normal));
+        assertNull(scheduler.offer(background));
+        PendingRequest<String> interactive = requests.pending(
+                AppendixB.ENGINE_COOLANT_TEMPERATURE, Request.Priority.INTERACTIVE);
+        assertSame(background, scheduler.offer(interactive));
+        assertEquals(2, scheduler.size());
+        PendingRequest<String> late = requests.pending(AppendixB.VEHICLE_SPEED,
+                                                       Request.Priority.BACKGROUND);
+        assertSame(late, scheduler.offer(late));
+        assertSame(interactive, scheduler.take());
+        assertSame(normal, scheduler.take());
+    }
+
+    /**
+     * A full scheduler should turn the offered request away
+     */
+    @Test
+    public void dropNewestTest()
+    {
+        BoundedRequestScheduler<String> scheduler = new BoundedRequestScheduler<>(
+                1, BoundedRequestScheduler.OverflowPolicy.DROP_NEWEST);
+        assertNull(scheduler.offer(requests.pending(AppendixB.ENGINE_SPEED,
+                                                    Request.Priority.BACKGROUND)));
+        PendingRequest<String> interactive = requests.pending(AppendixB.VEHICLE_SPEED,
+                                                              Request.Priority.INTERACTIVE);
+        assertSame(interactive, scheduler.offer(interactive));
+        assertEquals(1, scheduler.size());
+    }
+
+    /**
+     * A full scheduler should replace a waiting request for the same PID before dropping anything
+     * else
+     */
+    @Test
+    public void replaceSamePIDTest()
+            throws
+            InterruptedException
+    {
+        BoundedRequestScheduler<String> scheduler = new BoundedRequestScheduler<>(
+                2, BoundedRequestScheduler.OverflowPolicy.REPLACE_SAME_PID);
+        PendingRequest<String> stale = requests.pending(AppendixB.ENGINE_SPEED,
+                                                        Request.Priority.NORMAL);
+        PendingRequest<String> other = requests.pending(AppendixB.VEHICLE_SPEED,
+                                                        Request.Priority.BACKGROUND);
+        scheduler.offer(stale);
+        scheduler.offer(other);
+        PendingRequest<String> fresh = requests.pending(AppendixB.ENGINE_SPEED,
+                                                        Request.Priority.NORMAL);
+        assertSame(stale, scheduler.offer(fresh));
+        assertSame(fresh, scheduler.take());
+        assertSame(other, scheduler.take());
+    }
+
+    /**
+     * A waiting request for the same PID of another ECU is not a stale copy of the offered
+     * request, so the policy should fall back to dropping the least urgent request instead
+     */
+    @Test
+    public void replaceSamePIDTargetTest()
+            throws
+            InterruptedException
+    {
+        BoundedRequestScheduler<String> scheduler = new BoundedRequestScheduler<>(
+                2, BoundedRequestScheduler.OverflowPolicy.REPLACE_SAME_PID);
+        PendingRequest<String> engine = requests.pending(AppendixB.ENGINE_SPEED,
+                                                         Request.Priority.NORMAL);
+        engine.getRequest()
+              .setTarget(EcuAddress.fromResponseId(0x7E8, false));
+        PendingRequest<String> other = requests.pending(AppendixB.VEHICLE_SPEED,
+                                                        Request.Priority.BACKGROUND);
+        scheduler.offer(engine);
+        scheduler.offer(other);
+        PendingRequest<String> transmission = requests.pending(AppendixB.ENGINE_SPEED,
+                                                               Request.Priority.NORMAL);
+        transmission.getRequest()
+                    .setTarget(EcuAddress.fromResponseId(0x7E9, false));
+        assertSame(other, scheduler.offer(transmission));
+        assertSame(engine, scheduler.take());
+        assertSame(transmission, scheduler.take());
+    }
+
+    /**
+     * A sender should wait for room in a full scheduler, and have its request turned away if it is
+     * interrupted while waiting
+     */
+    @Test
+    public void blockTest()
+            throws
+            InterruptedException
+    {
+        final BoundedRequestScheduler<String> scheduler = new BoundedRequestScheduler<>(
+                1, BoundedRequestScheduler.OverflowPolicy.BLOCK);
+        PendingRequest<String> first = requests.pending(AppendixB.ENGINE_SPEED,
+                                                        Request.Priority.NORMAL);
+        final PendingRequest<String> second = requests.pending(AppendixB.VEHICLE_SPEED,
+                                                               Request.Priority.NORMAL);
+        final AtomicReference<PendingRequest<String>> refused = new AtomicReference<>(first);
+        assertNull(scheduler.offer(first));
+        Thread sender = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                refused.set(scheduler.offer(second));
+            }
+        };
+        sender.start();
+        sender.join(150);
+        assertTrue(sender.isAlive());
+        assertEquals(1, scheduler.size());
+        assertSame(first, scheduler.take());
+        sender.join(2000);
+        assertFalse(sender.isAlive());
+        assertNull(refused.get());
+        assertEquals(1, scheduler.size());
+
+        final PendingRequest<String> third = requests.pending(AppendixB.ENGINE_SPEED,
+                                                              Request.Priority.NORMAL);
+        sender = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                refused.set(scheduler.offer(third));
+            }
+        };
+        sender.start();
+        sender.join(150);
+        assertTrue(sender.isAlive());
+        sender.interrupt();
+        sender.join(2000);
+        assertSame(third, refused.get());
+        assertSame(second, scheduler.take());
+        assertEquals(0, scheduler.size());
+    }
+}
@@ -0,0 +1,146 @@
+package com.lukeleber.scandroid.interpreter;
+
+import com.lukeleber.scandroid.sae.j1979.Service;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import static org.junit.Assert.*;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test cases for com.lukeleber.scandroid.interpreter.CallbackExecutors
+ */
+@Config(manifest = "./src/main/AndroidManifest.xml", emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class CallbackExecutorsTest
+{
+    /// How long to wait for something that should happen
+    private final static long PATIENCE = 2000;
+
+    /// Sends a request over the provided interpreter and waits for the thread that its listener
+    /// is invoked on
+    private static Thread listen(EchoInterpreter echo, Executor executor)
+            throws
+            InterruptedException
+    {
+        final BlockingQueue<Thread> threads = new LinkedBlockingQueue<>();
+        ResponseListener<String> listener = new ResponseListener<String>()
+        {
+            @Override
+            public void onSuccess(String message)
+            {
+                threads.add(Thread.currentThread());
+            }
+
+            @Override
+            public void onFailure(FailureCode code)
+            {
+                fail(code.toString());
+            }
+        };
+        Request<String> request = new ServiceRequest<>(Service.LIVE_DATASTREAM);
+        if (executor == null)
+        {
+            echo.sendRequest(request, listener);
+        }
+        else
+        {
+            echo.sendRequest(request, listener, executor);
+        }
+        Thread rv = threads.poll(PATIENCE, TimeUnit.MILLISECONDS);
+        assertNotNull("The listener was not invoked", rv);
+        return rv;
+    }
+
+    /**
+     * The direct executor should invoke listeners on the decode thread of the interpreter, without
+     * posting anything to a Looper (the main looper is never run by these tests)
+     */
+    @Test
+    public void directTest()
+            throws
+            InterruptedException
+    {
+        EchoInterpreter echo = new EchoInterpreter(CallbackExecutors.direct());
+        echo.start();
+        try
+        {
+            assertEquals("Echo-Decode", listen(echo, null).getName());
+        }
+        finally
+        {
+            echo.stop();
+        }
+    }
+
+    /**
+     * An executor that is provided with a request should be used instead of the default of the
+     * interpreter
+     */
+    @Test
+    public void customTest()
+            throws
+            InterruptedException
+    {
+        final CountDownLatch created = new CountDownLatch(1);
+        final Thread[] worker = new Thread[1];
+        ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                worker[0] = new Thread(r, "Logger");
+                created.countDown();
+                return worker[0];
+            }
+        });
+        EchoInterpreter echo = new EchoInterpreter(CallbackExecutors.direct());
+        echo.start();
+        try
+        {
+            Thread thread = listen(echo, executor);
+            assertTrue(created.await(PATIENCE, TimeUnit.MILLISECONDS));
+            assertSame(worker[0], thread);
+            assertEquals("Echo-Decode", listen(echo, null).getName());
+        }
+        finally
+        {
+            echo.stop();
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * The pool should invoke listeners on its own daemon threads, off the thread of the test
+     */
+    @Test
+    public void poolTest()
+            throws
+            InterruptedException
+    {
+        EchoInterpreter echo = new EchoInterpreter(CallbackExecutors.pool());
+        echo.start();
+        try
+        {
+            Thread thread = listen(echo, null);
+            assertNotSame(Thread.currentThread(), thread);
+            assertTrue(thread.getName()
+                             .startsWith("Interpreter-Callback-"));
+            assertTrue(thread.isDaemon());
+        }
+        finally
+        {
+            echo.stop();
+        }
+    }
+}
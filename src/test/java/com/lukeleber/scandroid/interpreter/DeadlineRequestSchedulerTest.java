@@ -0,0 +1,143 @@
+package com.lukeleber.scandroid.interpreter;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import static org.junit.Assert.*;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Test cases for com.lukeleber.scandroid.interpreter.DeadlineRequestScheduler
+ */
+@Config(manifest = "./src/main/AndroidManifest.xml", emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class DeadlineRequestSchedulerTest
+{
+    /// Builds the pending requests that are offered by these tests
+    private final PendingRequests requests = new PendingRequests();
+
+    /**
+     * Higher priority requests should be taken before lower priority requests, regardless of the
+     * order in which they were offered
+     */
+    @Test
+    public void priorityTest()
+            throws
+            InterruptedException
+    {
+        DeadlineRequestScheduler<String> scheduler = new DeadlineRequestScheduler<>();
+        PendingRequest<String> background = requests.pending(Request.Priority.BACKGROUND,
+                                                             Request.DEFAULT_DEADLINE);
+        PendingRequest<String> interactive = requests.pending(Request.Priority.INTERACTIVE,
+                                                              Request.DEFAULT_DEADLINE);
+        scheduler.offer(background);
+        scheduler.offer(interactive);
+        assertEquals(2, scheduler.size());
+        assertSame(interactive, scheduler.take());
+        assertSame(background, scheduler.take());
+        assertEquals(0, scheduler.size());
+    }
+
+    /**
+     * Within a priority, the request with the earliest deadline should be taken first, and
+     * requests with equal deadlines should be taken in the order that they were offered
+     */
+    @Test
+    public void earliestDeadlineFirstTest()
+            throws
+            InterruptedException
+    {
+        DeadlineRequestScheduler<String> scheduler = new DeadlineRequestScheduler<>();
+        PendingRequest<String> late = requests.pending(Request.Priority.NORMAL, 10000);
+        PendingRequest<String> early = requests.pending(Request.Priority.NORMAL, 0);
+        scheduler.offer(late);
+        scheduler.offer(early);
+        assertSame(early, scheduler.take());
+        assertSame(late, scheduler.take());
+
+        PendingRequest<String> first = requests.pending(Request.Priority.NORMAL, Long.MAX_VALUE);
+        PendingRequest<String> second = requests.pending(Request.Priority.NORMAL, Long.MAX_VALUE);
+        scheduler.offer(second);
+        scheduler.offer(first);
+        assertSame(first, scheduler.take());
+        assertSame(second, scheduler.take());
+    }
+
+    /**
+     * A lower priority request that has waited beyond the starvation threshold should be taken
+     * before higher priority requests
+     */
+    @Test
+    public void starvationTest()
+            throws
+            InterruptedException
+    {
+        DeadlineRequestScheduler<String> scheduler = new DeadlineRequestScheduler<>(0);
+        PendingRequest<String> background = requests.pending(Request.Priority.BACKGROUND,
+                                                             Request.DEFAULT_DEADLINE);
+        scheduler.offer(background);
+        Thread.sleep(1);
+        scheduler.offer(requests.pending(Request.Priority.INTERACTIVE, Request.DEFAULT_DEADLINE));
+        assertSame(background, scheduler.take());
+    }
+
+    /**
+     * Requests to the ECU that was addressed last should be taken ahead of earlier requests to
+     * another ECU, for as long as those can afford to wait
+     */
+    @Test
+    public void affinityTest()
+            throws
+            InterruptedException
+    {
+        EcuAddress engine = EcuAddress.fromResponseId(0x7E8, false);
+        EcuAddress transmission = EcuAddress.fromResponseId(0x7E9, false);
+        DeadlineRequestScheduler<String> scheduler = new DeadlineRequestScheduler<>();
+        PendingRequest<String> first = requests.pending(Request.Priority.NORMAL, 10000);
+        first.getRequest()
+             .setTarget(engine);
+        PendingRequest<String> other = requests.pending(Request.Priority.NORMAL, 10000);
+        other.getRequest()
+             .setTarget(transmission);
+        PendingRequest<String> same = requests.pending(Request.Priority.NORMAL, 10000);
+        same.getRequest()
+            .setTarget(engine);
+        PendingRequest<String> urgent = requests.pending(Request.Priority.NORMAL, 0);
+        urgent.getRequest()
+              .setTarget(transmission);
+        scheduler.offer(first);
+        scheduler.offer(other);
+        scheduler.offer(same);
+        assertSame(first, scheduler.take());
+        assertSame(same, scheduler.take());
+        assertSame(other, scheduler.take());
+
+        scheduler.offer(same);
+        scheduler.offer(urgent);
+        assertSame(urgent, scheduler.take());
+        assertSame(same, scheduler.take());
+    }
+
+    /**
+     * Sending a request again while it is still waiting should give the new send a fresh
+     * deadline without moving the one that is already waiting
+     */
+    @Test
+    public void resendTest()
+            throws
+            InterruptedException
+    {
+        DeadlineRequestScheduler<String> scheduler = new DeadlineRequestScheduler<>();
+        PendingRequest<String> polled = requests.pending(Request.Priority.NORMAL, 100);
+        PendingRequest<String> other = requests.pending(Request.Priority.NORMAL, 150);
+        scheduler.offer(polled);
+        scheduler.offer(other);
+        Thread.sleep(100);
+        PendingRequest<String> again = requests.wrap(polled.getRequest());
+        scheduler.offer(again);
+        assertTrue(again.getAbsoluteDeadline() > other.getAbsoluteDeadline());
+        assertSame(polled, scheduler.take());
+        assertSame(other, scheduler.take());
+        assertSame(again, scheduler.take());
+    }
+}
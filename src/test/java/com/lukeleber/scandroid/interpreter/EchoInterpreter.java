@@ -0,0 +1,92 @@
+package com.lukeleber.scandroid.interpreter;
+
+import com.lukeleber.scandroid.io.AbstractCommunicationInterface;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * An interpreter for the test cases whose remote hardware answers every request with "OK", and
+ * that remembers every request that it wrote
+ */
+final class EchoInterpreter
+        extends AbstractInterpreter<String>
+{
+    /// A link that is never read from or written to
+    private final static class Link
+            extends AbstractCommunicationInterface
+    {
+        @Override
+        protected InputStream getSourceStream()
+        {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+
+        @Override
+        public OutputStream getOutputStream()
+        {
+            return new ByteArrayOutputStream();
+        }
+
+        @Override
+        public void connect()
+        {
+
+        }
+
+        @Override
+        public void close()
+        {
+
+        }
+    }
+
+    /// Every request that was written, in order
+    final BlockingQueue<Request<?>> written = new LinkedBlockingQueue<>();
+
+    EchoInterpreter(Executor callbackExecutor)
+    {
+        super(new Link(), new FifoRequestScheduler<String>(), callbackExecutor);
+    }
+
+    @Override
+    public String getName()
+    {
+        return "Echo";
+    }
+
+    @Override
+    public <V> RequestHandle sendRequest(Request<V> request, Executor executor)
+    {
+        return sendRequest(request, null, executor);
+    }
+
+    @Override
+    protected void init()
+    {
+
+    }
+
+    @Override
+    protected void writeRequest(Request<?> request)
+    {
+        written.add(request);
+    }
+
+    @Override
+    protected String readReply()
+    {
+        return "OK";
+    }
+
+    @Override
+    public void close()
+    {
+
+    }
+}
@@ -0,0 +1,50 @@
+package com.lukeleber.scandroid.interpreter;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import static org.junit.Assert.*;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Test cases for com.lukeleber.scandroid.interpreter.EcuAddress
+ */
+@Config(manifest = "./src/main/AndroidManifest.xml", emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class EcuAddressTest
+{
+    /**
+     * The request identifier should follow from the response identifier as ISO 15765-4 assigns
+     * them, and identifiers that it does not assign to ECUs should be refused
+     */
+    @Test
+    public void fromResponseIdTest()
+    {
+        EcuAddress engine = EcuAddress.fromResponseId(0x7E8, false);
+        assertEquals(0x7E0, engine.getRequestId());
+        assertEquals("7E0/7E8", engine.toString());
+        EcuAddress extended = EcuAddress.fromResponseId(0x18DAF110, true);
+        assertEquals(0x18DA10F1, extended.getRequestId());
+        assertTrue(extended.isExtended());
+        assertNull(EcuAddress.fromResponseId(0x7DF, false));
+        assertNull(EcuAddress.fromResponseId(0x7F0, false));
+        assertNull(EcuAddress.fromResponseId(0x18DB33F1, true));
+        assertEquals(engine, EcuAddress.fromResponseId(0x7E8, false));
+        assertTrue(engine.compareTo(EcuAddress.fromResponseId(0x7E9, false)) < 0);
+    }
+
+    /**
+     * Source addresses should be told apart from CAN identifiers, and never be addressable
+     */
+    @Test
+    public void fromSourceAddressTest()
+    {
+        EcuAddress source = EcuAddress.fromSourceAddress(0x10);
+        assertFalse(source.isAddressable());
+        assertEquals(-1, source.getRequestId());
+        assertEquals("10", source.toString());
+        assertSame(source, EcuAddress.fromSourceAddress(0x10));
+        assertFalse(source.equals(EcuAddress.fromResponseId(0x7E8, false)));
+        assertTrue(EcuAddress.fromResponseId(0x7E8, false).compareTo(source) < 0);
+    }
+}
@@ -0,0 +1,121 @@
+package com.lukeleber.scandroid.interpreter;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import static org.junit.Assert.*;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test cases for com.lukeleber.scandroid.interpreter.FrameDispatcher
+ */
+@Config(manifest = "./src/main/AndroidManifest.xml", emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class FrameDispatcherTest
+{
+    /// The budget of each frame (in milliseconds)
+    private final static long BUDGET = 50;
+
+    /// Frames that are stepped through by hand
+    private final static class Frames
+            implements FrameDispatcher.Frames
+    {
+        /// The number of first frames that were asked for
+        int requested;
+
+        /// Was the next frame asked for during the last frame?
+        boolean next;
+
+        @Override
+        public void request()
+        {
+            ++requested;
+        }
+
+        @Override
+        public void requestNext()
+        {
+            next = true;
+        }
+
+        /// Runs a frame of the provided dispatcher
+        void step(FrameDispatcher dispatcher)
+        {
+            next = false;
+            dispatcher.dispatch();
+        }
+    }
+
+    /// Creates a callback that records its name, taking the provided number of milliseconds
+    private static Runnable callback(final String name, final long millis, final List<String> ran)
+    {
+        return new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+                while (System.nanoTime() - end < 0)
+                {
+                    /// Busy, like a callback that updates a lot of views
+                }
+                ran.add(name);
+            }
+        };
+    }
+
+    /**
+     * Callbacks that do not fit into the budget of a frame should be carried over to the next
+     * frame, without any of them being dropped or run out of order
+     */
+    @Test
+    public void budgetTest()
+    {
+        Frames frames = new Frames();
+        FrameDispatcher dispatcher = new FrameDispatcher(BUDGET, TimeUnit.MILLISECONDS, frames);
+        final int[] delivered = {0};
+        dispatcher.addFrameListener(new FrameDispatcher.FrameListener()
+        {
+            @Override
+            public void onFrameDelivered()
+            {
+                ++delivered[0];
+            }
+        });
+        List<String> ran = new ArrayList<>();
+        dispatcher.execute(callback("a", BUDGET + 5, ran));
+        dispatcher.execute(callback("b", 0, ran));
+        dispatcher.execute(callback("c", BUDGET + 5, ran));
+        dispatcher.execute(callback("d", 0, ran));
+        assertEquals(1, frames.requested);
+
+        frames.step(dispatcher);
+        assertEquals(Arrays.asList("a"), ran);
+        assertTrue(frames.next);
+        assertEquals(1, delivered[0]);
+
+        frames.step(dispatcher);
+        assertEquals(Arrays.asList("a", "b", "c"), ran);
+        assertTrue(frames.next);
+        assertEquals(2, delivered[0]);
+
+        /// Submitted while callbacks are left over, so no new first frame is asked for
+        dispatcher.execute(callback("e", 0, ran));
+        frames.step(dispatcher);
+        assertEquals(Arrays.asList("a", "b", "c", "d", "e"), ran);
+        assertFalse(frames.next);
+        assertEquals(3, delivered[0]);
+        assertEquals(1, frames.requested);
+
+        /// A frame with nothing to run tells nobody
+        frames.step(dispatcher);
+        assertEquals(3, delivered[0]);
+        dispatcher.execute(callback("f", 0, ran));
+        assertEquals(2, frames.requested);
+    }
+}
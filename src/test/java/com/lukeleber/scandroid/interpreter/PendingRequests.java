@@ -0,0 +1,38 @@
+package com.lukeleber.scandroid.interpreter;
+
+import com.lukeleber.scandroid.sae.j1979.PID;
+import com.lukeleber.scandroid.sae.j1979.Service;
+
+/**
+ * Builds the pending requests that the scheduler test cases offer, numbering them in the order
+ * that they are built
+ */
+final class PendingRequests
+{
+    /// The source of sequence numbers for the pending requests that are built
+    private long sequence;
+
+    /// Wraps the provided request as though it was sent just now
+    PendingRequest<String> wrap(Request<?> request)
+    {
+        return new PendingRequest<>(request, null, sequence++);
+    }
+
+    /// Builds a pending service $01 request with the provided priority and deadline
+    PendingRequest<String> pending(Request.Priority priority, long deadline)
+    {
+        Request<?> request = new ServiceRequest<String>(Service.LIVE_DATASTREAM);
+        request.setPriority(priority)
+               .setDeadline(deadline);
+        return wrap(request);
+    }
+
+    /// Builds a pending service $01 request for the provided PID with the provided priority
+    PendingRequest<String> pending(PID<?> pid, Request.Priority priority)
+    {
+        @SuppressWarnings("unchecked")
+        Request<?> request = new ServiceRequest(Service.LIVE_DATASTREAM, pid, null);
+        request.setPriority(priority);
+        return wrap(request);
+    }
+}
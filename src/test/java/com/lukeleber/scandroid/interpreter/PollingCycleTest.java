@@ -0,0 +1,122 @@
+package com.lukeleber.scandroid.interpreter;
+
+import com.lukeleber.scandroid.interpreter.elm327.Protocol;
+import com.lukeleber.scandroid.sae.j1979.PID;
+import com.lukeleber.scandroid.sae.j1979.Service;
+import com.lukeleber.scandroid.sae.j1979.detail.AppendixB;
+import com.lukeleber.scandroid.util.Unit;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import static org.junit.Assert.*;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test cases for com.lukeleber.scandroid.interpreter.PollingCycle
+ */
+@Config(manifest = "./src/main/AndroidManifest.xml", emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class PollingCycleTest
+{
+    /// How long to wait for something that should happen
+    private final static long PATIENCE = 2000;
+
+    /// Builds a service $01 request for the provided PID that is decoded in the provided unit
+    private static <T> ServiceRequest<T> live(PID<T> pid, Unit unit)
+    {
+        return new ServiceRequest<>(Service.LIVE_DATASTREAM, pid, null, unit);
+    }
+
+    /// Sends the provided cycle the provided number of times and collects what was written
+    private static List<Request<?>> poll(PollingCycle cycle, int cycles)
+            throws
+            InterruptedException
+    {
+        EchoInterpreter echo = new EchoInterpreter(CallbackExecutors.direct());
+        echo.start();
+        try
+        {
+            List<Request<?>> rv = new ArrayList<>();
+            for (int i = 0; i < cycles; ++i)
+            {
+                cycle.send(echo, CallbackExecutors.direct());
+                for (int j = 0; j < cycle.getRequests()
+                                         .size(); ++j)
+                {
+                    Request<?> written = echo.written.poll(PATIENCE, TimeUnit.MILLISECONDS);
+                    assertNotNull("Only " + rv + " was written", written);
+                    rv.add(written);
+                }
+            }
+            return rv;
+        }
+        finally
+        {
+            echo.stop();
+        }
+    }
+
+    /**
+     * Every cycle should write the very same batch over ISO 15765-4, and the very same requests
+     * over any other protocol
+     */
+    @Test
+    public void reuseTest()
+            throws
+            InterruptedException
+    {
+        PollingCycle cycle = new PollingCycle(Protocol.ISO_15765_4_CAN_11_BIT_500_KBAUD);
+        ServiceRequest<Float> rpm = live(AppendixB.ENGINE_SPEED, Unit.ROTATIONS_PER_MINUTE);
+        ServiceRequest<Integer> speed = live(AppendixB.VEHICLE_SPEED, Unit.KILOMETERS_PER_HOUR);
+        cycle.add(rpm);
+        cycle.add(speed);
+        assertEquals(2, cycle.size());
+        List<Request<?>> requests = cycle.getRequests();
+        assertEquals(1, requests.size());
+        BatchServiceRequest batch = (BatchServiceRequest) requests.get(0);
+        assertEquals(Arrays.asList(rpm, speed), batch.getMembers());
+        assertEquals(Arrays.<Request<?>>asList(batch, batch, batch), poll(cycle, 3));
+        assertSame(requests, cycle.getRequests());
+
+        cycle = new PollingCycle(Protocol.ISO_9141_2);
+        cycle.add(rpm);
+        cycle.add(speed);
+        assertEquals(Arrays.<Request<?>>asList(rpm, speed, rpm, speed), poll(cycle, 2));
+    }
+
+    /**
+     * Changing the requests of a cycle should batch them again, and leave the old batch behind
+     */
+    @Test
+    public void rebuildTest()
+            throws
+            InterruptedException
+    {
+        PollingCycle cycle = new PollingCycle(Protocol.ISO_15765_4_CAN_11_BIT_500_KBAUD);
+        ServiceRequest<Float> rpm = live(AppendixB.ENGINE_SPEED, Unit.ROTATIONS_PER_MINUTE);
+        cycle.add(rpm);
+        cycle.add(live(AppendixB.VEHICLE_SPEED, Unit.KILOMETERS_PER_HOUR));
+        BatchServiceRequest before = (BatchServiceRequest) cycle.getRequests()
+                                                               .get(0);
+
+        cycle.clear();
+        assertEquals(0, cycle.size());
+        assertTrue(cycle.getRequests()
+                        .isEmpty());
+        ServiceRequest<Integer> ect = live(AppendixB.ENGINE_COOLANT_TEMPERATURE,
+                                           Unit.TEMPERATURE_CELSIUS);
+        cycle.add(rpm);
+        cycle.add(ect);
+        List<Request<?>> written = poll(cycle, 2);
+        BatchServiceRequest after = (BatchServiceRequest) written.get(0);
+        assertNotSame(before, after);
+        assertEquals(Arrays.asList(rpm, ect), after.getMembers());
+        assertSame(after, written.get(1));
+    }
+}
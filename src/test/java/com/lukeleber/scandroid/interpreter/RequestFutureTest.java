@@ -0,0 +1,171 @@
+package com.lukeleber.scandroid.interpreter;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import static org.junit.Assert.*;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test cases for com.lukeleber.scandroid.interpreter.RequestFuture
+ */
+@Config(manifest = "./src/main/AndroidManifest.xml", emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class RequestFutureTest
+{
+    /**
+     * A chain of steps should only start each step once the previous one has succeeded, and a
+     * batch should succeed with every value in order
+     */
+    @Test
+    public void thenAndAllTest()
+            throws
+            Exception
+    {
+        final RequestFuture<Integer> first = new RequestFuture<>(CallbackExecutors.direct());
+        final RequestFuture<Integer> second = new RequestFuture<>(CallbackExecutors.direct());
+        RequestFuture<List<Integer>> chain = first.then(
+                new RequestFuture.Transform<Integer, RequestFuture<List<Integer>>>()
+                {
+                    @Override
+                    public RequestFuture<List<Integer>> apply(Integer value)
+                    {
+                        return RequestFuture.all(Arrays.asList(RequestFuture.completed(value),
+                                                               second));
+                    }
+                });
+        first.onResponse(1);
+        assertFalse(chain.isDone());
+        second.onResponse(2);
+        assertEquals(Arrays.asList(1, 2), chain.get());
+    }
+
+    /**
+     * A batch should fail as soon as one of its futures fails, cancelling the rest, and a failure
+     * should reach get() as a RequestFailedException
+     */
+    @Test
+    public void failureTest()
+            throws
+            Exception
+    {
+        RequestFuture<Integer> slow = new RequestFuture<>(CallbackExecutors.direct());
+        RequestFuture<List<Integer>> batch = RequestFuture.all(Arrays.asList(
+                slow, RequestFuture.<Integer>failed(FailureCode.IO_ERROR)));
+        assertTrue(slow.isCancelled());
+        try
+        {
+            batch.get();
+            fail();
+        }
+        catch (ExecutionException ee)
+        {
+            assertEquals(FailureCode.IO_ERROR,
+                         ((RequestFailedException) ee.getCause()).getFailureCode());
+        }
+        assertEquals(Integer.valueOf(7), RequestFuture.any(Arrays.asList(
+                RequestFuture.<Integer>failed(FailureCode.IO_ERROR), RequestFuture.completed(7)))
+                                                     .orElse(FailureCode.IO_ERROR, 0)
+                                                     .get());
+    }
+
+    /**
+     * A future that outlives its timeout should fail with REQUEST_TIMED_OUT and cancel what it
+     * waits on
+     */
+    @Test
+    public void timeoutTest()
+            throws
+            Exception
+    {
+        RequestFuture<Integer> never = new RequestFuture<>(CallbackExecutors.direct());
+        RequestFuture<Integer> bounded = never.orElse(FailureCode.IO_ERROR, 0)
+                                              .withTimeout(10, TimeUnit.MILLISECONDS);
+        assertEquals(Integer.valueOf(-1), bounded.orElse(FailureCode.REQUEST_TIMED_OUT, -1)
+                                                 .get(5, TimeUnit.SECONDS));
+        assertTrue(never.isCancelled());
+    }
+
+    /**
+     * A transform that throws should fail the derived future with TRANSFORM_FAILED and the
+     * exception, rather than leave it pending forever
+     */
+    @Test
+    public void throwingTransformTest()
+            throws
+            Exception
+    {
+        final IllegalStateException thrown = new IllegalStateException("no such gear");
+        RequestFuture<Integer> source = new RequestFuture<>(CallbackExecutors.direct());
+        RequestFuture<Integer> mapped = source.map(new RequestFuture.Transform<Integer, Integer>()
+        {
+            @Override
+            public Integer apply(Integer value)
+            {
+                throw thrown;
+            }
+        });
+        RequestFuture<Integer> next = source.then(
+                new RequestFuture.Transform<Integer, RequestFuture<Integer>>()
+                {
+                    @Override
+                    public RequestFuture<Integer> apply(Integer value)
+                    {
+                        throw thrown;
+                    }
+                });
+        RequestFuture<Integer> after = mapped.map(new RequestFuture.Transform<Integer, Integer>()
+        {
+            @Override
+            public Integer apply(Integer value)
+            {
+                return value + 1;
+            }
+        });
+        source.onResponse(1);
+        assertEquals(FailureCode.TRANSFORM_FAILED, mapped.getFailureCode());
+        assertSame(thrown, mapped.getFailureCause());
+        assertEquals(FailureCode.TRANSFORM_FAILED, next.getFailureCode());
+        assertSame(thrown, next.getFailureCause());
+        assertSame(thrown, after.getFailureCause()); /// Handed on down the chain
+        try
+        {
+            after.get(5, TimeUnit.SECONDS);
+            fail();
+        }
+        catch (ExecutionException ee)
+        {
+            assertSame(thrown, ee.getCause()
+                                 .getCause());
+        }
+    }
+
+    /**
+     * A next step that is null should fail the derived future rather than leave it pending
+     */
+    @Test
+    public void nullStepTest()
+            throws
+            Exception
+    {
+        RequestFuture<Integer> source = new RequestFuture<>(CallbackExecutors.direct());
+        RequestFuture<Integer> next = source.then(
+                new RequestFuture.Transform<Integer, RequestFuture<Integer>>()
+                {
+                    @Override
+                    public RequestFuture<Integer> apply(Integer value)
+                    {
+                        return null;
+                    }
+                });
+        source.onResponse(1);
+        assertTrue(next.isDone());
+        assertEquals(FailureCode.TRANSFORM_FAILED, next.getFailureCode());
+        assertTrue(next.getFailureCause() instanceof NullPointerException);
+    }
+}
@@ -0,0 +1,99 @@
+package com.lukeleber.scandroid.interpreter;
+
+import com.lukeleber.scandroid.sae.j1979.Service;
+import com.lukeleber.scandroid.sae.j1979.detail.AppendixB;
+import com.lukeleber.scandroid.util.Unit;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import static org.junit.Assert.*;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test cases for com.lukeleber.scandroid.interpreter.ResponseCache
+ */
+@Config(manifest = "./src/main/AndroidManifest.xml", emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class ResponseCacheTest
+{
+    /**
+     * A value should only be reused within the freshness window of its PID, or within the maximum
+     * staleness that the request states instead
+     */
+    @Test
+    public void freshnessTest()
+            throws
+            InterruptedException
+    {
+        ResponseCache cache = new ResponseCache().setFreshness(Service.LIVE_DATASTREAM,
+                                                               AppendixB.FUEL_LEVEL_INPUT,
+                                                               1, TimeUnit.HOURS);
+        ServiceRequest<Float> fuel = new ServiceRequest<>(Service.LIVE_DATASTREAM,
+                                                          AppendixB.FUEL_LEVEL_INPUT, null);
+        ServiceRequest<Float> rpm = new ServiceRequest<>(Service.LIVE_DATASTREAM,
+                                                         AppendixB.ENGINE_SPEED, null);
+        assertNull(cache.lookup(fuel));
+        cache.store(fuel, 42f);
+        cache.store(rpm, 800f);
+        assertEquals(42f, cache.lookup(fuel));
+        assertNull(cache.lookup(rpm)); /// No window, and the request states none
+        rpm.setMaxStaleness(60000);
+        assertEquals(800f, cache.lookup(rpm));
+        fuel.setMaxStaleness(0);
+        assertNull(cache.lookup(fuel)); /// Straight from the vehicle
+        Thread.sleep(5);
+        rpm.setMaxStaleness(1);
+        assertNull(cache.lookup(rpm));
+    }
+
+    /**
+     * A value should not be reused for a request in another unit, and clearing diagnostic
+     * information should forget everything
+     */
+    @Test
+    public void unitAndClearTest()
+    {
+        ResponseCache cache = ResponseCache.withDefaults();
+        ServiceRequest<Integer> celsius = new ServiceRequest<>(Service.LIVE_DATASTREAM,
+                AppendixB.ENGINE_COOLANT_TEMPERATURE, null, Unit.TEMPERATURE_CELSIUS);
+        ServiceRequest<Integer> fahrenheit = new ServiceRequest<>(Service.LIVE_DATASTREAM,
+                AppendixB.ENGINE_COOLANT_TEMPERATURE, null, Unit.TEMPERATURE_FAHRENHEIT);
+        cache.store(celsius, 90);
+        assertEquals(90, cache.lookup(celsius));
+        assertNull(cache.lookup(fahrenheit));
+        cache.store(new ServiceRequest<String>(Service.CLEAR_DTC), "DTCs Cleared");
+        assertNull(cache.lookup(celsius));
+    }
+
+    /**
+     * A value should only be reused for a request to the same ECU that was asked for it, and not
+     * for a broadcast request
+     */
+    @Test
+    public void targetTest()
+    {
+        ResponseCache cache = ResponseCache.withDefaults();
+        EcuAddress engine = EcuAddress.fromResponseId(0x7E8, false);
+        EcuAddress transmission = EcuAddress.fromResponseId(0x7E9, false);
+        ServiceRequest<Integer> fromEngine = new ServiceRequest<>(Service.LIVE_DATASTREAM,
+                AppendixB.ENGINE_COOLANT_TEMPERATURE, null);
+        fromEngine.setTarget(engine);
+        ServiceRequest<Integer> fromTransmission = new ServiceRequest<>(Service.LIVE_DATASTREAM,
+                AppendixB.ENGINE_COOLANT_TEMPERATURE, null);
+        fromTransmission.setTarget(transmission);
+        ServiceRequest<Integer> broadcast = new ServiceRequest<>(Service.LIVE_DATASTREAM,
+                AppendixB.ENGINE_COOLANT_TEMPERATURE, null);
+        cache.store(fromEngine, 90);
+        assertEquals(90, cache.lookup(fromEngine));
+        assertNull(cache.lookup(fromTransmission));
+        assertNull(cache.lookup(broadcast));
+        cache.store(fromTransmission, 70);
+        cache.store(broadcast, 85);
+        assertEquals(90, cache.lookup(fromEngine));
+        assertEquals(70, cache.lookup(fromTransmission));
+        assertEquals(85, cache.lookup(broadcast));
+    }
+}
@@ -0,0 +1,78 @@
+package com.lukeleber.scandroid.interpreter;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import static org.junit.Assert.*;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Test cases for com.lukeleber.scandroid.interpreter.RingBuffer
+ */
+@Config(manifest = "./src/main/AndroidManifest.xml", emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class RingBufferTest
+{
+    /**
+     * Elements should come out in the order that they went in, across the wrap-around, and a full
+     * buffer should refuse more
+     */
+    @Test
+    public void orderTest()
+    {
+        RingBuffer<Integer> ring = new RingBuffer<>(3); /// Rounded up to 4
+        for (int round = 0; round < 3; ++round)
+        {
+            for (int i = 0; i < 4; ++i)
+            {
+                assertTrue(ring.offer(i));
+            }
+            assertFalse(ring.offer(4));
+            assertEquals(4, ring.size());
+            for (int i = 0; i < 4; ++i)
+            {
+                assertEquals(Integer.valueOf(i), ring.poll());
+            }
+            assertNull(ring.poll());
+        }
+    }
+
+    /**
+     * Every element that a producer puts should be taken, in order, by a consumer on another
+     * thread, with each side waiting on the other in turn
+     */
+    @Test
+    public void handOffTest()
+            throws
+            InterruptedException
+    {
+        final RingBuffer<Integer> ring = new RingBuffer<>(2);
+        final int count = 100000;
+        Thread producer = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    for (int i = 0; i < count; ++i)
+                    {
+                        ring.put(i);
+                    }
+                }
+                catch (InterruptedException ie)
+                {
+                    Thread.currentThread()
+                          .interrupt();
+                }
+            }
+        });
+        producer.start();
+        for (int i = 0; i < count; ++i)
+        {
+            assertEquals(Integer.valueOf(i), ring.take());
+        }
+        producer.join();
+        assertEquals(0, ring.size());
+    }
+}
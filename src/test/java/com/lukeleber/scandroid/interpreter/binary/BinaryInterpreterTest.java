@@ -0,0 +1,348 @@
+package com.lukeleber.scandroid.interpreter.binary;
+
+import com.lukeleber.scandroid.interpreter.BatchServiceRequest;
+import com.lukeleber.scandroid.interpreter.CallbackExecutors;
+import com.lukeleber.scandroid.interpreter.FailureCode;
+import com.lukeleber.scandroid.interpreter.Handler;
+import com.lukeleber.scandroid.interpreter.ServiceRequest;
+import com.lukeleber.scandroid.io.AbstractCommunicationInterface;
+import com.lukeleber.scandroid.sae.j1979.PID;
+import com.lukeleber.scandroid.sae.j1979.Service;
+import com.lukeleber.scandroid.sae.j1979.detail.AppendixB;
+import com.lukeleber.scandroid.util.Unit;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import static org.junit.Assert.*;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test cases for com.lukeleber.scandroid.interpreter.binary.BinaryInterpreter
+ */
+@Config(manifest = "./src/main/AndroidManifest.xml", emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class BinaryInterpreterTest
+{
+    /// How long to wait for something that should happen
+    private final static long PATIENCE = 2000;
+
+    /// How long to wait for something that should not happen
+    private final static long QUIET = 150;
+
+    /// Remote hardware whose every reply is sent by hand
+    private final static class Adapter
+            extends AbstractCommunicationInterface
+    {
+        /// The sequence numbers of the request frames that were received
+        final BlockingQueue<Integer> requests = new LinkedBlockingQueue<>();
+
+        /// Decodes the request frames
+        private final FrameCodec codec = new FrameCodec();
+
+        /// Encodes the reply frames
+        private final FrameCodec replies = new FrameCodec();
+
+        /// Feeds the replies to the interpreter
+        private final PipedOutputStream feed = new PipedOutputStream();
+
+        /// What the interpreter reads
+        private final PipedInputStream in;
+
+        Adapter()
+                throws
+                IOException
+        {
+            in = new PipedInputStream(feed, 0x10000);
+        }
+
+        @Override
+        protected InputStream getSourceStream()
+        {
+            return in;
+        }
+
+        @Override
+        public OutputStream getOutputStream()
+        {
+            return new OutputStream()
+            {
+                @Override
+                public void write(int b)
+                {
+                    write(new byte[]{(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len)
+                {
+                    codec.receive(ByteBuffer.wrap(b, off, len));
+                    while (codec.next())
+                    {
+                        requests.add(codec.getSequence());
+                    }
+                }
+            };
+        }
+
+        @Override
+        public void connect()
+        {
+
+        }
+
+        @Override
+        public void close()
+        {
+
+        }
+
+        /// Takes the next request frame that the interpreter wrote
+        int take()
+                throws
+                InterruptedException
+        {
+            Integer rv = requests.poll(PATIENCE, TimeUnit.MILLISECONDS);
+            assertNotNull("No request was written", rv);
+            return rv;
+        }
+
+        /// Sends a frame of the provided type
+        void send(int sequence, int type, byte[] body)
+                throws
+                IOException
+        {
+            ByteBuffer frame = replies.encode(sequence, type, ByteBuffer.wrap(body));
+            feed.write(frame.array(), frame.arrayOffset(), frame.limit());
+            feed.flush();
+        }
+
+        /// Sends the reply of the engine ECU to a service $01 request
+        void answer(int sequence, int... message)
+                throws
+                IOException
+        {
+            ByteBuffer body = ByteBuffer.allocate(8 + message.length);
+            body.put((byte) BinaryInterpreter.STATUS_OK);
+            body.put((byte) BinaryInterpreter.ADDRESS_STANDARD)
+                .putInt(0x7E8)
+                .putShort((short) message.length);
+            for (int b : message)
+            {
+                body.put((byte) b);
+            }
+            send(sequence, BinaryInterpreter.TYPE_REPLY, body.array());
+        }
+    }
+
+    /// Records the outcome of each request in the order that they arrive
+    private final static class Outcomes
+    {
+        private final List<String> outcomes = new ArrayList<>();
+
+        <T> Handler<T> handler(final String name)
+        {
+            return new Handler<T>()
+            {
+                @Override
+                public void onResponse(T value)
+                {
+                    add(name + "=" + value);
+                }
+
+                @Override
+                public void onFailure(FailureCode code)
+                {
+                    add(name + ":" + code);
+                }
+            };
+        }
+
+        /// Creates a service $01 request for the provided PID, decoded in the provided unit, whose
+        /// outcome is recorded
+        <T> ServiceRequest<T> live(PID<T> pid, Unit unit, String name)
+        {
+            return new ServiceRequest<>(Service.LIVE_DATASTREAM, pid, this.<T>handler(name), unit);
+        }
+
+        private synchronized void add(String outcome)
+        {
+            outcomes.add(outcome);
+            notifyAll();
+        }
+
+        synchronized List<String> await(int count)
+                throws
+                InterruptedException
+        {
+            long deadline = System.currentTimeMillis() + PATIENCE;
+            while (outcomes.size() < count && System.currentTimeMillis() < deadline)
+            {
+                wait(PATIENCE);
+            }
+            return new ArrayList<>(outcomes);
+        }
+    }
+
+    /**
+     * No more than the maximum number of requests should be in flight at once, and the next one
+     * should be written as soon as the oldest is answered
+     */
+    @Test
+    public void windowTest()
+            throws
+            Exception
+    {
+        Adapter adapter = new Adapter();
+        BinaryInterpreter interpreter = new BinaryInterpreter(adapter, CallbackExecutors.direct());
+        interpreter.setMaxInFlight(3);
+        Outcomes outcomes = new Outcomes();
+        /// Distinct PIDs, as requests for the same one would be coalesced
+        PID<?>[] pids = {AppendixB.VEHICLE_SPEED, AppendixB.ENGINE_COOLANT_TEMPERATURE,
+                AppendixB.INTAKE_AIR_TEMPERATURE, AppendixB.ENGINE_SPEED,
+                AppendixB.ABSOLUTE_THROTTLE_POSITION};
+        Unit[] units = {Unit.KILOMETERS_PER_HOUR, Unit.TEMPERATURE_CELSIUS,
+                Unit.TEMPERATURE_CELSIUS, Unit.ROTATIONS_PER_MINUTE, Unit.PERCENT};
+        for (int i = 0; i < pids.length; ++i)
+        {
+            interpreter.sendRequest(outcomes.live(pids[i], units[i], "p" + i));
+        }
+        interpreter.start();
+        try
+        {
+            int first = adapter.take();
+            int second = adapter.take();
+            adapter.take();
+            assertNull(adapter.requests.poll(QUIET, TimeUnit.MILLISECONDS));
+            adapter.answer(first, 0x41, 0x0D, 10);
+            adapter.take(); /// The fourth goes out once the first is answered, but not the fifth
+            assertNull(adapter.requests.poll(QUIET, TimeUnit.MILLISECONDS));
+            adapter.answer(second, 0x41, 0x05, 0x7B);
+            adapter.take();
+            assertEquals(Arrays.asList("p0=10", "p1=83"), outcomes.await(2));
+        }
+        finally
+        {
+            interpreter.stop();
+        }
+    }
+
+    /**
+     * Replies that arrive out of order should each reach their own request, in the order that the
+     * requests were written, including the answers of each member of a batch
+     */
+    @Test
+    public void outOfOrderTest()
+            throws
+            Exception
+    {
+        Adapter adapter = new Adapter();
+        BinaryInterpreter interpreter = new BinaryInterpreter(adapter, CallbackExecutors.direct());
+        Outcomes outcomes = new Outcomes();
+        interpreter.sendRequest(outcomes.live(AppendixB.VEHICLE_SPEED, Unit.KILOMETERS_PER_HOUR,
+                                              "speed"));
+        interpreter.sendRequest(outcomes.live(AppendixB.ENGINE_COOLANT_TEMPERATURE,
+                                              Unit.TEMPERATURE_CELSIUS, "ect"));
+        interpreter.sendRequest(new BatchServiceRequest(Service.LIVE_DATASTREAM, Arrays.asList(
+                outcomes.live(AppendixB.ENGINE_SPEED, Unit.ROTATIONS_PER_MINUTE, "rpm"),
+                outcomes.live(AppendixB.VEHICLE_SPEED, Unit.KILOMETERS_PER_HOUR, "b.speed"))));
+        interpreter.start();
+        try
+        {
+            int speed = adapter.take();
+            int ect = adapter.take();
+            int batch = adapter.take();
+            adapter.answer(batch, 0x41, 0x0C, 0x1A, 0xF8, 0x0D, 0x32);
+            adapter.answer(ect, 0x41, 0x05, 0x7B);
+            adapter.answer(speed, 0x41, 0x0D, 0x1F);
+            assertEquals(Arrays.asList("speed=31", "ect=83", "rpm=1726.0", "b.speed=50"),
+                         outcomes.await(4));
+        }
+        finally
+        {
+            interpreter.stop();
+        }
+    }
+
+    /**
+     * A reply that arrives after its request timed out should be dropped, rather than be taken
+     * for the reply to the next request
+     */
+    @Test
+    public void lateReplyTest()
+            throws
+            Exception
+    {
+        Adapter adapter = new Adapter();
+        BinaryInterpreter interpreter = new BinaryInterpreter(adapter, CallbackExecutors.direct());
+        Outcomes outcomes = new Outcomes();
+        ServiceRequest<Integer> slow = outcomes.live(AppendixB.VEHICLE_SPEED,
+                                                     Unit.KILOMETERS_PER_HOUR, "slow");
+        slow.setTimeout(100);
+        interpreter.sendRequest(slow);
+        interpreter.start();
+        try
+        {
+            int late = adapter.take();
+            assertEquals(Arrays.asList("slow:" + FailureCode.REQUEST_TIMED_OUT),
+                         outcomes.await(1));
+            interpreter.sendRequest(outcomes.live(AppendixB.VEHICLE_SPEED,
+                                                  Unit.KILOMETERS_PER_HOUR, "next"));
+            int next = adapter.take();
+            adapter.answer(late, 0x41, 0x0D, 99);
+            adapter.answer(next, 0x41, 0x0D, 42);
+            assertEquals(Arrays.asList("slow:" + FailureCode.REQUEST_TIMED_OUT, "next=42"),
+                         outcomes.await(2));
+        }
+        finally
+        {
+            interpreter.stop();
+        }
+    }
+
+    /**
+     * Frames whose sequence number matches no request in flight, or whose type is not a reply,
+     * should be dropped without disturbing the request that is waiting
+     */
+    @Test
+    public void sequenceMismatchTest()
+            throws
+            Exception
+    {
+        Adapter adapter = new Adapter();
+        BinaryInterpreter interpreter = new BinaryInterpreter(adapter, CallbackExecutors.direct());
+        Outcomes outcomes = new Outcomes();
+        interpreter.sendRequest(outcomes.live(AppendixB.VEHICLE_SPEED, Unit.KILOMETERS_PER_HOUR,
+                                              "speed"));
+        interpreter.start();
+        try
+        {
+            int sequence = adapter.take();
+            adapter.answer((sequence + 17) % 0x100, 0x41, 0x0D, 99);
+            adapter.send(sequence, BinaryInterpreter.TYPE_REQUEST,
+                         new byte[]{BinaryInterpreter.STATUS_OK});
+            Thread.sleep(QUIET);
+            assertTrue(outcomes.await(0)
+                               .isEmpty());
+            adapter.answer(sequence, 0x41, 0x0D, 42);
+            assertEquals(Arrays.asList("speed=42"), outcomes.await(1));
+        }
+        finally
+        {
+            interpreter.stop();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.lukeleber.scandroid.interpreter.binary;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import static org.junit.Assert.*;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Test cases for com.lukeleber.scandroid.interpreter.binary.FrameCodec
+ */
+@Config(manifest = "./src/main/AndroidManifest.xml", emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class FrameCodecTest
+{
+    /**
+     * The CRC should be CRC-16/CCITT-FALSE, whose check value is $29B1
+     */
+    @Test
+    public void crcTest()
+    {
+        byte[] check = "123456789".getBytes();
+        assertEquals(0x29B1, FrameCodec.crc(check, 0, check.length));
+    }
+
+    /**
+     * A frame should come out as it went in, even when it arrives a byte at a time
+     */
+    @Test
+    public void roundTripTest()
+    {
+        FrameCodec codec = new FrameCodec();
+        byte[] frame = encode(codec, 0x7F, BinaryInterpreter.TYPE_REPLY, 0x00, 0x41, 0x0C);
+        assertEquals(3 + FrameCodec.OVERHEAD, frame.length);
+        for (int i = 0; i < frame.length - 1; ++i)
+        {
+            codec.receive(ByteBuffer.wrap(frame, i, 1));
+            assertFalse(codec.next());
+        }
+        codec.receive(ByteBuffer.wrap(frame, frame.length - 1, 1));
+        assertTrue(codec.next());
+        assertEquals(0x7F, codec.getSequence());
+        assertEquals(BinaryInterpreter.TYPE_REPLY, codec.getType());
+        byte[] body = new byte[codec.getBody()
+                                    .remaining()];
+        codec.getBody()
+             .get(body);
+        assertArrayEquals(new byte[]{0x00, 0x41, 0x0C}, body);
+        assertFalse(codec.next());
+    }
+
+    /**
+     * A frame whose CRC does not match should be skipped, along with any noise, and the next
+     * valid frame decoded
+     */
+    @Test
+    public void corruptionTest()
+    {
+        FrameCodec codec = new FrameCodec();
+        byte[] bad = encode(codec, 1, BinaryInterpreter.TYPE_REPLY, 0x00, 0x41, 0x0D, 0x32);
+        bad[bad.length - 3] ^= 0x01;
+        byte[] good = encode(codec, 2, BinaryInterpreter.TYPE_REPLY, 0x01);
+        codec.receive(ByteBuffer.wrap(new byte[]{0x00, FrameCodec.SYNC, (byte) 0xFF, (byte) 0xFF}));
+        codec.receive(ByteBuffer.wrap(bad));
+        codec.receive(ByteBuffer.wrap(good));
+        assertTrue(codec.next());
+        assertEquals(2, codec.getSequence());
+        assertEquals(1, codec.getBody()
+                             .remaining());
+        assertEquals(1, codec.getCrcErrors());
+        assertFalse(codec.next());
+    }
+
+    /// Encodes a frame and copies it out of the shared buffer of the codec
+    private static byte[] encode(FrameCodec codec, int sequence, int type, int... body)
+    {
+        ByteBuffer src = ByteBuffer.allocate(body.length);
+        for (int b : body)
+        {
+            src.put((byte) b);
+        }
+        src.flip();
+        ByteBuffer frame = codec.encode(sequence, type, src);
+        return Arrays.copyOf(frame.array(), frame.limit());
+    }
+}
@@ -0,0 +1,49 @@
+package com.lukeleber.scandroid.interpreter.elm327;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import static org.junit.Assert.*;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Test cases for com.lukeleber.scandroid.interpreter.elm327.AdapterCapabilities
+ */
+@Config(manifest = "./src/main/AndroidManifest.xml", emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class AdapterCapabilitiesTest
+{
+    /**
+     * The version should be found in the identification strings of genuine adapters and clones
+     * alike, and anything else should count as unidentified
+     */
+    @Test
+    public void versionTest()
+    {
+        assertEquals(105, AdapterCapabilities.parseVersion("ELM327 v1.5"));
+        assertEquals(201, AdapterCapabilities.parseVersion("ELM327 v2.1a"));
+        assertEquals(103, AdapterCapabilities.parseVersion("  ELM327 v1.3 "));
+        assertEquals(-1, AdapterCapabilities.parseVersion("OBDII to RS232 Interpreter"));
+        assertEquals(-1, AdapterCapabilities.parseVersion("ELM327"));
+        assertEquals(-1, AdapterCapabilities.parseVersion(null));
+    }
+
+    /**
+     * Response count hints should only be claimed from version 1.3 on
+     */
+    @Test
+    public void hintsTest()
+    {
+        AdapterCapabilities old = new AdapterCapabilities("ELM327 v1.2", null, true, true, true,
+                                                          true, 0);
+        AdapterCapabilities clone = new AdapterCapabilities("ELM327 v1.5", null, true, false,
+                                                            false, false, 0);
+        assertFalse(old.supportsResponseCountHints());
+        assertTrue(old.isIdentified());
+        assertTrue(clone.supportsResponseCountHints());
+        assertTrue(clone.isAtLeast(1, 4));
+        assertFalse(clone.isAtLeast(2, 0));
+        assertFalse(new AdapterCapabilities(null, null, false, false, false, false, 0)
+                            .isIdentified());
+    }
+}
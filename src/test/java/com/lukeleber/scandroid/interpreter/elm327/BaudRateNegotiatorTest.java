@@ -0,0 +1,283 @@
+package com.lukeleber.scandroid.interpreter.elm327;
+
+import com.lukeleber.scandroid.interpreter.metrics.InterpreterMetrics;
+import com.lukeleber.scandroid.io.AbstractCommunicationInterface;
+import com.lukeleber.scandroid.io.SerialInterface;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import static org.junit.Assert.*;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Test cases for com.lukeleber.scandroid.interpreter.elm327.BaudRateNegotiator
+ */
+@Config(manifest = "./src/main/AndroidManifest.xml", emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class BaudRateNegotiatorTest
+{
+    /// What the scripted ELM327 identifies itself as
+    private final static String IDENTITY = "ELM327 v1.5";
+
+    /// The power-on baud rate of the scripted ELM327
+    private final static int POWER_ON = 38400;
+
+    /// An ELM327 on a serial link that follows the "AT BRD" handshake of the datasheet
+    private final static class Adapter
+            extends AbstractCommunicationInterface
+            implements SerialInterface
+    {
+        /// The host rates at which nothing gets through
+        final Set<Integer> dead = new HashSet<>();
+
+        /// The host rates at which the handshake gets through but "AT I" comes back garbled
+        final Set<Integer> flaky = new HashSet<>();
+
+        /// Every rate that the host switched to, in order
+        final List<Integer> switches = new ArrayList<>();
+
+        /// Does the ELM327 reject "AT BRD"?
+        boolean rejecting;
+
+        /// The baud rate divisor that the ELM327 uses
+        int divisor = Math.round(4000000f / POWER_ON);
+
+        /// The rate of the host side
+        private int hostRate = POWER_ON;
+
+        /// The divisor to fall back on while a handshake is in progress, or zero
+        private int fallback;
+
+        /// Has the identification string been sent at the new rate of the handshake?
+        private boolean identified;
+
+        /// What the host has yet to read
+        private final ArrayDeque<Byte> pending = new ArrayDeque<>();
+
+        /// The command that is being written
+        private final StringBuilder command = new StringBuilder();
+
+        @Override
+        protected InputStream getSourceStream()
+        {
+            return new InputStream()
+            {
+                @Override
+                public int read()
+                {
+                    return pending.isEmpty() ? -1 : pending.poll() & 0xFF;
+                }
+
+                @Override
+                public int available()
+                {
+                    return pending.size();
+                }
+            };
+        }
+
+        @Override
+        public OutputStream getOutputStream()
+        {
+            return new OutputStream()
+            {
+                @Override
+                public void write(int b)
+                {
+                    if (b != '\r')
+                    {
+                        command.append((char) b);
+                        return;
+                    }
+                    String line = command.toString();
+                    command.setLength(0);
+                    if (isHeard())
+                    {
+                        execute(line);
+                    }
+                }
+            };
+        }
+
+        @Override
+        public int getBaudRate()
+        {
+            return hostRate;
+        }
+
+        @Override
+        public void setBaudRate(int baudRate)
+        {
+            pending.clear();
+            discardBuffered();
+            hostRate = baudRate;
+            switches.add(baudRate);
+            if (fallback == 0)
+            {
+                return;
+            }
+            if (!identified)
+            {
+                identified = true;
+                send(IDENTITY + "\r");
+            }
+            else
+            {
+                /// The host gave up, so the handshake times out and the ELM327 falls back
+                divisor = fallback;
+                fallback = 0;
+                send(">");
+            }
+        }
+
+        @Override
+        public int getMaxBaudRate()
+        {
+            return 500000;
+        }
+
+        @Override
+        public void connect()
+        {
+
+        }
+
+        @Override
+        public void close()
+        {
+
+        }
+
+        /// Do both sides use (nearly) the same rate, and does anything get through at it?
+        private boolean isHeard()
+        {
+            return Math.abs(4000000 / divisor - hostRate) <= hostRate / 32 &&
+                    !dead.contains(hostRate);
+        }
+
+        /// Sends the provided text to the host, which only hears it at the rate of the ELM327
+        private void send(String text)
+        {
+            if (isHeard())
+            {
+                for (byte b : text.getBytes())
+                {
+                    pending.add(b);
+                }
+            }
+        }
+
+        /// Answers a command the way that an ELM327 would
+        private void execute(String line)
+        {
+            if (line.startsWith("ATBRT"))
+            {
+                send("OK\r\r>");
+            }
+            else if (line.startsWith("ATBRD"))
+            {
+                if (rejecting)
+                {
+                    send("?\r\r>");
+                    return;
+                }
+                send("OK\r");
+                fallback = divisor;
+                identified = false;
+                divisor = Integer.parseInt(line.substring(5), 16);
+            }
+            else if (line.isEmpty() && fallback != 0)
+            {
+                fallback = 0;
+                send("OK\r\r>");
+            }
+            else if (line.equals("ATI"))
+            {
+                send((flaky.contains(hostRate) ? "EL?327 v1.?" : IDENTITY) + "\r\r>");
+            }
+        }
+    }
+
+    /// Negotiates a rate with the provided adapter
+    private static boolean negotiate(Adapter adapter)
+            throws
+            IOException
+    {
+        return new BaudRateNegotiator(adapter, new InterpreterMetrics(), IDENTITY).negotiate();
+    }
+
+    /**
+     * An adapter that rejects "AT BRD" should be left at its power-on rate without trying any
+     * other rate
+     */
+    @Test
+    public void rejectedTest()
+            throws
+            IOException
+    {
+        Adapter adapter = new Adapter();
+        adapter.rejecting = true;
+        assertFalse(negotiate(adapter));
+        assertEquals(POWER_ON, adapter.getBaudRate());
+        assertTrue(adapter.switches.isEmpty());
+    }
+
+    /**
+     * A rate at which the identification string is not heard should be abandoned for the old
+     * one, and the next slower rate tried from there
+     */
+    @Test
+    public void fallbackTest()
+            throws
+            IOException
+    {
+        Adapter adapter = new Adapter();
+        adapter.dead.add(500000);
+        assertTrue(negotiate(adapter));
+        assertEquals(Arrays.asList(500000, POWER_ON, 230400), adapter.switches);
+        assertEquals(0x11, adapter.divisor);
+    }
+
+    /**
+     * A rate that passes the handshake but garbles the round trips that follow should be
+     * stepped down from
+     */
+    @Test
+    public void verifyTest()
+            throws
+            IOException
+    {
+        Adapter adapter = new Adapter();
+        adapter.flaky.add(500000);
+        assertTrue(negotiate(adapter));
+        assertEquals(Arrays.asList(500000, 230400), adapter.switches);
+        assertEquals(0x11, adapter.divisor);
+    }
+
+    /**
+     * If no faster rate works reliably, both sides should end up back at the power-on rate
+     */
+    @Test
+    public void returnTest()
+            throws
+            IOException
+    {
+        Adapter adapter = new Adapter();
+        adapter.flaky.addAll(Arrays.asList(500000, 230400, 115200, 57600));
+        assertFalse(negotiate(adapter));
+        assertEquals(Arrays.asList(500000, 230400, 115200, 57600, POWER_ON), adapter.switches);
+        assertEquals(POWER_ON, adapter.getBaudRate());
+        assertEquals(Math.round(4000000f / POWER_ON), adapter.divisor);
+    }
+}
@@ -0,0 +1,554 @@
+package com.lukeleber.scandroid.interpreter.elm327;
+
+import com.lukeleber.scandroid.interpreter.Burst;
+import com.lukeleber.scandroid.interpreter.CallbackExecutors;
+import com.lukeleber.scandroid.interpreter.EcuAddress;
+import com.lukeleber.scandroid.interpreter.FailureCode;
+import com.lukeleber.scandroid.interpreter.Handler;
+import com.lukeleber.scandroid.interpreter.Interpreter;
+import com.lukeleber.scandroid.interpreter.MultiEcuServiceRequest;
+import com.lukeleber.scandroid.interpreter.Request;
+import com.lukeleber.scandroid.interpreter.RequestHandle;
+import com.lukeleber.scandroid.interpreter.ServiceRequest;
+import com.lukeleber.scandroid.io.AbstractCommunicationInterface;
+import com.lukeleber.scandroid.sae.j1979.PID;
+import com.lukeleber.scandroid.sae.j1979.Service;
+import com.lukeleber.scandroid.sae.j1979.detail.AppendixB;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import static org.junit.Assert.*;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test cases for com.lukeleber.scandroid.interpreter.elm327.ELM327
+ */
+@Config(manifest = "./src/main/AndroidManifest.xml", emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class ELM327Test
+{
+    /// How long to wait for something that should happen
+    private final static long PATIENCE = 2000;
+
+    /// How long to wait for something that should not happen
+    private final static long QUIET = 150;
+
+    /// An ELM327 (with echo off) on a vehicle whose engine ECU answers a few service $01 PIDs
+    private final static class Adapter
+            extends AbstractCommunicationInterface
+    {
+        /// Every command that was written, exactly as written (a repeat is an empty command)
+        final BlockingQueue<String> commands = new LinkedBlockingQueue<>();
+
+        /// Feeds the replies to the interpreter
+        private final PipedOutputStream feed = new PipedOutputStream();
+
+        /// What the interpreter reads
+        private final PipedInputStream in;
+
+        /// The command that is being written
+        private final StringBuilder command = new StringBuilder();
+
+        /// The last command that was performed (and is performed again by a bare carriage return)
+        private String last = "";
+
+        /// Is the link broken (until the next connection)?
+        volatile boolean broken;
+
+        /// Are the headers of the replies shown?
+        private boolean headers;
+
+        /// Does the ECU leave the next service request unanswered?
+        volatile boolean stalling;
+
+        /// Is the ELM327 waiting on an ECU that will never answer (until any character arrives)?
+        private boolean stalled;
+
+        Adapter()
+                throws
+                IOException
+        {
+            in = new PipedInputStream(feed, 0x1000);
+        }
+
+        @Override
+        protected InputStream getSourceStream()
+        {
+            return in;
+        }
+
+        @Override
+        public OutputStream getOutputStream()
+        {
+            return new OutputStream()
+            {
+                @Override
+                public void write(int b)
+                        throws
+                        IOException
+                {
+                    if (broken)
+                    {
+                        throw new IOException("Broken pipe");
+                    }
+                    if (stalled)
+                    {
+                        /// Any character aborts the request that is in progress
+                        stalled = false;
+                        commands.add(String.valueOf((char) b));
+                        feed.write("STOPPED\r\r>".getBytes());
+                        feed.flush();
+                        return;
+                    }
+                    if (b != '\r')
+                    {
+                        command.append((char) b);
+                        return;
+                    }
+                    String written = command.toString();
+                    command.setLength(0);
+                    commands.add(written);
+                    if (!written.isEmpty())
+                    {
+                        last = written.toUpperCase();
+                    }
+                    if (stalling && !last.startsWith("AT"))
+                    {
+                        stalling = false;
+                        stalled = true;
+                        return;
+                    }
+                    feed.write((answer(last) + "\r\r>").getBytes());
+                    feed.flush();
+                }
+            };
+        }
+
+        @Override
+        public void connect()
+        {
+            broken = false;
+        }
+
+        @Override
+        public void close()
+        {
+
+        }
+
+        /// Answers a command the way that the ELM327 (and the engine ECU) would
+        private String answer(String command)
+        {
+            if (command.equals("ATI"))
+            {
+                return "ELM327 v1.5";
+            }
+            if (command.equals("ATH1") || command.equals("ATH0") || command.equals("ATD"))
+            {
+                headers = command.equals("ATH1");
+            }
+            if (command.startsWith("010C"))
+            {
+                return headers ? "7E8 04 41 0C 1A F8" : "41 0C 1A F8";
+            }
+            if (command.startsWith("010E"))
+            {
+                return "41 0E 90";
+            }
+            return command.startsWith("AT") ? "OK" : "NO DATA";
+        }
+
+        /// Takes the next service request that was written, skipping the AT commands
+        String take()
+                throws
+                InterruptedException
+        {
+            while (true)
+            {
+                String rv = commands.poll(PATIENCE, TimeUnit.MILLISECONDS);
+                assertNotNull("No service request was written", rv);
+                if (!rv.startsWith("AT"))
+                {
+                    return rv;
+                }
+            }
+        }
+
+        /// Takes the provided number of commands that were written, AT commands included
+        List<String> take(int count)
+                throws
+                InterruptedException
+        {
+            List<String> rv = new ArrayList<>();
+            for (int i = 0; i < count; ++i)
+            {
+                String command = commands.poll(PATIENCE, TimeUnit.MILLISECONDS);
+                assertNotNull("Only " + rv + " was written", command);
+                rv.add(command);
+            }
+            return rv;
+        }
+    }
+
+    /// Sends a service $01 request for the provided PID and waits for its outcome
+    private static <T> Object request(ELM327 elm, PID<T> pid)
+            throws
+            InterruptedException
+    {
+        return request(elm, pid, null);
+    }
+
+    /// Sends a service $01 request for the provided PID to the provided ECU (or all of them) and
+    /// waits for its outcome
+    private static <T> Object request(ELM327 elm, PID<T> pid, EcuAddress target)
+            throws
+            InterruptedException
+    {
+        final Object[] outcome = new Object[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        elm.sendRequest(new ServiceRequest<>(Service.LIVE_DATASTREAM, pid, new Handler<T>()
+        {
+            @Override
+            public void onResponse(T value)
+            {
+                outcome[0] = value;
+                done.countDown();
+            }
+
+            @Override
+            public void onFailure(FailureCode code)
+            {
+                outcome[0] = code;
+                done.countDown();
+            }
+        }).setTarget(target));
+        assertTrue(done.await(PATIENCE, TimeUnit.MILLISECONDS));
+        return outcome[0];
+    }
+
+    /// Sends a configuration request and waits for the ELM327 to accept it
+    private static void configure(ELM327 elm, OpCode option, Object... args)
+            throws
+            InterruptedException
+    {
+        List<String> outcomes = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch done = new CountDownLatch(1);
+        elm.sendRequest(new ELM327.ConfigurationRequest(
+                ELM327Test.<String>record(option.name(), outcomes, done), option, args));
+        assertTrue(done.await(PATIENCE, TimeUnit.MILLISECONDS));
+        assertEquals(Arrays.asList(option.name() + "=OK"), outcomes);
+    }
+
+    /// Creates a handler that records the outcome of a request under the provided name
+    private static <T> Handler<T> record(final String name, final List<String> outcomes,
+                                         final CountDownLatch done)
+    {
+        return new Handler<T>()
+        {
+            @Override
+            public void onResponse(T value)
+            {
+                outcomes.add(name + "=" + value);
+                done.countDown();
+            }
+
+            @Override
+            public void onFailure(FailureCode code)
+            {
+                outcomes.add(name + ":" + code);
+                done.countDown();
+            }
+        };
+    }
+
+    /// Creates an ELM327 that talks to the provided adapter, without the helpers that would slip
+    /// their own commands (or a response count) in between the service requests
+    private static ELM327 create(Adapter adapter)
+    {
+        ELM327 elm = new ELM327(adapter, CallbackExecutors.direct());
+        elm.getResponseCountHints()
+           .setEnabled(false);
+        elm.getTimingTuner()
+           .setEnabled(false);
+        elm.getKeepaliveScheduler()
+           .setEnabled(false);
+        return elm;
+    }
+
+    /// Creates and starts an ELM327 that talks to the provided adapter
+    private static ELM327 start(Adapter adapter)
+    {
+        ELM327 elm = create(adapter);
+        elm.start();
+        return elm;
+    }
+
+    /**
+     * A service request that is identical to the last command should be sent as a bare carriage
+     * return, unless the fast path is disabled
+     */
+    @Test
+    public void repeatTest()
+            throws
+            Exception
+    {
+        Adapter adapter = new Adapter();
+        ELM327 elm = start(adapter);
+        try
+        {
+            assertEquals(1726.0f, request(elm, AppendixB.ENGINE_SPEED));
+            assertEquals(1726.0f, request(elm, AppendixB.ENGINE_SPEED));
+            assertEquals(8.0f, request(elm, AppendixB.TIMING_ADVANCE));
+            assertEquals(1726.0f, request(elm, AppendixB.ENGINE_SPEED));
+            assertEquals(1726.0f, request(elm, AppendixB.ENGINE_SPEED));
+            elm.setRepeatingEnabled(false);
+            assertEquals(1726.0f, request(elm, AppendixB.ENGINE_SPEED));
+            List<String> written = new ArrayList<>();
+            for (int i = 0; i < 6; ++i)
+            {
+                written.add(adapter.take());
+            }
+            assertEquals(Arrays.asList("010c", "", "010e", "010c", "", "010c"), written);
+        }
+        finally
+        {
+            elm.stop();
+        }
+    }
+
+    /**
+     * Every sample of a burst after the first should be sent as a bare carriage return
+     */
+    @Test
+    public void burstTest()
+            throws
+            Exception
+    {
+        Adapter adapter = new Adapter();
+        ELM327 elm = start(adapter);
+        try
+        {
+            final List<Float> samples = new ArrayList<>();
+            final int[] taken = {-1};
+            final CountDownLatch finished = new CountDownLatch(1);
+            new Burst<>(elm, Service.LIVE_DATASTREAM, AppendixB.ENGINE_SPEED,
+                        new Burst.Listener<Float>()
+                        {
+                            @Override
+                            public void onSample(Float value, long nanoTime)
+                            {
+                                samples.add(value);
+                            }
+
+                            @Override
+                            public void onFinished(int count, FailureCode failure)
+                            {
+                                taken[0] = failure == null ? count : -1;
+                                finished.countDown();
+                            }
+                        }, CallbackExecutors.direct()).start(5);
+            assertTrue(finished.await(PATIENCE, TimeUnit.MILLISECONDS));
+            assertEquals(5, taken[0]);
+            assertEquals(Arrays.asList(1726.0f, 1726.0f, 1726.0f, 1726.0f, 1726.0f), samples);
+            List<String> written = new ArrayList<>();
+            for (int i = 0; i < 5; ++i)
+            {
+                written.add(adapter.take());
+            }
+            assertEquals(Arrays.asList("010c", "", "", "", ""), written);
+        }
+        finally
+        {
+            elm.stop();
+        }
+    }
+
+    /**
+     * Identical service requests that wait at the same time should be written once and share the
+     * reply, unless one of them is more urgent than the one that it would wait for
+     */
+    @Test
+    public void coalesceTest()
+            throws
+            Exception
+    {
+        Adapter adapter = new Adapter();
+        ELM327 elm = create(adapter);
+        List<String> outcomes = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch done = new CountDownLatch(4);
+        /// Sent before the I/O thread starts, so that all of them are waiting at once
+        elm.sendRequest(new ServiceRequest<>(Service.LIVE_DATASTREAM, AppendixB.ENGINE_SPEED,
+                                             ELM327Test.<Float>record("a", outcomes, done)));
+        elm.sendRequest(new ServiceRequest<>(Service.LIVE_DATASTREAM, AppendixB.ENGINE_SPEED,
+                                             ELM327Test.<Float>record("b", outcomes, done)));
+        elm.sendRequest(new ServiceRequest<>(Service.LIVE_DATASTREAM, AppendixB.ENGINE_SPEED,
+                                             ELM327Test.<Float>record("c", outcomes, done))
+                                .setPriority(Request.Priority.INTERACTIVE));
+        elm.sendRequest(new ServiceRequest<>(Service.LIVE_DATASTREAM, AppendixB.TIMING_ADVANCE,
+                                             ELM327Test.<Float>record("d", outcomes, done)));
+        elm.start();
+        try
+        {
+            assertTrue(done.await(PATIENCE, TimeUnit.MILLISECONDS));
+            assertEquals(Arrays.asList("c=1726.0", "a=1726.0", "b=1726.0", "d=8.0"), outcomes);
+            assertEquals("010c", adapter.take());
+            assertEquals("", adapter.take());
+            assertEquals("010e", adapter.take());
+            assertNull(adapter.commands.poll(QUIET, TimeUnit.MILLISECONDS));
+        }
+        finally
+        {
+            elm.stop();
+        }
+    }
+
+    /**
+     * A request that is cancelled while it waits should be taken out of the queue, and neither be
+     * written nor have its handler invoked
+     */
+    @Test
+    public void cancelTest()
+            throws
+            Exception
+    {
+        Adapter adapter = new Adapter();
+        ELM327 elm = create(adapter);
+        List<String> outcomes = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch done = new CountDownLatch(1);
+        /// Sent before the I/O thread starts, so that the second is still waiting when cancelled
+        elm.sendRequest(new ServiceRequest<>(Service.LIVE_DATASTREAM, AppendixB.ENGINE_SPEED,
+                                             ELM327Test.<Float>record("a", outcomes, done)));
+        RequestHandle handle = elm.sendRequest(new ServiceRequest<>(
+                Service.LIVE_DATASTREAM, AppendixB.TIMING_ADVANCE,
+                ELM327Test.<Float>record("b", outcomes, done)));
+        assertTrue(handle.cancel());
+        assertTrue(handle.isCancelled());
+        elm.start();
+        try
+        {
+            assertTrue(done.await(PATIENCE, TimeUnit.MILLISECONDS));
+            assertEquals("010c", adapter.take());
+            assertNull(adapter.commands.poll(QUIET, TimeUnit.MILLISECONDS));
+            assertEquals(Arrays.asList("a=1726.0"), outcomes);
+            assertFalse(handle.cancel());
+        }
+        finally
+        {
+            elm.stop();
+        }
+    }
+
+    /**
+     * A request that is not answered in time should fail as timed out, after which the ELM327
+     * should be interrupted and the next request written in full rather than repeated
+     */
+    @Test
+    public void timeoutTest()
+            throws
+            Exception
+    {
+        Adapter adapter = new Adapter();
+        ELM327 elm = start(adapter);
+        try
+        {
+            List<String> outcomes = Collections.synchronizedList(new ArrayList<String>());
+            CountDownLatch done = new CountDownLatch(1);
+            adapter.stalling = true;
+            elm.sendRequest(new ServiceRequest<>(Service.LIVE_DATASTREAM, AppendixB.ENGINE_SPEED,
+                                                 ELM327Test.<Float>record("slow", outcomes, done))
+                                    .setTimeout(100));
+            assertTrue(done.await(PATIENCE, TimeUnit.MILLISECONDS));
+            assertEquals(Arrays.asList("slow:" + FailureCode.REQUEST_TIMED_OUT), outcomes);
+            assertEquals(1726.0f, request(elm, AppendixB.ENGINE_SPEED));
+            assertEquals(Arrays.asList("010c", " ", "010c"), Arrays.asList(
+                    adapter.take(), adapter.take(), adapter.take()));
+        }
+        finally
+        {
+            elm.stop();
+        }
+    }
+
+    /**
+     * After the link is lost, the ELM327 should be put back to its defaults and the configuration
+     * replayed in the order that it was last written, after which neither the header nor the
+     * header display of the old session may be taken for granted
+     */
+    @Test
+    public void reconnectTest()
+            throws
+            Exception
+    {
+        Adapter adapter = new Adapter();
+        ELM327 elm = create(adapter);
+        final Semaphore restored = new Semaphore(0);
+        elm.addLinkListener(new Interpreter.LinkListener()
+        {
+            @Override
+            public void onLinkLost()
+            {
+
+            }
+
+            @Override
+            public void onLinkRestored()
+            {
+                restored.release();
+            }
+        });
+        elm.start();
+        EcuAddress engine = EcuAddress.fromResponseId(0x7E8, false);
+        try
+        {
+            configure(elm, OpCode.ELM327_OBD_SET_PROTOCOL, 7);
+            configure(elm, OpCode.ELM327_LINEFEEDS_OFF);
+            configure(elm, OpCode.ELM327_OBD_SET_PROTOCOL, 6);
+
+            /// Lost while the engine ECU is addressed
+            assertEquals(1726.0f, request(elm, AppendixB.ENGINE_SPEED, engine));
+            adapter.commands.clear();
+            adapter.broken = true;
+            assertEquals(FailureCode.LINK_LOST, request(elm, AppendixB.ENGINE_SPEED, engine));
+            assertTrue(restored.tryAcquire(PATIENCE, TimeUnit.MILLISECONDS));
+            assertEquals(1726.0f, request(elm, AppendixB.ENGINE_SPEED, engine));
+            assertEquals(Arrays.asList("ATD", "ATL0", "ATSP6", "ATSH7E0", "ATCRA7E8", "010c"),
+                         adapter.take(6));
+
+            /// Lost while the headers are shown for a request to every ECU
+            List<String> outcomes = Collections.synchronizedList(new ArrayList<String>());
+            CountDownLatch done = new CountDownLatch(1);
+            elm.sendRequest(new MultiEcuServiceRequest<>(
+                    Service.LIVE_DATASTREAM, AppendixB.ENGINE_SPEED,
+                    ELM327Test.<Map<EcuAddress, Float>>record("all", outcomes, done)));
+            assertTrue(done.await(PATIENCE, TimeUnit.MILLISECONDS));
+            assertEquals(Arrays.asList("all={" + engine + "=1726.0}"), outcomes);
+            adapter.commands.clear();
+            adapter.broken = true;
+            assertEquals(FailureCode.LINK_LOST, request(elm, AppendixB.ENGINE_SPEED));
+            assertTrue(restored.tryAcquire(PATIENCE, TimeUnit.MILLISECONDS));
+            assertEquals(1726.0f, request(elm, AppendixB.ENGINE_SPEED));
+            assertEquals(Arrays.asList("ATD", "ATL0", "ATSP6", "010c"), adapter.take(4));
+        }
+        finally
+        {
+            elm.stop();
+        }
+    }
+}
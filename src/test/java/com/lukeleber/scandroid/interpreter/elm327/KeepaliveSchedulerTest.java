@@ -0,0 +1,83 @@
+package com.lukeleber.scandroid.interpreter.elm327;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import static org.junit.Assert.*;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test cases for com.lukeleber.scandroid.interpreter.elm327.KeepaliveScheduler
+ */
+@Config(manifest = "./src/main/AndroidManifest.xml", emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class KeepaliveSchedulerTest
+{
+    /**
+     * Wakeups should only be set up on K-line protocols, once per reset, with the message that
+     * the protocol expects
+     */
+    @Test
+    public void wakeupTest()
+    {
+        KeepaliveScheduler keepalive = new KeepaliveScheduler();
+        keepalive.onConnected();
+        keepalive.onProtocol(Protocol.ISO_15765_4_CAN_11_BIT_500_KBAUD.getID());
+        assertFalse(keepalive.needsWakeups());
+        keepalive.onProtocol(Protocol.ISO_9141_2.getID());
+        assertTrue(keepalive.needsWakeups());
+        assertEquals("686AF10100", keepalive.getWakeupMessage());
+        keepalive.onWakeups(true);
+        assertFalse(keepalive.needsWakeups());
+        assertFalse(keepalive.isUsingIdleRequests());
+        keepalive.onReset();
+        assertTrue(keepalive.needsWakeups());
+        keepalive.onProtocol(Protocol.ISO_14230_4_KWP_FAST_INIT.getID());
+        assertEquals("C133F13E", keepalive.getWakeupMessage());
+        keepalive.setEnabled(false);
+        assertFalse(keepalive.needsWakeups());
+    }
+
+    /**
+     * A protocol that was found automatically should be asked for once the vehicle answers
+     */
+    @Test
+    public void automaticTest()
+    {
+        KeepaliveScheduler keepalive = new KeepaliveScheduler();
+        keepalive.onProtocol(Protocol.AUTOMATIC.getID());
+        assertFalse(keepalive.needsProtocol());
+        keepalive.onReply(true, true);
+        assertTrue(keepalive.needsProtocol());
+        keepalive.onDescribedProtocol("A5");
+        assertFalse(keepalive.needsProtocol());
+        assertTrue(keepalive.needsWakeups());
+    }
+
+    /**
+     * Idle requests should take over when the session is initiated again despite the wakeups,
+     * and only be due once nothing has been written for the idle interval
+     */
+    @Test
+    public void idleRequestTest()
+    {
+        KeepaliveScheduler keepalive = new KeepaliveScheduler();
+        keepalive.onProtocol(Protocol.ISO_14230_4_KWP_5_BAUD_INIT.getID());
+        keepalive.onWakeups(true);
+        keepalive.onReply(true, true); /// The session is opened
+        assertFalse(keepalive.isUsingIdleRequests());
+        keepalive.onReply(true, true); /// ...and had to be opened again
+        assertTrue(keepalive.isUsingIdleRequests());
+
+        long now = System.nanoTime();
+        keepalive.onWrite(now);
+        assertFalse(keepalive.isIdleRequestDue(now + TimeUnit.MILLISECONDS.toNanos(100)));
+        assertTrue(keepalive.isIdleRequestDue(
+                now + TimeUnit.MILLISECONDS.toNanos(KeepaliveScheduler.IDLE_INTERVAL)));
+        keepalive.onClosed();
+        assertFalse(keepalive.isIdleRequestDue(
+                now + TimeUnit.MILLISECONDS.toNanos(KeepaliveScheduler.IDLE_INTERVAL)));
+    }
+}
@@ -0,0 +1,261 @@
+package com.lukeleber.scandroid.interpreter.elm327;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import static org.junit.Assert.*;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import com.lukeleber.scandroid.interpreter.EcuAddress;
+import com.lukeleber.scandroid.io.AbstractCommunicationInterface;
+import com.lukeleber.scandroid.io.ReadTimeoutException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Test cases for com.lukeleber.scandroid.interpreter.elm327.ResponseParser
+ */
+@Config(manifest = "./src/main/AndroidManifest.xml", emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class ResponseParserTest
+{
+    /// A communication interface that replays a canned reply
+    private final static class CannedInterface
+            extends AbstractCommunicationInterface
+    {
+        private final InputStream source;
+
+        CannedInterface(String reply)
+        {
+            /// A tiny buffer forces replies to span several refills
+            super(4);
+            this.source = new ByteArrayInputStream(reply.getBytes());
+        }
+
+        @Override
+        protected InputStream getSourceStream()
+        {
+            return source;
+        }
+
+        @Override
+        public OutputStream getOutputStream()
+        {
+            return new ByteArrayOutputStream();
+        }
+
+        @Override
+        public void connect()
+        {
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+
+    /// Feeds the provided reply through a fresh parser
+    private static ResponseParser parse(String reply)
+            throws
+            IOException
+    {
+        return parse(reply, false);
+    }
+
+    /// Feeds the provided reply (received with or without headers) through a fresh parser
+    private static ResponseParser parse(String reply, boolean headers)
+            throws
+            IOException
+    {
+        ResponseParser parser = new ResponseParser();
+        parser.read(new CannedInterface(reply));
+        parser.parse(headers);
+        return parser;
+    }
+
+    /**
+     * A single line reply should produce a single message whose bytes are the decoded hex digits,
+     * regardless of letter case or spacing
+     */
+    @Test
+    public void singleLineTest()
+            throws
+            IOException
+    {
+        ResponseParser parser = parse("41 0c 1A f8\r\r>");
+        assertEquals(1, parser.getMessageCount());
+        assertEquals(4, parser.getMessageLength(0));
+        assertEquals(0x41, parser.getByte(0, 0));
+        assertEquals(0x0C, parser.getByte(0, 1));
+        assertEquals(0x1A, parser.getByte(0, 2));
+        assertEquals(0xF8, parser.getByte(0, 3));
+        assertFalse(parser.isNoData());
+    }
+
+    /**
+     * Each line of a reply from several ECUs should produce its own message
+     */
+    @Test
+    public void multipleEcuTest()
+            throws
+            IOException
+    {
+        ResponseParser parser = parse("410D00\r410D32\r\r>");
+        assertEquals(2, parser.getMessageCount());
+        assertEquals(0x00, parser.getByte(0, 2));
+        assertEquals(0x32, parser.getByte(1, 2));
+    }
+
+    /**
+     * An ISO 15765-4 multi-frame reply should be joined into a single message that is truncated
+     * to the announced byte count
+     */
+    @Test
+    public void multiFrameTest()
+            throws
+            IOException
+    {
+        ResponseParser parser = parse("00A\r0:41000000000C\r1:0D331000000000\r\r>");
+        assertEquals(1, parser.getMessageCount());
+        assertEquals(10, parser.getMessageLength(0));
+        assertEquals(0x41, parser.getByte(0, 0));
+        assertEquals(0x0D, parser.getByte(0, 6));
+        assertEquals(0x10, parser.getByte(0, 8));
+        byte[] slice = parser.slice(0, 6, 2);
+        assertEquals(2, slice.length);
+        assertEquals(0x33, slice[1]);
+    }
+
+    /**
+     * With headers shown, the CAN ID and PCI byte should be stripped from each line and the ECU
+     * that sent it recorded
+     */
+    @Test
+    public void headersTest()
+            throws
+            IOException
+    {
+        ResponseParser parser = parse("7E8 04 41 0C 0B B8\r7E9 04 41 0C 1A F8\r\r>", true);
+        assertEquals(2, parser.getMessageCount());
+        assertEquals(4, parser.getMessageLength(0));
+        assertEquals(0x41, parser.getByte(0, 0));
+        assertEquals(0xB8, parser.getByte(0, 3));
+        assertEquals(EcuAddress.fromResponseId(0x7E8, false), parser.getSource(0));
+        assertEquals(EcuAddress.fromResponseId(0x7E9, false), parser.getSource(1));
+        parser = parse("18 DA F1 10 03 41 0D 32\r\r>", true);
+        assertEquals(3, parser.getMessageLength(0));
+        assertEquals(EcuAddress.fromResponseId(0x18DAF110, true), parser.getSource(0));
+    }
+
+    /**
+     * The frames of multi-frame replies from several ECUs should be put back together per ECU,
+     * even when they arrive interleaved
+     */
+    @Test
+    public void interleavedFramesTest()
+            throws
+            IOException
+    {
+        ResponseParser parser = parse("7E8 10 0A 49 02 01 31 47 31\r" +
+                                              "7E9 10 09 49 02 01 41 42 43\r" +
+                                              "7E8 21 4A 43 35 34 00 00 00\r" +
+                                              "7E9 21 44 45 46 00 00 00 00\r\r>", true);
+        assertEquals(2, parser.getMessageCount());
+        assertEquals(10, parser.getMessageLength(0));
+        assertEquals(9, parser.getMessageLength(1));
+        assertEquals(0x34, parser.getByte(0, 9));
+        assertEquals(0x46, parser.getByte(1, 8));
+        assertEquals(EcuAddress.fromResponseId(0x7E9, false), parser.getSource(1));
+    }
+
+    /**
+     * On the other protocols the three header bytes and the checksum should be stripped, and the
+     * source address recorded
+     */
+    @Test
+    public void sourceAddressTest()
+            throws
+            IOException
+    {
+        ResponseParser parser = parse("48 6B 10 41 0C 1A F8 5E\r48 6B 18 41 0C 0B B8 2C\r\r>",
+                                      true);
+        assertEquals(2, parser.getMessageCount());
+        assertEquals(4, parser.getMessageLength(0));
+        assertEquals(0xF8, parser.getByte(0, 3));
+        assertEquals(EcuAddress.fromSourceAddress(0x10), parser.getSource(0));
+        assertEquals(EcuAddress.fromSourceAddress(0x18), parser.getSource(1));
+        assertFalse(parser.getSource(1)
+                          .isAddressable());
+    }
+
+    /**
+     * Lines that are not hex should be skipped, and "NO DATA" should be reported
+     */
+    @Test
+    public void noDataTest()
+            throws
+            IOException
+    {
+        ResponseParser parser = parse("SEARCHING...\rNO DATA\r\r>");
+        assertEquals(0, parser.getMessageCount());
+        assertTrue(parser.isNoData());
+        assertEquals("SEARCHING...\rNO DATA\r", parser.toString());
+        assertFalse(parser.isRejected());
+    }
+
+    /**
+     * The initiation of a K-line session should be reported, and not mistaken for a message
+     */
+    @Test
+    public void busInitTest()
+            throws
+            IOException
+    {
+        ResponseParser parser = parse("BUS INIT: ...OK\r41 0C 1A F8\r\r>");
+        assertEquals(1, parser.getMessageCount());
+        assertTrue(parser.isBusInit());
+        assertFalse(parse("41 0C 1A F8\r\r>").isBusInit());
+    }
+
+    /**
+     * A command that the ELM327 does not understand should be reported as rejected
+     */
+    @Test
+    public void rejectedTest()
+            throws
+            IOException
+    {
+        ResponseParser parser = parse("?\r\r>");
+        assertEquals(0, parser.getMessageCount());
+        assertTrue(parser.isRejected());
+        assertFalse(parser.isNoData());
+    }
+
+    /**
+     * A stream that ends before the prompt should be reported as an error rather than spinning
+     */
+    @Test(expected = EOFException.class)
+    public void endOfStreamTest()
+            throws
+            IOException
+    {
+        parse("41 0C");
+    }
+
+    /**
+     * A reply whose prompt does not arrive within the timeout should be abandoned
+     */
+    @Test(expected = ReadTimeoutException.class)
+    public void timeoutTest()
+            throws
+            IOException
+    {
+        new ResponseParser().read(new CannedInterface("41 0C"), 10);
+    }
+}
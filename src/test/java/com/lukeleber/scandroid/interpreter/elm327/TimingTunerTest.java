@@ -0,0 +1,92 @@
+package com.lukeleber.scandroid.interpreter.elm327;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import static org.junit.Assert.*;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test cases for com.lukeleber.scandroid.interpreter.elm327.TimingTuner
+ */
+@Config(manifest = "./src/main/AndroidManifest.xml", emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class TimingTunerTest
+{
+    /// Records a full window of replies that took the provided number of milliseconds
+    private static void window(TimingTuner tuner, int millis, int noData)
+    {
+        for (int i = 0; i < TimingTuner.WINDOW; ++i)
+        {
+            if (i < noData)
+            {
+                tuner.recordNoData();
+            }
+            else
+            {
+                tuner.record(TimeUnit.MILLISECONDS.toNanos(millis), 1);
+            }
+        }
+    }
+
+    /**
+     * A fresh connection should be sent the default timing, then the tightest safe timing once a
+     * window has been measured
+     */
+    @Test
+    public void tightenTest()
+    {
+        TimingTuner tuner = new TimingTuner();
+        tuner.onConnected();
+        assertTrue(tuner.hasPendingChange());
+        assertEquals(TimingTuner.DEFAULT_TIMEOUT, tuner.getTimeout());
+        tuner.onApplied(tuner.getTimeout());
+        tuner.onApplied(tuner.getMode());
+        assertFalse(tuner.hasPendingChange());
+
+        window(tuner, 40, 0);
+        assertTrue(tuner.hasPendingChange());
+        assertEquals(15, tuner.getTimeout()); /// 40 ms * 1.5 = 60 ms = 15 units of 4 ms
+        assertEquals(OpCode.ELM327_OBD_ADAPTIVE_TIMING_AUTO2, tuner.getMode());
+
+        window(tuner, 1, 0);
+        assertEquals(TimingTuner.MIN_TIMEOUT, tuner.getTimeout());
+    }
+
+    /**
+     * A rise in "NO DATA" replies should double the timeout and fall back to AT1 for good
+     */
+    @Test
+    public void backOffTest()
+    {
+        TimingTuner tuner = new TimingTuner();
+        window(tuner, 40, 2);
+        assertEquals(15, tuner.getTimeout());
+        window(tuner, 40, 8);
+        assertEquals(30, tuner.getTimeout());
+        assertEquals(OpCode.ELM327_OBD_ADAPTIVE_TIMING_AUTO1, tuner.getMode());
+        window(tuner, 1, 2);
+        assertEquals(30, tuner.getTimeout());
+        assertEquals(OpCode.ELM327_OBD_ADAPTIVE_TIMING_AUTO1, tuner.getMode());
+    }
+
+    /**
+     * Each protocol should be tuned on its own, and a reset should be noticed
+     */
+    @Test
+    public void protocolTest()
+    {
+        TimingTuner tuner = new TimingTuner();
+        tuner.onReset();
+        window(tuner, 40, 0);
+        tuner.onProtocol(Protocol.ISO_9141_2.getID());
+        assertEquals(TimingTuner.DEFAULT_TIMEOUT, tuner.getTimeout());
+        assertFalse(tuner.hasPendingChange());
+        tuner.onProtocol(Protocol.AUTOMATIC.getID());
+        assertTrue(tuner.hasPendingChange());
+        tuner.setEnabled(false);
+        assertFalse(tuner.hasPendingChange());
+    }
+}
@@ -0,0 +1,70 @@
+package com.lukeleber.scandroid.interpreter.metrics;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import static org.junit.Assert.*;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test cases for com.lukeleber.scandroid.interpreter.metrics.LatencyHistogram
+ */
+@Config(manifest = "./src/main/AndroidManifest.xml", emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class LatencyHistogramTest
+{
+    /**
+     * An empty histogram should report zero for everything rather than dividing by zero
+     */
+    @Test
+    public void emptyTest()
+    {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getMean(TimeUnit.MILLISECONDS));
+        assertEquals(0, h.getMax(TimeUnit.MILLISECONDS));
+        assertEquals(0, h.getPercentile(99, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Percentiles should land within the 12.5% resolution of the histogram
+     */
+    @Test
+    public void percentileTest()
+    {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 1; i <= 1000; ++i)
+        {
+            h.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        assertEquals(1000, h.getCount());
+        assertEquals(500, h.getMean(TimeUnit.MILLISECONDS));
+        assertEquals(1000, h.getMax(TimeUnit.MILLISECONDS));
+        assertWithin(500, h.getPercentile(50, TimeUnit.MILLISECONDS));
+        assertWithin(950, h.getPercentile(95, TimeUnit.MILLISECONDS));
+        assertWithin(990, h.getPercentile(99, TimeUnit.MILLISECONDS));
+        assertEquals(1000, h.getPercentile(100, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Resetting should discard every sample
+     */
+    @Test
+    public void resetTest()
+    {
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(TimeUnit.SECONDS.toNanos(1));
+        h.reset();
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getMax(TimeUnit.MILLISECONDS));
+    }
+
+    /// Asserts that the actual value is no more than 12.5% below the expected value
+    private static void assertWithin(long expected, long actual)
+    {
+        assertTrue("expected ~" + expected + " but was " + actual,
+                   actual <= expected && actual >= expected - expected / 8);
+    }
+}
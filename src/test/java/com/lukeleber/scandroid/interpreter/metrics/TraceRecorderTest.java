@@ -0,0 +1,78 @@
+package com.lukeleber.scandroid.interpreter.metrics;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import static org.junit.Assert.*;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import com.lukeleber.scandroid.interpreter.ServiceRequest;
+import com.lukeleber.scandroid.sae.j1979.Service;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test cases for com.lukeleber.scandroid.interpreter.metrics.TraceRecorder
+ */
+@Config(manifest = "./src/main/AndroidManifest.xml", emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class TraceRecorderTest
+{
+    /// Builds a trace that was enqueued at time zero
+    private static RequestTrace trace(long sequence)
+    {
+        return new RequestTrace(sequence, new ServiceRequest<>(Service.CLEAR_DTC), 0);
+    }
+
+    /**
+     * Once full, the recorder should keep only the most recent traces, oldest first
+     */
+    @Test
+    public void ringTest()
+    {
+        TraceRecorder recorder = new TraceRecorder(3);
+        for (int i = 0; i < 5; ++i)
+        {
+            recorder.record(trace(i));
+        }
+        List<RequestTrace> traces = recorder.getTraces();
+        assertEquals(3, traces.size());
+        assertEquals(2, traces.get(0)
+                              .getSequence());
+        assertEquals(4, traces.get(2)
+                              .getSequence());
+        recorder.clear();
+        assertTrue(recorder.getTraces()
+                           .isEmpty());
+    }
+
+    /**
+     * Exported traces should hold the offset of each reached stage from the enqueue time, and
+     * nothing for stages that were not reached
+     */
+    @Test
+    public void exportTest()
+            throws
+            IOException
+    {
+        RequestTrace trace = trace(7);
+        trace.mark(RequestTrace.Stage.DEQUEUED, TimeUnit.MICROSECONDS.toNanos(150));
+        trace.mark(RequestTrace.Stage.HANDLED, TimeUnit.MICROSECONDS.toNanos(900));
+        assertEquals(750, trace.getElapsed(RequestTrace.Stage.DEQUEUED,
+                                           RequestTrace.Stage.HANDLED, TimeUnit.MICROSECONDS));
+        assertEquals(-1, trace.getElapsed(RequestTrace.Stage.ENQUEUED,
+                                          RequestTrace.Stage.FIRST_BYTE, TimeUnit.MICROSECONDS));
+        TraceRecorder recorder = new TraceRecorder();
+        recorder.record(trace);
+        StringBuilder sb = new StringBuilder();
+        recorder.export(sb);
+        String[] lines = sb.toString()
+                           .split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("sequence,request,priority,dequeued,write_started,write_finished,first_byte," +
+                             "reply_received,unmarshalled,handled", lines[0]);
+        assertEquals("7,\"$04\",NORMAL,150,,,,,,900", lines[1]);
+    }
+}